@@ -6,25 +6,56 @@ import com.fasterxml.jackson.annotation.SimpleObjectIdResolver;
 import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.PersistentObject;
 import de.terrestris.shoguncore.service.AbstractCrudService;
+import de.terrestris.shoguncore.util.json.ShogunCoreDeserializationContext;
 import org.apache.logging.log4j.Logger;
 import org.springframework.web.context.support.SpringBeanAutowiringSupport;
 
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import static org.apache.logging.log4j.LogManager.getLogger;
 
 /**
  * An ID resolver for {@link PersistentObject}s when deserializing only on the
  * base of ID values. Based on a given ID, this resolver will load the whole
  * entity from the database. Extends the default implementation.
+ * <p>
+ * If the deserialization context allows it (see
+ * {@link ShogunCoreDeserializationContext}), the IDs are only collected while
+ * deserializing and the entities are loaded at the end, i.e. with a single
+ * query instead of one query per ID.
+ * <p>
+ * The resolvers of a single deserialization are copies of the resolver that
+ * has been created (and autowired) by jackson, i.e. the services are injected
+ * once per resolver class only.
  *
  * @author Nils Buehner
  */
 public abstract class PersistentObjectIdResolver<E extends PersistentObject, D extends GenericHibernateDao<E, Integer>, S extends AbstractCrudService<E, D>>
-    extends SimpleObjectIdResolver {
+    extends SimpleObjectIdResolver implements Cloneable {
 
     protected static final Logger logger = getLogger(PersistentObjectIdResolver.class);
 
     protected S service;
 
+    /**
+     * Whether the IDs are collected to be resolved at the end of the
+     * deserialization (see {@link #resolvePendingIds()}).
+     */
+    private boolean deferred = false;
+
+    /**
+     * The IDs that have been collected and not been resolved yet.
+     */
+    private Set<Integer> pendingIds = new LinkedHashSet<>();
+
+    /**
+     * The entities that have been resolved by {@link #resolvePendingIds()}.
+     */
+    private Map<Integer, E> resolvedEntities = new HashMap<>();
+
     /**
      * Default Constructor that injects beans automatically.
      */
@@ -48,10 +79,21 @@ public abstract class PersistentObjectIdResolver<E extends PersistentObject, D e
      *
      */
     @Override
+    @SuppressWarnings("unchecked")
     public E resolveId(IdKey idKey) {
+        final Object boundEntity = super.resolveId(idKey);
+        if (boundEntity != null) {
+            return (E) boundEntity;
+        }
         try {
             if (idKey.key instanceof Integer) {
                 final Integer id = (Integer) idKey.key;
+                if (deferred) {
+                    // the entity is a forward reference until the
+                    // deserialization is finished
+                    pendingIds.add(id);
+                    return null;
+                }
                 // we only "load" the entity to follow a lazy approach, i.e.
                 // requests to the database will only be queried if any properties
                 // of the entity will (later) be accessed (which may already
@@ -67,18 +109,67 @@ public abstract class PersistentObjectIdResolver<E extends PersistentObject, D e
     }
 
     /**
-     *
+     * Loads the entities of all collected IDs the current user may READ with
+     * a single query. Entities that don't exist (or may not be read) are
+     * not resolved, i.e. the deserialization will fail as if they were
+     * resolved one by one.
+     */
+    public void resolvePendingIds() {
+        if (pendingIds.isEmpty()) {
+            return;
+        }
+        try {
+            resolvedEntities.putAll(service.findReadableByIds(pendingIds));
+        } catch (Exception e) {
+            logger.error("Could not resolve objects by IDs: " + e.getMessage());
+        }
+        for (Integer id : pendingIds) {
+            if (!resolvedEntities.containsKey(id)) {
+                logger.error("Could not resolve object by ID: " + id);
+            }
+        }
+        pendingIds = new LinkedHashSet<>();
+    }
+
+    /**
+     * @param id The ID
+     * @return The entity resolved by {@link #resolvePendingIds()} or null
+     */
+    public E getResolvedEntity(Object id) {
+        return resolvedEntities.get(id);
+    }
+
+    /**
+     * Returns a copy of this resolver for a single deserialization.
      */
     @Override
     public ObjectIdResolver newForDeserialization(Object context) {
         try {
-            return getClass().newInstance();
-        } catch (InstantiationException | IllegalAccessException e) {
+            final PersistentObjectIdResolver<E, D, S> resolver = clone();
+            resolver.deferred = context instanceof ShogunCoreDeserializationContext
+                && ((ShogunCoreDeserializationContext) context).isDeferredIdResolution();
+            return resolver;
+        } catch (CloneNotSupportedException e) {
             logger.error("Error instantiating ObjectIdResolver: " + e.getMessage());
         }
         return null;
     }
 
+    /**
+     * Returns a copy of this resolver without any bound, collected or
+     * resolved entities, which shares the injected service.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected PersistentObjectIdResolver<E, D, S> clone() throws CloneNotSupportedException {
+        final PersistentObjectIdResolver<E, D, S> resolver = (PersistentObjectIdResolver<E, D, S>) super.clone();
+        resolver._items = null;
+        resolver.deferred = false;
+        resolver.pendingIds = new LinkedHashSet<>();
+        resolver.resolvedEntities = new HashMap<>();
+        return resolver;
+    }
+
     /**
      * @return the service
      */
@@ -27,4 +27,20 @@ public class FileDao<E extends File>
     protected FileDao(Class<E> clazz) {
         super(clazz);
     }
+
+    /**
+     * Counts the files (of all types) referencing the given content of the
+     * blob store. As the contents may be shared by equal files, a content
+     * must only be deleted if it isn't referenced anymore.
+     *
+     * @param blobKey The key of the content in the blob store
+     * @return The number of files referencing the content
+     */
+    public long countByBlobKey(String blobKey) {
+        final Long count = getSession().createQuery("select count(f) from " + File.class.getName()
+            + " f where f.blobKey = :blobKey", Long.class)
+            .setParameter("blobKey", blobKey)
+            .uniqueResult();
+        return count == null ? 0 : count;
+    }
 }
@@ -1,26 +1,51 @@
 package de.terrestris.shoguncore.dao;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import de.terrestris.shoguncore.model.PersistentObject;
 import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.UserGroup;
+import de.terrestris.shoguncore.model.security.Permission;
 import de.terrestris.shoguncore.model.security.PermissionCollection;
 import de.terrestris.shoguncore.paging.PagingResult;
+import de.terrestris.shoguncore.util.entity.EntityIdentifier;
 import de.terrestris.shoguncore.util.entity.EntityUtil;
+import de.terrestris.shoguncore.util.entity.FetchPlan;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.*;
 import org.hibernate.criterion.*;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.QueryableCollection;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
 import org.hibernate.transform.DistinctRootEntityResultTransformer;
 import org.hibernate.transform.Transformers;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.IdentifiableType;
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static org.apache.logging.log4j.LogManager.getLogger;
 
@@ -38,13 +63,44 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
      */
     protected static final Logger logger = getLogger(GenericHibernateDao.class);
 
+    /**
+     * The maximum number of ids in a single IN restriction (some databases
+     * have a limit here).
+     */
+    protected static final int MAX_IDS_PER_QUERY = 1000;
+
+    /**
+     * The default number of entities that are written in a single JDBC batch
+     * by {@link #saveAll(Collection)}.
+     */
+    protected static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * Whether the properties (class name and property name) are ignored by
+     * Jackson, see {@link #findLoadedEntityGraph(Object)}
+     */
+    private static final Map<String, Boolean> IGNORED_PROPERTIES = new ConcurrentHashMap<>();
+
     /**
      * Represents the class of the entity
      */
     private final Class<E> entityClass;
 
+    /**
+     * The fetch plans by name, see {@link #getFetchPlan(String)}
+     */
+    private final Map<String, FetchPlan> fetchPlans = new ConcurrentHashMap<>();
+
     @Value("${hibernate.cache.use_query_cache}")
     private Boolean useQueryCache;
+
+    /**
+     * The number of entities that are written in a single JDBC batch by
+     * {@link #saveAll(Collection)}.
+     */
+    @Value("${hibernate.jdbc.batch_size:" + DEFAULT_BATCH_SIZE + "}")
+    private Integer batchSize;
+
     /**
      * Hibernate SessionFactory
      */
@@ -66,6 +122,8 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
      */
     protected GenericHibernateDao(Class<E> clazz) {
         this.entityClass = clazz;
+        this.fetchPlans.put(FetchPlan.DEFAULT, new FetchPlan(FetchPlan.DEFAULT, true, null));
+        this.fetchPlans.put(FetchPlan.LIST, new FetchPlan(FetchPlan.LIST, false, null));
     }
 
     /**
@@ -73,7 +131,7 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
      *
      * @return
      */
-    private Session getSession() {
+    protected Session getSession() {
         return sessionFactory.getCurrentSession();
     }
 
@@ -90,6 +148,32 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
         return getSession().get(entityClass, id);
     }
 
+    /**
+     * Return the real object from the database, whose associations are
+     * fetched as determined by the passed fetch plan. Returns null if the
+     * object does not exist.
+     *
+     * @param id
+     * @param fetchPlan The name of the fetch plan (if null, the
+     *                  {@value FetchPlan#DEFAULT} plan is used)
+     * @return The object from the database or null if it does not exist
+     * @throws IllegalArgumentException If there is no such fetch plan
+     */
+    @SuppressWarnings("unchecked")
+    public E findById(ID id, String fetchPlan) {
+        final FetchPlan plan = getFetchPlan(fetchPlan);
+
+        if (plan.isMappingDefault()) {
+            return findById(id);
+        }
+
+        logger.trace("Finding " + entityClass.getSimpleName() + " with ID " + id
+            + " and fetch plan " + plan);
+
+        Criteria criteria = createDistinctRootEntityCriteria(plan, Restrictions.idEq(id));
+        return (E) criteria.uniqueResult();
+    }
+
     /**
      * Returns a list of entity objects that have field named
      * <code>fieldName</code>, which has an object <code>fieldEntity</code>
@@ -212,6 +296,91 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
         getSession().saveOrUpdate(e);
     }
 
+    /**
+     * Saves or updates all passed entities (in the given order) using JDBC
+     * batches. The session is flushed after each batch and the flushed
+     * entities are detached from the session afterwards to keep the
+     * persistence context small, i.e. the passed entities are detached when
+     * this method returns. Entities that reference each other can be passed
+     * if the referenced entities are passed first.
+     *
+     * @param entities The entities to save or update in the database.
+     */
+    public void saveAll(Collection<? extends E> entities) {
+        executeInBatches(entities, this::saveOrUpdate);
+    }
+
+    /**
+     * Applies the passed operation (e.g. a save or delete of the entity) to
+     * all passed entities (in the given order) using JDBC batches, see
+     * {@link #saveAll(Collection)}.
+     *
+     * @param entities  The entities
+     * @param operation The operation to apply to each entity
+     */
+    public void executeInBatches(Collection<? extends E> entities, Consumer<? super E> operation) {
+        final Session session = getSession();
+        final Integer sessionBatchSize = session.getJdbcBatchSize();
+        final int entitiesPerBatch = getBatchSize();
+        final List<E> batch = new ArrayList<>(entitiesPerBatch);
+
+        logger.trace("Processing " + entities.size() + " instances of " + entityClass.getSimpleName()
+            + " in batches of " + entitiesPerBatch);
+
+        session.setJdbcBatchSize(entitiesPerBatch);
+
+        try {
+            for (E e : entities) {
+                operation.accept(e);
+                batch.add(e);
+
+                if (batch.size() == entitiesPerBatch) {
+                    flushAndEvict(session, batch);
+                }
+            }
+            flushAndEvict(session, batch);
+        } finally {
+            session.setJdbcBatchSize(sessionBatchSize);
+        }
+    }
+
+    /**
+     * Returns the entities with the passed IDs (in chunks of at most
+     * {@link #MAX_IDS_PER_QUERY} IDs per query). IDs of non-existing
+     * entities are ignored.
+     *
+     * @param ids The IDs of the entities
+     * @return The entities
+     */
+    public List<E> findByIds(Collection<ID> ids) throws HibernateException {
+        final List<E> entities = new ArrayList<>();
+        final List<ID> idList = new ArrayList<>(new HashSet<>(ids));
+
+        for (int i = 0; i < idList.size(); i += MAX_IDS_PER_QUERY) {
+            entities.addAll(findByCriteria(Restrictions.in("id",
+                idList.subList(i, Math.min(i + MAX_IDS_PER_QUERY, idList.size())))));
+        }
+
+        return entities;
+    }
+
+    /**
+     * Flushes the session and detaches the passed entities from it.
+     *
+     * @param session
+     * @param batch   The entities to detach, the list will be cleared
+     */
+    private void flushAndEvict(Session session, List<E> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        session.flush();
+        for (E e : batch) {
+            session.evict(e);
+        }
+        batch.clear();
+    }
+
     /**
      * Deletes the passed entity.
      *
@@ -285,23 +454,33 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
      * @return
      * @throws HibernateException
      */
-    @SuppressWarnings("unchecked")
     public List<E> findByCriteriaRestricted(List<String> restrictFieldNames, Criterion... criterion) throws HibernateException {
+        return findByCriteriaRestricted(restrictFieldNames, FetchPlan.DEFAULT, criterion);
+    }
+
+    /**
+     * As {@link #findByCriteriaRestricted(List, Criterion...)}, but the
+     * associations of the (unrestricted) entities are fetched as determined
+     * by the passed fetch plan.
+     *
+     * @param restrictFieldNames
+     * @param fetchPlan          The name of the fetch plan (if null, the
+     *                           {@value FetchPlan#DEFAULT} plan is used)
+     * @param criterion
+     * @return
+     * @throws HibernateException
+     * @throws IllegalArgumentException If there is no such fetch plan
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> findByCriteriaRestricted(List<String> restrictFieldNames, String fetchPlan,
+                                            Criterion... criterion) throws HibernateException {
         logger.trace("Finding instances of " + entityClass.getSimpleName()
             + " based on " + criterion.length + " criteria");
 
-        Criteria criteria = createDistinctRootEntityCriteria(criterion);
+        Criteria criteria = createDistinctRootEntityCriteria(getFetchPlan(fetchPlan), criterion);
 
         if (restrictFieldNames != null) {
-            ProjectionList projectionList = Projections.projectionList();
-            for (String restrictFieldName : restrictFieldNames) {
-                PropertyProjection pp = Projections.property(restrictFieldName);
-                projectionList.add(pp, restrictFieldName);
-            }
-            criteria.setProjection(projectionList);
-            criteria.setResultTransformer(
-                Transformers.aliasToBean(entityClass)
-            );
+            setRestrictedProjection(criteria, restrictFieldNames);
         }
 
         return criteria.list();
@@ -366,46 +545,129 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
         return new PagingResult<E>(criteria.list(), getTotalCount(criterion));
     }
 
+    /**
+     * Gets the results, that match a variable number of passed criterions,
+     * considering the paging- and sort-info at the same time. As for
+     * {@link #findByCriteriaRestricted(List, Criterion...)}, the entities may
+     * be stripped down to the fields in <code>restrictFieldNames</code>.
+     * <p>
+     * The results are additionally sorted by ID to get a stable order. In
+     * contrast to {@link #findByCriteriaWithSortingAndPaging(Integer, Integer, List, Criterion...)}
+     * this pages correctly even if collections are fetched by joins (as the
+     * permissions of all entities): the IDs of the requested page are
+     * queried first and the (full) entities are loaded afterwards.
+     *
+     * @param firstResult        Starting index for the paging request (may be
+     *                           null).
+     * @param maxResults         Max number of result size (may be null).
+     * @param sorters            The sort orders (may be null).
+     * @param restrictFieldNames The field names to restrict to (may be null).
+     * @param criterion          A variable number of hibernate criterions
+     * @return The requested page and the total count of matching entities
+     * @throws HibernateException
+     */
+    public PagingResult<E> findByCriteriaRestrictedWithSortingAndPaging(Integer firstResult, Integer maxResults,
+                                                                        List<Order> sorters, List<String> restrictFieldNames, Criterion... criterion) throws HibernateException {
+        return findByCriteriaRestrictedWithSortingAndPaging(firstResult, maxResults, sorters, restrictFieldNames,
+            FetchPlan.DEFAULT, criterion);
+    }
+
+    /**
+     * As {@link #findByCriteriaRestrictedWithSortingAndPaging(Integer, Integer, List, List, Criterion...)},
+     * but the associations of the (unrestricted) entities are fetched as
+     * determined by the passed fetch plan.
+     *
+     * @param firstResult        Starting index for the paging request (may be
+     *                           null).
+     * @param maxResults         Max number of result size (may be null).
+     * @param sorters            The sort orders (may be null).
+     * @param restrictFieldNames The field names to restrict to (may be null).
+     * @param fetchPlan          The name of the fetch plan (if null, the
+     *                           {@value FetchPlan#DEFAULT} plan is used)
+     * @param criterion          A variable number of hibernate criterions
+     * @return The requested page and the total count of matching entities
+     * @throws HibernateException
+     * @throws IllegalArgumentException If there is no such fetch plan
+     */
+    @SuppressWarnings("unchecked")
+    public PagingResult<E> findByCriteriaRestrictedWithSortingAndPaging(Integer firstResult, Integer maxResults,
+                                                                        List<Order> sorters, List<String> restrictFieldNames, String fetchPlan, Criterion... criterion) throws HibernateException {
+
+        final FetchPlan plan = getFetchPlan(fetchPlan);
+
+        logger.trace("Finding a page of instances of " + entityClass.getSimpleName()
+            + " based on " + criterion.length + " criteria");
+
+        final boolean isPaged = firstResult != null || maxResults != null;
+
+        final List<Order> orders = new ArrayList<>();
+        boolean isSortedById = false;
+        if (sorters != null) {
+            for (Order sorter : sorters) {
+                orders.add(sorter);
+                isSortedById |= "id".equals(sorter.getPropertyName());
+            }
+        }
+        if (!isSortedById) {
+            orders.add(Order.asc("id"));
+        }
+
+        final List<E> resultList;
+
+        if (restrictFieldNames != null || !isPaged) {
+            // no (collection) fetching involved, we can page in SQL directly
+            Criteria criteria = createDistinctRootEntityCriteria(plan, criterion);
+            if (restrictFieldNames != null) {
+                setRestrictedProjection(criteria, restrictFieldNames);
+            }
+            addPagingAndOrdersToCriteria(criteria, firstResult, maxResults, orders);
+            resultList = criteria.list();
+        } else {
+            Criteria idCriteria = getSession().createCriteria(entityClass);
+            addCriterionsToCriteria(idCriteria, criterion);
+            idCriteria.setProjection(Projections.id());
+            idCriteria.setCacheable(this.useQueryCache);
+            addPagingAndOrdersToCriteria(idCriteria, firstResult, maxResults, orders);
+
+            final List<Serializable> ids = idCriteria.list();
+            resultList = new ArrayList<>(ids.size());
+
+            if (!ids.isEmpty()) {
+                final Map<Serializable, E> entitiesById = new HashMap<>();
+                for (E entity : (List<E>) createDistinctRootEntityCriteria(plan, Restrictions.in("id", ids)).list()) {
+                    entitiesById.put(entity.getId(), entity);
+                }
+                // restore the order of the page
+                for (Serializable id : ids) {
+                    E entity = entitiesById.get(id);
+                    if (entity != null) {
+                        resultList.add(entity);
+                    }
+                }
+            }
+        }
+
+        final Number totalCount = isPaged ? getTotalCount(criterion) : resultList.size();
+
+        return new PagingResult<E>(resultList, totalCount);
+    }
+
     /**
      * This method returns a {@link Map} that maps {@link PersistentObject}s
      * to PermissionCollections for the passed {@link User}. I.e. the keySet
      * of the map is the collection of all {@link PersistentObject}s where the
      * user has at least one permission and the corresponding value contains
      * the {@link PermissionCollection} for the passed user on the entity.
+     * <p>
+     * The permissions are queried by joining the permission map of each
+     * (root) entity class, i.e. only those entities (and collections) are
+     * loaded, where the user has a permission.
      *
      * @param user
      * @return
      */
-    @SuppressWarnings({"unchecked"})
     public Map<PersistentObject, PermissionCollection> findAllUserPermissionsOfUser(User user) {
-
-        Criteria criteria = getSession().createCriteria(PersistentObject.class);
-
-        // by only setting the alias, we will only get those entities where
-        // there is at least one permission set...
-        // it is hard (or even impossible in this scenario) to create a
-        // restriction that filters for permissions of the given user only.
-        // using HQL here is no option as the PersistentObject is
-        // a MappedSuperclass (without table).
-        // another efficient way would be a SQL query, but then the SQL
-        // would be written in an explicit SQL dialect...
-        criteria.createAlias("userPermissions", "up");
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
-
-        List<PersistentObject> entitiesWithPermissions = criteria.list();
-
-        Map<PersistentObject, PermissionCollection> userPermissions = new HashMap<PersistentObject, PermissionCollection>();
-
-        // TODO find a better way than iterating over all entities of the system
-        // that have at least one permission (for any user) (see comment above)
-        for (PersistentObject entity : entitiesWithPermissions) {
-            Map<User, PermissionCollection> entityUserPermissions = entity.getUserPermissions();
-            if (entityUserPermissions.containsKey(user)) {
-                userPermissions.put(entity, entityUserPermissions.get(user));
-            }
-        }
-
-        return userPermissions;
+        return findAllPermissionsOfOwner("userPermissions", user);
     }
 
     /**
@@ -414,40 +676,360 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
      * of the map is the collection of all {@link PersistentObject}s where the
      * user group has at least one permission and the corresponding value contains
      * the {@link PermissionCollection} for the passed user group on the entity.
+     * <p>
+     * The permissions are queried as in {@link #findAllUserPermissionsOfUser(User)}.
      *
      * @param userGroup
      * @return
      */
-    @SuppressWarnings({"unchecked"})
     public Map<PersistentObject, PermissionCollection> findAllUserGroupPermissionsOfUserGroup(UserGroup userGroup) {
+        return findAllPermissionsOfOwner("groupPermissions", userGroup);
+    }
 
-        Criteria criteria = getSession().createCriteria(PersistentObject.class);
-
-        // by only setting the alias, we will only get those entities where
-        // there is at least one permission set...
-        // it is hard (or even impossible in this scenario) to create a
-        // restriction that filters for permissions of the given user group only.
-        // using HQL here is no option as the PersistentObject is
-        // a MappedSuperclass (without table).
-        // another efficient way would be a SQL query, but then the SQL
-        // would be written in an explicit SQL dialect...
-        criteria.createAlias("groupPermissions", "gp");
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+    /**
+     * Helper method: Queries the entities and the permission collections of
+     * the passed owner (user or user group) with one query per root entity
+     * class (as the {@link PersistentObject} is a MappedSuperclass and can't
+     * be queried by HQL). The queries on the root classes include the
+     * entities of all subclasses.
+     *
+     * @param permissionsField The name of the permission map
+     * @param owner            The user or user group
+     * @return The permission collections of the owner by entity
+     */
+    private Map<PersistentObject, PermissionCollection> findAllPermissionsOfOwner(String permissionsField,
+                                                                                PersistentObject owner) {
+        final Map<PersistentObject, PermissionCollection> permissions = new HashMap<>();
+
+        // transient owners can't have any permissions
+        if (owner == null || owner.getId() == null) {
+            return permissions;
+        }
+
+        for (Class<?> rootEntityClass : getRootEntityClasses()) {
+            final List<Object[]> rows = getSession().createQuery("select e, p from " + rootEntityClass.getName()
+                + " e join e." + permissionsField + " p where key(p) = :owner", Object[].class)
+                .setParameter("owner", owner)
+                .list();
+
+            for (Object[] row : rows) {
+                permissions.put((PersistentObject) row[0], (PermissionCollection) row[1]);
+            }
+        }
+
+        return permissions;
+    }
+
+    /**
+     * @return The mapped {@link PersistentObject} classes, that don't extend
+     * another mapped entity class
+     */
+    private List<Class<?>> getRootEntityClasses() {
+        final List<Class<?>> rootEntityClasses = new ArrayList<>();
+
+        for (EntityType<?> entityType : getMetamodel().getEntities()) {
+            final Class<?> javaType = entityType.getJavaType();
+            if (javaType == null || !PersistentObject.class.isAssignableFrom(javaType)) {
+                continue;
+            }
+
+            boolean isRoot = true;
+            for (IdentifiableType<?> supertype = entityType.getSupertype(); supertype != null;
+                 supertype = supertype.getSupertype()) {
+                if (supertype instanceof EntityType) {
+                    isRoot = false;
+                    break;
+                }
+            }
+
+            if (isRoot) {
+                rootEntityClasses.add(javaType);
+            }
+        }
+
+        return rootEntityClasses;
+    }
+
+    /**
+     * Creates a criterion that restricts queries on the {@link #entityClass}
+     * to those entities, where the passed user has the passed permission (or
+     * the ADMIN permission), either by its own user permissions or by the
+     * group permissions of a group the user is member of. This is the
+     * database side equivalent of the default
+     * {@link de.terrestris.shoguncore.security.access.entity.PersistentObjectPermissionEvaluator}
+     * and allows to filter in SQL instead of loading (and checking) all
+     * entities.
+     * <p>
+     * The tables and columns of the permission mappings are taken from the
+     * Hibernate metamodel, i.e. the configured naming strategies (and table
+     * prefixes) are respected.
+     *
+     * @param user       The user (if null, no entity will match)
+     * @param permission The requested permission
+     * @return The criterion or null if the {@link #entityClass} is not a mapped
+     * entity (e.g. the {@link PersistentObject} itself)
+     */
+    public Criterion createPermissionCriterion(User user, Permission permission) {
+        final AbstractEntityPersister persister = getEntityPersister(entityClass);
+
+        if (persister == null) {
+            logger.debug("Can not create a permission criterion for " + entityClass.getSimpleName()
+                + " as it is no mapped entity");
+            return null;
+        }
+
+        if (user == null || user.getId() == null) {
+            return Restrictions.sqlRestriction("1=0");
+        }
+
+        final QueryableCollection userPermissions = getCollectionPersister(persister, "userPermissions");
+        final QueryableCollection groupPermissions = getCollectionPersister(persister, "groupPermissions");
+        final QueryableCollection permissions = getCollectionPersister(
+            getEntityPersister(PermissionCollection.class), "permissions");
+        final QueryableCollection members = getCollectionPersister(
+            getEntityPersister(UserGroup.class), "members");
+
+        final String idColumn = "{alias}." + persister.getIdentifierColumnNames()[0];
+        final String permissionsJoin = " inner join " + permissions.getTableName() + " pc_ on pc_."
+            + permissions.getKeyColumnNames()[0] + " = ";
+        final String permissionsRestriction = " and pc_." + permissions.getElementColumnNames()[0] + " in (?, ?)";
+
+        final String sql = "(" + idColumn + " in ("
+            + "select up_." + userPermissions.getKeyColumnNames()[0]
+            + " from " + userPermissions.getTableName() + " up_"
+            + permissionsJoin + "up_." + userPermissions.getElementColumnNames()[0]
+            + " where up_." + userPermissions.getIndexColumnNames()[0] + " = ?"
+            + permissionsRestriction + ")"
+            + " or " + idColumn + " in ("
+            + "select gp_." + groupPermissions.getKeyColumnNames()[0]
+            + " from " + groupPermissions.getTableName() + " gp_"
+            + permissionsJoin + "gp_." + groupPermissions.getElementColumnNames()[0]
+            + " inner join " + members.getTableName() + " ug_ on ug_." + members.getKeyColumnNames()[0]
+            + " = gp_." + groupPermissions.getIndexColumnNames()[0]
+            + " where ug_." + members.getElementColumnNames()[0] + " = ?"
+            + permissionsRestriction + "))";
+
+        final Object[] values = {
+            user.getId(), permission.name(), Permission.ADMIN.name(),
+            user.getId(), permission.name(), Permission.ADMIN.name()
+        };
+        final Type[] types = {
+            StandardBasicTypes.INTEGER, StandardBasicTypes.STRING, StandardBasicTypes.STRING,
+            StandardBasicTypes.INTEGER, StandardBasicTypes.STRING, StandardBasicTypes.STRING
+        };
+
+        return Restrictions.sqlRestriction(sql, values, types);
+    }
+
+    /**
+     * Returns those of the passed IDs, whose entities match all passed
+     * criterions. This can e.g. be used to evaluate the
+     * {@link #createPermissionCriterion(User, Permission)} for a list of
+     * (already loaded) entities without loading them again.
+     *
+     * @param ids       The IDs of the entities to check
+     * @param criterion A variable number of hibernate criterions
+     * @return The matching IDs
+     */
+    @SuppressWarnings("unchecked")
+    public Set<ID> findIdsByCriteria(Collection<ID> ids, Criterion... criterion) throws HibernateException {
+        final Set<ID> matchingIds = new HashSet<>();
+        final List<ID> idList = new ArrayList<>(ids);
+
+        for (int i = 0; i < idList.size(); i += MAX_IDS_PER_QUERY) {
+            Criteria criteria = getSession().createCriteria(entityClass);
+            criteria.add(Restrictions.in("id", idList.subList(i, Math.min(i + MAX_IDS_PER_QUERY, idList.size()))));
+            addCriterionsToCriteria(criteria, criterion);
+            criteria.setProjection(Projections.id());
+            matchingIds.addAll(criteria.list());
+        }
+
+        return matchingIds;
+    }
+
+    /**
+     * Creates a criterion that restricts queries on the {@link #entityClass}
+     * to those entities that have a collection named <code>fieldName</code>,
+     * which contains the entity with the passed ID.
+     *
+     * @param fieldName The name of the collection field
+     * @param id        The ID of the element that should be contained in the
+     *                  collection
+     * @return The criterion
+     */
+    public Criterion createCollectionContainsCriterion(String fieldName, Integer id) {
+        DetachedCriteria subquery = DetachedCriteria.forClass(entityClass)
+            .createAlias(fieldName, "sub")
+            .add(Restrictions.eq("sub.id", id))
+            .setProjection(Projections.id());
 
-        List<PersistentObject> entitiesWithPermissions = criteria.list();
+        return Subqueries.propertyIn("id", subquery);
+    }
 
-        Map<PersistentObject, PermissionCollection> userGroupPermissions = new HashMap<PersistentObject, PermissionCollection>();
+    /**
+     * Returns all mapped entity classes that are results of queries on the
+     * {@link #entityClass}, i.e. the {@link #entityClass} itself (if it is
+     * mapped) and all of its mapped subclasses.
+     *
+     * @return The mapped entity classes
+     */
+    @SuppressWarnings("unchecked")
+    public List<Class<? extends E>> getMappedEntityClasses() {
+        List<Class<? extends E>> mappedEntityClasses = new ArrayList<>();
 
-        // TODO find a better way than iterating over all entities of the system
-        // that have at least one permission (for any user) (see comment above)
-        for (PersistentObject entity : entitiesWithPermissions) {
-            Map<UserGroup, PermissionCollection> entityUserGroupPermissions = entity.getGroupPermissions();
-            if (entityUserGroupPermissions.containsKey(userGroup)) {
-                userGroupPermissions.put(entity, entityUserGroupPermissions.get(userGroup));
+        for (EntityType<?> entityType : getMetamodel().getEntities()) {
+            Class<?> javaType = entityType.getJavaType();
+            if (javaType != null && entityClass.isAssignableFrom(javaType)) {
+                mappedEntityClasses.add((Class<? extends E>) javaType);
             }
         }
 
-        return userGroupPermissions;
+        return mappedEntityClasses;
+    }
+
+    /**
+     * Returns the identifiers of the passed entity and of all entities that
+     * are reachable from it via associations that have already been loaded,
+     * e.g. all entities that have been serialized along with the passed
+     * entity. Uninitialized proxies and collections are not loaded (but the
+     * identifiers of uninitialized proxies are included) and properties that
+     * are ignored by Jackson ({@link JsonIgnore}) are not followed.
+     *
+     * @param entity The (persisted) entity to start at
+     * @return The identifiers of the reachable entities (including the
+     * passed entity)
+     */
+    public Set<EntityIdentifier> findLoadedEntityGraph(Object entity) {
+        final SharedSessionContractImplementor session = (SharedSessionContractImplementor) getSession();
+        final Set<EntityIdentifier> identifiers = new HashSet<>();
+        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Object> queue = new ArrayDeque<>();
+
+        if (entity != null) {
+            queue.add(entity);
+        }
+
+        while (!queue.isEmpty()) {
+            Object current = queue.poll();
+
+            if (current instanceof HibernateProxy) {
+                LazyInitializer initializer = ((HibernateProxy) current).getHibernateLazyInitializer();
+                identifiers.add(new EntityIdentifier(getMetamodel().entityPersister(initializer.getEntityName())
+                    .getRootEntityName(), initializer.getIdentifier()));
+                if (initializer.isUninitialized()) {
+                    continue;
+                }
+                current = initializer.getImplementation();
+            }
+
+            if (!visited.add(current)) {
+                continue;
+            }
+
+            final AbstractEntityPersister persister = getEntityPersister(current.getClass());
+            if (persister == null) {
+                continue;
+            }
+
+            identifiers.add(new EntityIdentifier(persister.getRootEntityName(),
+                persister.getIdentifier(current, session)));
+
+            final String[] propertyNames = persister.getPropertyNames();
+            final Type[] propertyTypes = persister.getPropertyTypes();
+
+            for (int i = 0; i < propertyTypes.length; i++) {
+                if (!(propertyTypes[i].isEntityType() || propertyTypes[i].isCollectionType())
+                    || isIgnoredByJackson(persister.getMappedClass(), propertyNames[i])) {
+                    continue;
+                }
+
+                final Object value = persister.getPropertyValue(current, i);
+
+                if (value == null) {
+                    continue;
+                }
+                if (propertyTypes[i].isEntityType()) {
+                    queue.add(value);
+                    continue;
+                }
+                if (!Hibernate.isInitialized(value)) {
+                    continue;
+                }
+
+                final QueryableCollection collectionPersister = (QueryableCollection) getMetamodel()
+                    .collectionPersister(((CollectionType) propertyTypes[i]).getRole());
+                final boolean entityElements = collectionPersister.getElementType().isEntityType();
+                final boolean entityIndices = collectionPersister.hasIndex()
+                    && collectionPersister.getIndexType().isEntityType();
+
+                if (value instanceof Map) {
+                    if (entityIndices) {
+                        queue.addAll(((Map<?, ?>) value).keySet());
+                    }
+                    if (entityElements) {
+                        queue.addAll(((Map<?, ?>) value).values());
+                    }
+                } else if (value instanceof Collection && entityElements) {
+                    for (Object element : (Collection<?>) value) {
+                        if (element != null) {
+                            queue.add(element);
+                        }
+                    }
+                }
+            }
+        }
+
+        return identifiers;
+    }
+
+    /**
+     * @param mappedClass
+     * @param propertyName
+     * @return Whether the field of the passed property is annotated with
+     * {@link JsonIgnore}
+     */
+    private static boolean isIgnoredByJackson(Class<?> mappedClass, String propertyName) {
+        return IGNORED_PROPERTIES.computeIfAbsent(mappedClass.getName() + "." + propertyName, key -> {
+            for (Class<?> clazz = mappedClass; clazz != null; clazz = clazz.getSuperclass()) {
+                try {
+                    JsonIgnore jsonIgnore = clazz.getDeclaredField(propertyName).getAnnotation(JsonIgnore.class);
+                    return jsonIgnore != null && jsonIgnore.value();
+                } catch (NoSuchFieldException e) {
+                    // continue with the superclass
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @return The Hibernate metamodel
+     */
+    private MetamodelImplementor getMetamodel() {
+        return ((SessionFactoryImplementor) sessionFactory).getMetamodel();
+    }
+
+    /**
+     * @param clazz
+     * @return The persister of the passed class or null if the class is not a
+     * mapped entity
+     */
+    protected AbstractEntityPersister getEntityPersister(Class<?> clazz) {
+        try {
+            return (AbstractEntityPersister) getMetamodel().entityPersister(clazz);
+        } catch (MappingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param persister
+     * @param propertyName
+     * @return The persister of the collection property
+     */
+    protected QueryableCollection getCollectionPersister(AbstractEntityPersister persister, String propertyName) {
+        CollectionType collectionType = (CollectionType) persister.getPropertyType(propertyName);
+        return (QueryableCollection) getMetamodel().collectionPersister(collectionType.getRole());
     }
 
     /**
@@ -466,6 +1048,120 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
         return criteria;
     }
 
+    /**
+     * Helper method: As {@link #createDistinctRootEntityCriteria(Criterion...)},
+     * but the associations are fetched as determined by the passed fetch plan.
+     *
+     * @param fetchPlan
+     * @param criterion
+     * @return
+     */
+    protected Criteria createDistinctRootEntityCriteria(FetchPlan fetchPlan, Criterion... criterion) {
+        Criteria criteria = createDistinctRootEntityCriteria(criterion);
+        applyFetchPlan(criteria, fetchPlan);
+        return criteria;
+    }
+
+    /**
+     * Helper method: Overrides the fetch modes of the criteria as determined
+     * by the passed fetch plan. If the plan doesn't join collections, all
+     * collections of the {@link #entityClass} (and its subclasses) are
+     * loaded by selects, which are batched if a batch fetch size is
+     * configured (<code>hibernate.default_batch_fetch_size</code>).
+     *
+     * @param criteria
+     * @param fetchPlan
+     */
+    protected void applyFetchPlan(Criteria criteria, FetchPlan fetchPlan) {
+        if (fetchPlan == null || fetchPlan.isMappingDefault()) {
+            return;
+        }
+
+        if (!fetchPlan.isJoinCollections()) {
+            final AbstractEntityPersister persister = getEntityPersister(entityClass);
+            if (persister != null) {
+                for (int i = 0; i < persister.countSubclassProperties(); i++) {
+                    if (persister.getSubclassPropertyType(i).isCollectionType()) {
+                        criteria.setFetchMode(persister.getSubclassPropertyName(i), FetchMode.SELECT);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, FetchMode> fetchMode : fetchPlan.getFetchModes().entrySet()) {
+            criteria.setFetchMode(fetchMode.getKey(), fetchMode.getValue());
+        }
+    }
+
+    /**
+     * Returns the fetch plan with the passed name. The plans
+     * {@value FetchPlan#DEFAULT} and {@value FetchPlan#LIST} are available
+     * for all entities, further plans may be registered by subclasses (see
+     * {@link #addFetchPlan(FetchPlan)}).
+     *
+     * @param name The name of the plan (if null, the
+     *             {@value FetchPlan#DEFAULT} plan is returned)
+     * @return The fetch plan
+     * @throws IllegalArgumentException If there is no such fetch plan
+     */
+    public FetchPlan getFetchPlan(String name) {
+        final FetchPlan fetchPlan = fetchPlans.get(name == null ? FetchPlan.DEFAULT : name);
+        if (fetchPlan == null) {
+            throw new IllegalArgumentException(String.format("There is no fetch plan '%s' for %s, available"
+                + " plans are %s", name, entityClass.getSimpleName(), fetchPlans.keySet()));
+        }
+        return fetchPlan;
+    }
+
+    /**
+     * Registers (or replaces) a fetch plan.
+     *
+     * @param fetchPlan The fetch plan
+     */
+    protected void addFetchPlan(FetchPlan fetchPlan) {
+        fetchPlans.put(fetchPlan.getName(), fetchPlan);
+    }
+
+    /**
+     * Helper method: Strips the results of the criteria down to the passed
+     * field names.
+     *
+     * @param criteria
+     * @param restrictFieldNames
+     */
+    private void setRestrictedProjection(Criteria criteria, List<String> restrictFieldNames) {
+        ProjectionList projectionList = Projections.projectionList();
+        for (String restrictFieldName : restrictFieldNames) {
+            PropertyProjection pp = Projections.property(restrictFieldName);
+            projectionList.add(pp, restrictFieldName);
+        }
+        criteria.setProjection(projectionList);
+        criteria.setResultTransformer(
+            Transformers.aliasToBean(entityClass)
+        );
+    }
+
+    /**
+     * Helper method: Adds the paging info and the orders to the criteria.
+     *
+     * @param criteria
+     * @param firstResult
+     * @param maxResults
+     * @param orders
+     */
+    private void addPagingAndOrdersToCriteria(Criteria criteria, Integer firstResult, Integer maxResults,
+                                              List<Order> orders) {
+        if (maxResults != null) {
+            criteria.setMaxResults(maxResults);
+        }
+        if (firstResult != null) {
+            criteria.setFirstResult(firstResult);
+        }
+        for (Order order : orders) {
+            criteria.addOrder(order);
+        }
+    }
+
     /**
      * Returns the total count of db entries for the current type.
      *
@@ -495,6 +1191,20 @@ public class GenericHibernateDao<E extends PersistentObject, ID extends Serializ
         }
     }
 
+    /**
+     * @return the number of entities that are written in a single JDBC batch
+     */
+    public int getBatchSize() {
+        return batchSize == null || batchSize < 1 ? DEFAULT_BATCH_SIZE : batchSize;
+    }
+
+    /**
+     * @param batchSize the batchSize to set
+     */
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
     /**
      * @return the entityClass
      */
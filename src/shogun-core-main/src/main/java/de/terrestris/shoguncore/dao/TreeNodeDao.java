@@ -1,12 +1,48 @@
 package de.terrestris.shoguncore.dao;
 
+import de.terrestris.shoguncore.model.security.PermissionCollection;
+import de.terrestris.shoguncore.model.tree.TreeFolder;
 import de.terrestris.shoguncore.model.tree.TreeNode;
+import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.dialect.MySQL8Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
 import org.springframework.stereotype.Repository;
 
+import java.util.*;
+
 @Repository("treeNodeDao")
 public class TreeNodeDao<E extends TreeNode> extends
     GenericHibernateDao<E, Integer> {
 
+    /**
+     * The maximum depth of a subtree, i.e. protects against cyclic parent
+     * references
+     */
+    public static final int MAX_SUBTREE_DEPTH = 1000;
+
+    /**
+     * The properties whose values aren't copied by
+     * {@link #copySubtree(Integer)}
+     */
+    private static final Set<String> UNCOPIED_PROPERTIES = new HashSet<>(Arrays.asList("created", "modified"));
+
+    /**
+     * Whether the structure of a subtree is determined with a single
+     * recursive query, null to determine it by the hibernate dialect (see
+     * {@link #isRecursiveQuerySupported()})
+     */
+    private Boolean recursiveQuerySupported = null;
+
     /**
      * Public default constructor for this DAO.
      */
@@ -24,4 +60,434 @@ public class TreeNodeDao<E extends TreeNode> extends
         super(clazz);
     }
 
+    /**
+     * Loads the (depth-limited) subtree of the node with the passed ID. The
+     * structure of the subtree is determined with a single recursive query
+     * (or level by level if the database doesn't support recursive queries,
+     * see {@link #isRecursiveQuerySupported()}), the nodes are loaded with a single query (per
+     * {@link #MAX_IDS_PER_QUERY} nodes) and the children of the folders are
+     * assembled in memory, i.e. no further query is needed to walk through
+     * the subtree.
+     * <p>
+     * The nodes of the subtree are detached from the session (their children
+     * lists are plain lists that are never persisted). The children of the
+     * folders at the maximum depth are not loaded and set to null.
+     *
+     * @param id       The ID of the root node of the subtree
+     * @param maxDepth The maximum depth of the subtree (0 for the root node
+     *                 only), null for the whole subtree
+     * @return The root node of the subtree or null if it doesn't exist (or
+     * isn't an instance of the entity class of this DAO)
+     */
+    @SuppressWarnings("unchecked")
+    public E findSubtree(Integer id, Integer maxDepth) throws HibernateException {
+        if (id == null) {
+            return null;
+        }
+
+        final int depthLimit = maxDepth == null ? MAX_SUBTREE_DEPTH : Math.min(Math.max(maxDepth, 0), MAX_SUBTREE_DEPTH);
+        final List<Object[]> structure = findSubtreeStructure(id, depthLimit);
+
+        if (structure.isEmpty()) {
+            return null;
+        }
+
+        final Map<Integer, TreeNode> nodesById = findSubtreeNodes(structure);
+
+        // detach the nodes before their children lists are replaced
+        for (TreeNode node : nodesById.values()) {
+            getSession().evict(node);
+        }
+
+        linkSubtree(id, structure, nodesById, depthLimit);
+
+        final TreeNode root = nodesById.get(id);
+        if (!getEntityClass().isInstance(root)) {
+            return null;
+        }
+
+        logger.trace("Loaded the subtree of " + getEntityClass().getSimpleName() + " with ID " + id
+            + " (" + nodesById.size() + " nodes)");
+
+        return (E) root;
+    }
+
+    /**
+     * Persists a copy of the (whole) subtree of the node with the passed ID.
+     * The copy of the root node is placed in the same folder as the root
+     * node, the copies of the other nodes are placed in the copies of their
+     * folders.
+     * <p>
+     * The subtree is loaded like in {@link #findSubtree(Integer, Integer)}
+     * and the copies are inserted with JDBC batches (see
+     * {@link #saveAll(Collection)}), i.e. the number of queries doesn't
+     * depend on the depth of the tree. The copies are new instances, the
+     * loaded nodes aren't modified. The collections owned by the nodes are
+     * copied and the copies share the referenced entities with the original
+     * nodes, except for the {@link PermissionCollection}s, which are copied
+     * (and saved) as well.
+     *
+     * @param id The ID of the root node of the subtree
+     * @return The (detached) copies of the nodes, parents before their
+     * children, i.e. the copy of the root node comes first. The list is empty
+     * if the node doesn't exist.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<TreeNode> copySubtree(Integer id) throws HibernateException {
+
+        final List<TreeNode> copies = new ArrayList<>();
+
+        if (id == null) {
+            return copies;
+        }
+
+        final List<Object[]> structure = findSubtreeStructure(id, MAX_SUBTREE_DEPTH);
+
+        if (structure.isEmpty()) {
+            return copies;
+        }
+
+        final Map<Integer, TreeNode> nodesById = findSubtreeNodes(structure);
+
+        final Map<Integer, List<TreeNode>> childrenById = new HashMap<>();
+        for (Object[] row : structure) {
+            if (row[1] != null && ((Number) row[0]).intValue() != id) {
+                childrenById.computeIfAbsent(((Number) row[1]).intValue(), parentId -> new ArrayList<>())
+                    .add(nodesById.get(((Number) row[0]).intValue()));
+            }
+        }
+
+        final TreeNode root = nodesById.get(id);
+        final Map<TreeNode, TreeFolder> parentCopies = new IdentityHashMap<>();
+        parentCopies.put(root, root.getParentFolder());
+
+        // walk through the subtree iteratively (breadth-first), i.e. the
+        // folders are copied before their children
+        final Deque<TreeNode> queue = new ArrayDeque<>();
+        queue.add(root);
+
+        while (!queue.isEmpty()) {
+            final TreeNode node = queue.poll();
+            final TreeNode copy = copyNode(node, parentCopies.get(node));
+            copies.add(copy);
+
+            final List<TreeNode> children = childrenById.get(node.getId());
+            if (copy instanceof TreeFolder && children != null) {
+                children.sort(Comparator.comparingInt(TreeNode::getIndex));
+                for (TreeNode child : children) {
+                    parentCopies.put(child, (TreeFolder) copy);
+                    queue.add(child);
+                }
+            }
+        }
+
+        saveAll((Collection) copies);
+
+        logger.trace("Copied the subtree of the node with ID " + id + " (" + copies.size() + " nodes)");
+
+        return copies;
+    }
+
+    /**
+     * Creates a (transient) copy of the passed node, which is added to the
+     * children of the passed folder. The collections owned by the node are
+     * copied (the {@link PermissionCollection}s are copied and saved), the
+     * collections that aren't owned by the node are empty. The dates of the
+     * creation and modification of the copy are the current ones.
+     *
+     * @param node   The node to copy
+     * @param parent The folder of the copy
+     * @return The copy
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private TreeNode copyNode(TreeNode node, TreeFolder parent) {
+        final AbstractEntityPersister persister = getEntityPersister(Hibernate.getClass(node));
+        final String[] propertyNames = persister.getPropertyNames();
+        final Type[] propertyTypes = persister.getPropertyTypes();
+        final Object[] values = persister.getPropertyValues(node);
+
+        final TreeNode copy = (TreeNode) persister.instantiate(null, (SessionImplementor) getSession());
+        final Object[] copyValues = persister.getPropertyValues(copy);
+
+        for (int i = 0; i < propertyTypes.length; i++) {
+            if (UNCOPIED_PROPERTIES.contains(propertyNames[i])) {
+                continue;
+            }
+
+            if (!propertyTypes[i].isCollectionType() || values[i] == null) {
+                copyValues[i] = values[i];
+                continue;
+            }
+
+            final boolean owned = !getCollectionPersister(persister, propertyNames[i]).isInverse();
+
+            if (values[i] instanceof Map) {
+                final Map copiedMap = new HashMap();
+                if (owned) {
+                    for (Map.Entry entry : ((Map<?, ?>) values[i]).entrySet()) {
+                        copiedMap.put(entry.getKey(), copyPermissionCollection(entry.getValue()));
+                    }
+                }
+                copyValues[i] = copiedMap;
+            } else if (values[i] instanceof SortedSet) {
+                SortedSet copiedSet = new TreeSet(((SortedSet) values[i]).comparator());
+                if (owned) {
+                    copiedSet.addAll((SortedSet) values[i]);
+                }
+                copyValues[i] = copiedSet;
+            } else if (values[i] instanceof Set) {
+                copyValues[i] = owned ? new LinkedHashSet((Set) values[i]) : new LinkedHashSet();
+            } else if (values[i] instanceof Collection) {
+                copyValues[i] = owned ? new ArrayList((Collection) values[i]) : new ArrayList();
+            }
+        }
+
+        persister.setPropertyValues(copy, copyValues);
+        copy.setParentFolder(parent);
+
+        if (parent != null && parent.getId() == null) {
+            parent.getChildren().add(copy);
+        }
+
+        return copy;
+    }
+
+    /**
+     * @param value A value of a map owned by a node
+     * @return A saved copy of the value if it is a {@link PermissionCollection},
+     * the value itself otherwise
+     */
+    private Object copyPermissionCollection(Object value) {
+        if (!(value instanceof PermissionCollection)) {
+            return value;
+        }
+        final PermissionCollection copy = new PermissionCollection(
+            new HashSet<>(((PermissionCollection) value).getPermissions()));
+        getSession().save(copy);
+        return copy;
+    }
+
+    /**
+     * Loads the nodes of the passed subtree structure (with a single query
+     * per {@link #MAX_IDS_PER_QUERY} nodes).
+     *
+     * @param structure
+     * @return The nodes by their ID
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Integer, TreeNode> findSubtreeNodes(List<Object[]> structure) {
+        final List<Integer> ids = new ArrayList<>();
+        for (Object[] row : structure) {
+            ids.add(((Number) row[0]).intValue());
+        }
+
+        final Map<Integer, TreeNode> nodesById = new HashMap<>();
+
+        for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+            // a criteria query joins the eagerly fetched associations (e.g.
+            // the permissions) instead of loading them per node
+            List<TreeNode> nodes = getSession().createCriteria(TreeNode.class)
+                .add(Restrictions.in("id", ids.subList(i, Math.min(i + MAX_IDS_PER_QUERY, ids.size()))))
+                .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY)
+                .list();
+            for (TreeNode node : nodes) {
+                nodesById.put(node.getId(), (TreeNode) Hibernate.unproxy(node));
+            }
+        }
+
+        return nodesById;
+    }
+
+    /**
+     * Replaces the children of the (detached) folders of the subtree with
+     * plain lists of the loaded children (ordered by their index). The
+     * children of the folders at the passed depth limit are set to null.
+     *
+     * @param id         The ID of the root node of the subtree
+     * @param structure
+     * @param nodesById
+     * @param depthLimit
+     */
+    private void linkSubtree(Integer id, List<Object[]> structure, Map<Integer, TreeNode> nodesById,
+                             int depthLimit) {
+        for (Object[] row : structure) {
+            TreeNode node = nodesById.get(((Number) row[0]).intValue());
+            if (node instanceof TreeFolder) {
+                boolean childrenLoaded = ((Number) row[2]).intValue() < depthLimit;
+                ((TreeFolder) node).setChildren(childrenLoaded ? new ArrayList<>() : null);
+            }
+        }
+
+        for (Object[] row : structure) {
+            TreeNode node = nodesById.get(((Number) row[0]).intValue());
+            if (node == null || row[1] == null || ((Number) row[0]).intValue() == id) {
+                continue;
+            }
+            TreeNode parent = nodesById.get(((Number) row[1]).intValue());
+            if (parent instanceof TreeFolder && ((TreeFolder) parent).getChildren() != null) {
+                ((TreeFolder) parent).getChildren().add(node);
+                node.setParentFolder((TreeFolder) parent);
+            }
+        }
+
+        for (TreeNode node : nodesById.values()) {
+            if (node instanceof TreeFolder && ((TreeFolder) node).getChildren() != null) {
+                ((TreeFolder) node).getChildren().sort(Comparator.comparingInt(TreeNode::getIndex));
+            }
+        }
+    }
+
+    /**
+     * Determines the structure of the subtree of the node with the passed ID,
+     * i.e. with a single recursive query if the database supports recursive
+     * common table expressions (see {@link #isRecursiveQuerySupported()}) or
+     * with a query per level of the subtree (and per
+     * {@link #MAX_IDS_PER_QUERY} folders) otherwise.
+     * <p>
+     * Nodes that are reachable more than once (i.e. due to cyclic parent
+     * references) are only returned with their lowest depth.
+     *
+     * @param id
+     * @param maxDepth
+     * @return The ID, the ID of the parent folder and the depth of each node of
+     * the subtree
+     */
+    private List<Object[]> findSubtreeStructure(Integer id, int maxDepth) {
+        final List<Object[]> rows = isRecursiveQuerySupported()
+            ? findSubtreeStructureRecursively(id, maxDepth)
+            : findSubtreeStructureByLevel(id, maxDepth);
+
+        final Map<Integer, Object[]> rowsById = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            final Integer nodeId = ((Number) row[0]).intValue();
+            final Object[] other = rowsById.get(nodeId);
+            if (other == null || ((Number) row[2]).intValue() < ((Number) other[2]).intValue()) {
+                rowsById.put(nodeId, row);
+            }
+        }
+
+        return new ArrayList<>(rowsById.values());
+    }
+
+    /**
+     * Determines the structure of the subtree with a single recursive
+     * (native) query.
+     *
+     * @param id
+     * @param maxDepth
+     * @return The ID, the ID of the parent folder and the depth of each node of
+     * the subtree
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> findSubtreeStructureRecursively(Integer id, int maxDepth) {
+        final AbstractEntityPersister persister = getEntityPersister(TreeNode.class);
+        final String table = persister.getTableName();
+        final String idColumn = persister.getIdentifierColumnNames()[0];
+        final String parentColumn = persister.getPropertyColumnNames("parentFolder")[0];
+
+        // the integer values are inlined as some databases don't support
+        // parameters in recursive queries
+        final String sql = "with recursive subtree_ (id_, parent_id_, depth_) as ("
+            + "select n_." + idColumn + ", n_." + parentColumn + ", 0 from " + table + " n_"
+            + " where n_." + idColumn + " = " + id.intValue()
+            + " union all "
+            + "select n_." + idColumn + ", n_." + parentColumn + ", s_.depth_ + 1 from " + table + " n_"
+            + " inner join subtree_ s_ on n_." + parentColumn + " = s_.id_"
+            + " where s_.depth_ < " + maxDepth
+            + ") select id_, parent_id_, depth_ from subtree_";
+
+        return getSession().createNativeQuery(sql).list();
+    }
+
+    /**
+     * Determines the structure of the subtree level by level, i.e. with a
+     * (HQL) query per level and per {@link #MAX_IDS_PER_QUERY} folders of the
+     * level. Nodes that have already been visited aren't visited again.
+     *
+     * @param id
+     * @param maxDepth
+     * @return The ID, the ID of the parent folder and the depth of each node of
+     * the subtree
+     */
+    private List<Object[]> findSubtreeStructureByLevel(Integer id, int maxDepth) {
+        final String nodeEntity = TreeNode.class.getName();
+
+        final List<Object[]> structure = new ArrayList<>();
+
+        final List<Object[]> roots = getSession()
+            .createQuery("select n.id, p.id from " + nodeEntity + " n left join n.parentFolder p"
+                + " where n.id = :id", Object[].class)
+            .setParameter("id", id)
+            .list();
+
+        if (roots.isEmpty()) {
+            return structure;
+        }
+        structure.add(new Object[]{id, roots.get(0)[1], 0});
+
+        final Set<Integer> visited = new HashSet<>();
+        visited.add(id);
+
+        List<Integer> level = Collections.singletonList(id);
+
+        for (int depth = 1; depth <= maxDepth && !level.isEmpty(); depth++) {
+            final List<Integer> nextLevel = new ArrayList<>();
+
+            for (int i = 0; i < level.size(); i += MAX_IDS_PER_QUERY) {
+                final List<Object[]> rows = getSession()
+                    .createQuery("select n.id, p.id from " + nodeEntity + " n join n.parentFolder p"
+                        + " where p.id in (:ids)", Object[].class)
+                    .setParameterList("ids", level.subList(i, Math.min(i + MAX_IDS_PER_QUERY, level.size())))
+                    .list();
+
+                for (Object[] row : rows) {
+                    final Integer nodeId = ((Number) row[0]).intValue();
+                    if (visited.add(nodeId)) {
+                        structure.add(new Object[]{nodeId, row[1], depth});
+                        nextLevel.add(nodeId);
+                    }
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        return structure;
+    }
+
+    /**
+     * Recursive common table expressions (<code>with recursive</code>) are
+     * supported by PostgreSQL, H2, HSQLDB and MySQL 8, but e.g. not by Oracle
+     * or SQL Server, whose syntax differs. If not set explicitly (see
+     * {@link #setRecursiveQuerySupported(Boolean)}), the support is
+     * determined by the configured hibernate dialect.
+     *
+     * @return Whether the structure of a subtree is determined with a single
+     * recursive query
+     */
+    public boolean isRecursiveQuerySupported() {
+        if (recursiveQuerySupported != null) {
+            return recursiveQuerySupported;
+        }
+
+        final Dialect dialect = ((SessionFactoryImplementor) getSession().getSessionFactory())
+            .getJdbcServices().getDialect();
+
+        return dialect instanceof PostgreSQL81Dialect
+            || dialect instanceof H2Dialect
+            || dialect instanceof HSQLDialect
+            || dialect instanceof MySQL8Dialect;
+    }
+
+    /**
+     * @param recursiveQuerySupported Whether the structure of a subtree is
+     *                                determined with a single recursive query
+     *                                (<code>with recursive</code>) or level by
+     *                                level, null to determine it by the
+     *                                hibernate dialect
+     */
+    public void setRecursiveQuerySupported(Boolean recursiveQuerySupported) {
+        this.recursiveQuerySupported = recursiveQuerySupported;
+    }
+
 }
@@ -1,6 +1,8 @@
 package de.terrestris.shoguncore.hibernate;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import de.terrestris.shoguncore.util.json.ShogunCoreJsonObjectMapper;
 import org.hibernate.HibernateException;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
@@ -8,20 +10,48 @@ import org.hibernate.usertype.UserType;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * Generic jsonb user type. Annotate your entities with Map&lt;String, Object&gt; as the type.
+ * <p>
+ * The values are copied structurally (maps, lists and immutable scalars as
+ * created by parsing JSON), only other values are converted by the (shared)
+ * object mapper. The second-level cache holds the JSON bytes of the values.
  */
 public class JsonbUserType implements UserType {
 
+    /**
+     * The object mapper, which is thread-safe once configured.
+     */
+    private static final ObjectMapper MAPPER = new ShogunCoreJsonObjectMapper();
+
+    /**
+     * Reads the (top level) JSON objects.
+     */
+    private static final ObjectReader MAP_READER = MAPPER.readerFor(HashMap.class);
+
     @Override
     public Object assemble(Serializable cached, Object owner) throws HibernateException {
+        if (cached instanceof byte[]) {
+            try {
+                return MAP_READER.readValue((byte[]) cached);
+            } catch (IOException e) {
+                throw new HibernateException(e);
+            }
+        }
         return deepCopy(cached);
     }
 
@@ -30,24 +60,33 @@ public class JsonbUserType implements UserType {
         if (value == null) {
             return null;
         }
-        ShogunCoreJsonObjectMapper mapper = new ShogunCoreJsonObjectMapper();
         if (value instanceof String) {
             try {
-                return mapper.readValue(value.toString(), HashMap.class);
+                return MAP_READER.readValue(value.toString());
             } catch (IOException e) {
                 throw new HibernateException(e);
             }
         }
+        if (value instanceof Map) {
+            return copyMap((Map<?, ?>) value, new HashMap<Object, Object>());
+        }
         try {
-            return mapper.readValue(mapper.writeValueAsString(value), HashMap.class);
-        } catch (IOException e) {
+            return MAPPER.convertValue(value, HashMap.class);
+        } catch (IllegalArgumentException e) {
             throw new HibernateException(e);
         }
     }
 
     @Override
     public Serializable disassemble(Object value) throws HibernateException {
-        return (Serializable) this.deepCopy(value);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new HibernateException(e);
+        }
     }
 
     @Override
@@ -83,20 +122,15 @@ public class JsonbUserType implements UserType {
 
     @Override
     public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner) throws HibernateException, SQLException {
-        if (!rs.wasNull()) {
-            ShogunCoreJsonObjectMapper mapper = new ShogunCoreJsonObjectMapper();
-            try {
-                String string = rs.getString(names[0]);
-                if (string == null) {
-                    return null;
-                }
-                HashMap map = mapper.readValue(string, HashMap.class);
-                return map;
-            } catch (IOException e) {
-                throw new HibernateException(e);
-            }
+        String string = rs.getString(names[0]);
+        if (string == null || rs.wasNull()) {
+            return null;
+        }
+        try {
+            return MAP_READER.readValue(string);
+        } catch (IOException e) {
+            throw new HibernateException(e);
         }
-        return null;
     }
 
     @Override
@@ -104,9 +138,8 @@ public class JsonbUserType implements UserType {
         if (value == null) {
             st.setNull(index, Types.OTHER);
         } else {
-            ShogunCoreJsonObjectMapper mapper = new ShogunCoreJsonObjectMapper();
             try {
-                String string = mapper.writeValueAsString(value);
+                String string = MAPPER.writeValueAsString(value);
                 st.setObject(index, string, Types.OTHER);
             } catch (JsonProcessingException e) {
                 throw new HibernateException(e);
@@ -119,4 +152,47 @@ public class JsonbUserType implements UserType {
         return new int[]{Types.OTHER};
     }
 
+    /**
+     * @param value
+     * @return A copy of the value, i.e. a copy of maps and collections and
+     * the value itself for immutable scalars
+     */
+    private static Object copyValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Integer
+            || value instanceof Long || value instanceof Double || value instanceof Float
+            || value instanceof Short || value instanceof Byte || value instanceof BigDecimal
+            || value instanceof BigInteger || value instanceof Character) {
+            return value;
+        }
+        if (value instanceof Map) {
+            return copyMap((Map<?, ?>) value, new LinkedHashMap<Object, Object>());
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            List<Object> copy = new ArrayList<Object>(collection.size());
+            for (Object element : collection) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        // e.g. dates or arrays: use their JSON representation (as on load)
+        try {
+            return MAPPER.convertValue(value, Object.class);
+        } catch (IllegalArgumentException e) {
+            throw new HibernateException(e);
+        }
+    }
+
+    /**
+     * @param map
+     * @param copy
+     * @return The copy
+     */
+    private static Map<Object, Object> copyMap(Map<?, ?> map, Map<Object, Object> copy) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
 }
@@ -0,0 +1,84 @@
+package de.terrestris.shoguncore.hibernate;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * The identifier generator of all {@link de.terrestris.shoguncore.model.PersistentObject}s.
+ * <p>
+ * All entities share a single database sequence (the ids are unique across
+ * all entity types, which is e.g. required by the permission tables) that is
+ * read with the <code>pooled</code> optimizer, i.e. the sequence is only hit
+ * once per <code>increment_size</code> inserts. On databases without
+ * sequences, hibernate uses a table with a single row instead.
+ * <p>
+ * The increment size can be configured with the hibernate setting
+ * {@value #INCREMENT_SIZE_SETTING} and defaults to
+ * {@value #DEFAULT_INCREMENT_SIZE}. Changing it requires the increment of the
+ * database sequence to be changed accordingly.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class ShogunCoreSequenceGenerator extends SequenceStyleGenerator {
+
+    /**
+     * The name of the (shared) sequence
+     */
+    public static final String SEQUENCE_NAME = "shogun_sequence";
+
+    /**
+     * The hibernate setting holding the increment (allocation) size
+     */
+    public static final String INCREMENT_SIZE_SETTING = "shogun.id.increment_size";
+
+    /**
+     * The default increment (allocation) size
+     */
+    public static final int DEFAULT_INCREMENT_SIZE = 50;
+
+    /**
+     * Sets the defaults of this generator (the sequence name, the increment
+     * size and the optimizer) unless they are given as parameters explicitly.
+     */
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        final Properties properties = new Properties();
+        properties.putAll(params);
+
+        if (!properties.containsKey(SEQUENCE_PARAM)) {
+            properties.setProperty(SEQUENCE_PARAM, SEQUENCE_NAME);
+        }
+        if (!properties.containsKey(INCREMENT_PARAM)) {
+            properties.setProperty(INCREMENT_PARAM, String.valueOf(getIncrementSize(serviceRegistry)));
+        }
+        if (!properties.containsKey(OPT_PARAM)) {
+            properties.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED.getExternalName());
+        }
+
+        super.configure(type, properties, serviceRegistry);
+    }
+
+    /**
+     * @param serviceRegistry
+     * @return The configured increment size
+     */
+    public static int getIncrementSize(ServiceRegistry serviceRegistry) {
+        final ConfigurationService configurationService = serviceRegistry.getService(ConfigurationService.class);
+        if (configurationService == null) {
+            return DEFAULT_INCREMENT_SIZE;
+        }
+        return configurationService.getSetting(INCREMENT_SIZE_SETTING, new ConfigurationService.Converter<Integer>() {
+            @Override
+            public Integer convert(Object value) {
+                return Integer.valueOf(value.toString().trim());
+            }
+        }, DEFAULT_INCREMENT_SIZE);
+    }
+
+}
@@ -26,11 +26,15 @@ public class SimpleJsonbConverter implements AttributeConverter<Map<String, Stri
 
     private static final Logger LOG = getLogger(SimpleJsonbConverter.class);
 
+    /**
+     * The object mapper, which is thread-safe once configured.
+     */
+    private static final ShogunCoreJsonObjectMapper MAPPER = new ShogunCoreJsonObjectMapper();
+
     @Override
     public String convertToDatabaseColumn(Map<String, String> attribute) {
-        ShogunCoreJsonObjectMapper mapper = new ShogunCoreJsonObjectMapper();
         try {
-            return (mapper.writeValueAsString(attribute));
+            return (MAPPER.writeValueAsString(attribute));
         } catch (Exception e) {
             LOG.warn("Could not convert JSON value to PostgreSQL format: " + e.getMessage());
             LOG.debug("Stack trace: " + e.toString());
@@ -40,9 +44,8 @@ public class SimpleJsonbConverter implements AttributeConverter<Map<String, Stri
 
     @Override
     public Map<String, String> convertToEntityAttribute(String dbData) {
-        ShogunCoreJsonObjectMapper parser = new ShogunCoreJsonObjectMapper();
         try {
-            return parser.readValue(dbData, HashMap.class);
+            return MAPPER.readValue(dbData, HashMap.class);
         } catch (IOException e) {
             LOG.warn("Could not convert JSON value from PostgreSQL format: " + e.getMessage());
             LOG.debug("Stack trace: " + e.toString());
@@ -1,7 +1,6 @@
 package de.terrestris.shoguncore.init;
 
 import de.terrestris.shoguncore.model.PersistentObject;
-import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.service.InitializationService;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,14 +52,9 @@ public class ContentInitializer {
     public void initializeDatabaseContent() {
         if (this.shogunInitEnabled) {
             logger.info("Initializing SHOGun content");
-            for (PersistentObject object : objectsToCreate) {
-                if (object instanceof User) {
-                    // special handling of users to encrypt the password!
-                    initService.saveUser((User) object);
-                } else {
-                    initService.savePersistentObject(object);
-                }
-            }
+            // the objects are saved in batches (users get special handling
+            // to encrypt the password)
+            initService.savePersistentObjects(objectsToCreate);
         } else {
             logger.info("Not initializing anything for SHOGun.");
         }
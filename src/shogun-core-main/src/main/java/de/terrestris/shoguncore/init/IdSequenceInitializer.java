@@ -0,0 +1,349 @@
+package de.terrestris.shoguncore.init;
+
+import de.terrestris.shoguncore.hibernate.ShogunCoreSequenceGenerator;
+import de.terrestris.shoguncore.model.PersistentObject;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Seeds the id sequence of the {@link ShogunCoreSequenceGenerator} on
+ * startup, i.e. migrates databases whose ids have been generated by the
+ * former table based generator (<code>hibernate_sequences</code>).
+ * <p>
+ * The first free id is determined by the value of the former generator table
+ * (if it exists) and the maximum id of all {@link PersistentObject} entities.
+ * If the sequence would return a smaller id, it is recreated to start at the
+ * first free id. Otherwise (e.g. on every further startup) nothing is changed.
+ * A missing sequence (e.g. if the schema isn't created by hibernate) is
+ * created to start at the first free id.
+ * This bean should be initialized before any content is created, e.g. before
+ * the {@link ContentInitializer}.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class IdSequenceInitializer {
+
+    /**
+     * The Logger
+     */
+    protected final Logger logger = getLogger(getClass());
+
+    /**
+     * Hibernate SessionFactory
+     */
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    /**
+     * The (optional) prefix of the table names
+     */
+    @Autowired(required = false)
+    @Qualifier("tablePrefix")
+    private String tablePrefix;
+
+    /**
+     * The name of the table of the former table based generator
+     */
+    private String legacyTableName = TableGenerator.DEF_TABLE;
+
+    /**
+     * The value column of the table of the former table based generator
+     */
+    private String legacyValueColumnName = TableGenerator.DEF_VALUE_COLUMN;
+
+    /**
+     * The method called on initialization
+     */
+    public void initializeIdSequence() {
+        final SessionFactoryImplementor sessionFactoryImplementor = sessionFactory.unwrap(SessionFactoryImplementor.class);
+        final Dialect dialect = sessionFactoryImplementor.getJdbcServices().getDialect();
+        final int incrementSize = ShogunCoreSequenceGenerator.getIncrementSize(
+            sessionFactoryImplementor.getServiceRegistry());
+
+        final Session session = sessionFactory.openSession();
+        final Transaction transaction = session.beginTransaction();
+
+        try {
+            final long maxId = getMaxId(session, sessionFactoryImplementor);
+            final long legacyNextValue = session.doReturningWork(this::getLegacyNextValue);
+            final long firstFreeId = Math.max(maxId + 1, legacyNextValue);
+
+            session.doWork(connection -> seedSequence(connection, dialect, firstFreeId, incrementSize));
+
+            transaction.commit();
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * @param session
+     * @param sessionFactoryImplementor
+     * @return The maximum id of all {@link PersistentObject} entities (or 0)
+     */
+    private long getMaxId(Session session, SessionFactoryImplementor sessionFactoryImplementor) {
+        long maxId = 0;
+
+        for (EntityPersister persister : sessionFactoryImplementor.getMetamodel().entityPersisters().values()) {
+            // the queries of the root entities include all subclasses
+            if (!PersistentObject.class.isAssignableFrom(persister.getMappedClass())
+                || !persister.getEntityName().equals(persister.getRootEntityName())) {
+                continue;
+            }
+
+            Number entityMaxId = session.createQuery("select max(e." + persister.getIdentifierPropertyName()
+                + ") from " + persister.getEntityName() + " e", Number.class).uniqueResult();
+
+            if (entityMaxId != null) {
+                maxId = Math.max(maxId, entityMaxId.longValue());
+            }
+        }
+
+        return maxId;
+    }
+
+    /**
+     * @param connection
+     * @return The next value of the former table based generator (or 0 if the
+     * table does not exist)
+     * @throws SQLException
+     */
+    private long getLegacyNextValue(Connection connection) throws SQLException {
+        final String tableName = findTable(connection, getPrefixedName(legacyTableName));
+        if (tableName == null) {
+            return 0;
+        }
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                 "select max(" + legacyValueColumnName + ") from " + tableName)) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Makes sure that the sequence will not return an id smaller than the
+     * given one.
+     *
+     * @param connection
+     * @param dialect
+     * @param firstFreeId
+     * @param incrementSize
+     * @throws SQLException
+     */
+    private void seedSequence(Connection connection, Dialect dialect, long firstFreeId, int incrementSize)
+        throws SQLException {
+        final String sequenceName = ShogunCoreSequenceGenerator.SEQUENCE_NAME;
+
+        // the pooled optimizer reads the upper bound of the next block of ids
+        // from the sequence
+        final long startValue = firstFreeId + incrementSize - 1;
+
+        if (dialect.supportsSequences()) {
+            if (!sequenceExists(connection, dialect, sequenceName)) {
+                logger.info("Creating the id sequence " + sequenceName + " to start at id " + firstFreeId);
+                createSequence(connection, dialect, sequenceName, startValue, incrementSize);
+                return;
+            }
+
+            final long nextValue;
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(dialect.getSequenceNextValString(sequenceName))) {
+                resultSet.next();
+                nextValue = resultSet.getLong(1);
+            }
+
+            // the next block of ids starts after the value just read
+            if (nextValue + 1 >= firstFreeId) {
+                return;
+            }
+
+            logger.info("Seeding the id sequence " + sequenceName + " to start at id " + firstFreeId);
+
+            // fail before the existing sequence is dropped
+            final int intStartValue = toIntStartValue(sequenceName, startValue);
+
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : dialect.getDropSequenceStrings(sequenceName)) {
+                    statement.execute(sql);
+                }
+            }
+            createSequence(connection, dialect, sequenceName, intStartValue, incrementSize);
+        } else {
+            // hibernate uses a table with a single row instead of a sequence
+            final String tableName = findTable(connection, getPrefixedName(sequenceName));
+            if (tableName == null) {
+                logger.warn("Could not find the table of the id generator " + sequenceName);
+                return;
+            }
+
+            logger.info("Seeding the id table " + tableName + " to start at id " + firstFreeId);
+
+            try (PreparedStatement statement = connection.prepareStatement("update " + tableName
+                + " set next_val = ? where next_val < ?")) {
+                statement.setLong(1, startValue);
+                statement.setLong(2, startValue);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * @param connection
+     * @param dialect
+     * @param sequenceName
+     * @return Whether the sequence exists. If the dialect can't list the
+     * sequences, the sequence is expected to exist.
+     * @throws SQLException
+     */
+    private boolean sequenceExists(Connection connection, Dialect dialect, String sequenceName)
+        throws SQLException {
+        final String querySequencesString = dialect.getQuerySequencesString();
+        if (querySequencesString == null) {
+            logger.debug("Can not list the sequences of the database, expecting " + sequenceName + " to exist");
+            return true;
+        }
+
+        // the columns of the result differ between the dialects, e.g. the
+        // sequence name isn't the first one in oracle
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(querySequencesString)) {
+            final int columnCount = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    if (sequenceName.equalsIgnoreCase(resultSet.getString(i))) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param connection
+     * @param dialect
+     * @param sequenceName
+     * @param startValue
+     * @param incrementSize
+     * @throws SQLException
+     */
+    private static void createSequence(Connection connection, Dialect dialect, String sequenceName,
+                                       long startValue, int incrementSize) throws SQLException {
+        final int intStartValue = toIntStartValue(sequenceName, startValue);
+
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : dialect.getCreateSequenceStrings(sequenceName, intStartValue, incrementSize)) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * @param sequenceName
+     * @param startValue
+     * @return The start value as int, as required by the dialects
+     * @throws IllegalStateException If the start value exceeds the int range
+     */
+    private static int toIntStartValue(String sequenceName, long startValue) {
+        if (startValue > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Can not create the id sequence " + sequenceName
+                + " to start at " + startValue + ", the start value exceeds " + Integer.MAX_VALUE
+                + ". Please create the sequence manually.");
+        }
+        return (int) startValue;
+    }
+
+    /**
+     * @param connection
+     * @param name
+     * @return The name of the table as stored in the database (or null if
+     * the table does not exist)
+     * @throws SQLException
+     */
+    private String findTable(Connection connection, String name) throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+
+        for (String candidate : new String[]{name, name.toLowerCase(), name.toUpperCase()}) {
+            try (ResultSet tables = metaData.getTables(connection.getCatalog(), null, candidate, null)) {
+                if (tables.next()) {
+                    return candidate;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param name
+     * @return The name prefixed with the table prefix (if any)
+     */
+    private String getPrefixedName(String name) {
+        return tablePrefix == null ? name : tablePrefix + name;
+    }
+
+    /**
+     * @param sessionFactory the sessionFactory to set
+     */
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * @param tablePrefix the tablePrefix to set
+     */
+    public void setTablePrefix(String tablePrefix) {
+        this.tablePrefix = tablePrefix;
+    }
+
+    /**
+     * @return the legacyTableName
+     */
+    public String getLegacyTableName() {
+        return legacyTableName;
+    }
+
+    /**
+     * @param legacyTableName the legacyTableName to set
+     */
+    public void setLegacyTableName(String legacyTableName) {
+        this.legacyTableName = legacyTableName;
+    }
+
+    /**
+     * @return the legacyValueColumnName
+     */
+    public String getLegacyValueColumnName() {
+        return legacyValueColumnName;
+    }
+
+    /**
+     * @param legacyValueColumnName the legacyValueColumnName to set
+     */
+    public void setLegacyValueColumnName(String legacyValueColumnName) {
+        this.legacyValueColumnName = legacyValueColumnName;
+    }
+
+}
@@ -14,7 +14,9 @@ import javax.persistence.*;
 import java.util.Arrays;
 
 /**
- * This class represents a file which is stored as a bytearray in the database
+ * This class represents a file. Its content is either stored in a
+ * {@link de.terrestris.shoguncore.util.blob.BlobStore} (referenced by the
+ * blob key) or (if no blob store is configured) as a bytearray in the database
  *
  * @author Johannes Weskamm
  * @author Daniel Koch
@@ -53,6 +55,17 @@ public class File extends PersistentObject {
     @Column(length = Integer.MAX_VALUE)
     private byte[] file;
 
+    /**
+     * The key of the content in the blob store
+     */
+    @JsonIgnore
+    private String blobKey;
+
+    /**
+     * The size of the content in bytes
+     */
+    private Long fileSize;
+
     /**
      * @return the active
      */
@@ -117,6 +130,34 @@ public class File extends PersistentObject {
         this.file = Arrays.copyOf(file, file.length);
     }
 
+    /**
+     * @return the blobKey
+     */
+    public String getBlobKey() {
+        return blobKey;
+    }
+
+    /**
+     * @param blobKey the blobKey to set
+     */
+    public void setBlobKey(String blobKey) {
+        this.blobKey = blobKey;
+    }
+
+    /**
+     * @return the fileSize
+     */
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @param fileSize the fileSize to set
+     */
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
     /**
      * @see java.lang.Object#hashCode()
      * <p>
@@ -132,6 +173,8 @@ public class File extends PersistentObject {
             .append(getActive())
             .append(getFileName())
             .append(getFileType())
+            .append(getBlobKey())
+            .append(getFileSize())
             .toHashCode();
     }
 
@@ -154,6 +197,8 @@ public class File extends PersistentObject {
             .append(getActive(), other.getActive())
             .append(getFileName(), other.getFileName())
             .append(getFileType(), other.getFileType())
+            .append(getBlobKey(), other.getBlobKey())
+            .append(getFileSize(), other.getFileSize())
             .isEquals();
     }
 }
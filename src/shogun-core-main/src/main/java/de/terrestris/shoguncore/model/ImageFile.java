@@ -5,14 +5,15 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import javax.persistence.Cacheable;
-import javax.persistence.Column;
-import javax.persistence.Entity;
-import javax.persistence.Table;
+import javax.persistence.*;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * This class represents an Image which is stored as a bytearray in the database
+ * This class represents an Image. Its thumbnails are generated (possibly in
+ * the background) after the image has been saved, the thumbnail status
+ * reflects the progress.
  *
  * @author Johannes Weskamm
  * @author Daniel Koch
@@ -27,6 +28,15 @@ public class ImageFile extends File {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The status of the thumbnail generation of an image.
+     */
+    public enum ThumbnailStatus {
+        PENDING,
+        DONE,
+        FAILED
+    }
+
     /**
      *
      */
@@ -34,6 +44,26 @@ public class ImageFile extends File {
     @Column(length = Integer.MAX_VALUE)
     private byte[] thumbnail;
 
+    /**
+     * The thumbnails by their size (width/height in px)
+     */
+    @JsonIgnore
+    @ElementCollection
+    @MapKeyColumn(name = "THUMBNAIL_SIZE")
+    @Column(name = "THUMBNAIL", length = Integer.MAX_VALUE)
+    @CollectionTable(
+        name = "IMAGEFILES_THUMBNAILS",
+        joinColumns = @JoinColumn(name = "IMAGEFILE_ID")
+    )
+    private Map<Integer, byte[]> thumbnails = new HashMap<>();
+
+    /**
+     * The status of the thumbnail generation (null if no thumbnails have
+     * been requested)
+     */
+    @Enumerated(EnumType.STRING)
+    private ThumbnailStatus thumbnailStatus;
+
     /**
      *
      */
@@ -66,6 +96,34 @@ public class ImageFile extends File {
         this.thumbnail = Arrays.copyOf(thumbnail, thumbnail.length);
     }
 
+    /**
+     * @return the thumbnails
+     */
+    public Map<Integer, byte[]> getThumbnails() {
+        return thumbnails;
+    }
+
+    /**
+     * @param thumbnails the thumbnails to set
+     */
+    public void setThumbnails(Map<Integer, byte[]> thumbnails) {
+        this.thumbnails = thumbnails;
+    }
+
+    /**
+     * @return the thumbnailStatus
+     */
+    public ThumbnailStatus getThumbnailStatus() {
+        return thumbnailStatus;
+    }
+
+    /**
+     * @param thumbnailStatus the thumbnailStatus to set
+     */
+    public void setThumbnailStatus(ThumbnailStatus thumbnailStatus) {
+        this.thumbnailStatus = thumbnailStatus;
+    }
+
     /**
      * @return the width
      */
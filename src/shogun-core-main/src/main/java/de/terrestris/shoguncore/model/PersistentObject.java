@@ -15,6 +15,7 @@ import org.joda.time.DateTime;
 import org.joda.time.ReadableDateTime;
 
 import javax.persistence.*;
+import javax.persistence.Index;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
@@ -42,7 +43,9 @@ public abstract class PersistentObject implements Serializable {
      *
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.TABLE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "shogunCoreIdGenerator")
+    @GenericGenerator(name = "shogunCoreIdGenerator",
+        strategy = "de.terrestris.shoguncore.hibernate.ShogunCoreSequenceGenerator")
     // The column annotation is used by hibernate for the column creation, e.g.
     // to build constraints like nullable
     @Column(updatable = false, nullable = false)
@@ -67,24 +70,30 @@ public abstract class PersistentObject implements Serializable {
     private ReadableDateTime modified;
 
     /**
-     *
+     * The key column is indexed as the permissions are also looked up by the
+     * user (see GenericHibernateDao#findAllUserPermissionsOfUser).
      */
     @ManyToMany
     @JoinTable(
         name = "USERPERMISSIONS",
-        joinColumns = @JoinColumn(name = "ENTITY_ID"))
+        joinColumns = @JoinColumn(name = "ENTITY_ID"),
+        indexes = @Index(name = "USERPERMISSIONS_KEY_IDX", columnList = "USERPERMISSIONS_KEY"))
+    @MapKeyJoinColumn(name = "USERPERMISSIONS_KEY")
     @JsonIgnore
     @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Fetch(FetchMode.JOIN)
     private Map<User, PermissionCollection> userPermissions = new HashMap<User, PermissionCollection>();
 
     /**
-     *
+     * The key column is indexed as the permissions are also looked up by the
+     * group (see GenericHibernateDao#findAllUserGroupPermissionsOfUserGroup).
      */
     @ManyToMany
     @JoinTable(
         name = "GROUPPERMISSIONS",
-        joinColumns = @JoinColumn(name = "ENTITY_ID"))
+        joinColumns = @JoinColumn(name = "ENTITY_ID"),
+        indexes = @Index(name = "GROUPPERMISSIONS_KEY_IDX", columnList = "GROUPPERMISSIONS_KEY"))
+    @MapKeyJoinColumn(name = "GROUPPERMISSIONS_KEY")
     @JsonIgnore
     @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Fetch(FetchMode.JOIN)
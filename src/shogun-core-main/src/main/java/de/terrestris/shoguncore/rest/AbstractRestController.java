@@ -4,10 +4,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.PersistentObject;
+import de.terrestris.shoguncore.paging.PagingResult;
 import de.terrestris.shoguncore.service.AbstractCrudService;
+import de.terrestris.shoguncore.util.data.BulkItemResult;
+import de.terrestris.shoguncore.util.entity.EntityUtil;
 import de.terrestris.shoguncore.web.AbstractWebController;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.MultiValueMap;
@@ -20,6 +24,8 @@ import javax.servlet.http.HttpServletRequest;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,6 +37,18 @@ import java.util.List;
 public abstract class AbstractRestController<E extends PersistentObject, D extends GenericHibernateDao<E, Integer>, S extends AbstractCrudService<E, D>>
     extends AbstractWebController<E, D, S> {
 
+    /**
+     * The response header containing the total count of entities of paged
+     * responses.
+     */
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    /**
+     * The content type of newline delimited JSON streams (one JSON item per
+     * line), which are accepted by the bulk endpoints.
+     */
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
     /**
      *
      */
@@ -47,10 +65,34 @@ public abstract class AbstractRestController<E extends PersistentObject, D exten
 
     /**
      * Find all entities.
+     * <p>
+     * If one of the parameters {@value EntityUtil#PAGING_OFFSET_PARAM},
+     * {@value EntityUtil#PAGING_LIMIT_PARAM} or {@value EntityUtil#SORT_PARAM}
+     * is given, only the requested page will be returned and the total count
+     * of entities will be set in the {@value #TOTAL_COUNT_HEADER} header.
+     * <p>
+     * The optional parameter {@value EntityUtil#FETCH_PLAN_PARAM} determines
+     * how the associations of the entities are fetched, see
+     * {@link de.terrestris.shoguncore.util.entity.FetchPlan}.
      */
     @RequestMapping(method = RequestMethod.GET, produces = "application/json;charset=UTF-8")
     public ResponseEntity<List<E>> findAll(@RequestParam MultiValueMap<String, String> requestParams) {
-        final List<E> resultList = this.service.findAllRestricted(requestParams);
+        if (EntityUtil.isPagingRequest(requestParams)) {
+            try {
+                return createPagedResponse(this.service.findAllRestrictedPaged(requestParams));
+            } catch (IllegalArgumentException e) {
+                logger.error("Error finding a page of entities: " + e.getMessage());
+                return new ResponseEntity<List<E>>(HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        final List<E> resultList;
+        try {
+            resultList = this.service.findAllRestricted(requestParams);
+        } catch (IllegalArgumentException e) {
+            logger.error("Error finding entities: " + e.getMessage());
+            return new ResponseEntity<List<E>>(HttpStatus.BAD_REQUEST);
+        }
 
         if (resultList != null && !resultList.isEmpty()) {
             logger.trace("Found a total of " + resultList.size()
@@ -65,11 +107,29 @@ public abstract class AbstractRestController<E extends PersistentObject, D exten
      * Find all entities that match the conditions from the query string.
      * <p>
      * The requestParams MultiValueMap contains all information from the query String @see {@link RequestParam}
+     * <p>
+     * Paging, sorting and fetch plans are supported as in
+     * {@link #findAll(MultiValueMap)}.
      */
     @RequestMapping(value = "/filter", method = RequestMethod.GET, produces = "application/json;charset=UTF-8")
     public ResponseEntity<List<E>> findBySimpleFilter(@RequestParam MultiValueMap<String, String> requestParams) {
 
-        final List<E> resultList = this.service.findBySimpleFilter(requestParams);
+        if (EntityUtil.isPagingRequest(requestParams)) {
+            try {
+                return createPagedResponse(this.service.findBySimpleFilterPaged(requestParams));
+            } catch (IllegalArgumentException e) {
+                logger.error("Error finding a page of filtered entities: " + e.getMessage());
+                return new ResponseEntity<List<E>>(HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        final List<E> resultList;
+        try {
+            resultList = this.service.findBySimpleFilter(requestParams);
+        } catch (IllegalArgumentException e) {
+            logger.error("Error finding filtered entities: " + e.getMessage());
+            return new ResponseEntity<List<E>>(HttpStatus.BAD_REQUEST);
+        }
 
         if (resultList != null && !resultList.isEmpty()) {
             logger.trace("Found a total of " + resultList.size()
@@ -84,12 +144,16 @@ public abstract class AbstractRestController<E extends PersistentObject, D exten
      * Get an entity by id.
      *
      * @param id
+     * @param fetchPlan The name of the optional
+     *                  {@link de.terrestris.shoguncore.util.entity.FetchPlan}
+     *                  the associations of the entity are fetched with
      */
     @RequestMapping(value = "/{id}", method = RequestMethod.GET, produces = "application/json;charset=UTF-8")
-    public ResponseEntity<E> findById(@PathVariable Integer id) {
+    public ResponseEntity<E> findById(@PathVariable Integer id,
+                                      @RequestParam(value = EntityUtil.FETCH_PLAN_PARAM, required = false) String fetchPlan) {
 
         try {
-            E entity = this.service.findById(id);
+            E entity = fetchPlan == null ? this.service.findById(id) : this.service.findById(id, fetchPlan);
             logger.trace("Found " + entity.getClass().getSimpleName()
                 + " with ID " + entity.getId());
             return new ResponseEntity<E>(entity, HttpStatus.OK);
@@ -111,9 +175,10 @@ public abstract class AbstractRestController<E extends PersistentObject, D exten
             + simpleClassName + ": ";
 
 
-        // read and parse the json request body
+        // read and parse the json request body, the entity is converted from
+        // the tree to resolve referenced entities in batches
         try (BufferedReader reader = request.getReader()) {
-            E entity = objectMapper.readValue(reader, getEntityClass());
+            E entity = objectMapper.treeToValue(objectMapper.readTree(reader), getEntityClass());
 
             // ID value MUST be null to assure that
             // saveOrUpdate will save and not update
@@ -216,4 +281,213 @@ public abstract class AbstractRestController<E extends PersistentObject, D exten
         }
     }
 
+    /**
+     * Creates/saves the entities of a JSON array (or of a newline delimited
+     * JSON stream with the content type {@value #NDJSON_CONTENT_TYPE}) in a
+     * single transaction, see {@link AbstractCrudService#saveOrUpdateAll(List)}.
+     * The response contains the result of each item (in the given order).
+     */
+    @RequestMapping(value = "/bulk", method = RequestMethod.POST, produces = "application/json;charset=UTF-8")
+    public ResponseEntity<List<BulkItemResult>> saveAll(HttpServletRequest request) {
+
+        final String errorMessagePrefix = "Error when saving entities of type "
+            + getEntityClass().getSimpleName() + ": ";
+
+        try {
+            final List<JsonNode> items = readBulkItems(request);
+            final List<BulkItemResult> results = new ArrayList<>(Collections.nCopies(items.size(), null));
+            final List<Integer> indices = new ArrayList<>();
+            final List<E> entities = new ArrayList<>();
+
+            for (int i = 0; i < items.size(); i++) {
+                try {
+                    E entity = objectMapper.treeToValue(getBulkItem(items, i), getEntityClass());
+
+                    // ID value MUST be null to assure that
+                    // saveOrUpdate will save and not update
+                    if (entity.getId() != null) {
+                        results.set(i, new BulkItemResult(i, entity.getId(), BulkItemResult.Status.INVALID,
+                            "ID value is set to " + entity.getId() + ", but MUST be null"));
+                        continue;
+                    }
+
+                    indices.add(i);
+                    entities.add(entity);
+                } catch (RuntimeException | IOException e) {
+                    results.set(i, new BulkItemResult(i, null, BulkItemResult.Status.INVALID, e.getMessage()));
+                }
+            }
+
+            mergeBulkResults(results, indices, this.service.saveOrUpdateAll(entities));
+            logger.trace("Processed " + items.size() + " entities to create in bulk");
+            return new ResponseEntity<List<BulkItemResult>>(results, HttpStatus.OK);
+        } catch (RuntimeException | IOException e) {
+            logger.error(errorMessagePrefix + e.getMessage());
+            return new ResponseEntity<List<BulkItemResult>>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Updates the entities identified by the <code>id</code> property of the
+     * JSON objects of a JSON array (or of a newline delimited JSON stream)
+     * partially in a single transaction, see
+     * {@link AbstractCrudService#updatePartialWithJsonNodes(List, ObjectMapper)}.
+     * The response contains the result of each item (in the given order).
+     */
+    @RequestMapping(value = "/bulk", method = RequestMethod.PUT, produces = "application/json;charset=UTF-8")
+    public ResponseEntity<List<BulkItemResult>> updateAll(HttpServletRequest request) {
+
+        final String errorMessagePrefix = "Error updating entities of type "
+            + getEntityClass().getSimpleName() + ": ";
+
+        try {
+            final List<JsonNode> items = readBulkItems(request);
+            final List<BulkItemResult> results = new ArrayList<>(Collections.nCopies(items.size(), null));
+            final List<Integer> indices = new ArrayList<>();
+            final List<JsonNode> jsonObjects = new ArrayList<>();
+
+            for (int i = 0; i < items.size(); i++) {
+                try {
+                    jsonObjects.add(getBulkItem(items, i));
+                    indices.add(i);
+                } catch (IOException e) {
+                    results.set(i, new BulkItemResult(i, null, BulkItemResult.Status.INVALID, e.getMessage()));
+                }
+            }
+
+            mergeBulkResults(results, indices, this.service.updatePartialWithJsonNodes(jsonObjects, objectMapper));
+            logger.trace("Processed " + items.size() + " entities to update in bulk");
+            return new ResponseEntity<List<BulkItemResult>>(results, HttpStatus.OK);
+        } catch (RuntimeException | IOException e) {
+            logger.error(errorMessagePrefix + e.getMessage());
+            return new ResponseEntity<List<BulkItemResult>>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Deletes the entities with the IDs of a JSON array (or of a newline
+     * delimited JSON stream) in a single transaction, see
+     * {@link AbstractCrudService#deleteAll(List)}. The response contains the
+     * result of each item (in the given order).
+     */
+    @RequestMapping(value = "/bulk", method = RequestMethod.DELETE, produces = "application/json;charset=UTF-8")
+    public ResponseEntity<List<BulkItemResult>> deleteAll(HttpServletRequest request) {
+
+        final String errorMessagePrefix = "Error deleting entities of type "
+            + getEntityClass().getSimpleName() + ": ";
+
+        try {
+            final List<JsonNode> items = readBulkItems(request);
+            final List<BulkItemResult> results = new ArrayList<>(Collections.nCopies(items.size(), null));
+            final List<Integer> indices = new ArrayList<>();
+            final List<Integer> ids = new ArrayList<>();
+
+            for (int i = 0; i < items.size(); i++) {
+                JsonNode item = items.get(i);
+                if (item == null || !item.canConvertToInt()) {
+                    results.set(i, new BulkItemResult(i, null, BulkItemResult.Status.INVALID,
+                        "The item is not a valid ID"));
+                    continue;
+                }
+                indices.add(i);
+                ids.add(item.asInt());
+            }
+
+            mergeBulkResults(results, indices, this.service.deleteAll(ids));
+            logger.trace("Processed " + items.size() + " entities to delete in bulk");
+            return new ResponseEntity<List<BulkItemResult>>(results, HttpStatus.OK);
+        } catch (RuntimeException | IOException e) {
+            logger.error(errorMessagePrefix + e.getMessage());
+            return new ResponseEntity<List<BulkItemResult>>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Reads the items of a bulk request, i.e. the elements of a JSON array or
+     * the lines of a newline delimited JSON stream (content type
+     * {@value #NDJSON_CONTENT_TYPE}). Lines that are no valid JSON are
+     * returned as null, so that they can be reported per item.
+     *
+     * @param request
+     * @return The items
+     * @throws IOException If the request body is no JSON array
+     */
+    private List<JsonNode> readBulkItems(HttpServletRequest request) throws IOException {
+        final List<JsonNode> items = new ArrayList<>();
+        final String contentType = request.getContentType();
+
+        try (BufferedReader reader = request.getReader()) {
+            if (contentType != null && contentType.startsWith(NDJSON_CONTENT_TYPE)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (StringUtils.isBlank(line)) {
+                        continue;
+                    }
+                    try {
+                        items.add(objectMapper.readTree(line));
+                    } catch (IOException e) {
+                        items.add(null);
+                    }
+                }
+                return items;
+            }
+
+            final JsonNode array = objectMapper.readTree(reader);
+            if (array == null || !array.isArray()) {
+                throw new IOException("The request body is no JSON array.");
+            }
+            for (JsonNode item : array) {
+                items.add(item);
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * @param items
+     * @param index
+     * @return The (valid) item with the passed index
+     * @throws IOException If the item is no valid JSON
+     */
+    private JsonNode getBulkItem(List<JsonNode> items, int index) throws IOException {
+        final JsonNode item = items.get(index);
+        if (item == null) {
+            throw new IOException("The item is not valid JSON.");
+        }
+        return item;
+    }
+
+    /**
+     * Sets the results of the service (for the items with the passed indices)
+     * in the results of all items.
+     *
+     * @param results        The results of all items
+     * @param indices        The indices of the items passed to the service
+     * @param serviceResults The results of the service
+     */
+    private void mergeBulkResults(List<BulkItemResult> results, List<Integer> indices,
+                                  List<BulkItemResult> serviceResults) {
+        for (int i = 0; i < serviceResults.size(); i++) {
+            BulkItemResult result = serviceResults.get(i);
+            result.setIndex(indices.get(i));
+            results.set(indices.get(i), result);
+        }
+    }
+
+    /**
+     * @param pagingResult
+     * @return The response containing the entities of the page and the
+     * total count header
+     */
+    private ResponseEntity<List<E>> createPagedResponse(PagingResult<E> pagingResult) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(TOTAL_COUNT_HEADER, String.valueOf(pagingResult.getTotalCount()));
+
+        logger.trace("Found " + pagingResult.getResultList().size() + " of a total of "
+            + pagingResult.getTotalCount() + " entities of type " + getEntityClass().getSimpleName());
+
+        return new ResponseEntity<List<E>>(pagingResult.getResultList(), headers, HttpStatus.OK);
+    }
+
 }
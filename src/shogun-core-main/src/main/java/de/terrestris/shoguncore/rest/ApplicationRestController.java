@@ -2,11 +2,18 @@ package de.terrestris.shoguncore.rest;
 
 import de.terrestris.shoguncore.dao.ApplicationDao;
 import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.service.ApplicationBundleService;
 import de.terrestris.shoguncore.service.ApplicationService;
+import de.terrestris.shoguncore.util.application.ApplicationBundle;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
 
 /**
  * @author Kai Volland
@@ -17,6 +24,18 @@ import org.springframework.web.bind.annotation.RestController;
 public class ApplicationRestController<E extends Application, D extends ApplicationDao<E>, S extends ApplicationService<E, D>>
     extends AbstractRestController<E, D, S> {
 
+    /**
+     * The media type of the bundles
+     */
+    private static final MediaType BUNDLE_CONTENT_TYPE = MediaType.parseMediaType("application/json;charset=UTF-8");
+
+    /**
+     *
+     */
+    @Autowired
+    @Qualifier("applicationBundleService")
+    private ApplicationBundleService bundleService;
+
     /**
      * Default constructor, which calls the type-constructor
      */
@@ -33,6 +52,50 @@ public class ApplicationRestController<E extends Application, D extends Applicat
         super(entityClass);
     }
 
+    /**
+     * Get the bundle of the application with the given ID, i.e. the
+     * (precomputed) JSON of the application. The bundle is sent gzip-encoded
+     * if the client accepts it and carries an ETag and a Last-Modified
+     * header, conditional requests are answered with
+     * <code>304 Not Modified</code>.
+     */
+    @RequestMapping(value = "/{id}/bundle", method = RequestMethod.GET)
+    public ResponseEntity<byte[]> findBundle(@PathVariable Integer id,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        try {
+            ApplicationBundle bundle = this.bundleService.getBundle(id);
+            if (bundle == null) {
+                logger.error("Could not find the bundle of the application with id " + id);
+                return new ResponseEntity<byte[]>(HttpStatus.NOT_FOUND);
+            }
+
+            final boolean gzip = StringUtils.containsIgnoreCase(acceptEncoding, "gzip");
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(BUNDLE_CONTENT_TYPE)
+                .cacheControl(CacheControl.noCache())
+                .lastModified(bundle.getLastModified())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+
+            if (gzip) {
+                // the encoded representation needs an ETag of its own
+                return response
+                    .eTag(StringUtils.removeEnd(bundle.getETag(), "\"") + "-gzip\"")
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(bundle.getCompressedContent());
+            }
+
+            return response
+                .eTag(bundle.getETag())
+                .body(bundle.getContent());
+        } catch (Exception e) {
+            logger.error("Error finding the bundle of the application with id " + id + ": "
+                + e.getMessage());
+            return new ResponseEntity<byte[]>(HttpStatus.NOT_FOUND);
+        }
+    }
+
     /**
      * We have to use {@link Qualifier} to define the correct service here.
      * Otherwise, spring can not decide which service has to be autowired here
@@ -45,4 +108,11 @@ public class ApplicationRestController<E extends Application, D extends Applicat
         this.service = service;
     }
 
+    /**
+     * @param bundleService the bundleService to set
+     */
+    public void setBundleService(ApplicationBundleService bundleService) {
+        this.bundleService = bundleService;
+    }
+
 }
@@ -5,8 +5,9 @@ import de.terrestris.shoguncore.model.tree.TreeNode;
 import de.terrestris.shoguncore.service.TreeNodeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
 
 /**
  * @author Kai Volland
@@ -33,6 +34,33 @@ public class TreeNodeRestController<E extends TreeNode, D extends TreeNodeDao<E>
         super(entityClass);
     }
 
+    /**
+     * Find the (depth-limited) subtree of the node with the given ID. The
+     * children of the folders at the maximum depth are null.
+     *
+     * @param id    The ID of the root node of the subtree
+     * @param depth The (optional) maximum depth of the subtree
+     */
+    @RequestMapping(value = "/{id}/subtree", method = RequestMethod.GET, produces = "application/json;charset=UTF-8")
+    public ResponseEntity<E> findSubtree(@PathVariable Integer id,
+                                         @RequestParam(value = "depth", required = false) Integer depth) {
+
+        try {
+            E entity = this.service.findSubtree(id, depth);
+            if (entity == null) {
+                logger.error("Could not find the subtree of the node with id " + id);
+                return new ResponseEntity<E>(HttpStatus.NOT_FOUND);
+            }
+            logger.trace("Found the subtree of " + entity.getClass().getSimpleName()
+                + " with ID " + entity.getId());
+            return new ResponseEntity<E>(entity, HttpStatus.OK);
+        } catch (Exception e) {
+            logger.error("Error finding the subtree of the node with id " + id + ": "
+                + e.getMessage());
+            return new ResponseEntity<E>(HttpStatus.NOT_FOUND);
+        }
+    }
+
     /**
      * We have to use {@link Qualifier} to define the correct service here.
      * Otherwise, spring can not decide which service has to be autowired here
@@ -0,0 +1,162 @@
+package de.terrestris.shoguncore.security.access;
+
+import de.terrestris.shoguncore.dao.GenericHibernateDao;
+import de.terrestris.shoguncore.model.PersistentObject;
+import de.terrestris.shoguncore.security.access.entity.PersistentObjectPermissionEvaluator;
+import de.terrestris.shoguncore.security.access.factory.EntityPermissionEvaluatorFactory;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Maps entity classes (and their names) to the DAO and the permission
+ * evaluator that have to be used for them.
+ * <p>
+ * The DAOs are collected once on creation of the registry, the DAO of an
+ * entity class is the DAO with exactly this entity class or (if there is no
+ * such DAO) the first DAO of a superclass. The resolved DAOs and evaluators
+ * are kept for the lifetime of the registry.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class EntityPermissionRegistry {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(EntityPermissionRegistry.class);
+
+    /**
+     * All DAOs (in the order of the application context).
+     */
+    @SuppressWarnings("rawtypes")
+    private final List<GenericHibernateDao> daos;
+
+    /**
+     * The DAOs by their (exact) entity class.
+     */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class<?>, GenericHibernateDao> daosByEntityClass = new HashMap<>();
+
+    /**
+     * The resolved DAOs, including the ones from the hierarchy (empty if
+     * there is no DAO for an entity class).
+     */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class<?>, Optional<GenericHibernateDao>> resolvedDaos = new ConcurrentHashMap<>();
+
+    /**
+     * The resolved entity classes by their names.
+     */
+    private final Map<String, Class<?>> entityClassesByName = new ConcurrentHashMap<>();
+
+    /**
+     * Creates (and caches) the permission evaluators.
+     */
+    @SuppressWarnings("rawtypes")
+    private final EntityPermissionEvaluatorFactory permissionEvaluatorFactory;
+
+    /**
+     * @param daos                       All available DAOs
+     * @param permissionEvaluatorFactory The factory of the permission
+     *                                   evaluators
+     */
+    @SuppressWarnings("rawtypes")
+    public EntityPermissionRegistry(Collection<GenericHibernateDao> daos,
+                                    EntityPermissionEvaluatorFactory permissionEvaluatorFactory) {
+        this.daos = new ArrayList<>(daos);
+        this.permissionEvaluatorFactory = permissionEvaluatorFactory;
+
+        for (GenericHibernateDao dao : this.daos) {
+            Class<?> entityClass = dao.getEntityClass();
+            if (entityClass != null && !daosByEntityClass.containsKey(entityClass)) {
+                daosByEntityClass.put(entityClass, dao);
+                entityClassesByName.put(entityClass.getName(), entityClass);
+            }
+        }
+
+        LOG.debug("Registered " + daosByEntityClass.size() + " entity classes with DAO");
+    }
+
+    /**
+     * @param className The fully qualified name of the entity class
+     * @return The entity class or null if there is no such class
+     */
+    public Class<?> getEntityClass(String className) {
+        if (className == null) {
+            return null;
+        }
+
+        Class<?> entityClass = entityClassesByName.get(className);
+
+        if (entityClass == null) {
+            try {
+                entityClass = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                LOG.error("Could not create class for type: " + className + "(" + e.getMessage() + ")");
+                return null;
+            }
+            entityClassesByName.put(className, entityClass);
+        }
+
+        return entityClass;
+    }
+
+    /**
+     * @param entityClass The entity class
+     * @return The DAO to use for the entity class or null if there is no DAO
+     * for this class (or any of its superclasses)
+     */
+    @SuppressWarnings("rawtypes")
+    public GenericHibernateDao getDao(Class<?> entityClass) {
+        if (entityClass == null) {
+            return null;
+        }
+
+        return resolvedDaos.computeIfAbsent(entityClass, this::resolveDao).orElse(null);
+    }
+
+    /**
+     * @param entityClass The entity class
+     * @return The (cached) permission evaluator of the entity class
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public PersistentObjectPermissionEvaluator getPermissionEvaluator(Class<? extends PersistentObject> entityClass) {
+        return permissionEvaluatorFactory.getCachedEntityPermissionEvaluator(entityClass);
+    }
+
+    /**
+     * @param entityClass
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    private Optional<GenericHibernateDao> resolveDao(Class<?> entityClass) {
+        GenericHibernateDao dao = daosByEntityClass.get(entityClass);
+
+        if (dao != null) {
+            LOG.debug("Found an exactly matching DAO for type " + entityClass);
+            return Optional.of(dao);
+        }
+
+        // if we could not find an exact match, we'll try to use the "next best"
+        // from the entity hierarchy
+        for (GenericHibernateDao candidate : daos) {
+            if (candidate.getEntityClass().isAssignableFrom(entityClass)) {
+                LOG.debug("Found a matching DAO from the hierarchy of type " + entityClass);
+                return Optional.of(candidate);
+            }
+        }
+
+        LOG.warn("Could not find a DAO for type:" + entityClass);
+        return Optional.empty();
+    }
+
+}
@@ -0,0 +1,392 @@
+package de.terrestris.shoguncore.security.access;
+
+import de.terrestris.shoguncore.model.security.Permission;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Caches the decisions of the {@link ShogunCorePermissionEvaluator}, e.g. to
+ * avoid evaluating the permissions of the same entity again and again when
+ * filtering lists.
+ * <p>
+ * The decisions are keyed by the user id, the entity class, the entity id and
+ * the permission and are cached in two tiers:
+ * <ul>
+ * <li>the current (web) request, which is enabled by default and</li>
+ * <li>a shared tier for all requests, which is bounded by the configured
+ * maximum number of entries and the time to live (and disabled by
+ * default).</li>
+ * </ul>
+ * Both tiers are dropped whenever permission collections, user groups, users
+ * or roles are changed, see {@link #invalidate()}, which is called for every
+ * such change by the
+ * {@link de.terrestris.shoguncore.util.entity.EntityCacheInvalidator}.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class PermissionDecisionCache {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(PermissionDecisionCache.class);
+
+    /**
+     * The name of the request attribute holding the request tier.
+     */
+    private static final String REQUEST_ATTRIBUTE = PermissionDecisionCache.class.getName() + ".decisions";
+
+    /**
+     * Whether the decisions are cached for the current request.
+     */
+    @Value("${permission.decisionCache.requestScoped:true}")
+    private boolean requestScoped = true;
+
+    /**
+     * The maximum number of entries of the shared tier, a value of 0 (or
+     * less) disables the shared tier.
+     */
+    @Value("${permission.decisionCache.maxEntries:0}")
+    private int maxEntries = 0;
+
+    /**
+     * The time to live of an entry of the shared tier in seconds.
+     */
+    @Value("${permission.decisionCache.ttl:60}")
+    private long timeToLive = 60;
+
+    /**
+     * The shared tier (in access order), guarded by itself.
+     */
+    private final Map<Key, SharedEntry> sharedEntries = new LinkedHashMap<Key, SharedEntry>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, SharedEntry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * Incremented on every invalidation, used to detect (and drop) decisions
+     * that have been made concurrently to a change.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong requestHits = new AtomicLong();
+
+    private final AtomicLong sharedHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the current generation of the cache. Read it <i>before</i>
+     * evaluating a permission that should be cached and pass it to
+     * {@link #put(Key, boolean, long, boolean)}.
+     *
+     * @return The current generation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param key The key.
+     * @return The cached decision or null.
+     */
+    public Boolean get(Key key) {
+        final RequestTier requestTier = getRequestTier();
+
+        if (requestTier != null) {
+            Boolean decision = requestTier.decisions.get(key);
+            if (decision != null) {
+                requestHits.incrementAndGet();
+                return decision;
+            }
+        }
+
+        if (maxEntries > 0) {
+            SharedEntry entry;
+            synchronized (sharedEntries) {
+                entry = sharedEntries.get(key);
+                if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                    sharedEntries.remove(key);
+                    entry = null;
+                }
+            }
+            if (entry != null) {
+                sharedHits.incrementAndGet();
+                if (requestTier != null) {
+                    requestTier.decisions.put(key, entry.decision);
+                }
+                return entry.decision;
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the given decision. The decision isn't cached if the cache has
+     * been invalidated since the given generation.
+     *
+     * @param key        The key.
+     * @param decision   The decision.
+     * @param generation The generation the decision has been made with.
+     * @param shareable  Whether the decision may be cached in the shared tier
+     *                   (or in the current request only).
+     */
+    public void put(Key key, boolean decision, long generation, boolean shareable) {
+        if (this.generation.get() != generation) {
+            return;
+        }
+
+        final RequestTier requestTier = getRequestTier();
+        if (requestTier != null) {
+            requestTier.decisions.put(key, decision);
+        }
+
+        if (shareable && maxEntries > 0) {
+            SharedEntry entry = new SharedEntry(decision, System.currentTimeMillis() + timeToLive * 1000);
+            synchronized (sharedEntries) {
+                if (this.generation.get() == generation) {
+                    sharedEntries.put(key, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all decisions. If called within a transaction, the decisions are
+     * (additionally) dropped after completion of the transaction.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    clear();
+                }
+            });
+        }
+        clear();
+    }
+
+    /**
+     * @return The number of entries of the shared tier.
+     */
+    public int size() {
+        synchronized (sharedEntries) {
+            return sharedEntries.size();
+        }
+    }
+
+    /**
+     * @return The hit/miss statistics of the cache.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        long hits = requestHits.get() + sharedHits.get();
+        long total = hits + misses.get();
+
+        statistics.put("requestHits", requestHits.get());
+        statistics.put("sharedHits", sharedHits.get());
+        statistics.put("misses", misses.get());
+        statistics.put("hitRatio", total == 0 ? 0d : (double) hits / total);
+        statistics.put("sharedEntries", size());
+        statistics.put("maxSharedEntries", maxEntries);
+
+        return statistics;
+    }
+
+    /**
+     * Resets the hit/miss statistics.
+     */
+    public void resetStatistics() {
+        requestHits.set(0);
+        sharedHits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * @return the number of hits in the request tier
+     */
+    public long getRequestHits() {
+        return requestHits.get();
+    }
+
+    /**
+     * @return the number of hits in the shared tier
+     */
+    public long getSharedHits() {
+        return sharedHits.get();
+    }
+
+    /**
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     *
+     */
+    private void clear() {
+        synchronized (sharedEntries) {
+            generation.incrementAndGet();
+            sharedEntries.clear();
+        }
+        LOG.debug("Invalidated the permission decision cache");
+    }
+
+    /**
+     * @return The decisions of the current request (which are reset if the
+     * cache has been invalidated in the meantime) or null if there is no
+     * current request.
+     */
+    private RequestTier getRequestTier() {
+        if (!requestScoped) {
+            return null;
+        }
+
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+
+        final long currentGeneration = generation.get();
+        RequestTier requestTier = (RequestTier) attributes.getAttribute(REQUEST_ATTRIBUTE,
+            RequestAttributes.SCOPE_REQUEST);
+
+        if (requestTier == null || requestTier.generation != currentGeneration) {
+            requestTier = new RequestTier(currentGeneration);
+            attributes.setAttribute(REQUEST_ATTRIBUTE, requestTier, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        return requestTier;
+    }
+
+    /**
+     * @param requestScoped whether to cache the decisions for the current request
+     */
+    public void setRequestScoped(boolean requestScoped) {
+        this.requestScoped = requestScoped;
+    }
+
+    /**
+     * @param maxEntries the maxEntries (of the shared tier) to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param timeToLive the time to live (in seconds) to set
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * The key of a cached decision.
+     */
+    public static final class Key {
+
+        private final Integer userId;
+
+        private final Class<?> entityClass;
+
+        private final Integer entityId;
+
+        private final Permission permission;
+
+        /**
+         * @param userId      The id of the user (null for anonymous users).
+         * @param entityClass The class of the entity.
+         * @param entityId    The id of the entity.
+         * @param permission  The permission.
+         */
+        public Key(Integer userId, Class<?> entityClass, Integer entityId, Permission permission) {
+            this.userId = userId;
+            this.entityClass = entityClass;
+            this.entityId = entityId;
+            this.permission = permission;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Objects.equals(userId, other.userId) &&
+                Objects.equals(entityClass, other.entityClass) &&
+                Objects.equals(entityId, other.entityId) &&
+                permission == other.permission;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, entityClass, entityId, permission);
+        }
+
+        @Override
+        public String toString() {
+            return userId + " " + permission + " " + (entityClass == null ? null : entityClass.getSimpleName())
+                + "#" + entityId;
+        }
+    }
+
+    /**
+     * The decisions of a single request.
+     */
+    private static final class RequestTier {
+
+        private final long generation;
+
+        private final Map<Key, Boolean> decisions = new HashMap<Key, Boolean>();
+
+        private RequestTier(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * A decision of the shared tier.
+     */
+    private static final class SharedEntry {
+
+        private final boolean decision;
+
+        private final long expires;
+
+        private SharedEntry(boolean decision, long expires) {
+            this.decision = decision;
+            this.expires = expires;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expires;
+        }
+    }
+}
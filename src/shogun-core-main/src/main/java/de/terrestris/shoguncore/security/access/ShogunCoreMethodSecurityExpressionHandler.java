@@ -0,0 +1,55 @@
+package de.terrestris.shoguncore.security.access;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.expression.SecurityExpressionOperations;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.core.Authentication;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A {@link DefaultMethodSecurityExpressionHandler} that evaluates the
+ * <code>hasPermission(filterObject, ...)</code> calls of
+ * {@link org.springframework.security.access.prepost.PostFilter} and
+ * {@link org.springframework.security.access.prepost.PreFilter} expressions
+ * for all elements of the filtered collection at once, if the configured
+ * permission evaluator is a {@link ShogunCorePermissionEvaluator} (see
+ * {@link ShogunCorePermissionEvaluator#evaluateInBatch(Authentication, Collection, java.util.function.Supplier)}).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class ShogunCoreMethodSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    /**
+     *
+     */
+    @Override
+    public Object filter(Object filterTarget, Expression filterExpression, EvaluationContext ctx) {
+        final PermissionEvaluator permissionEvaluator = getPermissionEvaluator();
+        final Object rootObject = ctx.getRootObject().getValue();
+
+        if (!(permissionEvaluator instanceof ShogunCorePermissionEvaluator)
+            || !(rootObject instanceof SecurityExpressionOperations)) {
+            return super.filter(filterTarget, filterExpression, ctx);
+        }
+
+        final Collection<?> targetDomainObjects;
+
+        if (filterTarget instanceof Collection) {
+            targetDomainObjects = (Collection<?>) filterTarget;
+        } else if (filterTarget instanceof Object[]) {
+            targetDomainObjects = Arrays.asList((Object[]) filterTarget);
+        } else {
+            return super.filter(filterTarget, filterExpression, ctx);
+        }
+
+        final Authentication authentication = ((SecurityExpressionOperations) rootObject).getAuthentication();
+
+        return ((ShogunCorePermissionEvaluator) permissionEvaluator).evaluateInBatch(authentication,
+            targetDomainObjects, () -> super.filter(filterTarget, filterExpression, ctx));
+    }
+
+}
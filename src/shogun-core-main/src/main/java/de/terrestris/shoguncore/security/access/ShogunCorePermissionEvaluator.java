@@ -7,22 +7,39 @@ import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.security.Permission;
 import de.terrestris.shoguncore.security.access.entity.PersistentObjectPermissionEvaluator;
 import de.terrestris.shoguncore.security.access.factory.EntityPermissionEvaluatorFactory;
+import de.terrestris.shoguncore.util.config.ConfigHolder;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.criterion.Criterion;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.apache.logging.log4j.LogManager.getLogger;
 
 /**
  * @author Nils Bühner
  */
-public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
+public class ShogunCorePermissionEvaluator implements PermissionEvaluator,
+    ApplicationListener<ContextRefreshedEvent> {
 
     /**
      * The LOGGER instance
@@ -54,12 +71,43 @@ public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
      */
     private Boolean usePlainPrincipal = false;
 
+    /**
+     * Used to determine the (super) admin role in
+     * {@link #getPermissionCriterion(Authentication, GenericHibernateDao, String)}.
+     */
+    @Autowired(required = false)
+    private ConfigHolder configHolder;
+
+    /**
+     * Used to determine the (super) admin role in
+     * {@link #getPermissionCriterion(Authentication, GenericHibernateDao, String)}.
+     */
+    @Autowired(required = false)
+    private RoleHierarchy roleHierarchy;
+
     /**
      *
      */
     @SuppressWarnings("rawtypes")
     private EntityPermissionEvaluatorFactory permissionEvaluatorFactory;
 
+    /**
+     * Caches the decisions of {@link #hasPermission(Authentication, Object, Object)}.
+     */
+    @Autowired(required = false)
+    private PermissionDecisionCache permissionDecisionCache;
+
+    /**
+     * Maps the entity classes to their DAOs and permission evaluators, see
+     * {@link #getEntityPermissionRegistry()}.
+     */
+    private volatile EntityPermissionRegistry entityPermissionRegistry;
+
+    /**
+     * The current batch of {@link #evaluateInBatch(Authentication, Collection, Supplier)}.
+     */
+    private final ThreadLocal<PermissionBatch> permissionBatch = new ThreadLocal<>();
+
     /**
      *
      */
@@ -75,25 +123,39 @@ public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
             && targetDomainObject instanceof PersistentObject
             && permissionObject instanceof String) {
 
-            User user = null;
+            final PersistentObject persistentObject = (PersistentObject) targetDomainObject;
+            final Integer objectId = persistentObject.getId();
+            final String simpleClassName = targetDomainObject.getClass().getSimpleName();
+            final Permission permission = Permission.fromString((String) permissionObject);
 
             final Object principalObject = authentication.getPrincipal();
+            final User principal = principalObject instanceof User ? (User) principalObject : null;
+
+            // decisions on the entities of a batch are evaluated in bulk
+            final PermissionBatch batch = permissionBatch.get();
+
+            if (batch != null && objectId != null && permission != null && batch.contains(authentication,
+                persistentObject)) {
+                return batch.getPermittedIds(permission).contains(objectId);
+            }
+
+            // decisions on transient entities (e.g. on CREATE) are not cached
+            PermissionDecisionCache.Key cacheKey = null;
+            long cacheGeneration = 0;
 
-            if (principalObject instanceof User) {
-                final User principal = (User) principalObject;
+            if (permissionDecisionCache != null && objectId != null && permission != null) {
+                cacheKey = new PermissionDecisionCache.Key(principal == null ? null : principal.getId(),
+                    persistentObject.getClass(), objectId, permission);
 
-                if (usePlainPrincipal) {
-                    user = principal;
-                } else {
-                    // get the "full" user from the database
-                    user = userDao.findById(principal.getId());
+                Boolean cachedDecision = permissionDecisionCache.get(cacheKey);
+                if (cachedDecision != null) {
+                    return cachedDecision;
                 }
+
+                cacheGeneration = permissionDecisionCache.getGeneration();
             }
 
-            final PersistentObject persistentObject = (PersistentObject) targetDomainObject;
-            final Integer objectId = persistentObject.getId();
-            final String simpleClassName = targetDomainObject.getClass().getSimpleName();
-            final Permission permission = Permission.fromString((String) permissionObject);
+            final User user = getUser(principal);
 
             String accountName = (user == null) ? "ANONYMOUS" : user.getAccountName();
 
@@ -101,11 +163,18 @@ public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
                 + "' has permission '" + permission + "' on '"
                 + simpleClassName + "' with ID " + objectId);
 
-            PersistentObjectPermissionEvaluator entityPermissionEvaluator = permissionEvaluatorFactory
-                .getEntityPermissionEvaluator(persistentObject.getClass());
+            PersistentObjectPermissionEvaluator entityPermissionEvaluator =
+                getEntityPermissionEvaluator(persistentObject.getClass());
 
             hasPermission = entityPermissionEvaluator.hasPermission(user, persistentObject, permission);
 
+            if (cacheKey != null) {
+                // the plain principal may contain information that is not
+                // persisted, its decisions are only cached for the request
+                permissionDecisionCache.put(cacheKey, hasPermission, cacheGeneration,
+                    !Boolean.TRUE.equals(usePlainPrincipal));
+            }
+
         } else {
             logger.error("Permission evaluation has been aborted.");
         }
@@ -121,55 +190,332 @@ public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
     public boolean hasPermission(Authentication authentication,
                                  Serializable targetId, String targetType, Object permission) {
 
-        Class<?> entityClass;
+        final EntityPermissionRegistry registry = getEntityPermissionRegistry();
 
-        try {
-            entityClass = Class.forName(targetType);
-        } catch (ClassNotFoundException e) {
-            logger.error("Could not create class for type: " + targetType + "(" + e.getMessage() + ")");
+        Class<?> entityClass = registry.getEntityClass(targetType);
+
+        if (entityClass == null) {
             return false;
         }
 
-        // get all available DAOs from the app context
-        Collection<GenericHibernateDao> allDaos = appContext.getBeansOfType(GenericHibernateDao.class).values();
+        // the DAO we'll use to get the entity from the database (an exactly
+        // matching DAO or the "next best" from the entity hierarchy)
+        GenericHibernateDao daoToUse = registry.getDao(entityClass);
+
+        if (daoToUse == null) {
+            return false;
+        }
+
+        // finally get the entity from the DB
+        PersistentObject entity = daoToUse.findById(targetId);
+
+        // call implementation based on entity
+        return this.hasPermission(authentication, entity, permission);
+    }
+
+    /**
+     * Returns the IDs of those of the passed entities, where the
+     * authenticated user has the passed permission. This is the bulk
+     * equivalent of {@link #hasPermission(Authentication, Object, Object)},
+     * which evaluates the permissions of all entities of the same class
+     * at once (see {@link PersistentObjectPermissionEvaluator#getPermittedIds(User, Collection, Permission, GenericHibernateDao)})
+     * instead of loading the permissions of each entity separately.
+     * <p>
+     * Transient entities (without ID) are ignored. Note that (super) admins
+     * are not treated differently here, just as in
+     * {@link #hasPermission(Authentication, Object, Object)}.
+     *
+     * @param authentication The authentication
+     * @param entities       The entities
+     * @param permission     The requested permission
+     * @return The IDs of the permitted entities
+     */
+    public Set<Integer> getPermittedIds(Authentication authentication,
+                                        Collection<? extends PersistentObject> entities, String permission) {
+        return getPermittedIds(authentication, entities, Permission.fromString(permission));
+    }
 
-        // the DAO we'll use to get the entity from the database
-        GenericHibernateDao daoToUse = null;
+    /**
+     * Evaluates all calls of {@link #hasPermission(Authentication, Object, Object)}
+     * on the passed target domain objects (with the passed authentication)
+     * that happen while running the passed evaluation in bulk: the first
+     * call per permission evaluates the permission for all target domain
+     * objects by {@link #getPermittedIds(Authentication, Collection, String)},
+     * all further calls are answered by the result. This is used to
+     * evaluate {@link org.springframework.security.access.prepost.PostFilter}
+     * expressions, see {@link ShogunCoreMethodSecurityExpressionHandler}.
+     *
+     * @param authentication      The authentication
+     * @param targetDomainObjects The target domain objects
+     * @param evaluation          The evaluation
+     * @param <T>                 The result type of the evaluation
+     * @return The result of the evaluation
+     */
+    public <T> T evaluateInBatch(Authentication authentication, Collection<?> targetDomainObjects,
+                                 Supplier<T> evaluation) {
+        final PermissionBatch previousBatch = permissionBatch.get();
+        permissionBatch.set(new PermissionBatch(authentication, targetDomainObjects));
 
-        // we'll first try to find the exact matching DAO
-        for (GenericHibernateDao dao : allDaos) {
-            if (dao.getEntityClass().equals(entityClass)) {
-                // we found a matching DAO
-                daoToUse = dao;
-                logger.debug("Found an exactly matching DAO for type " + entityClass);
-                break;
+        try {
+            return evaluation.get();
+        } finally {
+            if (previousBatch == null) {
+                permissionBatch.remove();
+            } else {
+                permissionBatch.set(previousBatch);
             }
         }
+    }
 
-        // if we could not find an exact match, we'll try to use the "next best"
-        // from the entity hierarchy
-        if (daoToUse == null) {
-            for (GenericHibernateDao dao : allDaos) {
-                if (dao.getEntityClass().isAssignableFrom(entityClass)) {
-                    // we found a DAO that will work (e.g. PersonDao for User.class)
-                    daoToUse = dao;
-                    logger.debug("Found a matching DAO from the hierarchy of type " + entityClass);
-                    break;
+    /**
+     * @param authentication
+     * @param entities
+     * @param permission
+     * @return
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Set<Integer> getPermittedIds(Authentication authentication,
+                                         Collection<? extends PersistentObject> entities, Permission permission) {
+
+        final Set<Integer> permittedIds = new HashSet<>();
+
+        if (authentication == null || entities == null || permission == null) {
+            logger.error("Permission evaluation has been aborted.");
+            return permittedIds;
+        }
+
+        final Object principalObject = authentication.getPrincipal();
+        final User principal = principalObject instanceof User ? (User) principalObject : null;
+        final Integer userId = principal == null ? null : principal.getId();
+        final long cacheGeneration = permissionDecisionCache == null ? 0 : permissionDecisionCache.getGeneration();
+
+        // group the entities without cached decision by their class, as
+        // these may be evaluated differently
+        final Map<Class<?>, List<PersistentObject>> uncachedEntities = new LinkedHashMap<>();
+
+        for (PersistentObject entity : entities) {
+            if (entity == null || entity.getId() == null) {
+                continue;
+            }
+
+            if (permissionDecisionCache != null) {
+                Boolean cachedDecision = permissionDecisionCache.get(new PermissionDecisionCache.Key(userId,
+                    entity.getClass(), entity.getId(), permission));
+                if (cachedDecision != null) {
+                    if (cachedDecision) {
+                        permittedIds.add(entity.getId());
+                    }
+                    continue;
+                }
+            }
+
+            uncachedEntities.computeIfAbsent(entity.getClass(), k -> new ArrayList<>()).add(entity);
+        }
+
+        if (uncachedEntities.isEmpty()) {
+            return permittedIds;
+        }
+
+        final User user = getUser(principal);
+
+        for (Map.Entry<Class<?>, List<PersistentObject>> entry : uncachedEntities.entrySet()) {
+            final PersistentObjectPermissionEvaluator entityPermissionEvaluator =
+                getEntityPermissionEvaluator(entry.getKey());
+
+            // the evaluators compare the plain principal by equals(), which
+            // can't be done in the database
+            final GenericHibernateDao dao = appContext == null || Boolean.TRUE.equals(usePlainPrincipal) ? null
+                : getEntityPermissionRegistry().getDao(entry.getKey());
+
+            final Set<Integer> permittedEntityIds = entityPermissionEvaluator.getPermittedIds(user, entry.getValue(),
+                permission, dao);
+
+            permittedIds.addAll(permittedEntityIds);
+
+            if (permissionDecisionCache != null) {
+                for (PersistentObject entity : entry.getValue()) {
+                    permissionDecisionCache.put(new PermissionDecisionCache.Key(userId, entity.getClass(),
+                            entity.getId(), permission), permittedEntityIds.contains(entity.getId()), cacheGeneration,
+                        !Boolean.TRUE.equals(usePlainPrincipal));
                 }
             }
         }
 
-        // LOG warning if we could NOT find a matching DAO
-        if (daoToUse == null) {
-            logger.warn("Could not find a DAO for type:" + entityClass);
+        logger.trace("Evaluated permission '" + permission + "' on " + entities.size() + " entities in bulk");
+
+        return permittedIds;
+    }
+
+    /**
+     * @param principal The principal (may be null)
+     * @return The user to evaluate the permissions for, i.e. the plain
+     * principal or the "full" user from the database (see
+     * {@link #usePlainPrincipal})
+     */
+    private User getUser(User principal) {
+        if (principal == null) {
+            return null;
+        }
+
+        if (usePlainPrincipal) {
+            return principal;
+        }
+
+        // get the "full" user from the database
+        return userDao.findById(principal.getId());
+    }
+
+    /**
+     * Returns a criterion that restricts queries on the passed dao to those
+     * entities, where the authenticated user has the passed permission. This
+     * is the database side equivalent of calling
+     * {@link #hasPermission(Authentication, Object, Object)} for each entity
+     * and allows to filter in SQL instead of loading (and checking) all
+     * entities.
+     * <p>
+     * Returns null if no restriction should be applied in the database, i.e.
+     * if the user is a (super) admin or if the permission evaluation of the
+     * configured {@link EntityPermissionEvaluatorFactory} can not be expressed
+     * as criterion (e.g. because of custom evaluators). Callers must still
+     * check the results by {@link #hasPermission(Authentication, Object, Object)}.
+     *
+     * @param authentication The authentication
+     * @param dao            The dao of the entities to query
+     * @param permission     The requested permission
+     * @return The criterion or null
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public Criterion getPermissionCriterion(Authentication authentication,
+                                            GenericHibernateDao dao, String permission) {
+
+        final Permission requestedPermission = Permission.fromString(permission);
+
+        // the evaluators compare the plain principal by equals(), which
+        // can't be done in the database
+        if (authentication == null || dao == null || requestedPermission == null || configHolder == null
+            || Boolean.TRUE.equals(usePlainPrincipal) || isSuperAdmin(authentication)) {
+            return null;
+        }
+
+        final Class<? extends PersistentObject> entityClass = dao.getEntityClass();
+        final PersistentObjectPermissionEvaluator entityPermissionEvaluator =
+            getEntityPermissionEvaluator(entityClass);
+
+        // the query may return entities of subclasses, which must be evaluated
+        // by the same evaluator
+        for (Object mappedEntityClass : dao.getMappedEntityClasses()) {
+            PersistentObjectPermissionEvaluator mappedEntityPermissionEvaluator =
+                getEntityPermissionEvaluator((Class) mappedEntityClass);
+            if (!entityPermissionEvaluator.getClass().equals(mappedEntityPermissionEvaluator.getClass())) {
+                logger.debug("Can not create a permission criterion for " + entityClass.getSimpleName()
+                    + " as its subclasses are evaluated differently");
+                return null;
+            }
+        }
+
+        User user = null;
+
+        final Object principalObject = authentication.getPrincipal();
+
+        if (principalObject instanceof User) {
+            // get the "full" user from the database
+            user = userDao.findById(((User) principalObject).getId());
+        }
+
+        return entityPermissionEvaluator.getPermissionCriterion(user, requestedPermission, dao);
+    }
+
+    /**
+     * Resolves the DAOs once the application context has been refreshed, so
+     * that the first permission evaluations don't have to.
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (event.getApplicationContext() == appContext) {
+            entityPermissionRegistry = createEntityPermissionRegistry();
+        }
+    }
+
+    /**
+     * @return The registry of the DAOs and permission evaluators, which is
+     * created on first use if the application context hasn't been refreshed
+     * yet.
+     */
+    public EntityPermissionRegistry getEntityPermissionRegistry() {
+        EntityPermissionRegistry registry = entityPermissionRegistry;
+
+        if (registry == null) {
+            synchronized (this) {
+                registry = entityPermissionRegistry;
+                if (registry == null) {
+                    registry = createEntityPermissionRegistry();
+                    entityPermissionRegistry = registry;
+                }
+            }
+        }
+
+        return registry;
+    }
+
+    /**
+     * @return A new registry of all DAOs of the application context.
+     */
+    @SuppressWarnings("rawtypes")
+    private EntityPermissionRegistry createEntityPermissionRegistry() {
+        Collection<GenericHibernateDao> allDaos = appContext.getBeansOfType(GenericHibernateDao.class).values();
+        return new EntityPermissionRegistry(allDaos, permissionEvaluatorFactory);
+    }
+
+    /**
+     * Returns the (cached) evaluator of the registry if it has been created
+     * already, otherwise the evaluator is requested from the factory.
+     *
+     * @param entityClass The entity class
+     * @return The permission evaluator of the entity class
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private PersistentObjectPermissionEvaluator getEntityPermissionEvaluator(Class entityClass) {
+        final EntityPermissionRegistry registry = entityPermissionRegistry;
+
+        if (registry != null) {
+            return registry.getPermissionEvaluator(entityClass);
+        }
+
+        return permissionEvaluatorFactory.getEntityPermissionEvaluator(entityClass);
+    }
+
+    /**
+     * Whether the authentication has the (super) admin role, i.e. the
+     * equivalent of <code>hasRole(@configHolder.getSuperAdminRoleName())</code>
+     * in the security annotations.
+     *
+     * @param authentication The authentication (may be null)
+     * @return Whether the authentication has the (super) admin role
+     */
+    public boolean isSuperAdmin(Authentication authentication) {
+        if (authentication == null || configHolder == null) {
             return false;
         }
 
-        // finally get the entity from the DB
-        PersistentObject entity = daoToUse.findById(targetId);
+        String superAdminRole = configHolder.getSuperAdminRoleName();
 
-        // call implementation based on entity
-        return this.hasPermission(authentication, entity, permission);
+        // hasRole() in the security annotations adds the prefix if missing
+        if (superAdminRole != null && !superAdminRole.startsWith("ROLE_")) {
+            superAdminRole = "ROLE_" + superAdminRole;
+        }
+
+        Collection<? extends GrantedAuthority> authorities = authentication.getAuthorities();
+        if (roleHierarchy != null) {
+            authorities = roleHierarchy.getReachableGrantedAuthorities(authorities);
+        }
+
+        for (GrantedAuthority authority : authorities) {
+            if (authority.getAuthority() != null && authority.getAuthority().equals(superAdminRole)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -184,6 +530,7 @@ public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
      */
     public void setAppContext(ApplicationContext appContext) {
         this.appContext = appContext;
+        this.entityPermissionRegistry = null;
     }
 
     /**
@@ -214,6 +561,34 @@ public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
         this.usePlainPrincipal = usePlainPrincipal;
     }
 
+    /**
+     * @param configHolder the configHolder to set
+     */
+    public void setConfigHolder(ConfigHolder configHolder) {
+        this.configHolder = configHolder;
+    }
+
+    /**
+     * @param roleHierarchy the roleHierarchy to set
+     */
+    public void setRoleHierarchy(RoleHierarchy roleHierarchy) {
+        this.roleHierarchy = roleHierarchy;
+    }
+
+    /**
+     * @return the permissionDecisionCache
+     */
+    public PermissionDecisionCache getPermissionDecisionCache() {
+        return permissionDecisionCache;
+    }
+
+    /**
+     * @param permissionDecisionCache the permissionDecisionCache to set
+     */
+    public void setPermissionDecisionCache(PermissionDecisionCache permissionDecisionCache) {
+        this.permissionDecisionCache = permissionDecisionCache;
+    }
+
     /**
      * @return the permissionEvaluatorFactory
      */
@@ -229,6 +604,39 @@ public class ShogunCorePermissionEvaluator implements PermissionEvaluator {
     public void setPermissionEvaluatorFactory(
         EntityPermissionEvaluatorFactory permissionEvaluatorFactory) {
         this.permissionEvaluatorFactory = permissionEvaluatorFactory;
+        this.entityPermissionRegistry = null;
+    }
+
+    /**
+     * The target domain objects of
+     * {@link #evaluateInBatch(Authentication, Collection, Supplier)} and the
+     * IDs of those with a certain permission.
+     */
+    private final class PermissionBatch {
+
+        private final Authentication authentication;
+
+        private final Set<PersistentObject> entities = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private final Map<Permission, Set<Integer>> permittedIds = new EnumMap<>(Permission.class);
+
+        private PermissionBatch(Authentication authentication, Collection<?> targetDomainObjects) {
+            this.authentication = authentication;
+            for (Object targetDomainObject : targetDomainObjects) {
+                if (targetDomainObject instanceof PersistentObject) {
+                    entities.add((PersistentObject) targetDomainObject);
+                }
+            }
+        }
+
+        private boolean contains(Authentication authentication, PersistentObject entity) {
+            return this.authentication == authentication && entities.contains(entity);
+        }
+
+        private Set<Integer> getPermittedIds(Permission permission) {
+            return permittedIds.computeIfAbsent(permission,
+                p -> ShogunCorePermissionEvaluator.this.getPermittedIds(authentication, entities, p));
+        }
     }
 
 }
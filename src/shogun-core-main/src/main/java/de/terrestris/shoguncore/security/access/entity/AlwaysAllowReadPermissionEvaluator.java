@@ -1,8 +1,11 @@
 package de.terrestris.shoguncore.security.access.entity;
 
+import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.PersistentObject;
 import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.security.Permission;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
 
 /**
  * @author Nils Bühner
@@ -24,7 +27,7 @@ public class AlwaysAllowReadPermissionEvaluator<E extends PersistentObject> exte
      * @param entityClass
      */
     protected AlwaysAllowReadPermissionEvaluator(Class<E> entityClass) {
-        super(entityClass);
+        super(entityClass, AlwaysAllowReadPermissionEvaluator.class);
     }
 
     /**
@@ -44,4 +47,20 @@ public class AlwaysAllowReadPermissionEvaluator<E extends PersistentObject> exte
         return super.hasPermission(user, entity, permission);
     }
 
+    /**
+     * Does not restrict READ access at all. Uses default implementation
+     * otherwise.
+     */
+    @Override
+    protected Criterion createPermissionCriterion(User user, Permission permission, GenericHibernateDao<?, ?> dao) {
+
+        // always grant READ access ("unsecured" object)
+        if (permission.equals(Permission.READ)) {
+            return Restrictions.sqlRestriction("1=1");
+        }
+
+        // call parent implementation
+        return super.createPermissionCriterion(user, permission, dao);
+    }
+
 }
@@ -1,8 +1,11 @@
 package de.terrestris.shoguncore.security.access.entity;
 
+import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.security.Permission;
 import de.terrestris.shoguncore.model.security.PermissionCollection;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
 
 /**
  * @author Nils Bühner
@@ -24,7 +27,7 @@ public class PermissionCollectionPermissionEvaluator<E extends PermissionCollect
      * @param entityClass
      */
     protected PermissionCollectionPermissionEvaluator(Class<E> entityClass) {
-        super(entityClass);
+        super(entityClass, PermissionCollectionPermissionEvaluator.class);
     }
 
     /**
@@ -38,4 +41,12 @@ public class PermissionCollectionPermissionEvaluator<E extends PermissionCollect
         return true;
     }
 
+    /**
+     * Does not restrict any permission on permission collections.
+     */
+    @Override
+    protected Criterion createPermissionCriterion(User user, Permission permission, GenericHibernateDao<?, ?> dao) {
+        return Restrictions.sqlRestriction("1=1");
+    }
+
 }
@@ -1,12 +1,15 @@
 package de.terrestris.shoguncore.security.access.entity;
 
+import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.PersistentObject;
 import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.UserGroup;
 import de.terrestris.shoguncore.model.security.Permission;
 import de.terrestris.shoguncore.model.security.PermissionCollection;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.criterion.Criterion;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -29,11 +32,30 @@ public class PersistentObjectPermissionEvaluator<E extends PersistentObject> {
      */
     private final Class<E> entityClass;
 
+    /**
+     * The evaluator class whose permission evaluation is matched by the
+     * permission criterion, see {@link #supportsPermissionCriterion()}.
+     */
+    private final Class<?> criterionEvaluatorClass;
+
     /**
      * @param entityClass
      */
     public PersistentObjectPermissionEvaluator(Class<E> entityClass) {
+        this(entityClass, PersistentObjectPermissionEvaluator.class);
+    }
+
+    /**
+     * Constructor for subclasses that override the permission criterion
+     * together with the permission evaluation.
+     *
+     * @param entityClass
+     * @param criterionEvaluatorClass The evaluator class whose permission
+     *                                evaluation is matched by the criterion
+     */
+    protected PersistentObjectPermissionEvaluator(Class<E> entityClass, Class<?> criterionEvaluatorClass) {
         this.entityClass = entityClass;
+        this.criterionEvaluatorClass = criterionEvaluatorClass;
     }
 
     /**
@@ -79,6 +101,110 @@ public class PersistentObjectPermissionEvaluator<E extends PersistentObject> {
         return false;
     }
 
+    /**
+     * Returns the IDs of those of the passed entities, where the passed user
+     * has the passed permission. This is the bulk equivalent of
+     * {@link #hasPermission(User, PersistentObject, Permission)}: if the
+     * permissions can be expressed as criterion (see
+     * {@link #getPermissionCriterion(User, Permission, GenericHibernateDao)}),
+     * the permissions of all entities are evaluated (on the state of the
+     * database) in a single query instead of initializing the permission maps
+     * of each entity. Otherwise the entities are evaluated one by one.
+     *
+     * @param user       The user (may be null)
+     * @param entities   The (persisted) entities
+     * @param permission The requested permission
+     * @param dao        The dao of the entities (may be null to evaluate the
+     *                   entities one by one)
+     * @return The IDs of the permitted entities
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public Set<Integer> getPermittedIds(User user, Collection<? extends E> entities, Permission permission,
+                                        GenericHibernateDao<?, ?> dao) {
+        final Set<Integer> permittedIds = new HashSet<>();
+
+        if (entities.isEmpty()) {
+            return permittedIds;
+        }
+
+        final Criterion permissionCriterion = dao == null ? null : getPermissionCriterion(user, permission, dao);
+
+        if (permissionCriterion != null) {
+            final Set<Integer> ids = new HashSet<>();
+            for (E entity : entities) {
+                ids.add(entity.getId());
+            }
+            permittedIds.addAll(((GenericHibernateDao) dao).findIdsByCriteria(ids, permissionCriterion));
+            return permittedIds;
+        }
+
+        for (E entity : entities) {
+            if (hasPermission(user, entity, permission)) {
+                permittedIds.add(entity.getId());
+            }
+        }
+
+        return permittedIds;
+    }
+
+    /**
+     * Returns a criterion that restricts queries on the passed dao to those
+     * entities, where {@link #hasPermission(User, PersistentObject, Permission)}
+     * would grant the passed permission to the passed user. This allows to
+     * filter in the database instead of evaluating the permissions of each
+     * entity.
+     * <p>
+     * Returns null unless the evaluator opts in by
+     * {@link #supportsPermissionCriterion()}.
+     *
+     * @param user       The user (may be null)
+     * @param permission The requested permission
+     * @param dao        The dao of the entities to query
+     * @return The criterion or null if the permission evaluation of this
+     * evaluator can not be expressed as criterion
+     */
+    public Criterion getPermissionCriterion(User user, Permission permission, GenericHibernateDao<?, ?> dao) {
+        if (!supportsPermissionCriterion()) {
+            logger.debug(getClass().getSimpleName() + " does not support permission criteria");
+            return null;
+        }
+        return createPermissionCriterion(user, permission, dao);
+    }
+
+    /**
+     * Creates the criterion equivalent of
+     * {@link #hasPermission(User, PersistentObject, Permission)}. Subclasses
+     * overriding one of both methods have to override the other one as well.
+     *
+     * @param user       The user (may be null)
+     * @param permission The requested permission
+     * @param dao        The dao of the entities to query
+     * @return The criterion or null if not possible
+     */
+    protected Criterion createPermissionCriterion(User user, Permission permission, GenericHibernateDao<?, ?> dao) {
+        return dao.createPermissionCriterion(user, permission);
+    }
+
+    /**
+     * Whether {@link #createPermissionCriterion(User, Permission, GenericHibernateDao)}
+     * matches {@link #hasPermission(User, PersistentObject, Permission)},
+     * i.e. whether queries may be filtered in the database.
+     * <p>
+     * This is only the case for the evaluator class passed to the
+     * constructor, i.e. every subclass has to opt in explicitly (by passing
+     * its own class), as a subclass that overrides
+     * {@link #hasPermission(User, PersistentObject, Permission)} without
+     * overriding the criterion would otherwise filter differently in the
+     * database. The entities of evaluators that don't support a criterion
+     * are evaluated one by one.
+     *
+     * @return true if this is an instance of the criterion evaluator class
+     * (and not of a subclass)
+     */
+    public boolean supportsPermissionCriterion() {
+        return getClass() == criterionEvaluatorClass;
+    }
+
     /**
      * @param userPermissionsMap
      */
@@ -1,8 +1,11 @@
 package de.terrestris.shoguncore.security.access.entity;
 
+import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.UserGroup;
 import de.terrestris.shoguncore.model.security.Permission;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
 
 /**
  * @author Nils Bühner
@@ -24,7 +27,7 @@ public class UserGroupPermissionEvaluator<E extends UserGroup> extends
      * @param entityClass
      */
     protected UserGroupPermissionEvaluator(Class<E> entityClass) {
-        super(entityClass);
+        super(entityClass, UserGroupPermissionEvaluator.class);
     }
 
     /**
@@ -45,4 +48,22 @@ public class UserGroupPermissionEvaluator<E extends UserGroup> extends
         return super.hasPermission(user, userGroup, permission);
     }
 
+    /**
+     * Includes the groups where the user is a member for READ access. Uses
+     * default implementation otherwise.
+     */
+    @Override
+    protected Criterion createPermissionCriterion(User user, Permission permission, GenericHibernateDao<?, ?> dao) {
+
+        final Criterion parentCriterion = super.createPermissionCriterion(user, permission, dao);
+
+        // always grant READ access to groups in which the user itself is a member
+        if (parentCriterion != null && user != null && user.getId() != null
+            && permission.equals(Permission.READ)) {
+            return Restrictions.or(dao.createCollectionContainsCriterion("members", user.getId()), parentCriterion);
+        }
+
+        return parentCriterion;
+    }
+
 }
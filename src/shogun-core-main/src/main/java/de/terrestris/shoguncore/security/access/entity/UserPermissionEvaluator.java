@@ -1,7 +1,10 @@
 package de.terrestris.shoguncore.security.access.entity;
 
+import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.security.Permission;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
 
 /**
  * @author Nils Bühner
@@ -23,7 +26,7 @@ public class UserPermissionEvaluator<E extends User> extends
      * @param entityClass
      */
     protected UserPermissionEvaluator(Class<E> entityClass) {
-        super(entityClass);
+        super(entityClass, UserPermissionEvaluator.class);
     }
 
     /**
@@ -44,4 +47,22 @@ public class UserPermissionEvaluator<E extends User> extends
         return super.hasPermission(user, entity, permission);
     }
 
+    /**
+     * Includes the user object of the currently logged in user for READ
+     * access. Uses default implementation otherwise.
+     */
+    @Override
+    protected Criterion createPermissionCriterion(User user, Permission permission, GenericHibernateDao<?, ?> dao) {
+
+        final Criterion parentCriterion = super.createPermissionCriterion(user, permission, dao);
+
+        // always grant READ access to own user object (of the logged in user)
+        if (parentCriterion != null && user != null && user.getId() != null
+            && permission.equals(Permission.READ)) {
+            return Restrictions.or(Restrictions.idEq(user.getId()), parentCriterion);
+        }
+
+        return parentCriterion;
+    }
+
 }
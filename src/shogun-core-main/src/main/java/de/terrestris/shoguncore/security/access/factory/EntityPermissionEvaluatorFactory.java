@@ -17,12 +17,35 @@ import de.terrestris.shoguncore.model.security.PermissionCollection;
 import de.terrestris.shoguncore.model.token.Token;
 import de.terrestris.shoguncore.security.access.entity.*;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 
 /**
  * @author Nils Bühner
  */
 public class EntityPermissionEvaluatorFactory<E extends PersistentObject> {
 
+    /**
+     * The evaluators returned by {@link #getCachedEntityPermissionEvaluator(Class)}.
+     */
+    private final Map<Class<E>, PersistentObjectPermissionEvaluator<E>> cachedEvaluators =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Returns the permission evaluator of the given entity class. The
+     * evaluator is created by {@link #getEntityPermissionEvaluator(Class)}
+     * on the first call and reused afterwards, so (custom) evaluators must
+     * not hold any state of a single evaluation.
+     *
+     * @param entityClass The entity class
+     * @return The (cached) permission evaluator
+     */
+    public PersistentObjectPermissionEvaluator<E> getCachedEntityPermissionEvaluator(
+        final Class<E> entityClass) {
+        return cachedEvaluators.computeIfAbsent(entityClass, this::getEntityPermissionEvaluator);
+    }
+
     @SuppressWarnings({"rawtypes", "unchecked"})
     public PersistentObjectPermissionEvaluator<E> getEntityPermissionEvaluator(
         final Class<E> entityClass) {
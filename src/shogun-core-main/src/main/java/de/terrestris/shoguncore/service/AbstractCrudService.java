@@ -5,18 +5,29 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.model.PersistentObject;
+import de.terrestris.shoguncore.paging.PagingResult;
+import de.terrestris.shoguncore.security.access.ShogunCorePermissionEvaluator;
+import de.terrestris.shoguncore.util.data.BulkItemResult;
 import de.terrestris.shoguncore.util.entity.EntityUtil;
+import de.terrestris.shoguncore.util.entity.FetchPlan;
 import org.hibernate.criterion.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PostAuthorize;
 import org.springframework.security.access.prepost.PostFilter;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MultiValueMap;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This abstract service class provides basic CRUD functionality.
@@ -27,6 +38,13 @@ import java.util.Map;
 public abstract class AbstractCrudService<E extends PersistentObject, D extends GenericHibernateDao<E, Integer>>
     extends AbstractDaoService<E, D> {
 
+    /**
+     * Used to filter by READ permission in the database (if possible), the
+     * results will be checked by the {@link PostFilter} annotations anyway.
+     */
+    @Autowired(required = false)
+    private ShogunCorePermissionEvaluator permissionEvaluator;
+
     /**
      * Constructor that sets the concrete entity class for the service.
      * Subclasses MUST call this constructor.
@@ -55,7 +73,7 @@ public abstract class AbstractCrudService<E extends PersistentObject, D extends
     @PreAuthorize("hasRole(@configHolder.getSuperAdminRoleName()) or hasPermission(#entity, 'UPDATE')")
     public E updatePartialWithJsonNode(E entity, JsonNode jsonObject, ObjectMapper objectMapper) throws IOException, JsonProcessingException {
         // update "partially". credits go to http://stackoverflow.com/a/15145480
-        entity = objectMapper.readerForUpdating(entity).readValue(jsonObject);
+        entity = objectMapper.updateValue(entity, jsonObject);
         this.saveOrUpdate(entity);
         return entity;
     }
@@ -72,6 +90,21 @@ public abstract class AbstractCrudService<E extends PersistentObject, D extends
         return dao.findById(id);
     }
 
+    /**
+     * Return the real object from the database, whose associations are
+     * fetched as determined by the passed {@link FetchPlan}. Returns null if
+     * the object does not exist.
+     *
+     * @param id
+     * @param fetchPlan The name of the fetch plan (may be null)
+     * @throws IllegalArgumentException If there is no such fetch plan
+     */
+    @PostAuthorize("hasRole(@configHolder.getSuperAdminRoleName()) or hasPermission(returnObject, 'READ')")
+    @Transactional(readOnly = true)
+    public E findById(Integer id, String fetchPlan) {
+        return dao.findById(id, fetchPlan);
+    }
+
     /**
      * Return a proxy of the object (without hitting the database). This should
      * only be used if it is assumed that the object really exists and where
@@ -85,22 +118,56 @@ public abstract class AbstractCrudService<E extends PersistentObject, D extends
         return dao.loadById(id);
     }
 
+    /**
+     * Returns the entities with the passed IDs the current user may READ.
+     * This is the bulk equivalent of {@link #findById(Integer)}: the entities
+     * are loaded with a single query (per 1000 IDs) and their permissions are
+     * evaluated for all entities at once.
+     *
+     * @param ids The IDs of the entities
+     * @return The readable entities by their ID, entities that don't exist
+     * or may not be read are missing
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, E> findReadableByIds(Collection<Integer> ids) {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        final Set<Integer> idSet = new HashSet<>(ids);
+        idSet.remove(null);
+
+        final Map<Integer, E> entitiesById = findByIds(idSet);
+        final Set<Integer> readableIds = getPermittedIds(authentication, isSuperAdmin(authentication),
+            new ArrayList<>(entitiesById.values()), "READ");
+
+        entitiesById.keySet().retainAll(readableIds);
+        return entitiesById;
+    }
+
     /**
      *
      */
     @PostFilter("hasRole(@configHolder.getSuperAdminRoleName()) or hasPermission(filterObject, 'READ')")
     @Transactional(readOnly = true)
     public List<E> findAll() {
-        return dao.findAll();
+        final Criterion permissionCriterion = getReadPermissionCriterion();
+        if (permissionCriterion == null) {
+            return dao.findAll();
+        }
+        return dao.findByCriteria(permissionCriterion);
     }
 
     /**
      * Returns all entities, but possibly with only the passed fields set with actual values.
+     * <p>
+     * The associations are fetched with the {@link FetchPlan} requested by
+     * the parameter {@value EntityUtil#FETCH_PLAN_PARAM} (see
+     * {@link #determineListFetchPlan(MultiValueMap)}).
      */
     @PostFilter("hasRole(@configHolder.getSuperAdminRoleName()) or hasPermission(filterObject, 'READ')")
     public List<E> findAllRestricted(MultiValueMap<String, String> restrictToRequest) {
         List<String> restrictFields = EntityUtil.determineRestrictFields(restrictToRequest, getEntityClass());
-        return dao.findByCriteriaRestricted(restrictFields);
+        return dao.findByCriteriaRestricted(restrictFields, determineListFetchPlan(restrictToRequest),
+            getReadPermissionCriterion());
     }
 
     /**
@@ -146,42 +213,172 @@ public abstract class AbstractCrudService<E extends PersistentObject, D extends
 
         List<String> restrictFields = EntityUtil.determineRestrictFields(requestedFilter, getEntityClass());
         requestedFilter.remove(EntityUtil.RESTRICT_FIELDS_PARAM);
+        final String fetchPlan = determineListFetchPlan(requestedFilter);
+        requestedFilter.remove(EntityUtil.FETCH_PLAN_PARAM);
+
+        final Criterion filterCriterion = createSimpleFilterCriterion(requestedFilter);
+
+        if (filterCriterion == null) {
+            return new ArrayList<>();
+        }
+
+        return dao.findByCriteriaRestricted(restrictFields, fetchPlan, filterCriterion,
+            getReadPermissionCriterion());
+    }
+
+    /**
+     * Returns a page of all entities the current user may READ, possibly with
+     * only the passed fields set with actual values (see
+     * {@link #findAllRestricted(MultiValueMap)}).
+     * <p>
+     * The page is determined by the optional parameters
+     * {@value EntityUtil#PAGING_OFFSET_PARAM}, {@value EntityUtil#PAGING_LIMIT_PARAM}
+     * and {@value EntityUtil#SORT_PARAM}, e.g.
+     * <code>page:offset=50&amp;page:limit=25&amp;sort:by=-modified,name</code>.
+     *
+     * @param requestParams
+     * @return The requested page and the total count of all readable entities
+     * @throws IllegalArgumentException If the paging parameters are invalid
+     */
+    @Transactional(readOnly = true)
+    public PagingResult<E> findAllRestrictedPaged(MultiValueMap<String, String> requestParams) {
+        return findReadablePage(requestParams, null);
+    }
+
+    /**
+     * Returns a page of the entities that match the given filter (see
+     * {@link #findBySimpleFilter(MultiValueMap)}) and that the current user
+     * may READ. The page is determined as in
+     * {@link #findAllRestrictedPaged(MultiValueMap)}.
+     *
+     * @param requestedFilter
+     * @return The requested page and the total count of all matching
+     * readable entities
+     * @throws IllegalArgumentException If the paging parameters are invalid
+     */
+    @Transactional(readOnly = true)
+    public PagingResult<E> findBySimpleFilterPaged(MultiValueMap<String, String> requestedFilter) {
+        final Criterion filterCriterion = createSimpleFilterCriterion(requestedFilter);
+
+        if (filterCriterion == null) {
+            return new PagingResult<E>(new ArrayList<>(), 0);
+        }
+
+        return findReadablePage(requestedFilter, filterCriterion);
+    }
+
+    /**
+     * Returns the name of the {@link FetchPlan} lists of entities are fetched
+     * with, i.e. the plan requested by the parameter
+     * {@value EntityUtil#FETCH_PLAN_PARAM} or {@value FetchPlan#LIST} if no
+     * plan is requested.
+     *
+     * @param requestParams
+     * @return The name of the fetch plan
+     */
+    protected String determineListFetchPlan(MultiValueMap<String, String> requestParams) {
+        final String fetchPlan = EntityUtil.determineFetchPlan(requestParams);
+        return fetchPlan == null ? FetchPlan.LIST : fetchPlan;
+    }
 
+    /**
+     * Creates the criterion for the given filter (multi value map), see
+     * {@link #findBySimpleFilter(MultiValueMap)}.
+     *
+     * @param requestedFilter
+     * @return The criterion or null if the filter doesn't contain any field
+     * of the entity
+     */
+    protected Criterion createSimpleFilterCriterion(MultiValueMap<String, String> requestedFilter) {
         MultiValueMap<String, Object> origFieldNamesToCastedValues = EntityUtil
             .validFieldNamesWithCastedValues(requestedFilter, getEntityClass());
 
-        // start with an empty list
-        List<E> results = new ArrayList<>();
-
         List<Criterion> orPredicates = new ArrayList<>();
 
-        if (!origFieldNamesToCastedValues.isEmpty()) {
-            for (Map.Entry<String, List<Object>> entry : origFieldNamesToCastedValues.entrySet()) {
-                // if there are multiple values for a field name, we'll check
-                // for equality and connect them with OR
-                List<Criterion> eqExpressions = new ArrayList<>();
-                List<Object> fieldValues = entry.getValue();
+        for (Map.Entry<String, List<Object>> entry : origFieldNamesToCastedValues.entrySet()) {
+            // if there are multiple values for a field name, we'll check
+            // for equality and connect them with OR
+            List<Criterion> eqExpressions = new ArrayList<>();
+            List<Object> fieldValues = entry.getValue();
 
-                for (Object fieldValue : fieldValues) {
-                    final SimpleExpression eq = Restrictions.eq(entry.getKey(), fieldValue);
-                    eqExpressions.add(eq);
-                }
+            for (Object fieldValue : fieldValues) {
+                final SimpleExpression eq = Restrictions.eq(entry.getKey(), fieldValue);
+                eqExpressions.add(eq);
+            }
 
-                if (!eqExpressions.isEmpty()) {
-                    final Criterion[] eqArray = eqExpressions.toArray(new Criterion[0]);
-                    final Disjunction or = Restrictions.or(eqArray);
-                    orPredicates.add(or);
-                }
+            if (!eqExpressions.isEmpty()) {
+                final Criterion[] eqArray = eqExpressions.toArray(new Criterion[0]);
+                final Disjunction or = Restrictions.or(eqArray);
+                orPredicates.add(or);
             }
+        }
+
+        if (orPredicates.isEmpty()) {
+            return null;
+        }
 
-            if (!orPredicates.isEmpty()) {
-                final Criterion[] orArray = orPredicates.toArray(new Criterion[0]);
-                final Conjunction and = Restrictions.and(orArray);
-                results = dao.findByCriteriaRestricted(restrictFields, and);
+        final Criterion[] orArray = orPredicates.toArray(new Criterion[0]);
+        return Restrictions.and(orArray);
+    }
+
+    /**
+     * Returns a page of the entities matching the passed criterion that the
+     * current user may READ. As the results can't be post filtered without
+     * breaking the page sizes, the permissions are evaluated in the database
+     * if possible. Otherwise all matching entities are evaluated (and paged)
+     * in memory.
+     *
+     * @param requestParams The paging, sorting, restrict and fetch plan
+     *                      parameters
+     * @param criterion     The criterion (may be null)
+     * @return
+     */
+    protected PagingResult<E> findReadablePage(MultiValueMap<String, String> requestParams, Criterion criterion) {
+        final Integer offset = EntityUtil.determineNonNegativeIntegerParam(requestParams,
+            EntityUtil.PAGING_OFFSET_PARAM);
+        final Integer limit = EntityUtil.determineNonNegativeIntegerParam(requestParams,
+            EntityUtil.PAGING_LIMIT_PARAM);
+        final List<Order> sorters = EntityUtil.determineSortOrders(requestParams, getEntityClass());
+        final List<String> restrictFields = EntityUtil.determineRestrictFields(requestParams, getEntityClass());
+        final String fetchPlan = determineListFetchPlan(requestParams);
+
+        if (permissionEvaluator == null) {
+            throw new IllegalStateException("Paged queries require a ShogunCorePermissionEvaluator");
+        }
+
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        if (permissionEvaluator.isSuperAdmin(authentication)) {
+            return dao.findByCriteriaRestrictedWithSortingAndPaging(offset, limit, sorters, restrictFields,
+                fetchPlan, criterion);
+        }
+
+        final Criterion permissionCriterion = permissionEvaluator.getPermissionCriterion(
+            authentication, dao, "READ");
+
+        if (permissionCriterion != null) {
+            return dao.findByCriteriaRestrictedWithSortingAndPaging(offset, limit, sorters, restrictFields,
+                fetchPlan, criterion, permissionCriterion);
+        }
+
+        logger.debug("Paging " + getEntityClass().getSimpleName() + " entities in memory as the"
+            + " permissions can't be evaluated in the database");
+
+        final List<E> matching = dao.findByCriteriaRestrictedWithSortingAndPaging(null, null, sorters,
+            restrictFields, fetchPlan, criterion).getResultList();
+        final Set<Integer> readableIds = permissionEvaluator.getPermittedIds(authentication, matching, "READ");
+        final List<E> readable = new ArrayList<>();
+
+        for (E entity : matching) {
+            if (readableIds.contains(entity.getId())) {
+                readable.add(entity);
             }
         }
 
-        return results;
+        final int fromIndex = Math.min(offset == null ? 0 : offset, readable.size());
+        final int toIndex = limit == null ? readable.size() : (int) Math.min((long) fromIndex + limit, readable.size());
+
+        return new PagingResult<E>(new ArrayList<>(readable.subList(fromIndex, toIndex)), readable.size());
     }
 
     /**
@@ -224,4 +421,292 @@ public abstract class AbstractCrudService<E extends PersistentObject, D extends
         dao.delete(e);
     }
 
+    /**
+     * Saves or updates the passed entities in a single transaction and in
+     * JDBC batches. This is the bulk equivalent of
+     * {@link #saveOrUpdate(PersistentObject)}: the permissions are evaluated
+     * for all entities at once and entities without permission are skipped
+     * (instead of failing the whole request).
+     *
+     * @param entities The entities to save or update
+     * @return The results per entity (in the given order)
+     */
+    public List<BulkItemResult> saveOrUpdateAll(List<E> entities) {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        final boolean isSuperAdmin = isSuperAdmin(authentication);
+
+        final List<E> persistedEntities = new ArrayList<>();
+        for (E e : entities) {
+            if (e != null && e.getId() != null) {
+                persistedEntities.add(e);
+            }
+        }
+
+        final Set<Integer> updatableIds = getPermittedIds(authentication, isSuperAdmin, persistedEntities, "UPDATE");
+
+        final List<BulkItemResult> results = new ArrayList<>(entities.size());
+        final List<BulkItemResult> permittedResults = new ArrayList<>();
+        final List<E> permittedEntities = new ArrayList<>();
+
+        for (int i = 0; i < entities.size(); i++) {
+            final E e = entities.get(i);
+            final BulkItemResult result;
+
+            if (e == null) {
+                result = new BulkItemResult(i, null, BulkItemResult.Status.INVALID, "No entity given");
+            } else if (e.getId() == null) {
+                result = new BulkItemResult(i, null, isSuperAdmin || hasPermission(authentication, e, "CREATE")
+                    ? BulkItemResult.Status.CREATED : BulkItemResult.Status.FORBIDDEN);
+            } else {
+                result = new BulkItemResult(i, e.getId(), updatableIds.contains(e.getId())
+                    ? BulkItemResult.Status.UPDATED : BulkItemResult.Status.FORBIDDEN);
+            }
+
+            if (result.isSuccess()) {
+                permittedResults.add(result);
+                permittedEntities.add(e);
+            }
+            results.add(result);
+        }
+
+        // the permissions have been evaluated above, so the (possibly
+        // overridden) method is called directly and not by the proxy
+        dao.executeInBatches(permittedEntities, this::saveOrUpdate);
+
+        for (int i = 0; i < permittedEntities.size(); i++) {
+            permittedResults.get(i).setId(permittedEntities.get(i).getId());
+        }
+
+        return results;
+    }
+
+    /**
+     * Updates the entities identified by the <code>id</code> property of the
+     * passed JSON objects "partially" (see
+     * {@link #updatePartialWithJsonNode(PersistentObject, JsonNode, ObjectMapper)})
+     * in a single transaction and in JDBC batches. The entities are loaded and
+     * their permissions are evaluated for all entities at once, entities
+     * without permission are skipped.
+     *
+     * @param jsonObjects  The JSON objects
+     * @param objectMapper The object mapper
+     * @return The results per JSON object (in the given order)
+     */
+    public List<BulkItemResult> updatePartialWithJsonNodes(List<JsonNode> jsonObjects, ObjectMapper objectMapper) {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        final boolean isSuperAdmin = isSuperAdmin(authentication);
+
+        final Set<Integer> ids = new HashSet<>();
+        for (JsonNode jsonObject : jsonObjects) {
+            Integer id = getId(jsonObject);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+
+        final Map<Integer, E> entitiesById = findByIds(ids);
+        final Set<Integer> updatableIds = getPermittedIds(authentication, isSuperAdmin,
+            new ArrayList<>(entitiesById.values()), "UPDATE");
+
+        final List<BulkItemResult> results = new ArrayList<>(jsonObjects.size());
+        final List<E> permittedEntities = new ArrayList<>();
+        final Set<Integer> processedIds = new HashSet<>();
+
+        for (int i = 0; i < jsonObjects.size(); i++) {
+            final JsonNode jsonObject = jsonObjects.get(i);
+            final Integer id = getId(jsonObject);
+            final E entity = id == null ? null : entitiesById.get(id);
+
+            if (id == null) {
+                results.add(new BulkItemResult(i, null, BulkItemResult.Status.INVALID,
+                    "The JSON object is empty or has no (valid) 'id' property."));
+            } else if (!processedIds.add(id)) {
+                results.add(new BulkItemResult(i, id, BulkItemResult.Status.INVALID,
+                    "The entity with ID " + id + " is contained more than once."));
+            } else if (entity == null) {
+                results.add(new BulkItemResult(i, id, BulkItemResult.Status.NOT_FOUND));
+            } else if (!updatableIds.contains(id)) {
+                results.add(new BulkItemResult(i, id, BulkItemResult.Status.FORBIDDEN));
+            } else {
+                try {
+                    // update "partially", see updatePartialWithJsonNode
+                    permittedEntities.add(objectMapper.updateValue(entity, jsonObject));
+                    results.add(new BulkItemResult(i, id, BulkItemResult.Status.UPDATED));
+                } catch (IOException | RuntimeException e) {
+                    // the entity may have been modified partially
+                    dao.evict(entity);
+                    results.add(new BulkItemResult(i, id, BulkItemResult.Status.INVALID, e.getMessage()));
+                }
+            }
+        }
+
+        dao.executeInBatches(permittedEntities, this::saveOrUpdate);
+
+        return results;
+    }
+
+    /**
+     * Deletes the entities with the passed IDs in a single transaction and in
+     * JDBC batches. This is the bulk equivalent of
+     * {@link #delete(PersistentObject)}: the entities are loaded and their
+     * permissions are evaluated for all entities at once, entities without
+     * permission are skipped.
+     *
+     * @param ids The IDs of the entities to delete
+     * @return The results per ID (in the given order)
+     */
+    public List<BulkItemResult> deleteAll(List<Integer> ids) {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        final boolean isSuperAdmin = isSuperAdmin(authentication);
+
+        final Set<Integer> idSet = new HashSet<>(ids);
+        idSet.remove(null);
+
+        final Map<Integer, E> entitiesById = findByIds(idSet);
+        final Set<Integer> deletableIds = getPermittedIds(authentication, isSuperAdmin,
+            new ArrayList<>(entitiesById.values()), "DELETE");
+
+        final List<BulkItemResult> results = new ArrayList<>(ids.size());
+        final List<E> permittedEntities = new ArrayList<>();
+        final Set<Integer> processedIds = new HashSet<>();
+
+        for (int i = 0; i < ids.size(); i++) {
+            final Integer id = ids.get(i);
+
+            if (id == null) {
+                results.add(new BulkItemResult(i, null, BulkItemResult.Status.INVALID, "No ID given"));
+            } else if (!processedIds.add(id)) {
+                results.add(new BulkItemResult(i, id, BulkItemResult.Status.INVALID,
+                    "The ID " + id + " is contained more than once."));
+            } else if (!entitiesById.containsKey(id)) {
+                results.add(new BulkItemResult(i, id, BulkItemResult.Status.NOT_FOUND));
+            } else if (!deletableIds.contains(id)) {
+                results.add(new BulkItemResult(i, id, BulkItemResult.Status.FORBIDDEN));
+            } else {
+                permittedEntities.add(entitiesById.get(id));
+                results.add(new BulkItemResult(i, id, BulkItemResult.Status.DELETED));
+            }
+        }
+
+        // the permissions have been evaluated above, so the (possibly
+        // overridden) method is called directly and not by the proxy
+        dao.executeInBatches(permittedEntities, this::delete);
+
+        return results;
+    }
+
+    /**
+     * @param ids
+     * @return The entities with the passed IDs by their ID
+     */
+    private Map<Integer, E> findByIds(Set<Integer> ids) {
+        final Map<Integer, E> entitiesById = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (E entity : dao.findByIds(ids)) {
+                entitiesById.put(entity.getId(), entity);
+            }
+        }
+        return entitiesById;
+    }
+
+    /**
+     * @param jsonObject
+     * @return The (integer) value of the id property of the JSON object or
+     * null
+     */
+    private Integer getId(JsonNode jsonObject) {
+        if (jsonObject == null || !jsonObject.hasNonNull("id") || !jsonObject.get("id").canConvertToInt()) {
+            return null;
+        }
+        return jsonObject.get("id").asInt();
+    }
+
+    /**
+     * @param authentication
+     * @return Whether the authenticated user is a super admin
+     */
+    private boolean isSuperAdmin(Authentication authentication) {
+        return permissionEvaluator != null && permissionEvaluator.isSuperAdmin(authentication);
+    }
+
+    /**
+     * @param authentication
+     * @param e
+     * @param permission
+     * @return Whether the authenticated user has the permission on the entity
+     */
+    private boolean hasPermission(Authentication authentication, E e, String permission) {
+        return permissionEvaluator != null && permissionEvaluator.hasPermission(authentication, e, permission);
+    }
+
+    /**
+     * @param authentication
+     * @param isSuperAdmin
+     * @param entities
+     * @param permission
+     * @return The IDs of those of the entities the authenticated user has the
+     * permission on (evaluated in bulk)
+     */
+    private Set<Integer> getPermittedIds(Authentication authentication, boolean isSuperAdmin, List<E> entities,
+                                         String permission) {
+        if (isSuperAdmin) {
+            final Set<Integer> ids = new HashSet<>();
+            for (E e : entities) {
+                ids.add(e.getId());
+            }
+            return ids;
+        }
+        if (permissionEvaluator == null || entities.isEmpty()) {
+            return new HashSet<>();
+        }
+        return permissionEvaluator.getPermittedIds(authentication, entities, permission);
+    }
+
+    /**
+     * Returns a criterion that restricts queries to the entities the current
+     * user may READ, so that these don't have to be loaded (and filtered)
+     * completely.
+     *
+     * @return The criterion or null if the entities can't (or don't have to)
+     * be filtered in the database
+     */
+    protected Criterion getReadPermissionCriterion() {
+        if (permissionEvaluator == null) {
+            return null;
+        }
+        return permissionEvaluator.getPermissionCriterion(
+            SecurityContextHolder.getContext().getAuthentication(), dao, "READ");
+    }
+
+    /**
+     * Returns the IDs of those of the passed (persisted) entities the current
+     * user may READ, evaluated in bulk. This is meant for entities that are
+     * returned along with an entity whose permissions are checked on its own,
+     * e.g. the descendants of a tree node.
+     *
+     * @param entities The entities to check, which may be of any type
+     * @return The IDs of the readable entities
+     */
+    protected Set<Integer> getReadableIds(Collection<? extends PersistentObject> entities) {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (isSuperAdmin(authentication)) {
+            final Set<Integer> ids = new HashSet<>();
+            for (PersistentObject entity : entities) {
+                ids.add(entity.getId());
+            }
+            return ids;
+        }
+        if (permissionEvaluator == null || entities.isEmpty()) {
+            return new HashSet<>();
+        }
+        return permissionEvaluator.getPermittedIds(authentication, entities, "READ");
+    }
+
+    /**
+     * @param permissionEvaluator the permissionEvaluator to set
+     */
+    public void setPermissionEvaluator(ShogunCorePermissionEvaluator permissionEvaluator) {
+        this.permissionEvaluator = permissionEvaluator;
+    }
+
 }
@@ -0,0 +1,136 @@
+package de.terrestris.shoguncore.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.terrestris.shoguncore.dao.ApplicationDao;
+import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.util.application.ApplicationBundle;
+import de.terrestris.shoguncore.util.application.ApplicationBundleCache;
+import de.terrestris.shoguncore.util.entity.EntityIdentifier;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Service class for the bundles of the applications, i.e. the complete
+ * client configuration of an {@link Application} serialized (and compressed)
+ * once and cached until anything it has been built from changes.
+ *
+ * @author terrestris GmbH & Co. KG
+ * @see ApplicationBundleCache
+ */
+@Service("applicationBundleService")
+public class ApplicationBundleService {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(ApplicationBundleService.class);
+
+    /**
+     *
+     */
+    @Autowired
+    @Qualifier("applicationDao")
+    private ApplicationDao<Application> dao;
+
+    /**
+     *
+     */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     *
+     */
+    @Autowired(required = false)
+    private ApplicationBundleCache applicationBundleCache;
+
+    /**
+     * Returns the bundle of the application with the passed ID, which is
+     * built (and cached) if it isn't cached yet. The bundle contains the same
+     * JSON the application would be serialized to otherwise.
+     *
+     * @param applicationId The ID of the application
+     * @return The bundle or null if the application doesn't exist
+     * @throws IOException If the application can't be serialized
+     */
+    @PreAuthorize("hasRole(@configHolder.getSuperAdminRoleName()) or hasPermission(#applicationId, 'de.terrestris.shoguncore.model.Application', 'READ')")
+    @Transactional(readOnly = true)
+    public ApplicationBundle getBundle(Integer applicationId) throws IOException {
+        final boolean cacheEnabled = applicationBundleCache != null && applicationBundleCache.isEnabled();
+
+        if (cacheEnabled) {
+            ApplicationBundle bundle = applicationBundleCache.get(applicationId);
+            if (bundle != null) {
+                return bundle;
+            }
+        }
+
+        final long generation = cacheEnabled ? applicationBundleCache.getGeneration() : 0;
+        final long start = System.currentTimeMillis();
+
+        final Application application = dao.findById(applicationId);
+        if (application == null) {
+            return null;
+        }
+
+        // the serialization loads everything that belongs to the bundle,
+        // i.e. the loaded entities are the dependencies of the bundle
+        final byte[] content = objectMapper.writeValueAsBytes(application);
+        final Set<EntityIdentifier> dependencies = dao.findLoadedEntityGraph(application);
+        final ApplicationBundle bundle = new ApplicationBundle(applicationId, content, dependencies);
+
+        LOG.debug("Built the bundle of application " + applicationId + " (" + bundle.getContentLength()
+            + " bytes, " + bundle.getCompressedContent().length + " bytes compressed, "
+            + dependencies.size() + " entities) in " + (System.currentTimeMillis() - start) + " ms");
+
+        if (cacheEnabled) {
+            applicationBundleCache.put(bundle, generation);
+        }
+
+        return bundle;
+    }
+
+    /**
+     * @return the dao
+     */
+    public ApplicationDao<Application> getDao() {
+        return dao;
+    }
+
+    /**
+     * @param dao the dao to set
+     */
+    public void setDao(ApplicationDao<Application> dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * @param objectMapper the objectMapper to set
+     */
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return the applicationBundleCache
+     */
+    public ApplicationBundleCache getApplicationBundleCache() {
+        return applicationBundleCache;
+    }
+
+    /**
+     * @param applicationBundleCache the applicationBundleCache to set
+     */
+    public void setApplicationBundleCache(ApplicationBundleCache applicationBundleCache) {
+        this.applicationBundleCache = applicationBundleCache;
+    }
+}
@@ -0,0 +1,149 @@
+package de.terrestris.shoguncore.service;
+
+import de.terrestris.shoguncore.security.access.PermissionDecisionCache;
+import de.terrestris.shoguncore.util.application.ApplicationBundleCache;
+import de.terrestris.shoguncore.web.CacheStatisticsController;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Service class for the {@link CacheStatisticsController}. Collects the
+ * statistics of the hibernate second-level and query caches (per region), of
+ * the {@link PermissionDecisionCache} and of the {@link ApplicationBundleCache}.
+ * <p>
+ * The hit and miss counts of hibernate are only collected if the statistics
+ * are enabled (<code>hibernate.generate_statistics</code>).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Service("cacheStatisticsService")
+public class CacheStatisticsService {
+
+    /**
+     * Hibernate SessionFactory
+     */
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    /**
+     *
+     */
+    @Autowired(required = false)
+    private PermissionDecisionCache permissionDecisionCache;
+
+    /**
+     *
+     */
+    @Autowired(required = false)
+    private ApplicationBundleCache applicationBundleCache;
+
+    /**
+     * Returns the statistics of all caches.
+     *
+     * @return The statistics
+     */
+    @PreAuthorize("hasRole(@configHolder.getSuperAdminRoleName())")
+    public Map<String, Object> getStatistics() {
+        final Statistics statistics = sessionFactory.getStatistics();
+        final Map<String, Object> cacheStatistics = new LinkedHashMap<String, Object>();
+
+        cacheStatistics.put("statisticsEnabled", statistics.isStatisticsEnabled());
+        cacheStatistics.put("secondLevelCache", getCounts(statistics.getSecondLevelCacheHitCount(),
+            statistics.getSecondLevelCacheMissCount(), statistics.getSecondLevelCachePutCount()));
+        cacheStatistics.put("queryCache", getCounts(statistics.getQueryCacheHitCount(),
+            statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount()));
+
+        final Map<String, Object> regions = new TreeMap<String, Object>();
+
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(regionName);
+            if (regionStatistics == null) {
+                continue;
+            }
+
+            Map<String, Object> region = getCounts(regionStatistics.getHitCount(),
+                regionStatistics.getMissCount(), regionStatistics.getPutCount());
+            region.put("elementCountInMemory", regionStatistics.getElementCountInMemory());
+            region.put("elementCountOnDisk", regionStatistics.getElementCountOnDisk());
+            region.put("sizeInMemory", regionStatistics.getSizeInMemory());
+
+            regions.put(regionName, region);
+        }
+
+        cacheStatistics.put("regions", regions);
+
+        if (permissionDecisionCache != null) {
+            cacheStatistics.put("permissionDecisionCache", permissionDecisionCache.getStatistics());
+        }
+
+        if (applicationBundleCache != null) {
+            cacheStatistics.put("applicationBundleCache", applicationBundleCache.getStatistics());
+        }
+
+        return cacheStatistics;
+    }
+
+    /**
+     * Resets the statistics of all caches (but not the caches themselves).
+     */
+    @PreAuthorize("hasRole(@configHolder.getSuperAdminRoleName())")
+    public void resetStatistics() {
+        sessionFactory.getStatistics().clear();
+
+        if (permissionDecisionCache != null) {
+            permissionDecisionCache.resetStatistics();
+        }
+
+        if (applicationBundleCache != null) {
+            applicationBundleCache.resetStatistics();
+        }
+    }
+
+    /**
+     * @param hitCount
+     * @param missCount
+     * @param putCount
+     * @return
+     */
+    private Map<String, Object> getCounts(long hitCount, long missCount, long putCount) {
+        final Map<String, Object> counts = new LinkedHashMap<String, Object>();
+        final long total = hitCount + missCount;
+
+        counts.put("hitCount", hitCount);
+        counts.put("missCount", missCount);
+        counts.put("putCount", putCount);
+        counts.put("hitRatio", total == 0 ? 0d : (double) hitCount / total);
+
+        return counts;
+    }
+
+    /**
+     * @param sessionFactory the sessionFactory to set
+     */
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * @param permissionDecisionCache the permissionDecisionCache to set
+     */
+    public void setPermissionDecisionCache(PermissionDecisionCache permissionDecisionCache) {
+        this.permissionDecisionCache = permissionDecisionCache;
+    }
+
+    /**
+     * @param applicationBundleCache the applicationBundleCache to set
+     */
+    public void setApplicationBundleCache(ApplicationBundleCache applicationBundleCache) {
+        this.applicationBundleCache = applicationBundleCache;
+    }
+
+}
@@ -2,6 +2,7 @@ package de.terrestris.shoguncore.service;
 
 import de.terrestris.shoguncore.dao.FileDao;
 import de.terrestris.shoguncore.model.File;
+import de.terrestris.shoguncore.util.blob.BlobStore;
 import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -9,6 +10,8 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -21,6 +24,13 @@ import java.io.InputStream;
 public class FileService<E extends File, D extends FileDao<E>>
     extends PermissionAwareCrudService<E, D> {
 
+    /**
+     * The (optional) store of the file contents. If not configured, the
+     * contents are stored as bytearrays in the database.
+     */
+    @Autowired(required = false)
+    private BlobStore blobStore;
+
     /**
      * Default constructor, which calls the type-constructor
      */
@@ -50,7 +60,8 @@ public class FileService<E extends File, D extends FileDao<E>>
     }
 
     /**
-     * Method persists a given MultipartFile as a bytearray in the database
+     * Method persists a given MultipartFile. The content is streamed into the
+     * blob store (if configured) or stored as a bytearray in the database.
      *
      * @param file
      * @throws Exception
@@ -68,20 +79,10 @@ public class FileService<E extends File, D extends FileDao<E>>
             throw new Exception(errMsg);
         }
 
-        InputStream is = null;
-        byte[] fileByteArray = null;
         E fileToPersist = getEntityClass().newInstance();
 
-        try {
-            is = file.getInputStream();
-            fileByteArray = IOUtils.toByteArray(is);
-        } catch (Exception e) {
-            throw new Exception("Could not create the bytearray: " + e.getMessage());
-        } finally {
-            IOUtils.closeQuietly(is);
-        }
+        storeFileContent(fileToPersist, file);
 
-        fileToPersist.setFile(fileByteArray);
         fileToPersist.setFileType(file.getContentType());
         fileToPersist.setFileName(file.getOriginalFilename());
 
@@ -90,4 +91,59 @@ public class FileService<E extends File, D extends FileDao<E>>
         return fileToPersist;
     }
 
+    /**
+     * Sets the content of the given multipart file (and its size) on the
+     * given entity, i.e. streams it into the blob store (if configured) or
+     * reads it into a bytearray.
+     *
+     * @param entity
+     * @param file
+     * @throws Exception
+     */
+    protected void storeFileContent(E entity, MultipartFile file) throws Exception {
+        try (InputStream is = file.getInputStream()) {
+            if (blobStore != null) {
+                entity.setBlobKey(blobStore.store(is));
+            } else {
+                entity.setFile(IOUtils.toByteArray(is));
+            }
+            entity.setFileSize(file.getSize());
+        } catch (Exception e) {
+            throw new Exception("Could not store the file content: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the content of the given file, i.e. streams it from the blob
+     * store or from its bytearray.
+     *
+     * @param file
+     * @return The stream of the content (to be closed by the caller)
+     * @throws IOException
+     */
+    protected InputStream openFileContent(E file) throws IOException {
+        if (file.getBlobKey() == null) {
+            byte[] fileBytes = file.getFile();
+            return new ByteArrayInputStream(fileBytes == null ? new byte[0] : fileBytes);
+        }
+        if (blobStore == null) {
+            throw new IOException("No blob store configured for the content of file " + file.getId());
+        }
+        return blobStore.open(file.getBlobKey(), 0);
+    }
+
+    /**
+     * @return the blobStore
+     */
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * @param blobStore the blobStore to set
+     */
+    public void setBlobStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
 }
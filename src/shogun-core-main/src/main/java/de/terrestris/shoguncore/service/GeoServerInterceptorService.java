@@ -1,6 +1,8 @@
 package de.terrestris.shoguncore.service;
 
 import de.terrestris.shoguncore.dao.LayerDataSourceDao;
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.model.UserGroup;
 import de.terrestris.shoguncore.model.interceptor.InterceptorRule;
 import de.terrestris.shoguncore.model.layer.source.WmtsLayerDataSource;
 import de.terrestris.shoguncore.util.enumeration.HttpEnum;
@@ -10,6 +12,7 @@ import de.terrestris.shoguncore.util.enumeration.OgcEnum.ServiceType;
 import de.terrestris.shoguncore.util.http.HttpUtil;
 import de.terrestris.shoguncore.util.interceptor.*;
 import de.terrestris.shoguncore.util.model.Response;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpException;
@@ -19,10 +22,13 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import javax.servlet.http.HttpServletRequest;
@@ -33,7 +39,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,6 +88,16 @@ public class GeoServerInterceptorService {
     @Autowired
     @Qualifier("layerDataSourceDao")
     private LayerDataSourceDao<WmtsLayerDataSource> wmtsLayerDataSourceDao;
+    /**
+     * The cache of the (intercepted) GetCapabilities responses, may be null.
+     */
+    @Autowired(required = false)
+    private CapabilitiesCache capabilitiesCache;
+    /**
+     * The cache of the WMTS tiles and data source URLs, may be null.
+     */
+    @Autowired(required = false)
+    private WmtsTileCache wmtsTileCache;
     /**
      * The autowired properties file containing the (application driven)
      * GeoServer namespace - GeoServer BaseURI mapping, e.g.:
@@ -153,6 +169,19 @@ public class GeoServerInterceptorService {
      */
     public static Response sendRequest(MutableHttpServletRequest request)
         throws InterceptorException, HttpException {
+        return sendRequest(request, false);
+    }
+
+    /**
+     * @param request
+     * @param streamBody Whether the body of the response should be streamed
+     *                   instead of being read into memory. A streamed
+     *                   response has to be closed by the caller.
+     * @throws InterceptorException
+     * @throws HttpException
+     */
+    public static Response sendRequest(MutableHttpServletRequest request, boolean streamBody)
+        throws InterceptorException, HttpException {
 
         Response httpResponse = new Response();
 
@@ -178,7 +207,7 @@ public class GeoServerInterceptorService {
                 // if we're called via GET method
 
                 // perform the request with the given parameters
-                httpResponse = HttpUtil.get(fullRequestUri, requestHeaders);
+                httpResponse = HttpUtil.get(fullRequestUri, requestHeaders, streamBody);
 
             } else if (postRequest) {
                 // if we're called via POST method
@@ -189,10 +218,10 @@ public class GeoServerInterceptorService {
                     requestUri = appendQueryString(requestUri, queryString);
                 }
 
-                // get the request body if any
-                String body = OgcXmlUtil.getRequestBody(request);
+                // get the (cached) request body if any, it is forwarded as is
+                byte[] body = request.getBody();
 
-                if (!StringUtils.isEmpty(body)) {
+                if (body.length > 0) {
                     // we do have a POST with string data present
 
                     // parse the content type of the request
@@ -205,11 +234,11 @@ public class GeoServerInterceptorService {
                     }
 
                     // perform the POST request to the URI with queryString and with the given body
-                    httpResponse = HttpUtil.post(requestUri, body, contentType, requestHeaders);
+                    httpResponse = HttpUtil.post(requestUri, body, contentType, requestHeaders, streamBody);
                 } else {
 
                     // perform the POST request with the given name value pairs,
-                    httpResponse = HttpUtil.post(requestUri, allQueryParams, requestHeaders);
+                    httpResponse = HttpUtil.post(requestUri, allQueryParams, requestHeaders, streamBody);
                 }
 
             } else {
@@ -217,7 +246,7 @@ public class GeoServerInterceptorService {
                 throw new InterceptorException("Only GET or POST method is allowed");
             }
 
-        } catch (URISyntaxException | UnsupportedEncodingException e) {
+        } catch (URISyntaxException | IOException e) {
             LOG.error("Error while sending request: " + e.getMessage());
         }
 
@@ -334,16 +363,58 @@ public class GeoServerInterceptorService {
             throw new InterceptorException("No WMTS request path found!");
         }
         String path = matcher.group(1);
-        WmtsLayerDataSource dataSource = wmtsLayerDataSourceDao.findById(id);
-        String baseUrl = dataSource.getUrl();
-        Response response = HttpUtil.get(baseUrl + "/" + path);
+        String baseUrl = getWmtsDataSourceUrl(id);
+        URI tileUri = new URI(baseUrl + "/" + path);
+
+        if (wmtsTileCache == null || !wmtsTileCache.isEnabled()) {
+            // tiles are passed through as is, no need to read them into memory
+            Response response = HttpUtil.get(tileUri, null, true);
+
+            HttpHeaders forwardingHeaders = getResponseHeadersToForward(response.getHeaders());
+            response.setHeaders(forwardingHeaders);
+
+            return response;
+        }
+
+        Response cachedTile = wmtsTileCache.get(id, baseUrl, path);
+        if (cachedTile != null) {
+            return cachedTile;
+        }
+
+        // the tile has to be read into memory to cache it
+        Response response = HttpUtil.get(tileUri, null, false);
+
+        String cacheControl = response.getHeaders() != null ?
+            response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL) : null;
 
         HttpHeaders forwardingHeaders = getResponseHeadersToForward(response.getHeaders());
         response.setHeaders(forwardingHeaders);
 
+        wmtsTileCache.put(id, baseUrl, path, response, cacheControl);
+
         return response;
     }
 
+    /**
+     * Returns the (cached) URL of the WMTS data source with the given id.
+     *
+     * @param id
+     * @return
+     * @throws InterceptorException If there is no such data source.
+     */
+    private String getWmtsDataSourceUrl(int id) throws InterceptorException {
+        Function<Integer, String> loader = (dataSourceId) -> {
+            WmtsLayerDataSource dataSource = wmtsLayerDataSourceDao.findById(dataSourceId);
+            return dataSource != null ? dataSource.getUrl() : null;
+        };
+
+        String url = wmtsTileCache != null ? wmtsTileCache.getDataSourceUrl(id, loader) : loader.apply(id);
+        if (url == null) {
+            throw new InterceptorException("No WMTS data source with id " + id + " found!");
+        }
+        return url;
+    }
+
     /**
      * @param request
      * @return
@@ -371,6 +442,11 @@ public class GeoServerInterceptorService {
         throws InterceptorException, URISyntaxException,
         HttpException, IOException {
 
+        // anything the response depends on has to be read after this point,
+        // a response built from outdated rules won't be cached then
+        final long cacheGeneration = capabilitiesCache != null ?
+            capabilitiesCache.getGeneration() : 0;
+
         // wrap the request, we want to manipulate it
         MutableHttpServletRequest mutableRequest =
             new MutableHttpServletRequest(request);
@@ -395,22 +471,133 @@ public class GeoServerInterceptorService {
         mutableRequest = ogcMessageDistributor
             .distributeToRequestInterceptor(mutableRequest, message);
 
-        // send the request
-        // TODO: Move to global proxy class
-        Response response = sendRequest(mutableRequest);
+        CapabilitiesCache.Key cacheKey = getCapabilitiesCacheKey(mutableRequest, message);
+        if (cacheKey == null) {
+            // the response body is passed through as stream if it isn't
+            // intercepted or if it's a capabilities document, which is
+            // rewritten on the fly. Other intercepted bodies are read into
+            // memory.
+            return sendAndInterceptRequest(mutableRequest, message,
+                message.isResponseAllowed() || OperationType.GET_CAPABILITIES.equals(message.getOperation()));
+        }
+
+        String ifNoneMatch = mutableRequest.getHeader(HttpHeaders.IF_NONE_MATCH);
+
+        CapabilitiesCache.Entry entry = capabilitiesCache.get(cacheKey);
+        if (entry != null) {
+            LOG.trace("Responding with the cached capabilities of " + cacheKey);
+            return entry.toResponse(ifNoneMatch);
+        }
+
+        // the (rewritten) body has to be read into memory to be cached, but
+        // the original body isn't held in memory additionally
+        Response response = sendAndInterceptRequest(mutableRequest, message, true);
+        try {
+            response.bufferBody();
+        } catch (IOException e) {
+            IOUtils.closeQuietly(response);
+            throw e;
+        }
+
+        entry = capabilitiesCache.put(cacheKey, response, cacheGeneration);
+        if (entry == null) {
+            return response;
+        }
 
-        // intercept the response (if needed)
-        Response interceptedResponse = ogcMessageDistributor
-            .distributeToResponseInterceptor(mutableRequest, response, message);
+        LOG.debug("Cached the capabilities of " + cacheKey);
+
+        return entry.toResponse(ifNoneMatch);
+    }
+
+    /**
+     * Sends the (already intercepted) request to GeoServer and intercepts the
+     * response.
+     *
+     * @param mutableRequest
+     * @param message
+     * @param streamBody     Whether the body of the response should be
+     *                       streamed, see {@link #sendRequest(MutableHttpServletRequest, boolean)}.
+     * @return
+     * @throws InterceptorException
+     * @throws HttpException
+     * @throws IOException
+     */
+    private Response sendAndInterceptRequest(MutableHttpServletRequest mutableRequest,
+                                             OgcMessage message, boolean streamBody)
+        throws InterceptorException, HttpException, IOException {
 
-        // finally filter the white-listed response headers
         // TODO: Move to global proxy class
-        HttpHeaders forwardingHeaders = getResponseHeadersToForward(
-            interceptedResponse.getHeaders()
-        );
-        interceptedResponse.setHeaders(forwardingHeaders);
+        Response response = sendRequest(mutableRequest, streamBody);
+
+        try {
+            // intercept the response (if needed)
+            Response interceptedResponse = ogcMessageDistributor
+                .distributeToResponseInterceptor(mutableRequest, response, message);
+
+            // release the original (streamed) body if it has been replaced
+            if (interceptedResponse != response &&
+                interceptedResponse.getBodyStream() != response.getBodyStream()) {
+                IOUtils.closeQuietly(response);
+            }
+
+            // finally filter the white-listed response headers
+            // TODO: Move to global proxy class
+            HttpHeaders forwardingHeaders = getResponseHeadersToForward(
+                interceptedResponse.getHeaders()
+            );
+            interceptedResponse.setHeaders(forwardingHeaders);
+
+            return interceptedResponse;
+        } catch (InterceptorException | IOException | RuntimeException e) {
+            IOUtils.closeQuietly(response);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the key of the capabilities cache for the given request or null
+     * if the request isn't a (cacheable) GetCapabilities request.
+     *
+     * @param mutableRequest
+     * @param message
+     * @return
+     */
+    private CapabilitiesCache.Key getCapabilitiesCacheKey(MutableHttpServletRequest mutableRequest,
+                                                          OgcMessage message) {
 
-        return interceptedResponse;
+        if (capabilitiesCache == null || !capabilitiesCache.isEnabled() ||
+            !OperationType.GET_CAPABILITIES.equals(message.getOperation()) ||
+            !"GET".equalsIgnoreCase(mutableRequest.getMethod())) {
+            return null;
+        }
+
+        // the layers the response interceptors keep depend on the user
+        Integer userId = null;
+        Set<Integer> userGroupIds = new HashSet<>();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User) {
+            User user = (User) authentication.getPrincipal();
+            userId = user.getId();
+            // the groups of the principal are fetched on login, changes of
+            // the memberships invalidate the cache anyway
+            if (Hibernate.isInitialized(user.getUserGroups())) {
+                for (UserGroup userGroup : user.getUserGroups()) {
+                    userGroupIds.add(userGroup.getId());
+                }
+            }
+        }
+
+        // the parameters are taken after the request interceptors have been
+        // applied, i.e. as they are sent to GeoServer
+        return new CapabilitiesCache.Key(
+            mutableRequest.getRequestURI(),
+            mutableRequest.getParameterMap(),
+            mutableRequest.getHeader("x-forwarded-host"),
+            mutableRequest.getHeader("x-forwarded-proto"),
+            mutableRequest.getHeader("x-geoserver-credentials"),
+            userId,
+            userGroupIds
+        );
     }
 
     /**
@@ -549,73 +736,28 @@ public class GeoServerInterceptorService {
             "  * EndPoint: " + endPoint
         );
 
-        // get all persisted rules for the given service and event
-        List<InterceptorRule> interceptorRules = this.interceptorRuleService
-            .findAllRulesForServiceAndEvent(requestService, ruleEvent);
+        // the index holds all rules (grouped by event and service) and
+        // evaluates the most specific one without any database round trip
+        InterceptorRuleIndex ruleIndex = this.interceptorRuleService.getRuleIndex();
 
-        LOG.trace("Got " + interceptorRules.size() + " rule(s) from database.");
-
-        if (LOG.isTraceEnabled()) {
-            for (InterceptorRule interceptorRule : interceptorRules) {
-                LOG.trace("Returned rule is: " + interceptorRule);
-            }
-        }
-
-        LOG.trace("Evaluating the given rules for the most specific one:");
-
-        // create the predicate for finding the most specific rule out of
-        // the given rules (conditions in descending specific order).
-        // note: we don't need to check for request event (request/response)
-        // and the service type at all as the rule candidates are filtered by
-        // the DAO method already. the last check for service specificity found
-        // here is a fallback only.
-        HashMap<InterceptorRule, Integer> ruleMap = new HashMap<>();
-        interceptorRules.stream().forEach((rule) -> {
-            int score = 0;
-
-            if (!StringUtils.isEmpty(rule.getEndPoint()) && !StringUtils.isEmpty(endPoint) && !StringUtils.equalsIgnoreCase(rule.getEndPoint(), endPoint)) {
-                return;
-            }
-            if (rule.getService() != null && !Objects.equals(rule.getService(), service) && service != null) {
-                return;
-            }
-            if (rule.getOperation() != null && !Objects.equals(rule.getOperation(), operation) && operation != null) {
-                return;
-            }
-            if (endPoint != null && Objects.equals(rule.getEndPoint(), endPoint)) {
-                ++score;
-            }
-            if (operation != null && Objects.equals(rule.getOperation(), operation)) {
-                ++score;
-            }
-            if (service != null && Objects.equals(rule.getService(), service)) {
-                ++score;
-            }
-            ruleMap.put(rule, score);
-        });
-
-        AtomicReference<Integer> biggestScore = new AtomicReference<>(0);
-        AtomicReference<InterceptorRule> mostSpecific = new AtomicReference<>();
-
-        ruleMap.entrySet().stream().forEach((entry) -> {
-            if (entry.getValue() > biggestScore.get()) {
-                mostSpecific.set(entry.getKey());
-                biggestScore.set(entry.getValue());
-            }
-        });
-
-        if (interceptorRules.size() == 0) {
+        InterceptorRule mostSpecific;
+        try {
+            mostSpecific = ruleIndex.getMostSpecificRule(service, operation,
+                endPoint, HttpEnum.EventType.fromString(ruleEvent));
+        } catch (InterceptorException e) {
             LOG.error("Got no interceptor rules for this request/response. " +
                 "Usually this should not happen as one has to define at " +
                 "least the basic sets of rules (e.g. ALLOW all WMS " +
                 "requests) when using the interceptor.");
-            throw new InterceptorException("No interceptor rule found.");
-        } else if (LOG.isTraceEnabled()) {
+            throw e;
+        }
+
+        if (LOG.isTraceEnabled()) {
             LOG.trace("Identified the following rule as most the specific " +
-                "one: " + mostSpecific.get());
+                "one: " + mostSpecific);
         }
 
-        return mostSpecific.get();
+        return mostSpecific;
     }
 
     /**
@@ -722,4 +864,17 @@ public class GeoServerInterceptorService {
         this.geoServerNameSpaces = geoServerNameSpaces;
     }
 
+    /**
+     * @param capabilitiesCache the capabilitiesCache to set
+     */
+    public void setCapabilitiesCache(CapabilitiesCache capabilitiesCache) {
+        this.capabilitiesCache = capabilitiesCache;
+    }
+
+    /**
+     * @param wmtsTileCache the wmtsTileCache to set
+     */
+    public void setWmtsTileCache(WmtsTileCache wmtsTileCache) {
+        this.wmtsTileCache = wmtsTileCache;
+    }
 }
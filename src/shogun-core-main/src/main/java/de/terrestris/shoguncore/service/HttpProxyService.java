@@ -7,6 +7,7 @@ import org.apache.http.HttpException;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -230,7 +231,7 @@ public class HttpProxyService {
         if (HttpUtil.isHttpGetRequest(request)) {
             try {
                 LOG.debug("Forwarding as GET to: " + url);
-                response = HttpUtil.forwardGet(url.toURI(), request, false);
+                response = HttpUtil.forwardGet(url.toURI(), request, false, true);
             } catch (URISyntaxException | HttpException e) {
                 String errorMessage = "Error forwarding GET request: " + e.getMessage();
                 LOG.error(errorMessage);
@@ -249,7 +250,7 @@ public class HttpProxyService {
             } else {
                 try {
                     LOG.debug("Forwarding as POST");
-                    response = HttpUtil.forwardPost(url.toURI(), request, false);
+                    response = HttpUtil.forwardPost(url.toURI(), request, false, true);
                 } catch (URISyntaxException | HttpException e) {
                     String errorMessage = "Error forwarding POST request: " + e.getMessage();
                     LOG.error(errorMessage);
@@ -261,7 +262,10 @@ public class HttpProxyService {
             return RESPONSE_405_METHOD_NOT_ALLOWED;
         }
 
-        byte[] bytes = response.getBody();
+        // pass a streamed body through without reading it into memory, the
+        // stream will be closed after it has been written to the client
+        final Object body = response.isStreamed() ?
+            new InputStreamResource(response.getBodyStream()) : response.getBody();
         final HttpHeaders responseHeadersToForward = response.getHeaders();
         //getResponseHeadersToForward(response); // TODO adapt headers in the future!
 
@@ -277,7 +281,7 @@ public class HttpProxyService {
 
         final HttpStatus responseHttpStatus = response.getStatusCode();
 
-        return new ResponseEntity<>(bytes, responseHeadersToForward, responseHttpStatus);
+        return new ResponseEntity<>(body, responseHeadersToForward, responseHttpStatus);
     }
 
     /**
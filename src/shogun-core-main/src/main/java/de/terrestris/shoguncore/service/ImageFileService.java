@@ -2,24 +2,43 @@ package de.terrestris.shoguncore.service;
 
 import de.terrestris.shoguncore.dao.ImageFileDao;
 import de.terrestris.shoguncore.model.ImageFile;
+import de.terrestris.shoguncore.model.ImageFile.ThumbnailStatus;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.imgscalr.Scalr;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.*;
 
 /**
  * Service class for the {@link ImageFile} model.
+ * <p>
+ * The thumbnails of an image (of the requested and of all configured sizes)
+ * are created from a single decode of the image. If a thumbnail task
+ * executor is configured, they're created in the background after the image
+ * has been saved (and the thumbnail status of the image is updated
+ * accordingly), otherwise they're created before the image is saved.
  *
  * @author Daniel Koch
  * @author Johannes Weskamm
@@ -33,6 +52,33 @@ public class ImageFileService<E extends ImageFile, D extends ImageFileDao<E>>
      */
     private static final Integer DEFAULT_THUMBNAIL_SIZE = 100;
 
+    /**
+     * The minimum factor the decoded image has to be larger than the largest
+     * thumbnail. Larger images are subsampled while decoding.
+     */
+    private static final int THUMBNAIL_OVERSAMPLING = 4;
+
+    /**
+     * The (comma separated) sizes of the thumbnails that are created for
+     * every image (in addition to the requested size)
+     */
+    @Value("${image.thumbnail.sizes:100}")
+    private String thumbnailSizes = String.valueOf(DEFAULT_THUMBNAIL_SIZE);
+
+    /**
+     * The (optional) executor of the thumbnail creation, should be bounded
+     */
+    @Autowired(required = false)
+    @Qualifier("thumbnailTaskExecutor")
+    private TaskExecutor thumbnailTaskExecutor;
+
+    /**
+     * The transaction manager (required for the thumbnail creation in the
+     * background)
+     */
+    @Autowired(required = false)
+    private PlatformTransactionManager transactionManager;
+
     /**
      * Default constructor, which calls the type-constructor
      */
@@ -58,24 +104,40 @@ public class ImageFileService<E extends ImageFile, D extends ImageFileDao<E>>
      */
     public static byte[] scaleImage(byte[] imageBytes, String outputFormat,
                                     Integer targetSize) throws Exception {
-        byte[] imageInBytes;
         BufferedImage image = null;
-        BufferedImage resizedImage = null;
 
-        try (
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            InputStream is = new ByteArrayInputStream(imageBytes);
-        ) {
+        try (InputStream is = new ByteArrayInputStream(imageBytes)) {
             image = ImageIO.read(is);
-            resizedImage = Scalr.resize(image, targetSize);
-            ImageIO.write(resizedImage, outputFormat, baos);
-            imageInBytes = baos.toByteArray();
+            return scaleImage(image, outputFormat, targetSize);
         } catch (IOException e) {
             throw new Exception("Error on resizing an image: " + e.getMessage());
         } finally {
             if (image != null) {
                 image.flush();
             }
+        }
+    }
+
+    /**
+     * Scales an (already decoded) image by the given dimensions
+     *
+     * @param image
+     * @param outputFormat
+     * @param targetSize   width/height in px (square)
+     * @throws Exception
+     */
+    public static byte[] scaleImage(BufferedImage image, String outputFormat,
+                                    Integer targetSize) throws Exception {
+        byte[] imageInBytes;
+        BufferedImage resizedImage = null;
+
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            resizedImage = Scalr.resize(image, targetSize);
+            ImageIO.write(resizedImage, outputFormat, baos);
+            imageInBytes = baos.toByteArray();
+        } catch (IOException e) {
+            throw new Exception("Error on resizing an image: " + e.getMessage());
+        } finally {
             if (resizedImage != null) {
                 resizedImage.flush();
             }
@@ -83,6 +145,104 @@ public class ImageFileService<E extends ImageFile, D extends ImageFileDao<E>>
         return imageInBytes;
     }
 
+    /**
+     * Reads the dimensions of an image from its header, i.e. without decoding
+     * the pixels.
+     *
+     * @param imageStream
+     * @return The dimensions or null if the image format isn't supported
+     * @throws IOException
+     */
+    public static Dimension readImageDimensions(InputStream imageStream) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(imageStream)) {
+            ImageReader reader = getImageReader(iis);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Creates thumbnails of the given sizes from a single decode of the image.
+     * Images much larger than the largest thumbnail are subsampled while
+     * decoding, i.e. their pixels are never held in memory completely.
+     *
+     * @param imageStream
+     * @param outputFormat The format of the thumbnails, the format of the
+     *                     image is used if it isn't supported
+     * @param targetSizes  width/height in px (square)
+     * @return The thumbnails by their size
+     * @throws Exception
+     */
+    public static Map<Integer, byte[]> createThumbnails(InputStream imageStream, String outputFormat,
+                                                        Collection<Integer> targetSizes) throws Exception {
+        final Map<Integer, byte[]> thumbnails = new HashMap<>();
+        if (targetSizes.isEmpty()) {
+            return thumbnails;
+        }
+
+        BufferedImage image = null;
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(imageStream)) {
+            ImageReader reader = getImageReader(iis);
+            if (reader == null) {
+                throw new Exception("Unsupported image format");
+            }
+
+            final String format;
+            try {
+                format = outputFormat != null && ImageIO.getImageWritersByFormatName(outputFormat).hasNext()
+                    ? outputFormat : reader.getFormatName();
+
+                final int imageSize = Math.max(reader.getWidth(0), reader.getHeight(0));
+                final int subsampling = Math.max(1,
+                    imageSize / (Collections.max(targetSizes) * THUMBNAIL_OVERSAMPLING));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+
+            for (Integer targetSize : targetSizes) {
+                thumbnails.put(targetSize, scaleImage(image, format, targetSize));
+            }
+        } catch (IOException e) {
+            throw new Exception("Error on creating the thumbnails of an image: " + e.getMessage());
+        } finally {
+            if (image != null) {
+                image.flush();
+            }
+        }
+
+        return thumbnails;
+    }
+
+    /**
+     * @param iis
+     * @return The reader of the image (with the given input) or null if the
+     * image format isn't supported
+     */
+    private static ImageReader getImageReader(ImageInputStream iis) {
+        if (iis == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(iis, true, true);
+        return reader;
+    }
+
     /**
      * We have to use {@link Qualifier} to define the correct dao here.
      * Otherwise, spring can not decide which dao has to be autowired here
@@ -120,7 +280,8 @@ public class ImageFileService<E extends ImageFile, D extends ImageFileDao<E>>
     }
 
     /**
-     * Method persists a given Image as a bytearray in the database
+     * Method persists a given Image. The content is streamed into the blob
+     * store (if configured) or stored as a bytearray in the database.
      *
      * @param file
      * @param createThumbnail
@@ -131,52 +292,218 @@ public class ImageFileService<E extends ImageFile, D extends ImageFileDao<E>>
     public E saveImage(MultipartFile file, boolean createThumbnail, Integer thumbnailTargetSize)
         throws Exception {
 
-        InputStream is = null;
-        ByteArrayInputStream bais = null;
         E imageToPersist = null;
 
         try {
-            is = file.getInputStream();
-            byte[] imageByteArray = IOUtils.toByteArray(is);
-
             // create a new instance (generic)
             imageToPersist = getEntityClass().newInstance();
 
-            // create a thumbnail if requested
-            if (createThumbnail) {
-                byte[] thumbnail = scaleImage(
-                    imageByteArray,
-                    FilenameUtils.getExtension(file.getOriginalFilename()),
-                    thumbnailTargetSize);
-                imageToPersist.setThumbnail(thumbnail);
-            }
-
             // set binary image data
-            imageToPersist.setFile(imageByteArray);
+            storeFileContent(imageToPersist, file);
 
             // detect dimensions
-            bais = new ByteArrayInputStream(imageByteArray);
+            Dimension dimension;
+            try (InputStream is = file.getInputStream()) {
+                dimension = readImageDimensions(is);
+            }
 
-            BufferedImage bimg = ImageIO.read(bais);
+            if (dimension == null) {
+                throw new Exception("Unsupported image format");
+            }
 
             // set basic image properties
-            imageToPersist.setWidth(bimg.getWidth());
-            imageToPersist.setHeight(bimg.getHeight());
+            imageToPersist.setWidth(dimension.width);
+            imageToPersist.setHeight(dimension.height);
             imageToPersist.setFileType(file.getContentType());
             imageToPersist.setFileName(file.getOriginalFilename());
 
+            final Set<Integer> targetSizes = createThumbnail
+                ? getThumbnailTargetSizes(thumbnailTargetSize) : Collections.<Integer>emptySet();
+            final boolean createInBackground = !targetSizes.isEmpty()
+                && thumbnailTaskExecutor != null && transactionManager != null;
+
+            // create the thumbnails if requested
+            if (createInBackground) {
+                imageToPersist.setThumbnailStatus(ThumbnailStatus.PENDING);
+            } else if (!targetSizes.isEmpty()) {
+                try (InputStream is = file.getInputStream()) {
+                    setThumbnails(imageToPersist, createThumbnails(is,
+                        FilenameUtils.getExtension(file.getOriginalFilename()), targetSizes), thumbnailTargetSize);
+                }
+            }
+
             // persist the image
             dao.saveOrUpdate(imageToPersist);
 
+            if (createInBackground) {
+                scheduleThumbnails(imageToPersist.getId(), targetSizes, thumbnailTargetSize);
+            }
+
         } catch (Exception e) {
             throw new Exception("Could not create the Image in DB: "
                 + e.getMessage());
-        } finally {
-            IOUtils.closeQuietly(is);
-            IOUtils.closeQuietly(bais);
         }
 
         return imageToPersist;
     }
 
+    /**
+     * Creates the thumbnails of the given image and sets them (and the
+     * thumbnail status) on the image in a transaction of its own. This method
+     * is called in the background by the thumbnail task executor.
+     *
+     * @param imageId
+     * @param targetSizes
+     * @param thumbnailTargetSize The size of the (default) thumbnail
+     */
+    protected void generateThumbnails(Integer imageId, Set<Integer> targetSizes, Integer thumbnailTargetSize) {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        try {
+            final E image = transactionTemplate.execute(status -> dao.findById(imageId));
+            if (image == null) {
+                logger.warn("Could not create the thumbnails of image " + imageId + ": The image doesn't exist");
+                return;
+            }
+
+            final Map<Integer, byte[]> thumbnails;
+            try (InputStream is = openFileContent(image)) {
+                thumbnails = createThumbnails(is, FilenameUtils.getExtension(image.getFileName()), targetSizes);
+            }
+
+            transactionTemplate.execute(status -> {
+                E currentImage = dao.findById(imageId);
+                if (currentImage != null) {
+                    setThumbnails(currentImage, thumbnails, thumbnailTargetSize);
+                    dao.saveOrUpdate(currentImage);
+                }
+                return null;
+            });
+
+            logger.debug("Created " + thumbnails.size() + " thumbnail(s) of image " + imageId);
+        } catch (Exception e) {
+            logger.error("Could not create the thumbnails of image " + imageId + ": " + e.getMessage());
+            setThumbnailStatus(transactionTemplate, imageId, ThumbnailStatus.FAILED);
+        }
+    }
+
+    /**
+     * Schedules the creation of the thumbnails after the current transaction
+     * has been committed (if any).
+     *
+     * @param imageId
+     * @param targetSizes
+     * @param thumbnailTargetSize
+     */
+    private void scheduleThumbnails(Integer imageId, Set<Integer> targetSizes, Integer thumbnailTargetSize) {
+        final Runnable task = () -> generateThumbnails(imageId, targetSizes, thumbnailTargetSize);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    executeThumbnailTask(imageId, task);
+                }
+            });
+        } else {
+            executeThumbnailTask(imageId, task);
+        }
+    }
+
+    /**
+     * @param imageId
+     * @param task
+     */
+    private void executeThumbnailTask(Integer imageId, Runnable task) {
+        try {
+            thumbnailTaskExecutor.execute(task);
+        } catch (TaskRejectedException e) {
+            logger.error("Could not schedule the thumbnails of image " + imageId + ": " + e.getMessage());
+
+            final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            setThumbnailStatus(transactionTemplate, imageId, ThumbnailStatus.FAILED);
+        }
+    }
+
+    /**
+     * @param transactionTemplate
+     * @param imageId
+     * @param thumbnailStatus
+     */
+    private void setThumbnailStatus(TransactionTemplate transactionTemplate, Integer imageId,
+                                    ThumbnailStatus thumbnailStatus) {
+        try {
+            transactionTemplate.execute(status -> {
+                E image = dao.findById(imageId);
+                if (image != null) {
+                    image.setThumbnailStatus(thumbnailStatus);
+                    dao.saveOrUpdate(image);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.error("Could not set the thumbnail status of image " + imageId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param image
+     * @param thumbnails
+     * @param thumbnailTargetSize The size of the (default) thumbnail
+     */
+    private void setThumbnails(E image, Map<Integer, byte[]> thumbnails, Integer thumbnailTargetSize) {
+        image.getThumbnails().putAll(thumbnails);
+        image.setThumbnail(thumbnails.get(thumbnailTargetSize));
+        image.setThumbnailStatus(ThumbnailStatus.DONE);
+    }
+
+    /**
+     * @param thumbnailTargetSize
+     * @return The given and the configured thumbnail sizes
+     */
+    private Set<Integer> getThumbnailTargetSizes(Integer thumbnailTargetSize) {
+        final Set<Integer> targetSizes = new TreeSet<>();
+        if (thumbnailTargetSize != null && thumbnailTargetSize > 0) {
+            targetSizes.add(thumbnailTargetSize);
+        }
+        if (thumbnailSizes != null) {
+            for (String size : thumbnailSizes.split(",")) {
+                if (!size.trim().isEmpty()) {
+                    targetSizes.add(Integer.valueOf(size.trim()));
+                }
+            }
+        }
+        return targetSizes;
+    }
+
+    /**
+     * @return the thumbnailSizes
+     */
+    public String getThumbnailSizes() {
+        return thumbnailSizes;
+    }
+
+    /**
+     * @param thumbnailSizes the thumbnailSizes to set
+     */
+    public void setThumbnailSizes(String thumbnailSizes) {
+        this.thumbnailSizes = thumbnailSizes;
+    }
+
+    /**
+     * @param thumbnailTaskExecutor the thumbnailTaskExecutor to set
+     */
+    public void setThumbnailTaskExecutor(TaskExecutor thumbnailTaskExecutor) {
+        this.thumbnailTaskExecutor = thumbnailTaskExecutor;
+    }
+
+    /**
+     * @param transactionManager the transactionManager to set
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
 }
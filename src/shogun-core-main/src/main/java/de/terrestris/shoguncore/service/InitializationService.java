@@ -11,6 +11,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 import static org.apache.logging.log4j.LogManager.getLogger;
 
 /**
@@ -54,6 +56,23 @@ public class InitializationService {
         LOG.info("Created the " + type + " with id " + object.getId());
     }
 
+    /**
+     * Saves the passed {@link PersistentObject}s (in the given order) in
+     * batches. The passwords of {@link User}s are encoded before.
+     *
+     * @param objects
+     */
+    public void savePersistentObjects(List<PersistentObject> objects) {
+        LOG.trace("Trying to create " + objects.size() + " new objects");
+        for (PersistentObject object : objects) {
+            if (object instanceof User) {
+                encodePassword((User) object);
+            }
+        }
+        dao.saveAll(objects);
+        LOG.info("Created " + objects.size() + " objects");
+    }
+
     /**
      * Used to create a user. Implements special logic by encoding the password.
      *
@@ -61,11 +80,20 @@ public class InitializationService {
      */
     public void saveUser(User user) {
         LOG.trace("Trying to create a new user");
+        encodePassword(user);
+        dao.saveOrUpdate(user);
+        LOG.info("Created the user " + user.getAccountName());
+    }
+
+    /**
+     * Encodes the (raw) password of the passed user.
+     *
+     * @param user
+     */
+    private void encodePassword(User user) {
         // encode the raw password using bcrypt
         final String pwHash = passwordEncoder.encode(user.getPassword());
         user.setPassword(pwHash);
-        dao.saveOrUpdate(user);
-        LOG.info("Created the user " + user.getAccountName());
     }
 
 }
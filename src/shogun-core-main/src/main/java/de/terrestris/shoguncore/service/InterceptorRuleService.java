@@ -2,12 +2,17 @@ package de.terrestris.shoguncore.service;
 
 import de.terrestris.shoguncore.dao.InterceptorRuleDao;
 import de.terrestris.shoguncore.model.interceptor.InterceptorRule;
+import de.terrestris.shoguncore.util.interceptor.CapabilitiesCache;
+import de.terrestris.shoguncore.util.interceptor.InterceptorRuleIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @param <E>
@@ -20,6 +25,24 @@ import java.util.List;
 public class InterceptorRuleService<E extends InterceptorRule, D extends InterceptorRuleDao<E>>
     extends PermissionAwareCrudService<E, D> {
 
+    /**
+     * The compiled rule index (or null if it has to be (re)built).
+     */
+    private volatile InterceptorRuleIndex ruleIndex;
+
+    /**
+     * Incremented on every change of the rules, used to detect (and drop)
+     * indices that have been built concurrently to a change.
+     */
+    private final AtomicLong ruleIndexVersion = new AtomicLong();
+
+    /**
+     * The cached GetCapabilities responses depend on the rules, they have to
+     * be dropped together with the rule index.
+     */
+    @Autowired(required = false)
+    private CapabilitiesCache capabilitiesCache;
+
     /**
      * Default constructor, which calls the type-constructor
      */
@@ -46,6 +69,70 @@ public class InterceptorRuleService<E extends InterceptorRule, D extends Interce
         return this.dao.findAllRulesForServiceAndEvent(service, event);
     }
 
+    /**
+     * Returns the compiled index of all interceptor rules. The index is
+     * built once on first access and rebuilt after any rule has been changed
+     * (see {@link de.terrestris.shoguncore.util.entity.EntityCacheInvalidator}).
+     *
+     * @return The current {@link InterceptorRuleIndex}.
+     */
+    @Transactional(readOnly = true)
+    public InterceptorRuleIndex getRuleIndex() {
+        InterceptorRuleIndex index = this.ruleIndex;
+        if (index != null) {
+            return index;
+        }
+
+        final long version = ruleIndexVersion.get();
+        index = new InterceptorRuleIndex(this.dao.findAll());
+
+        synchronized (ruleIndexVersion) {
+            if (ruleIndexVersion.get() == version) {
+                this.ruleIndex = index;
+            }
+        }
+
+        logger.debug("Built the interceptor rule index with " + index.size() + " rule(s)");
+
+        return index;
+    }
+
+    /**
+     * Drops the compiled rule index (and the cached GetCapabilities
+     * responses), it will be rebuilt on next access. If called within a
+     * transaction, the index is dropped after completion of the transaction.
+     * <p>
+     * This is called for every change of a rule by the
+     * {@link de.terrestris.shoguncore.util.entity.EntityCacheInvalidator} and
+     * has to be called manually if rules are changed bypassing hibernate's
+     * session, e.g. by bulk HQL updates.
+     */
+    public void invalidateRuleIndex() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    dropRuleIndex();
+                }
+            });
+        }
+        dropRuleIndex();
+
+        if (capabilitiesCache != null) {
+            capabilitiesCache.invalidate();
+        }
+    }
+
+    /**
+     *
+     */
+    private void dropRuleIndex() {
+        synchronized (ruleIndexVersion) {
+            ruleIndexVersion.incrementAndGet();
+            this.ruleIndex = null;
+        }
+    }
+
     /**
      * We have to use {@link Qualifier} to define the correct dao here.
      * Otherwise, spring can not decide which dao has to be autowired here
@@ -58,4 +145,11 @@ public class InterceptorRuleService<E extends InterceptorRule, D extends Interce
         this.dao = dao;
     }
 
+    /**
+     * @param capabilitiesCache the capabilitiesCache to set
+     */
+    public void setCapabilitiesCache(CapabilitiesCache capabilitiesCache) {
+        this.capabilitiesCache = capabilitiesCache;
+    }
+
 }
@@ -1,15 +1,21 @@
 package de.terrestris.shoguncore.service;
 
 import de.terrestris.shoguncore.dao.TreeNodeDao;
-import de.terrestris.shoguncore.helper.IdHelper;
 import de.terrestris.shoguncore.model.tree.TreeFolder;
 import de.terrestris.shoguncore.model.tree.TreeNode;
+import de.terrestris.shoguncore.util.data.TreeCopyResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Service class for the {@link TreeNode} model.
@@ -38,46 +44,128 @@ public class TreeNodeService<E extends TreeNode, D extends TreeNodeDao<E>> exten
     }
 
     /**
-     * This unproxies and eagerly fetches the whole node/tree and detaches it
-     * from the hibernate session before persisting a new "clone" instance in the database.
-     * In case of a TreeFolder, each child node will also be re-persisted (as a new database entry).
+     * Returns the (depth-limited) subtree of the node with the passed ID,
+     * which is loaded with a constant number of queries.
+     * <p>
+     * The READ permission on the root node is checked by the annotation, the
+     * descendants the current user may not READ are removed from the subtree
+     * (together with their own descendants).
      *
-     * @param node
-     * @return
-     * @throws IllegalAccessException
-     * @throws NoSuchFieldException
+     * @param id    The ID of the root node of the subtree
+     * @param depth The maximum depth of the subtree (0 for the root node
+     *              only), null for the whole subtree
+     * @return The (detached) root node of the subtree
+     * @see TreeNodeDao#findSubtree(Integer, Integer)
+     */
+    @PostAuthorize("hasRole(@configHolder.getSuperAdminRoleName()) or hasPermission(returnObject, 'READ')")
+    @Transactional(readOnly = true)
+    public E findSubtree(Integer id, Integer depth) {
+        final E root = dao.findSubtree(id, depth);
+        if (root instanceof TreeFolder) {
+            removeUnreadableDescendants((TreeFolder) root);
+        }
+        return root;
+    }
+
+    /**
+     * Removes the descendants of the passed (detached) folder the current
+     * user may not READ. The permissions of all descendants are evaluated at
+     * once.
+     *
+     * @param root
+     */
+    private void removeUnreadableDescendants(TreeFolder root) {
+        final List<TreeNode> descendants = new ArrayList<>();
+        final Deque<TreeFolder> folders = new ArrayDeque<>();
+        folders.add(root);
+
+        while (!folders.isEmpty()) {
+            final List<TreeNode> children = folders.poll().getChildren();
+            if (children == null) {
+                continue;
+            }
+            for (TreeNode child : children) {
+                descendants.add(child);
+                if (child instanceof TreeFolder) {
+                    folders.add((TreeFolder) child);
+                }
+            }
+        }
+
+        if (descendants.isEmpty()) {
+            return;
+        }
+
+        final Set<Integer> readableIds = getReadableIds(descendants);
+
+        // the descendants of a removed folder aren't reachable anymore
+        folders.add(root);
+        while (!folders.isEmpty()) {
+            final List<TreeNode> children = folders.poll().getChildren();
+            if (children == null) {
+                continue;
+            }
+            children.removeIf(child -> !readableIds.contains(child.getId()));
+            for (TreeNode child : children) {
+                if (child instanceof TreeFolder) {
+                    folders.add((TreeFolder) child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists a copy of the passed node (and, in case of a
+     * {@link TreeFolder}, of all of its descendants) as new database entries.
+     * The passed node itself is not modified.
+     *
+     * @param node The (persisted) node to clone
+     * @return The clone of the node
+     * @throws Exception
+     * @see #copyTree(Integer)
      */
-    @SuppressWarnings("unchecked")
     public E cloneAndPersistTreeNode(E node) throws Exception {
 
         if (node == null) {
             throw new Exception("Node to clone must not be null.");
         }
 
-        // unproxy the node to be sure that everything (on top level) is loaded eagerly
-        // before we continue to care about possible child notes and persistance
-        node = dao.unproxy(node);
-
-        if (node instanceof TreeFolder) {
-            List<E> children = (List<E>) ((TreeFolder) node).getChildren();
-            List<E> clonedChildren = new ArrayList<>();
-            for (E childNode : children) {
-                // recursive call for all children
-                clonedChildren.add(cloneAndPersistTreeNode(childNode));
-            }
-            ((TreeFolder) node).setChildren((List<TreeNode>) clonedChildren);
+        if (node.getId() == null) {
+            throw new Exception("Node to clone must have been persisted.");
         }
 
-        // detach the clone from the hibernate session to persist it as a new instance in the next step
-        dao.evict(node);
+        return copyTree(node.getId()).getRoot();
+    }
+
+    /**
+     * Persists a copy of the (sub)tree of the node with the passed ID. The
+     * copy of the node is placed in the same folder as the node.
+     * <p>
+     * The tree is read in bulk and the copies are inserted in JDBC batches
+     * (with IDs allocated in blocks by the ID sequence), i.e. the number of
+     * queries neither depends on the depth of the tree nor on the number of
+     * its nodes (apart from the batch size).
+     *
+     * @param id The ID of the root node of the tree to copy
+     * @return The copy of the root node and the number of copied nodes
+     * @throws Exception If the node doesn't exist or can't be copied
+     * @see TreeNodeDao#copySubtree(Integer)
+     */
+    @SuppressWarnings("unchecked")
+    @PreAuthorize("hasRole(@configHolder.getSuperAdminRoleName()) or hasPermission(#id, 'de.terrestris.shoguncore.model.tree.TreeNode', 'READ')")
+    @Transactional
+    public TreeCopyResult<E> copyTree(Integer id) throws Exception {
 
-        // set id to null to persist a new instance afterwards
-        IdHelper.setIdOnPersistentObject(node, null);
+        final List<TreeNode> copies = dao.copySubtree(id);
+
+        if (copies.isEmpty()) {
+            throw new Exception("Could not find the node with ID " + id + " to copy.");
+        }
 
-        // persist the same object as a new entry in database
-        dao.saveOrUpdate(node);
+        logger.info("Copied the tree of the node with ID " + id + " (" + copies.size()
+            + " nodes), the ID of the copy is " + copies.get(0).getId());
 
-        return node;
+        return new TreeCopyResult<>((E) copies.get(0), copies.size());
     }
 
     /**
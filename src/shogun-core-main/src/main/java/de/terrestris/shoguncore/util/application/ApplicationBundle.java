@@ -0,0 +1,131 @@
+package de.terrestris.shoguncore.util.application;
+
+import de.terrestris.shoguncore.util.entity.EntityIdentifier;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The complete (serialized) client configuration of an application, i.e.
+ * the JSON of the application and everything reachable from it, stored
+ * gzip-compressed.
+ * <p>
+ * A bundle knows the entities it has been built from (its dependencies), it
+ * has to be dropped whenever one of them changes, see
+ * {@link ApplicationBundleCache}.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public final class ApplicationBundle {
+
+    private final Integer applicationId;
+
+    private final byte[] compressedContent;
+
+    private final int contentLength;
+
+    private final String eTag;
+
+    private final long lastModified;
+
+    private final Set<EntityIdentifier> dependencies;
+
+    /**
+     * @param applicationId The ID of the application.
+     * @param content       The (uncompressed) JSON of the application.
+     * @param dependencies  The entities the JSON has been built from.
+     * @throws IOException If the content can't be compressed.
+     */
+    public ApplicationBundle(Integer applicationId, byte[] content, Set<EntityIdentifier> dependencies)
+        throws IOException {
+        this.applicationId = applicationId;
+        this.compressedContent = compress(content);
+        this.contentLength = content.length;
+        this.eTag = "\"" + DigestUtils.md5DigestAsHex(content) + "\"";
+        // HTTP dates have a precision of seconds
+        this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+        this.dependencies = Collections.unmodifiableSet(new HashSet<>(dependencies));
+    }
+
+    /**
+     * @param content
+     * @return The gzip-compressed content
+     * @throws IOException
+     */
+    private static byte[] compress(byte[] content) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @return The (uncompressed) JSON of the application.
+     * @throws IOException If the content can't be decompressed.
+     */
+    public byte[] getContent() throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream(contentLength);
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressedContent))) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * @return The gzip-compressed JSON of the application, the returned array
+     * must not be modified.
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public byte[] getCompressedContent() {
+        return compressedContent;
+    }
+
+    /**
+     * @return the applicationId
+     */
+    public Integer getApplicationId() {
+        return applicationId;
+    }
+
+    /**
+     * @return the length of the uncompressed content
+     */
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return the (strong, quoted) ETag of the uncompressed content
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @return the time (in ms) the bundle has been built
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the (unmodifiable) dependencies
+     */
+    public Set<EntityIdentifier> getDependencies() {
+        return dependencies;
+    }
+}
@@ -0,0 +1,344 @@
+package de.terrestris.shoguncore.util.application;
+
+import de.terrestris.shoguncore.util.entity.EntityIdentifier;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Caches the {@link ApplicationBundle}s by the ID of their application.
+ * <p>
+ * The cache is bounded by the configured maximum number of entries, the
+ * least recently used bundle is dropped first. A bundle is dropped as soon as
+ * one of the entities it has been built from changes, see
+ * {@link #invalidate(Collection)}, which is called for every change of an
+ * entity by the {@link ApplicationBundleInvalidator}.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class ApplicationBundleCache {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(ApplicationBundleCache.class);
+
+    /**
+     * The maximum number of entries, a value of 0 (or less) disables the
+     * cache.
+     */
+    @Value("${application.bundleCache.maxEntries:100}")
+    private int maxEntries = 100;
+
+    /**
+     * The bundles (in access order), guarded by itself.
+     */
+    private final Map<Integer, ApplicationBundle> entries = new LinkedHashMap<Integer, ApplicationBundle>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ApplicationBundle> eldest) {
+            if (size() > maxEntries) {
+                unindex(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * The IDs of the applications whose bundles depend on an entity, guarded
+     * by {@link #entries}.
+     */
+    private final Map<EntityIdentifier, Set<Integer>> dependents = new HashMap<>();
+
+    /**
+     * The names of the (root) entities any bundle has ever depended on, i.e.
+     * changes of other entities can be ignored.
+     */
+    private final Set<String> dependencyEntityNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Incremented whenever a relevant entity changes, used to detect (and
+     * drop) bundles that have been built concurrently to a change.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @return Whether the cache is enabled at all.
+     */
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns the current generation of the cache. Read it <i>before</i>
+     * building a bundle that should be cached and pass it to
+     * {@link #put(ApplicationBundle, long)}.
+     *
+     * @return The current generation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param applicationId The ID of the application.
+     * @return The cached bundle of the application or null.
+     */
+    public ApplicationBundle get(Integer applicationId) {
+        ApplicationBundle bundle;
+        synchronized (entries) {
+            bundle = entries.get(applicationId);
+        }
+        if (bundle == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return bundle;
+    }
+
+    /**
+     * Caches the given bundle. The bundle isn't cached if a relevant entity
+     * has changed since the given generation.
+     *
+     * @param bundle     The bundle.
+     * @param generation The generation the bundle has been built with.
+     */
+    public void put(ApplicationBundle bundle, long generation) {
+        if (!isEnabled() || bundle == null) {
+            return;
+        }
+
+        for (EntityIdentifier dependency : bundle.getDependencies()) {
+            dependencyEntityNames.add(dependency.getRootEntityName());
+        }
+
+        synchronized (entries) {
+            if (this.generation.get() != generation) {
+                LOG.debug("Not caching the bundle of application " + bundle.getApplicationId()
+                    + " as it has been built concurrently to a change");
+                return;
+            }
+            ApplicationBundle previous = entries.put(bundle.getApplicationId(), bundle);
+            if (previous != null) {
+                unindex(previous);
+            }
+            for (EntityIdentifier dependency : bundle.getDependencies()) {
+                dependents.computeIfAbsent(dependency, key -> new HashSet<>()).add(bundle.getApplicationId());
+            }
+        }
+    }
+
+    /**
+     * Whether changes of the given (root) entity may affect any bundle.
+     *
+     * @param rootEntityName The name of the root entity.
+     * @return
+     */
+    public boolean isRelevant(String rootEntityName) {
+        return dependencyEntityNames.contains(rootEntityName);
+    }
+
+    /**
+     * Drops the bundles that depend on any of the given (changed) entities.
+     * If called within a transaction, the bundles depending on the entities
+     * are (additionally) dropped after completion of the transaction, i.e.
+     * bundles that have been built from the state before the transaction
+     * are dropped, too.
+     *
+     * @param changed The changed entities.
+     */
+    public void invalidate(Collection<EntityIdentifier> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager.getResource(this);
+            if (changes == null) {
+                changes = new TransactionChanges();
+                TransactionSynchronizationManager.bindResource(this, changes);
+                TransactionSynchronizationManager.registerSynchronization(changes);
+            }
+            changes.identifiers.addAll(changed);
+        }
+
+        drop(changed);
+    }
+
+    /**
+     * Drops all bundles. If called within a transaction, the bundles are
+     * (additionally) dropped after completion of the transaction.
+     */
+    public void invalidateAll() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    clear();
+                }
+            });
+        }
+        clear();
+    }
+
+    /**
+     * @return The number of cached bundles.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return The statistics of the cache.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        long total = hits.get() + misses.get();
+        long compressedSize = 0;
+        long size = 0;
+
+        synchronized (entries) {
+            for (ApplicationBundle bundle : entries.values()) {
+                compressedSize += bundle.getCompressedContent().length;
+                size += bundle.getContentLength();
+            }
+        }
+
+        statistics.put("hits", hits.get());
+        statistics.put("misses", misses.get());
+        statistics.put("hitRatio", total == 0 ? 0d : (double) hits.get() / total);
+        statistics.put("invalidations", invalidations.get());
+        statistics.put("entries", size());
+        statistics.put("maxEntries", maxEntries);
+        statistics.put("size", size);
+        statistics.put("compressedSize", compressedSize);
+
+        return statistics;
+    }
+
+    /**
+     * Resets the hit/miss statistics.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        invalidations.set(0);
+    }
+
+    /**
+     * @param changed
+     */
+    private void drop(Collection<EntityIdentifier> changed) {
+        boolean relevant = false;
+        for (EntityIdentifier identifier : changed) {
+            if (isRelevant(identifier.getRootEntityName())) {
+                relevant = true;
+                break;
+            }
+        }
+        if (!relevant) {
+            return;
+        }
+
+        final Set<Integer> dropped = new HashSet<>();
+
+        synchronized (entries) {
+            generation.incrementAndGet();
+            for (EntityIdentifier identifier : changed) {
+                Set<Integer> applicationIds = dependents.get(identifier);
+                if (applicationIds != null) {
+                    dropped.addAll(applicationIds);
+                }
+            }
+            for (Integer applicationId : dropped) {
+                ApplicationBundle bundle = entries.remove(applicationId);
+                if (bundle != null) {
+                    unindex(bundle);
+                }
+            }
+        }
+
+        if (!dropped.isEmpty()) {
+            invalidations.addAndGet(dropped.size());
+            LOG.debug("Invalidated the bundles of the applications " + dropped);
+        }
+    }
+
+    /**
+     *
+     */
+    private void clear() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+            dependents.clear();
+        }
+        LOG.debug("Invalidated the application bundle cache");
+    }
+
+    /**
+     * Removes the given bundle from the index of the dependencies, the caller
+     * must hold the lock of {@link #entries}.
+     *
+     * @param bundle
+     */
+    private void unindex(ApplicationBundle bundle) {
+        for (EntityIdentifier dependency : bundle.getDependencies()) {
+            Set<Integer> applicationIds = dependents.get(dependency);
+            if (applicationIds != null) {
+                applicationIds.remove(bundle.getApplicationId());
+                if (applicationIds.isEmpty()) {
+                    dependents.remove(dependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * The entities changed within a transaction, which are dropped (again)
+     * after completion of the transaction.
+     */
+    private final class TransactionChanges implements TransactionSynchronization {
+
+        private final Set<EntityIdentifier> identifiers = new HashSet<>();
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ApplicationBundleCache.this);
+            drop(identifiers);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package de.terrestris.shoguncore.util.application;
+
+import de.terrestris.shoguncore.util.entity.EntityIdentifier;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Listens to all changes of entities (and their collections) that are
+ * written by hibernate and invalidates the {@link ApplicationBundleCache}
+ * accordingly.
+ * <p>
+ * Besides the changed entity itself, the entities it references (before and
+ * after the change) are reported as changed, e.g. a new child of a cached
+ * folder invalidates the bundles containing the folder. Changes that bypass
+ * the session (e.g. bulk HQL updates or plain SQL) are not noticed, the cache
+ * has to be invalidated manually in this case (see
+ * {@link ApplicationBundleCache#invalidateAll()}).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class ApplicationBundleInvalidator implements PostInsertEventListener, PostUpdateEventListener,
+    PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+    PostCollectionRemoveEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Hibernate SessionFactory
+     */
+    @Autowired
+    private transient SessionFactory sessionFactory;
+
+    /**
+     *
+     */
+    @Autowired
+    private transient ApplicationBundleCache applicationBundleCache;
+
+    /**
+     * Registers this listener for the events of the session factory.
+     */
+    @PostConstruct
+    public void register() {
+        final EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        onChange(event.getPersister(), event.getId(), null, event.getState(), event.getSession());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        onChange(event.getPersister(), event.getId(), event.getOldState(), event.getState(), event.getSession());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        onChange(event.getPersister(), event.getId(), event.getDeletedState(), null, event.getSession());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        onCollectionChange(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        onCollectionChange(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        onCollectionChange(event);
+    }
+
+    /**
+     * The changes are reported while the transaction is still running.
+     */
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * @param persister
+     * @param id
+     * @param oldState
+     * @param state
+     * @param session
+     */
+    private void onChange(EntityPersister persister, Serializable id, Object[] oldState, Object[] state,
+                          SharedSessionContractImplementor session) {
+        if (!applicationBundleCache.isEnabled()) {
+            return;
+        }
+
+        final Set<EntityIdentifier> changed = new HashSet<>();
+        changed.add(new EntityIdentifier(persister.getRootEntityName(), id));
+
+        final Type[] propertyTypes = persister.getPropertyTypes();
+        addReferences(propertyTypes, oldState, session, changed);
+        addReferences(propertyTypes, state, session, changed);
+
+        applicationBundleCache.invalidate(changed);
+    }
+
+    /**
+     * @param event
+     */
+    private void onCollectionChange(AbstractCollectionEvent event) {
+        if (!applicationBundleCache.isEnabled() || event.getAffectedOwnerIdOrNull() == null) {
+            return;
+        }
+
+        final EntityPersister owner = event.getSession().getFactory().getMetamodel()
+            .entityPersister(event.getAffectedOwnerEntityName());
+
+        final Set<EntityIdentifier> changed = new HashSet<>();
+        changed.add(new EntityIdentifier(owner.getRootEntityName(), event.getAffectedOwnerIdOrNull()));
+
+        applicationBundleCache.invalidate(changed);
+    }
+
+    /**
+     * Adds the identifiers of the entities referenced by the passed state.
+     *
+     * @param propertyTypes
+     * @param state
+     * @param session
+     * @param identifiers
+     */
+    private void addReferences(Type[] propertyTypes, Object[] state, SharedSessionContractImplementor session,
+                               Set<EntityIdentifier> identifiers) {
+        if (state == null) {
+            return;
+        }
+
+        for (int i = 0; i < propertyTypes.length && i < state.length; i++) {
+            if (!propertyTypes[i].isEntityType() || state[i] == null) {
+                continue;
+            }
+
+            final Object reference = state[i];
+            final EntityPersister persister = session.getFactory().getMetamodel()
+                .entityPersister(((EntityType) propertyTypes[i]).getAssociatedEntityName());
+            final Serializable id = reference instanceof HibernateProxy
+                ? ((HibernateProxy) reference).getHibernateLazyInitializer().getIdentifier()
+                : persister.getIdentifier(reference, session);
+
+            if (id != null && applicationBundleCache.isRelevant(persister.getRootEntityName())) {
+                identifiers.add(new EntityIdentifier(persister.getRootEntityName(), id));
+            }
+        }
+    }
+
+}
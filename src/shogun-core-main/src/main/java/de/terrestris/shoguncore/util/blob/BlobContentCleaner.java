@@ -0,0 +1,210 @@
+package de.terrestris.shoguncore.util.blob;
+
+import de.terrestris.shoguncore.dao.FileDao;
+import de.terrestris.shoguncore.model.File;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Listens to the deletion (and updates) of {@link File}s that are written by
+ * hibernate and deletes the contents in the {@link BlobStore} that aren't
+ * referenced anymore.
+ * <p>
+ * The contents are deleted after the transaction has been committed (and
+ * only if no other file references the same content), i.e. a rolled back
+ * deletion keeps the content.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class BlobContentCleaner implements PostDeleteEventListener, PostUpdateEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(BlobContentCleaner.class);
+
+    /**
+     * The name of the blobKey property of the files.
+     */
+    private static final String BLOB_KEY_PROPERTY = "blobKey";
+
+    /**
+     * Hibernate SessionFactory
+     */
+    @Autowired
+    private transient SessionFactory sessionFactory;
+
+    /**
+     * The transaction manager (required to check the references of the
+     * contents after the commit)
+     */
+    @Autowired
+    private transient PlatformTransactionManager transactionManager;
+
+    /**
+     *
+     */
+    @Autowired
+    @Qualifier("fileDao")
+    private transient FileDao<File> fileDao;
+
+    /**
+     * The (optional) store of the file contents.
+     */
+    @Autowired(required = false)
+    private transient BlobStore blobStore;
+
+    /**
+     * Registers this listener for the events of the session factory.
+     */
+    @PostConstruct
+    public void register() {
+        final EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof File) {
+            onRelease(getBlobKey(event.getPersister(), event.getDeletedState()));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof File && event.getOldState() != null) {
+            final String oldBlobKey = getBlobKey(event.getPersister(), event.getOldState());
+            if (!Objects.equals(oldBlobKey, getBlobKey(event.getPersister(), event.getState()))) {
+                onRelease(oldBlobKey);
+            }
+        }
+    }
+
+    /**
+     * The contents are deleted after the commit.
+     */
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * @param persister
+     * @param state
+     * @return The blobKey of the given state or null.
+     */
+    private static String getBlobKey(EntityPersister persister, Object[] state) {
+        if (state == null) {
+            return null;
+        }
+        final int index = Arrays.asList(persister.getPropertyNames()).indexOf(BLOB_KEY_PROPERTY);
+        return index < 0 ? null : (String) state[index];
+    }
+
+    /**
+     * Deletes the content after the current transaction has been committed
+     * (or immediately if there is no transaction).
+     *
+     * @param blobKey The key of the content that isn't referenced by a file
+     *                anymore.
+     */
+    private void onRelease(String blobKey) {
+        if (blobStore == null || blobKey == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            ReleasedContents released = (ReleasedContents) TransactionSynchronizationManager.getResource(this);
+            if (released == null) {
+                released = new ReleasedContents();
+                TransactionSynchronizationManager.bindResource(this, released);
+                TransactionSynchronizationManager.registerSynchronization(released);
+            }
+            released.blobKeys.add(blobKey);
+        } else {
+            deleteUnreferenced(blobKey);
+        }
+    }
+
+    /**
+     * Deletes the given content if no file references it, e.g. as the same
+     * content has been uploaded again.
+     *
+     * @param blobKey
+     */
+    private void deleteUnreferenced(String blobKey) {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+
+        try {
+            final Long count = transactionTemplate.execute(status -> fileDao.countByBlobKey(blobKey));
+            if (count != null && count > 0) {
+                return;
+            }
+            blobStore.delete(blobKey);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not delete the content " + blobKey + " from the blob store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param blobStore the blobStore to set
+     */
+    public void setBlobStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * The contents released within a transaction, which are deleted after
+     * the commit.
+     */
+    private final class ReleasedContents implements TransactionSynchronization {
+
+        private final Set<String> blobKeys = new LinkedHashSet<>();
+
+        @Override
+        public void afterCommit() {
+            for (String blobKey : blobKeys) {
+                deleteUnreferenced(blobKey);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(BlobContentCleaner.this);
+        }
+    }
+
+}
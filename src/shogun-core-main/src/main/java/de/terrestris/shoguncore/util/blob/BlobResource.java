@@ -0,0 +1,140 @@
+package de.terrestris.shoguncore.util.blob;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link org.springframework.core.io.Resource} of a content stored in a
+ * {@link BlobStore}, e.g. to be returned by a controller.
+ * <p>
+ * The streams of the resource are opened lazily: skipping bytes before the
+ * first read only moves the offset the content will be opened at. This way,
+ * (HTTP range) requests of a part of the content don't read the preceding
+ * bytes.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class BlobResource extends AbstractResource {
+
+    private final BlobStore blobStore;
+
+    private final String key;
+
+    private final Long size;
+
+    /**
+     * Constructor
+     *
+     * @param blobStore The store of the content.
+     * @param key       The key of the content.
+     * @param size      The size of the content (read from the store if null).
+     */
+    public BlobResource(BlobStore blobStore, String key, Long size) {
+        this.blobStore = blobStore;
+        this.key = key;
+        this.size = size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new LazyInputStream();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long contentLength() throws IOException {
+        return size != null ? size : blobStore.getSize(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDescription() {
+        return "Blob [" + key + "]";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof BlobResource
+            && ((BlobResource) other).blobStore == blobStore
+            && ((BlobResource) other).key.equals(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    /**
+     * The stream of the content that is opened on the first read.
+     */
+    private final class LazyInputStream extends InputStream {
+
+        private long offset;
+
+        private InputStream content;
+
+        private boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            return getContent().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getContent().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (content != null) {
+                return content.skip(n);
+            }
+            if (n <= 0) {
+                return 0;
+            }
+            final long skipped = Math.max(0, Math.min(n, contentLength() - offset));
+            offset += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return content == null ? 0 : content.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if (content != null) {
+                content.close();
+            }
+        }
+
+        private InputStream getContent() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (content == null) {
+                content = blobStore.open(key, offset);
+            }
+            return content;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package de.terrestris.shoguncore.util.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A store of (possibly large) binary contents, e.g. of the uploaded
+ * {@link de.terrestris.shoguncore.model.File}s.
+ * <p>
+ * The contents are written and read as streams, i.e. they are never held in
+ * memory completely. Each stored content is identified by an opaque key that
+ * is returned by {@link #store(InputStream)} and has to be kept by the caller
+ * (e.g. by the entity referencing the content).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public interface BlobStore {
+
+    /**
+     * Stores the given content. The stream is read completely, but not closed.
+     *
+     * @param content The content to store.
+     * @return The key of the stored content.
+     * @throws IOException If the content can't be stored.
+     */
+    String store(InputStream content) throws IOException;
+
+    /**
+     * Opens the stored content starting at the given offset. The returned
+     * stream has to be closed by the caller.
+     *
+     * @param key    The key of the content.
+     * @param offset The offset (in bytes) to start reading at.
+     * @return The stream of the content.
+     * @throws IOException If the content doesn't exist or can't be read.
+     */
+    InputStream open(String key, long offset) throws IOException;
+
+    /**
+     * @param key The key of the content.
+     * @return The size of the content in bytes.
+     * @throws IOException If the content doesn't exist or can't be read.
+     */
+    long getSize(String key) throws IOException;
+
+    /**
+     * Deletes the stored content (if it exists).
+     *
+     * @param key The key of the content.
+     * @throws IOException If the content can't be deleted.
+     */
+    void delete(String key) throws IOException;
+
+}
@@ -0,0 +1,243 @@
+package de.terrestris.shoguncore.util.blob;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * A {@link BlobStore} that stores the contents as files in a directory.
+ * <p>
+ * The store is content-addressed: the key of a content is its SHA-256 hash,
+ * i.e. equal contents are stored only once. A content is streamed through a
+ * {@link FileChannel} into a temporary file (hashing it on the fly) which is
+ * then moved to its final location <code>ab/cd/abcd...</code>, so readers
+ * never see a partially written file.
+ * <p>
+ * As equal contents share a single file, {@link #delete(String)} must only be
+ * called if the content isn't referenced anymore.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class FileSystemBlobStore implements BlobStore {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(FileSystemBlobStore.class);
+
+    /**
+     *
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     *
+     */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     *
+     */
+    private static final String TEMP_PREFIX = "blob";
+
+    /**
+     *
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     *
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The directory of the store.
+     */
+    private String directory;
+
+    /**
+     * The root of the store.
+     */
+    private Path root;
+
+    /**
+     * Creates the directory of the store (if needed) and removes the
+     * temporary files of interrupted writes.
+     *
+     * @throws IOException If the directory can't be created.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (StringUtils.isBlank(directory)) {
+            throw new IllegalStateException("No directory configured for the blob store");
+        }
+
+        Path dir = Paths.get(directory).toAbsolutePath();
+        Files.createDirectories(dir);
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(file -> {
+                String fileName = file.getFileName().toString();
+                return fileName.startsWith(TEMP_PREFIX) && fileName.endsWith(TEMP_SUFFIX);
+            }).forEach(this::deleteQuietly);
+        }
+
+        this.root = dir;
+
+        LOG.info("Initialized the file system blob store in " + dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String store(InputStream content) throws IOException {
+        final MessageDigest digest = createDigest();
+        final Path tempFile = Files.createTempFile(getRoot(), TEMP_PREFIX, TEMP_SUFFIX);
+
+        try {
+            // the source channel isn't closed as it would close the given stream
+            final ReadableByteChannel source = Channels.newChannel(new DigestInputStream(content, digest));
+
+            try (FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                target.force(true);
+            }
+
+            final String key = String.format("%064x", new BigInteger(1, digest.digest()));
+            final Path file = getFile(key);
+
+            if (Files.exists(file)) {
+                LOG.debug("The blob " + key + " is already stored");
+                return key;
+            }
+
+            Files.createDirectories(file.getParent());
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // stored concurrently
+                LOG.debug("The blob " + key + " has been stored concurrently");
+            }
+
+            return key;
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream open(String key, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(getFile(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return Channels.newInputStream(channel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize(String key) throws IOException {
+        return Files.size(getFile(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(getFile(key));
+    }
+
+    /**
+     * @param key
+     * @return The file of the given key.
+     */
+    private Path getFile(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+        return getRoot()
+            .resolve(key.substring(0, 2))
+            .resolve(key.substring(2, 4))
+            .resolve(key);
+    }
+
+    /**
+     * @return The root of the store.
+     */
+    private Path getRoot() {
+        if (root == null) {
+            throw new IllegalStateException("The blob store has not been initialized");
+        }
+        return root;
+    }
+
+    /**
+     * @return A new digest of the content.
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported", e);
+        }
+    }
+
+    /**
+     * @param file
+     */
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the directory
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param directory the directory to set
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+}
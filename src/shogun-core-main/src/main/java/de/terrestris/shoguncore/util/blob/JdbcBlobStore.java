@@ -0,0 +1,367 @@
+package de.terrestris.shoguncore.util.blob;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.*;
+import java.util.UUID;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * A {@link BlobStore} that stores the contents as LOBs in a database table
+ * (which is created on initialization if it doesn't exist).
+ * <p>
+ * The contents are streamed from and to the database via the JDBC
+ * {@link Blob} API, i.e. they're never held in memory completely. On
+ * PostgreSQL, the contents are stored as large objects (an <code>oid</code>
+ * column) as <code>bytea</code> values can't be streamed.
+ * <p>
+ * Contents are stored (and deleted) within the current transaction (if any),
+ * a content being read keeps its own connection until its stream is closed.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class JdbcBlobStore implements BlobStore {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(JdbcBlobStore.class);
+
+    /**
+     *
+     */
+    private static final String POSTGRESQL = "PostgreSQL";
+
+    /**
+     * The data source
+     */
+    private DataSource dataSource;
+
+    /**
+     * The (optional) prefix of the table names
+     */
+    @Autowired(required = false)
+    @Qualifier("tablePrefix")
+    private String tablePrefix;
+
+    /**
+     * The name of the table (without prefix)
+     */
+    private String tableName = "file_content";
+
+    /**
+     * The SQL type of the content column, determined by the database if null
+     */
+    private String contentColumnType;
+
+    /**
+     * Whether the contents are stored as PostgreSQL large objects
+     */
+    private boolean largeObjects;
+
+    /**
+     * Creates the table of the store if it doesn't exist.
+     *
+     * @throws SQLException If the table can't be created.
+     */
+    @PostConstruct
+    public void init() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            final boolean postgreSql = POSTGRESQL.equalsIgnoreCase(metaData.getDatabaseProductName());
+
+            if (contentColumnType == null) {
+                contentColumnType = postgreSql ? "oid" : "blob";
+            }
+            largeObjects = postgreSql && "oid".equalsIgnoreCase(contentColumnType);
+
+            final String table = getTable();
+            for (String candidate : new String[]{table, table.toLowerCase(), table.toUpperCase()}) {
+                try (ResultSet tables = metaData.getTables(connection.getCatalog(), null, candidate, null)) {
+                    if (tables.next()) {
+                        return;
+                    }
+                }
+            }
+
+            LOG.info("Creating the table " + table + " of the blob store");
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table " + table + " (id varchar(36) not null, "
+                    + "content_length bigint, content " + contentColumnType + ", primary key (id))");
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String store(InputStream content) throws IOException {
+        final String key = UUID.randomUUID().toString();
+
+        execute(connection -> {
+            // the length isn't known before the content has been streamed
+            final CountingInputStream countingStream = new CountingInputStream(content);
+            try (PreparedStatement statement = connection.prepareStatement("insert into " + getTable()
+                + " (id, content_length, content) values (?, 0, ?)")) {
+                statement.setString(1, key);
+                statement.setBlob(2, countingStream);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("update " + getTable()
+                + " set content_length = ? where id = ?")) {
+                statement.setLong(1, countingStream.getByteCount());
+                statement.setString(2, key);
+                statement.executeUpdate();
+            }
+        });
+
+        return key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream open(String key, long offset) throws IOException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            // reading large objects requires a transaction
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+
+            statement = connection.prepareStatement("select content from " + getTable() + " where id = ?");
+            statement.setString(1, key);
+            resultSet = statement.executeQuery();
+
+            if (!resultSet.next()) {
+                throw new IOException("Could not find the blob " + key);
+            }
+
+            final Blob blob = resultSet.getBlob(1);
+            final long length = blob == null ? 0 : blob.length();
+            final InputStream content = offset >= length
+                ? new ByteArrayInputStream(new byte[0])
+                : blob.getBinaryStream(offset + 1, length - offset);
+
+            return new ResultSetInputStream(content, blob, resultSet, statement, connection);
+        } catch (SQLException | IOException | RuntimeException e) {
+            closeQuietly(resultSet, statement, connection);
+            throw e instanceof IOException ? (IOException) e : new IOException("Could not read the blob " + key, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize(String key) throws IOException {
+        final long[] size = {-1};
+
+        execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("select content_length from "
+                + getTable() + " where id = ?")) {
+                statement.setString(1, key);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        size[0] = resultSet.getLong(1);
+                    }
+                }
+            }
+        });
+
+        if (size[0] < 0) {
+            throw new IOException("Could not find the blob " + key);
+        }
+        return size[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String key) throws IOException {
+        execute(connection -> {
+            if (largeObjects) {
+                // the large object isn't deleted with its row
+                try (PreparedStatement statement = connection.prepareStatement("select lo_unlink(content) from "
+                    + getTable() + " where id = ? and content is not null")) {
+                    statement.setString(1, key);
+                    statement.executeQuery().close();
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement("delete from " + getTable()
+                + " where id = ?")) {
+                statement.setString(1, key);
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Executes the given work with the connection of the current transaction
+     * or (if there is none) within a transaction of its own.
+     *
+     * @param work
+     * @throws IOException
+     */
+    private void execute(ConnectionWork work) throws IOException {
+        final Connection connection = DataSourceUtils.getConnection(dataSource);
+        final boolean transactional = DataSourceUtils.isConnectionTransactional(connection, dataSource);
+
+        try {
+            Boolean autoCommit = null;
+            if (!transactional && connection.getAutoCommit()) {
+                autoCommit = Boolean.TRUE;
+                connection.setAutoCommit(false);
+            }
+            try {
+                work.execute(connection);
+                if (!transactional) {
+                    connection.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!transactional) {
+                    connection.rollback();
+                }
+                throw e;
+            } finally {
+                if (autoCommit != null) {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not access the blob store: " + e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * @param closeables
+     */
+    private static void closeQuietly(AutoCloseable... closeables) {
+        for (AutoCloseable closeable : closeables) {
+            if (closeable == null) {
+                continue;
+            }
+            try {
+                if (closeable instanceof Connection) {
+                    ((Connection) closeable).rollback();
+                }
+                closeable.close();
+            } catch (Exception e) {
+                LOG.debug("Could not close " + closeable + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The name of the table (with prefix)
+     */
+    private String getTable() {
+        return tablePrefix == null ? tableName : tablePrefix + tableName;
+    }
+
+    /**
+     * @param dataSource the dataSource to set
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @param tablePrefix the tablePrefix to set
+     */
+    public void setTablePrefix(String tablePrefix) {
+        this.tablePrefix = tablePrefix;
+    }
+
+    /**
+     * @return the tableName
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @param tableName the tableName to set
+     */
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * @return the contentColumnType
+     */
+    public String getContentColumnType() {
+        return contentColumnType;
+    }
+
+    /**
+     * @param contentColumnType the contentColumnType to set
+     */
+    public void setContentColumnType(String contentColumnType) {
+        this.contentColumnType = contentColumnType;
+    }
+
+    /**
+     * Some work on a connection.
+     */
+    @FunctionalInterface
+    private interface ConnectionWork {
+        void execute(Connection connection) throws SQLException;
+    }
+
+    /**
+     * The stream of a blob that releases the blob and its connection when
+     * it's closed.
+     */
+    private static final class ResultSetInputStream extends FilterInputStream {
+
+        private final Blob blob;
+
+        private final AutoCloseable[] resources;
+
+        private ResultSetInputStream(InputStream in, Blob blob, AutoCloseable... resources) {
+            super(in);
+            this.blob = blob;
+            this.resources = resources;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (blob != null) {
+                    try {
+                        blob.free();
+                    } catch (SQLException e) {
+                        LOG.debug("Could not free the blob: " + e.getMessage());
+                    }
+                }
+                closeQuietly(resources);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package de.terrestris.shoguncore.util.data;
+
+/**
+ * The result of a single item of a bulk request, i.e. the position of the
+ * item in the request, the ID of the affected entity and the status.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class BulkItemResult {
+
+    /**
+     * The status of an item of a bulk request (and the corresponding HTTP
+     * status of a single request).
+     */
+    public enum Status {
+        CREATED(201),
+        UPDATED(200),
+        DELETED(204),
+        INVALID(400),
+        FORBIDDEN(403),
+        NOT_FOUND(404);
+
+        private final int httpStatus;
+
+        Status(int httpStatus) {
+            this.httpStatus = httpStatus;
+        }
+
+        /**
+         * @return the httpStatus
+         */
+        public int getHttpStatus() {
+            return httpStatus;
+        }
+    }
+
+    private int index;
+
+    private Integer id;
+
+    private Status status;
+
+    private String message;
+
+    /**
+     * Constructor
+     *
+     * @param index
+     * @param id
+     * @param status
+     */
+    public BulkItemResult(int index, Integer id, Status status) {
+        this(index, id, status, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param index
+     * @param id
+     * @param status
+     * @param message
+     */
+    public BulkItemResult(int index, Integer id, Status status, String message) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * @return true if the item has been processed successfully
+     */
+    public boolean isSuccess() {
+        return status != null && status.getHttpStatus() < 300;
+    }
+
+    /**
+     * @return the HTTP status corresponding to the status
+     */
+    public Integer getHttpStatus() {
+        return status == null ? null : status.getHttpStatus();
+    }
+
+    /**
+     * @return the index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index the index to set
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the id
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * @param id the id to set
+     */
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @param status the status to set
+     */
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @param message the message to set
+     */
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+}
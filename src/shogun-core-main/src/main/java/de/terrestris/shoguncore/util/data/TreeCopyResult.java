@@ -0,0 +1,56 @@
+package de.terrestris.shoguncore.util.data;
+
+import de.terrestris.shoguncore.model.tree.TreeNode;
+
+/**
+ * The result of copying a (sub)tree, i.e. the copy of the root node and the
+ * number of copied nodes.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class TreeCopyResult<E extends TreeNode> {
+
+    private E root;
+
+    private int copiedNodes;
+
+    /**
+     * Constructor
+     *
+     * @param root
+     * @param copiedNodes
+     */
+    public TreeCopyResult(E root, int copiedNodes) {
+        this.root = root;
+        this.copiedNodes = copiedNodes;
+    }
+
+    /**
+     * @return the root
+     */
+    public E getRoot() {
+        return root;
+    }
+
+    /**
+     * @param root the root to set
+     */
+    public void setRoot(E root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the copiedNodes
+     */
+    public int getCopiedNodes() {
+        return copiedNodes;
+    }
+
+    /**
+     * @param copiedNodes the copiedNodes to set
+     */
+    public void setCopiedNodes(int copiedNodes) {
+        this.copiedNodes = copiedNodes;
+    }
+
+}
@@ -0,0 +1,379 @@
+package de.terrestris.shoguncore.util.entity;
+
+import de.terrestris.shoguncore.dao.InterceptorRuleDao;
+import de.terrestris.shoguncore.model.Role;
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.model.UserGroup;
+import de.terrestris.shoguncore.model.interceptor.InterceptorRule;
+import de.terrestris.shoguncore.model.layer.Layer;
+import de.terrestris.shoguncore.model.layer.source.LayerDataSource;
+import de.terrestris.shoguncore.model.security.PermissionCollection;
+import de.terrestris.shoguncore.security.access.PermissionDecisionCache;
+import de.terrestris.shoguncore.service.InterceptorRuleService;
+import de.terrestris.shoguncore.util.interceptor.CapabilitiesCache;
+import de.terrestris.shoguncore.util.interceptor.WmtsTileCache;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Listens to all changes of entities (and their collections) that are
+ * written by hibernate and invalidates the caches that depend on them:
+ * <ul>
+ * <li>the rule index of the {@link InterceptorRuleService} (interceptor
+ * rules),</li>
+ * <li>the {@link CapabilitiesCache} (interceptor rules, layers, their data
+ * sources and permissions),</li>
+ * <li>the data source URLs of the {@link WmtsTileCache} (layers and their
+ * data sources) and</li>
+ * <li>the {@link PermissionDecisionCache} (users, groups, roles and all
+ * permissions).</li>
+ * </ul>
+ * Each cache is invalidated once per transaction, i.e. on the first relevant
+ * change and (by the caches themselves) after completion of the transaction.
+ * This covers all writes of the session, e.g. bulk saves or copies, but not
+ * bulk HQL updates or plain SQL.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class EntityCacheInvalidator implements PostInsertEventListener, PostUpdateEventListener,
+    PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+    PostCollectionRemoveEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The caches that can be invalidated.
+     */
+    private enum Target {
+        RULE_INDEX,
+        CAPABILITIES,
+        PERMISSION_DECISIONS
+    }
+
+    /**
+     * Hibernate SessionFactory
+     */
+    @Autowired
+    private transient SessionFactory sessionFactory;
+
+    /**
+     *
+     */
+    @Autowired(required = false)
+    @Qualifier("interceptorRuleService")
+    private transient InterceptorRuleService<InterceptorRule, InterceptorRuleDao<InterceptorRule>> interceptorRuleService;
+
+    /**
+     *
+     */
+    @Autowired(required = false)
+    private transient CapabilitiesCache capabilitiesCache;
+
+    /**
+     *
+     */
+    @Autowired(required = false)
+    private transient WmtsTileCache wmtsTileCache;
+
+    /**
+     *
+     */
+    @Autowired(required = false)
+    private transient PermissionDecisionCache permissionDecisionCache;
+
+    /**
+     * Registers this listener for the events of the session factory.
+     */
+    @PostConstruct
+    public void register() {
+        final EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        onChange(event.getPersister(), event.getId(), null, event.getState(), event.getSession());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        onChange(event.getPersister(), event.getId(), event.getOldState(), event.getState(), event.getSession());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        onChange(event.getPersister(), event.getId(), event.getDeletedState(), null, event.getSession());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        onCollectionChange(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        onCollectionChange(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        onCollectionChange(event);
+    }
+
+    /**
+     * The changes are reported while the transaction is still running.
+     */
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * @param persister
+     * @param id
+     * @param oldState
+     * @param state
+     * @param session
+     */
+    private void onChange(EntityPersister persister, Serializable id, Object[] oldState, Object[] state,
+                          SharedSessionContractImplementor session) {
+        final Class<?> entityClass = persister.getMappedClass();
+        final Set<Target> targets = EnumSet.noneOf(Target.class);
+        final Set<Integer> dataSourceIds = new HashSet<>();
+
+        if (InterceptorRule.class.isAssignableFrom(entityClass)) {
+            targets.add(Target.RULE_INDEX);
+        } else if (LayerDataSource.class.isAssignableFrom(entityClass)) {
+            targets.add(Target.CAPABILITIES);
+            dataSourceIds.add((Integer) id);
+        } else if (Layer.class.isAssignableFrom(entityClass)) {
+            targets.add(Target.CAPABILITIES);
+            addDataSourceIds(persister.getPropertyTypes(), oldState, session, dataSourceIds);
+            addDataSourceIds(persister.getPropertyTypes(), state, session, dataSourceIds);
+        } else if (isPermissionRelevant(entityClass)) {
+            targets.add(Target.CAPABILITIES);
+            targets.add(Target.PERMISSION_DECISIONS);
+        }
+
+        invalidate(targets, dataSourceIds);
+    }
+
+    /**
+     * @param event
+     */
+    private void onCollectionChange(AbstractCollectionEvent event) {
+        // the (empty) collections of new entities don't change anything
+        if (event instanceof PostCollectionRecreateEvent && event.getCollection().empty()) {
+            return;
+        }
+
+        final Class<?> ownerClass = event.getSession().getFactory().getMetamodel()
+            .entityPersister(event.getAffectedOwnerEntityName()).getMappedClass();
+        final String role = event.getCollection().getRole();
+        final Set<Target> targets = EnumSet.noneOf(Target.class);
+
+        if (role != null && (role.endsWith(".userPermissions") || role.endsWith(".groupPermissions"))) {
+            targets.add(Target.PERMISSION_DECISIONS);
+            if (Layer.class.isAssignableFrom(ownerClass)) {
+                targets.add(Target.CAPABILITIES);
+            }
+        } else if (InterceptorRule.class.isAssignableFrom(ownerClass)) {
+            targets.add(Target.RULE_INDEX);
+        } else if (Layer.class.isAssignableFrom(ownerClass) || LayerDataSource.class.isAssignableFrom(ownerClass)) {
+            targets.add(Target.CAPABILITIES);
+        } else if (isPermissionRelevant(ownerClass)) {
+            targets.add(Target.CAPABILITIES);
+            targets.add(Target.PERMISSION_DECISIONS);
+        }
+
+        invalidate(targets, new HashSet<>());
+    }
+
+    /**
+     * @param entityClass
+     * @return Whether the entities of the class determine the permissions of
+     * the users.
+     */
+    private static boolean isPermissionRelevant(Class<?> entityClass) {
+        return User.class.isAssignableFrom(entityClass)
+            || UserGroup.class.isAssignableFrom(entityClass)
+            || Role.class.isAssignableFrom(entityClass)
+            || PermissionCollection.class.isAssignableFrom(entityClass);
+    }
+
+    /**
+     * Adds the ids of the layer data sources referenced by the passed state.
+     *
+     * @param propertyTypes
+     * @param state
+     * @param session
+     * @param dataSourceIds
+     */
+    private static void addDataSourceIds(Type[] propertyTypes, Object[] state,
+                                         SharedSessionContractImplementor session, Set<Integer> dataSourceIds) {
+        if (state == null) {
+            return;
+        }
+
+        for (int i = 0; i < propertyTypes.length && i < state.length; i++) {
+            if (!propertyTypes[i].isEntityType() || state[i] == null) {
+                continue;
+            }
+
+            final EntityPersister persister = session.getFactory().getMetamodel()
+                .entityPersister(((EntityType) propertyTypes[i]).getAssociatedEntityName());
+            if (!LayerDataSource.class.isAssignableFrom(persister.getMappedClass())) {
+                continue;
+            }
+
+            final Object reference = state[i];
+            final Serializable id = reference instanceof HibernateProxy
+                ? ((HibernateProxy) reference).getHibernateLazyInitializer().getIdentifier()
+                : persister.getIdentifier(reference, session);
+            if (id instanceof Integer) {
+                dataSourceIds.add((Integer) id);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the targets (and data source URLs) that haven't been
+     * invalidated within the current transaction yet.
+     *
+     * @param targets
+     * @param dataSourceIds
+     */
+    private void invalidate(Set<Target> targets, Set<Integer> dataSourceIds) {
+        if (targets.isEmpty() && dataSourceIds.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager.getResource(this);
+            if (changes == null) {
+                changes = new TransactionChanges();
+                TransactionSynchronizationManager.bindResource(this, changes);
+                TransactionSynchronizationManager.registerSynchronization(changes);
+            }
+            targets.removeAll(changes.targets);
+            dataSourceIds.removeAll(changes.dataSourceIds);
+            changes.targets.addAll(targets);
+            changes.dataSourceIds.addAll(dataSourceIds);
+        }
+
+        for (Target target : targets) {
+            switch (target) {
+                case RULE_INDEX:
+                    // drops the cached capabilities, too
+                    if (interceptorRuleService != null) {
+                        interceptorRuleService.invalidateRuleIndex();
+                    } else if (capabilitiesCache != null) {
+                        capabilitiesCache.invalidate();
+                    }
+                    break;
+                case CAPABILITIES:
+                    if (capabilitiesCache != null) {
+                        capabilitiesCache.invalidate();
+                    }
+                    break;
+                case PERMISSION_DECISIONS:
+                    if (permissionDecisionCache != null) {
+                        permissionDecisionCache.invalidate();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (wmtsTileCache != null) {
+            for (Integer dataSourceId : dataSourceIds) {
+                wmtsTileCache.invalidateDataSource(dataSourceId);
+            }
+        }
+    }
+
+    /**
+     * The caches that have been invalidated within a transaction.
+     */
+    private final class TransactionChanges implements TransactionSynchronization {
+
+        private final Set<Target> targets = EnumSet.noneOf(Target.class);
+
+        private final Set<Integer> dataSourceIds = new HashSet<>();
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(EntityCacheInvalidator.this);
+        }
+    }
+
+    /**
+     * @param interceptorRuleService the interceptorRuleService to set
+     */
+    public void setInterceptorRuleService(
+        InterceptorRuleService<InterceptorRule, InterceptorRuleDao<InterceptorRule>> interceptorRuleService) {
+        this.interceptorRuleService = interceptorRuleService;
+    }
+
+    /**
+     * @param capabilitiesCache the capabilitiesCache to set
+     */
+    public void setCapabilitiesCache(CapabilitiesCache capabilitiesCache) {
+        this.capabilitiesCache = capabilitiesCache;
+    }
+
+    /**
+     * @param wmtsTileCache the wmtsTileCache to set
+     */
+    public void setWmtsTileCache(WmtsTileCache wmtsTileCache) {
+        this.wmtsTileCache = wmtsTileCache;
+    }
+
+    /**
+     * @param permissionDecisionCache the permissionDecisionCache to set
+     */
+    public void setPermissionDecisionCache(PermissionDecisionCache permissionDecisionCache) {
+        this.permissionDecisionCache = permissionDecisionCache;
+    }
+
+}
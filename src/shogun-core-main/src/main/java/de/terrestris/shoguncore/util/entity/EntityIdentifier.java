@@ -0,0 +1,66 @@
+package de.terrestris.shoguncore.util.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Identifies a persisted entity by the name of its root entity (i.e. the
+ * name is the same for all classes of an entity hierarchy) and its ID.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public final class EntityIdentifier implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String rootEntityName;
+
+    private final Serializable id;
+
+    /**
+     * @param rootEntityName The name of the root entity of the entity
+     *                       hierarchy.
+     * @param id             The ID of the entity.
+     */
+    public EntityIdentifier(String rootEntityName, Serializable id) {
+        this.rootEntityName = rootEntityName;
+        this.id = id;
+    }
+
+    /**
+     * @return the rootEntityName
+     */
+    public String getRootEntityName() {
+        return rootEntityName;
+    }
+
+    /**
+     * @return the id
+     */
+    public Serializable getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EntityIdentifier)) {
+            return false;
+        }
+        EntityIdentifier other = (EntityIdentifier) obj;
+        return Objects.equals(rootEntityName, other.rootEntityName) &&
+            Objects.equals(id, other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rootEntityName, id);
+    }
+
+    @Override
+    public String toString() {
+        return rootEntityName + "#" + id;
+    }
+}
@@ -2,7 +2,9 @@ package de.terrestris.shoguncore.util.entity;
 
 import org.apache.commons.beanutils.ConvertUtils;
 import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import org.hibernate.criterion.Order;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
@@ -22,6 +24,31 @@ public class EntityUtil {
      */
     public static final String RESTRICT_FIELDS_PARAM = "output:only";
 
+    /**
+     * The parameter that might contain the index of the first entity of a
+     * requested page.
+     */
+    public static final String PAGING_OFFSET_PARAM = "page:offset";
+
+    /**
+     * The parameter that might contain the maximum number of entities of a
+     * requested page.
+     */
+    public static final String PAGING_LIMIT_PARAM = "page:limit";
+
+    /**
+     * The parameter that might contain a list of fieldNames to sort the
+     * entities by. Field names prefixed with <code>-</code> are sorted in
+     * descending order.
+     */
+    public static final String SORT_PARAM = "sort:by";
+
+    /**
+     * The parameter that might contain the name of the {@link FetchPlan} the
+     * associations of the entities are fetched with.
+     */
+    public static final String FETCH_PLAN_PARAM = "fetch:plan";
+
     /**
      * @param clazz
      * @param fieldName
@@ -277,4 +304,128 @@ public class EntityUtil {
 
         return result;
     }
+
+    /**
+     * Whether the <code>requestedFilter</code> contains one of the paging or
+     * sorting parameters {@value PAGING_OFFSET_PARAM},
+     * {@value PAGING_LIMIT_PARAM} or {@value SORT_PARAM}.
+     *
+     * @param requestedFilter
+     * @return
+     */
+    public static boolean isPagingRequest(MultiValueMap<String, String> requestedFilter) {
+        if (requestedFilter == null) {
+            return false;
+        }
+        for (String key : requestedFilter.keySet()) {
+            if (PAGING_OFFSET_PARAM.equalsIgnoreCase(key) || PAGING_LIMIT_PARAM.equalsIgnoreCase(key)
+                || SORT_PARAM.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the name of the {@link FetchPlan} requested by the parameter
+     * {@value FETCH_PLAN_PARAM}.
+     *
+     * @param requestedFilter
+     * @return The (trimmed) name of the fetch plan or null if the parameter
+     * is not present
+     */
+    public static String determineFetchPlan(MultiValueMap<String, String> requestedFilter) {
+        if (requestedFilter == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> entry : requestedFilter.entrySet()) {
+            if (FETCH_PLAN_PARAM.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null
+                && !entry.getValue().isEmpty()) {
+                return StringUtils.trimToNull(entry.getValue().get(0));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the (first) value of the parameter <code>paramName</code> (e.g.
+     * {@value PAGING_OFFSET_PARAM} or {@value PAGING_LIMIT_PARAM}) as
+     * non-negative integer.
+     *
+     * @param requestedFilter
+     * @param paramName
+     * @return The value or null if the parameter is not present
+     * @throws IllegalArgumentException If the value is not a non-negative
+     *                                  integer
+     */
+    public static Integer determineNonNegativeIntegerParam(MultiValueMap<String, String> requestedFilter,
+                                                           String paramName) {
+        if (requestedFilter == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> entry : requestedFilter.entrySet()) {
+            if (paramName.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null
+                && !entry.getValue().isEmpty()) {
+                String value = StringUtils.trim(entry.getValue().get(0));
+                if (!StringUtils.isNumeric(value)) {
+                    throw new IllegalArgumentException(String.format(
+                        "The value '%s' of parameter '%s' is not a non-negative integer", value, paramName));
+                }
+                try {
+                    return Integer.valueOf(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format(
+                        "The value '%s' of parameter '%s' is too large", value, paramName), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the sort orders requested in the <code>requestedFilter</code>.
+     * <p>
+     * Only the key {@value SORT_PARAM} is taken as (comma separated) list of
+     * fieldNames to sort by, a leading <code>-</code> requests a descending
+     * order. As for {@link #determineRestrictFields}, the fieldNames are
+     * treated in a case-insensitive matter and fields that can't be sorted by
+     * are ignored.
+     *
+     * @param requestedFilter
+     * @param entityClass
+     * @return The list of orders (may be empty)
+     */
+    public static List<Order> determineSortOrders(MultiValueMap<String, String> requestedFilter, Class<?> entityClass) {
+        List<Order> orders = new ArrayList<>();
+        if (requestedFilter == null) {
+            return orders;
+        }
+
+        List<String> sortFields = null;
+        for (Map.Entry<String, List<String>> entry : requestedFilter.entrySet()) {
+            if (SORT_PARAM.equalsIgnoreCase(entry.getKey())) {
+                sortFields = listFromCommaSeparatedStringList(entry.getValue());
+            }
+        }
+        if (sortFields == null) {
+            return orders;
+        }
+
+        List<String> sortableFieldNames = getFilterableOrRestrictableFieldNames(entityClass);
+
+        for (String requestedSortField : sortFields) {
+            final String sortField = StringUtils.trim(requestedSortField);
+            final boolean descending = sortField.startsWith("-");
+            final String requestedFieldName = descending ? sortField.substring(1) : sortField;
+
+            for (String sortableFieldName : sortableFieldNames) {
+                if (sortableFieldName.equalsIgnoreCase(requestedFieldName)) {
+                    orders.add(descending ? Order.desc(sortableFieldName) : Order.asc(sortableFieldName));
+                    break;
+                }
+            }
+        }
+
+        return orders;
+    }
 }
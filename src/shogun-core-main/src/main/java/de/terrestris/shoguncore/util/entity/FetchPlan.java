@@ -0,0 +1,99 @@
+package de.terrestris.shoguncore.util.entity;
+
+import org.hibernate.FetchMode;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A named plan that determines how the associations of queried entities are
+ * fetched, i.e. it overrides the fetch modes declared in the mapping for a
+ * certain use case. The plans are registered at (and applied by) the DAOs and
+ * can be chosen by the clients with the parameter
+ * {@value EntityUtil#FETCH_PLAN_PARAM}.
+ * <p>
+ * Two plans are available for all entities:
+ * <ul>
+ * <li>{@value #DEFAULT}: The associations are fetched as declared in the
+ * mapping, i.e. collections annotated with <code>FetchMode.JOIN</code> are
+ * joined. This suits single entities.</li>
+ * <li>{@value #LIST}: No collection of the queried entities is joined, the
+ * collections are loaded by (batched) selects instead. This avoids the
+ * cartesian products of joining several collections of many entities.</li>
+ * </ul>
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public final class FetchPlan implements Serializable {
+
+    /**
+     * The name of the plan that fetches the associations as declared in the
+     * mapping.
+     */
+    public static final String DEFAULT = "default";
+
+    /**
+     * The name of the plan that doesn't join any collection of the queried
+     * entities.
+     */
+    public static final String LIST = "list";
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    private final boolean joinCollections;
+
+    private final Map<String, FetchMode> fetchModes;
+
+    /**
+     * @param name            The name of the plan.
+     * @param joinCollections Whether the collections of the queried entities
+     *                        are joined as declared in the mapping (or
+     *                        loaded by selects).
+     * @param fetchModes      The fetch modes of (further) association paths,
+     *                        e.g. <code>source</code> or
+     *                        <code>viewport.subModules</code>.
+     */
+    public FetchPlan(String name, boolean joinCollections, Map<String, FetchMode> fetchModes) {
+        this.name = name;
+        this.joinCollections = joinCollections;
+        this.fetchModes = fetchModes == null ? Collections.<String, FetchMode>emptyMap()
+            : Collections.unmodifiableMap(new LinkedHashMap<>(fetchModes));
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return whether the collections are joined as declared in the mapping
+     */
+    public boolean isJoinCollections() {
+        return joinCollections;
+    }
+
+    /**
+     * @return the (unmodifiable) fetch modes by association path
+     */
+    public Map<String, FetchMode> getFetchModes() {
+        return fetchModes;
+    }
+
+    /**
+     * @return Whether this plan fetches everything as declared in the mapping.
+     */
+    public boolean isMappingDefault() {
+        return joinCollections && fetchModes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,268 @@
+package de.terrestris.shoguncore.util.http;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Holds the long-lived, connection pooled {@link CloseableHttpClient} that is
+ * shared by all outgoing requests of the {@link HttpUtil}.
+ * <p>
+ * The client is created lazily on first use (e.g. in unit tests without any
+ * spring context) and is rebuilt as soon as one of the pool settings changes.
+ * The settings are read from the following (optional) properties:
+ *
+ * <pre>
+ *    http.pool.maxTotal=200
+ *    http.pool.maxPerRoute=50
+ *    http.pool.idleTimeout=30000
+ *    http.pool.keepAlive=60000
+ *    http.pool.validateAfterInactivity=2000
+ * </pre>
+ * <p>
+ * Note: The client is shared between all requests (and users), so all request
+ * specific state (credentials, auth cache and cookies) has to be passed via
+ * the {@link org.apache.http.client.protocol.HttpClientContext} of a request.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class HttpClientPool {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(HttpClientPool.class);
+
+    /**
+     * The maximum number of connections in the pool (over all routes).
+     */
+    private static int maxTotal = 200;
+
+    /**
+     * The maximum number of connections per route (i.e. per target host).
+     */
+    private static int maxPerRoute = 50;
+
+    /**
+     * The time (in ms) after which idle connections will be evicted from the
+     * pool.
+     */
+    private static long idleTimeout = 30000;
+
+    /**
+     * The time (in ms) a connection will be kept alive if the server doesn't
+     * send an explicit Keep-Alive header.
+     */
+    private static long keepAlive = 60000;
+
+    /**
+     * The period of inactivity (in ms) after which a persistent connection
+     * will be re-validated before being leased from the pool.
+     */
+    private static int validateAfterInactivity = 2000;
+
+    /**
+     * The shared connection manager.
+     */
+    private static PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * The shared client.
+     */
+    private static CloseableHttpClient httpClient;
+
+    /**
+     * Returns the shared client and creates it if needed.
+     *
+     * @return The shared {@link CloseableHttpClient}.
+     */
+    public static synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(maxTotal);
+            connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+            connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+
+            httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy())
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .build();
+
+            LOG.debug("Created pooled HTTP client (maxTotal: " + maxTotal +
+                ", maxPerRoute: " + maxPerRoute + ", idleTimeout: " +
+                idleTimeout + "ms, keepAlive: " + keepAlive + "ms)");
+        }
+        return httpClient;
+    }
+
+    /**
+     * Returns the current statistics of the connection pool, e.g. for
+     * monitoring purposes.
+     *
+     * @return The total {@link PoolStats} or null if the pool hasn't been
+     * created yet.
+     */
+    public static synchronized PoolStats getTotalStats() {
+        if (connectionManager == null) {
+            return null;
+        }
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Closes the shared client and all pooled connections. A new client will
+     * be created on the next call of {@link #getHttpClient()}.
+     */
+    public static synchronized void shutdown() {
+        if (httpClient != null) {
+            LOG.debug("Closing pooled HTTP client");
+            IOUtils.closeQuietly(httpClient);
+        }
+        httpClient = null;
+        connectionManager = null;
+    }
+
+    /**
+     * Closes the pool on shutdown of the application context.
+     */
+    @PreDestroy
+    @SuppressWarnings("static-method")
+    public void destroy() {
+        shutdown();
+    }
+
+    /**
+     * Uses the keep-alive duration announced by the server and falls back to
+     * the configured default otherwise.
+     *
+     * @return The {@link ConnectionKeepAliveStrategy}.
+     */
+    private static ConnectionKeepAliveStrategy createKeepAliveStrategy() {
+        final long defaultKeepAlive = keepAlive;
+        return new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = super.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : defaultKeepAlive;
+            }
+        };
+    }
+
+    /**
+     * @return the maxTotal
+     */
+    public static int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * @param maxTotal the maxTotal to set
+     */
+    @SuppressFBWarnings("ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD")
+    @Value("${http.pool.maxTotal:200}")
+    @SuppressWarnings("static-method")
+    public void setMaxTotal(int maxTotal) {
+        synchronized (HttpClientPool.class) {
+            HttpClientPool.maxTotal = maxTotal;
+            shutdown();
+        }
+    }
+
+    /**
+     * @return the maxPerRoute
+     */
+    public static int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * @param maxPerRoute the maxPerRoute to set
+     */
+    @SuppressFBWarnings("ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD")
+    @Value("${http.pool.maxPerRoute:50}")
+    @SuppressWarnings("static-method")
+    public void setMaxPerRoute(int maxPerRoute) {
+        synchronized (HttpClientPool.class) {
+            HttpClientPool.maxPerRoute = maxPerRoute;
+            shutdown();
+        }
+    }
+
+    /**
+     * @return the idleTimeout
+     */
+    public static long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout the idleTimeout to set
+     */
+    @SuppressFBWarnings("ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD")
+    @Value("${http.pool.idleTimeout:30000}")
+    @SuppressWarnings("static-method")
+    public void setIdleTimeout(long idleTimeout) {
+        synchronized (HttpClientPool.class) {
+            HttpClientPool.idleTimeout = idleTimeout;
+            shutdown();
+        }
+    }
+
+    /**
+     * @return the keepAlive
+     */
+    public static long getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * @param keepAlive the keepAlive to set
+     */
+    @SuppressFBWarnings("ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD")
+    @Value("${http.pool.keepAlive:60000}")
+    @SuppressWarnings("static-method")
+    public void setKeepAlive(long keepAlive) {
+        synchronized (HttpClientPool.class) {
+            HttpClientPool.keepAlive = keepAlive;
+            shutdown();
+        }
+    }
+
+    /**
+     * @return the validateAfterInactivity
+     */
+    public static int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * @param validateAfterInactivity the validateAfterInactivity to set
+     */
+    @SuppressFBWarnings("ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD")
+    @Value("${http.pool.validateAfterInactivity:2000}")
+    @SuppressWarnings("static-method")
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        synchronized (HttpClientPool.class) {
+            HttpClientPool.validateAfterInactivity = validateAfterInactivity;
+            shutdown();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.*;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
@@ -21,9 +22,9 @@ import org.apache.http.entity.mime.content.ByteArrayBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.Logger;
@@ -184,6 +185,24 @@ public class HttpUtil {
         return send(new HttpGet(uri), null, requestHeaders);
     }
 
+    /**
+     * Performs an HTTP GET on the given URI.
+     * No credentials needed.
+     *
+     * @param uri            The URI to connect to.
+     * @param requestHeaders Additional HTTP headers added to the request
+     * @param streamBody     Whether the body of the response should be
+     *                       streamed instead of being read into memory. A
+     *                       streamed response has to be closed by the caller.
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws HttpException
+     */
+    public static Response get(URI uri, Header[] requestHeaders, boolean streamBody)
+        throws URISyntaxException, HttpException {
+        return send(new HttpGet(uri), null, requestHeaders, streamBody);
+    }
+
     /**
      * Performs an HTTP GET on the given URI.
      * Basic auth is used if both username and password are not null.
@@ -260,6 +279,24 @@ public class HttpUtil {
      */
     public static Response forwardGet(URI uri, HttpServletRequest request, boolean forwardHeaders)
         throws URISyntaxException, HttpException {
+        return forwardGet(uri, request, forwardHeaders, false);
+    }
+
+    /**
+     * Forward GET request to uri based on given request
+     *
+     * @param uri            uri The URI to forward to.
+     * @param request        The original {@link HttpServletRequest}
+     * @param forwardHeaders Should headers of request should be forwarded
+     * @param streamBody     Whether the body of the response should be
+     *                       streamed instead of being read into memory. A
+     *                       streamed response has to be closed by the caller.
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws HttpException
+     */
+    public static Response forwardGet(URI uri, HttpServletRequest request, boolean forwardHeaders,
+                                      boolean streamBody) throws URISyntaxException, HttpException {
 
         Header[] headersToForward = null;
 
@@ -267,7 +304,7 @@ public class HttpUtil {
             headersToForward = HttpUtil.getHeadersFromRequest(request);
         }
 
-        return send(new HttpGet(uri), null, headersToForward);
+        return send(new HttpGet(uri), null, headersToForward, streamBody);
     }
 
     /**
@@ -596,6 +633,26 @@ public class HttpUtil {
         return postParams(new HttpPost(uri), queryParams, null, requestHeaders);
     }
 
+    /**
+     * Performs an HTTP POST on the given URI.
+     * No credentials needed.
+     *
+     * @param uri            The URI to connect to.
+     * @param queryParams    The list of NameValuePairs.
+     * @param requestHeaders Additional HTTP headers added to the request
+     * @param streamBody     Whether the body of the response should be
+     *                       streamed instead of being read into memory. A
+     *                       streamed response has to be closed by the caller.
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws UnsupportedEncodingException
+     * @throws HttpException
+     */
+    public static Response post(URI uri, List<NameValuePair> queryParams, Header[] requestHeaders,
+                                boolean streamBody) throws URISyntaxException, UnsupportedEncodingException, HttpException {
+        return postParams(new HttpPost(uri), queryParams, null, requestHeaders, streamBody);
+    }
+
     /**
      * Performs an HTTP POST on the given URI.
      * Basic auth is used if both and password are not null.
@@ -796,6 +853,48 @@ public class HttpUtil {
         return postBody(new HttpPost(uri), body, contentType, null, requestHeaders);
     }
 
+    /**
+     * Performs an HTTP POST on the given URI.
+     *
+     * @param uri            The URI to connect to.
+     * @param body           The POST body.
+     * @param contentType    The ContentType of the POST body.
+     * @param requestHeaders Additional HTTP headers added to the request
+     * @param streamBody     Whether the body of the response should be
+     *                       streamed instead of being read into memory. A
+     *                       streamed response has to be closed by the caller.
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws HttpException
+     */
+    public static Response post(URI uri, String body, ContentType contentType, Header[] requestHeaders,
+                                boolean streamBody) throws URISyntaxException, HttpException {
+        return postBody(new HttpPost(uri), body, contentType, null, requestHeaders, streamBody);
+    }
+
+    /**
+     * Performs an HTTP POST on the given URI. The body is sent as is, i.e.
+     * without being decoded and encoded again.
+     *
+     * @param uri            The URI to connect to.
+     * @param body           The POST body.
+     * @param contentType    The ContentType of the POST body.
+     * @param requestHeaders Additional HTTP headers added to the request
+     * @param streamBody     Whether the body of the response should be
+     *                       streamed instead of being read into memory. A
+     *                       streamed response has to be closed by the caller.
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws HttpException
+     */
+    public static Response post(URI uri, byte[] body, ContentType contentType, Header[] requestHeaders,
+                                boolean streamBody) throws URISyntaxException, HttpException {
+        HttpPost httpRequest = new HttpPost(uri);
+        httpRequest.setEntity(new ByteArrayEntity(body, contentType));
+
+        return send(httpRequest, null, requestHeaders, streamBody);
+    }
+
     /**
      * Performs an HTTP POST on the given URL.
      * Basic auth is used if both username and password are not null
@@ -1155,12 +1254,28 @@ public class HttpUtil {
      */
     private static Response postBody(HttpPost httpRequest, String body, ContentType contentType, Credentials credentials, Header[] requestHeaders)
         throws URISyntaxException, HttpException {
+        return postBody(httpRequest, body, contentType, credentials, requestHeaders, false);
+    }
+
+    /**
+     * @param httpRequest
+     * @param body
+     * @param contentType
+     * @param credentials    Instance implementing {@link Credentials} interface holding a set of credentials
+     * @param requestHeaders Additional HTTP headers added to the request
+     * @param streamBody     Whether the body of the response should be streamed
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws HttpException
+     */
+    private static Response postBody(HttpPost httpRequest, String body, ContentType contentType, Credentials credentials,
+                                     Header[] requestHeaders, boolean streamBody) throws URISyntaxException, HttpException {
 
         StringEntity stringEntity = new StringEntity(body, contentType);
         stringEntity.setChunked(true);
         httpRequest.setEntity(stringEntity);
 
-        return send(httpRequest, credentials, requestHeaders);
+        return send(httpRequest, credentials, requestHeaders, streamBody);
     }
 
     /**
@@ -1175,13 +1290,30 @@ public class HttpUtil {
      */
     private static Response postParams(HttpPost httpRequest, List<NameValuePair> queryParams, Credentials credentials, Header[] requestHeaders)
         throws URISyntaxException, UnsupportedEncodingException, HttpException {
+        return postParams(httpRequest, queryParams, credentials, requestHeaders, false);
+    }
+
+    /**
+     * @param httpRequest
+     * @param queryParams
+     * @param credentials    Instance implementing {@link Credentials} interface holding a set of credentials
+     * @param requestHeaders Additional HTTP headers added to the request
+     * @param streamBody     Whether the body of the response should be streamed
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws UnsupportedEncodingException
+     * @throws HttpException
+     */
+    private static Response postParams(HttpPost httpRequest, List<NameValuePair> queryParams, Credentials credentials,
+                                       Header[] requestHeaders, boolean streamBody)
+        throws URISyntaxException, UnsupportedEncodingException, HttpException {
 
         if (!queryParams.isEmpty()) {
             HttpEntity httpEntity = new UrlEncodedFormEntity(queryParams, "UTF-8");
             httpRequest.setEntity(httpEntity);
         }
 
-        return send(httpRequest, credentials, requestHeaders);
+        return send(httpRequest, credentials, requestHeaders, streamBody);
     }
 
     /**
@@ -1195,6 +1327,24 @@ public class HttpUtil {
      * @throws HttpException
      */
     public static Response forwardPost(URI uri, HttpServletRequest request, boolean forwardHeaders) throws URISyntaxException, HttpException {
+        return forwardPost(uri, request, forwardHeaders, false);
+    }
+
+    /**
+     * Forward POST to uri based on given request
+     *
+     * @param uri            uri The URI to forward to.
+     * @param request        The original {@link HttpServletRequest}
+     * @param forwardHeaders Should headers of request should be forwarded
+     * @param streamBody     Whether the body of the response should be
+     *                       streamed instead of being read into memory. A
+     *                       streamed response has to be closed by the caller.
+     * @return
+     * @throws URISyntaxException
+     * @throws HttpException
+     */
+    public static Response forwardPost(URI uri, HttpServletRequest request, boolean forwardHeaders,
+                                       boolean streamBody) throws URISyntaxException, HttpException {
         Header[] headersToForward = null;
         if (request != null && forwardHeaders) {
             headersToForward = HttpUtil.getHeadersFromRequest(request);
@@ -1208,7 +1358,7 @@ public class HttpUtil {
         ContentType ct = ContentType.parse(ctString);
         String body = getRequestBody(request);
 
-        return HttpUtil.postBody(new HttpPost(uri), body, ct, null, headersToForward);
+        return HttpUtil.postBody(new HttpPost(uri), body, ct, null, headersToForward, streamBody);
     }
 
 
@@ -1772,8 +1922,29 @@ public class HttpUtil {
      */
     private static Response send(HttpRequestBase httpRequest, Credentials credentials,
                                  Header[] requestHeaders) throws URISyntaxException, HttpException {
+        return send(httpRequest, credentials, requestHeaders, false);
+    }
+
+    /**
+     * Performs an HTTP operation on the given URL.
+     * Basic auth is used if both username and pw are not null.
+     * <p>
+     * If streamBody is set, the body of the response won't be read into
+     * memory but will be provided as stream (see {@link Response#getBodyStream()}).
+     * The connection will be released as soon as the stream has been
+     * consumed or the response has been closed.
+     *
+     * @param httpRequest    The HttpRequest to connect to.
+     * @param credentials    Instance implementing {@link Credentials} interface holding a set of credentials
+     * @param requestHeaders Additional HTTP headers added to the request
+     * @param streamBody     Whether the body of the response should be streamed
+     * @return The HTTP response as Response object.
+     * @throws URISyntaxException
+     * @throws HttpException
+     */
+    private static Response send(HttpRequestBase httpRequest, Credentials credentials,
+                                 Header[] requestHeaders, boolean streamBody) throws URISyntaxException, HttpException {
 
-        CloseableHttpClient httpClient = null;
         CloseableHttpResponse httpResponse = null;
         Response response = new Response();
         HttpClientContext httpContext = HttpClientContext.create();
@@ -1858,16 +2029,13 @@ public class HttpUtil {
 
             httpContext.setCredentialsProvider(credentialsProvider);
             httpContext.setAuthCache(authCache);
+        }
 
-            httpClient = HttpClients.custom()
-                .setDefaultCredentialsProvider(credentialsProvider)
-                .build();
-
-        } else {
-
-            httpClient = HttpClients.createDefault();
+        // cookies are bound to this single request only (and not to the
+        // shared client)
+        httpContext.setCookieStore(new BasicCookieStore());
 
-        }
+        CloseableHttpClient httpClient = HttpClientPool.getHttpClient();
 
         try {
 
@@ -1901,7 +2069,12 @@ public class HttpUtil {
             response.setHeaders(headersMap);
 
             if (httpResponseEntity != null) {
-                response.setBody(EntityUtils.toByteArray(httpResponseEntity));
+                if (streamBody) {
+                    response.setBodyStream(new ResponseBodyInputStream(
+                        httpResponseEntity.getContent(), httpRequest, httpResponse));
+                } else {
+                    response.setBody(EntityUtils.toByteArray(httpResponseEntity));
+                }
             }
 
         } catch (IOException e) {
@@ -1909,11 +2082,14 @@ public class HttpUtil {
                 ": " + e.getMessage());
         } finally {
 
-            // cleanup
-            httpRequest.reset();
+            // cleanup, the (consumed) connection is released back to the
+            // pool, the shared client must not be closed here. A streamed
+            // response will be cleaned up as soon as its stream is closed
+            if (!response.isStreamed()) {
+                httpRequest.reset();
 
-            IOUtils.closeQuietly(httpResponse);
-            IOUtils.closeQuietly(httpClient);
+                IOUtils.closeQuietly(httpResponse);
+            }
         }
 
         return response;
@@ -0,0 +1,67 @@
+package de.terrestris.shoguncore.util.http;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The body stream of a streamed {@link de.terrestris.shoguncore.util.model.Response}.
+ * <p>
+ * Closing the stream closes the underlying HTTP response: If the body has
+ * been consumed completely the connection has already been released back to
+ * the pool, otherwise the connection will be discarded (instead of reading
+ * the remaining, possibly large body).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+class ResponseBodyInputStream extends FilterInputStream {
+
+    /**
+     *
+     */
+    private final HttpRequestBase httpRequest;
+
+    /**
+     *
+     */
+    private final CloseableHttpResponse httpResponse;
+
+    /**
+     *
+     */
+    private boolean closed;
+
+    /**
+     * @param in           The content stream of the response entity.
+     * @param httpRequest  The request the response belongs to.
+     * @param httpResponse The response.
+     */
+    ResponseBodyInputStream(InputStream in, HttpRequestBase httpRequest,
+                            CloseableHttpResponse httpResponse) {
+        super(in);
+        this.httpRequest = httpRequest;
+        this.httpResponse = httpResponse;
+    }
+
+    /**
+     *
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            httpResponse.close();
+        } finally {
+            httpRequest.reset();
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
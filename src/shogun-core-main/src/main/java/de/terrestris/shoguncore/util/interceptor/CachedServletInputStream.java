@@ -28,6 +28,14 @@ public class CachedServletInputStream extends ServletInputStream {
         input = new ByteArrayInputStream(cachedBytes.toByteArray());
     }
 
+    /**
+     * Create a new input stream reading the given (cached) request body
+     * without copying it.
+     */
+    public CachedServletInputStream(byte[] cachedBytes) {
+        input = new ByteArrayInputStream(cachedBytes);
+    }
+
     /**
      *
      */
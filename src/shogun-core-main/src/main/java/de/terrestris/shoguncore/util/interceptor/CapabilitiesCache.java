@@ -0,0 +1,416 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.util.model.Response;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Caches the (intercepted) GetCapabilities responses of the GeoServer
+ * interceptor.
+ * <p>
+ * The entries are keyed by the full (normalized) parameters of the request
+ * after the request interceptors have been applied, the forwarded
+ * host/protocol (as these are part of the rewritten URLs), the GeoServer
+ * credentials (as these determine the content GeoServer responds with) and
+ * the current user and its groups (as these determine the layers the response
+ * interceptors keep). Entries expire after the configured time to live and
+ * are dropped whenever the interceptor rules, the layers, their data sources
+ * or the permissions change (including deletions), see {@link #invalidate()},
+ * which is called for every such change by the
+ * {@link de.terrestris.shoguncore.util.entity.EntityCacheInvalidator}.
+ * <p>
+ * Each entry has a strong ETag, the cached response can therefore be answered
+ * with <code>304 Not Modified</code> if the client sends a matching
+ * <code>If-None-Match</code> header.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class CapabilitiesCache {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(CapabilitiesCache.class);
+
+    /**
+     * The time to live of an entry in seconds, a value of 0 (or less)
+     * disables the cache.
+     */
+    @Value("${geoserver.interceptor.capabilitiesCache.ttl:300}")
+    private long timeToLive = 300;
+
+    /**
+     * The maximum number of entries.
+     */
+    @Value("${geoserver.interceptor.capabilitiesCache.maxEntries:100}")
+    private int maxEntries = 100;
+
+    /**
+     *
+     */
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every invalidation, used to detect (and drop) responses
+     * that have been built concurrently to a change.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates the (strong) ETag of the given body.
+     *
+     * @param body The body.
+     * @return The quoted ETag.
+     */
+    public static String createETag(byte[] body) {
+        return "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+    }
+
+    /**
+     * @return Whether the cache is enabled at all.
+     */
+    public boolean isEnabled() {
+        return timeToLive > 0 && maxEntries > 0;
+    }
+
+    /**
+     * Returns the current generation of the cache. Read it <i>before</i>
+     * building a response that should be cached and pass it to
+     * {@link #put(Key, Response, long)}.
+     *
+     * @return The current generation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param key The key.
+     * @return The (not expired) entry for the given key or null.
+     */
+    public Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches the given response. Only successful responses with a (buffered)
+     * body that are no service exceptions are cached, the response isn't cached (but an entry is returned
+     * nevertheless) if the cache has been invalidated since the given
+     * generation.
+     *
+     * @param key        The key.
+     * @param response   The response to cache.
+     * @param generation The generation the response has been built with.
+     * @return The entry or null if the response can't be cached at all.
+     */
+    public Entry put(Key key, Response response, long generation) {
+        if (!isEnabled() || response == null || response.isStreamed() ||
+            response.getBody() == null || !HttpStatus.OK.equals(response.getStatusCode())) {
+            return null;
+        }
+
+        // GeoServer responds with 200 OK for (OGC) service exceptions
+        String contentType = response.getHeaders() == null ? null :
+            response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+        if (StringUtils.containsIgnoreCase(contentType, "se_xml")) {
+            return null;
+        }
+
+        Entry entry = new Entry(response, System.currentTimeMillis() + timeToLive * 1000);
+
+        synchronized (this.generation) {
+            if (this.generation.get() == generation) {
+                evict();
+                entries.put(key, entry);
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Drops all entries. If called within a transaction, the entries are
+     * (additionally) dropped after completion of the transaction.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    clear();
+                }
+            });
+        }
+        clear();
+    }
+
+    /**
+     * @return The number of (possibly expired) entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     *
+     */
+    private void clear() {
+        synchronized (this.generation) {
+            this.generation.incrementAndGet();
+            entries.clear();
+        }
+        LOG.debug("Invalidated the capabilities cache");
+    }
+
+    /**
+     * Removes all expired entries and, if the cache is still full, the entry
+     * that expires first.
+     */
+    private void evict() {
+        if (entries.size() < maxEntries) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Map.Entry<Key, Entry> oldest = null;
+
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> candidate = it.next();
+            if (candidate.getValue().isExpired(now)) {
+                it.remove();
+            } else if (oldest == null || candidate.getValue().expires < oldest.getValue().expires) {
+                oldest = candidate;
+            }
+        }
+
+        if (oldest != null && entries.size() >= maxEntries) {
+            entries.remove(oldest.getKey());
+        }
+    }
+
+    /**
+     * @param timeToLive the time to live (in seconds) to set
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * The key of a cached GetCapabilities response.
+     */
+    public static final class Key {
+
+        private final String requestUri;
+
+        /**
+         * The parameters by their upper cased name (OGC parameter names are
+         * case insensitive).
+         */
+        private final SortedMap<String, List<String>> parameters;
+
+        private final String forwardedHost;
+
+        private final String forwardedProto;
+
+        /**
+         * A digest of the GeoServer credentials, the credentials themselves
+         * shouldn't be held in memory longer than needed.
+         */
+        private final String credentials;
+
+        private final Integer userId;
+
+        private final SortedSet<Integer> userGroupIds;
+
+        /**
+         * @param requestUri     The URI the request is sent to.
+         * @param parameters     The parameters of the request (after all
+         *                       request interceptors have been applied).
+         * @param forwardedHost  The forwarded host (may be null).
+         * @param forwardedProto The forwarded protocol (may be null).
+         * @param credentials    The GeoServer credentials (may be null).
+         * @param userId         The ID of the current user (may be null).
+         * @param userGroupIds   The IDs of the groups of the current user
+         *                       (may be null).
+         */
+        public Key(String requestUri, Map<String, String[]> parameters, String forwardedHost,
+                   String forwardedProto, String credentials, Integer userId, Collection<Integer> userGroupIds) {
+            this.requestUri = requestUri;
+            this.parameters = new TreeMap<>();
+            if (parameters != null) {
+                for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+                    List<String> values = this.parameters.computeIfAbsent(
+                        StringUtils.upperCase(parameter.getKey()), name -> new ArrayList<>());
+                    if (parameter.getValue() != null) {
+                        values.addAll(Arrays.asList(parameter.getValue()));
+                    }
+                }
+            }
+            this.forwardedHost = StringUtils.lowerCase(forwardedHost);
+            this.forwardedProto = StringUtils.lowerCase(forwardedProto);
+            this.credentials = credentials == null ? null :
+                DigestUtils.md5DigestAsHex(credentials.getBytes(StandardCharsets.UTF_8));
+            this.userId = userId;
+            this.userGroupIds = userGroupIds == null ? new TreeSet<>() : new TreeSet<>(userGroupIds);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Objects.equals(requestUri, other.requestUri) &&
+                Objects.equals(parameters, other.parameters) &&
+                Objects.equals(forwardedHost, other.forwardedHost) &&
+                Objects.equals(forwardedProto, other.forwardedProto) &&
+                Objects.equals(credentials, other.credentials) &&
+                Objects.equals(userId, other.userId) &&
+                Objects.equals(userGroupIds, other.userGroupIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(requestUri, parameters, forwardedHost, forwardedProto,
+                credentials, userId, userGroupIds);
+        }
+
+        @Override
+        public String toString() {
+            return requestUri + " " + parameters + " (" + forwardedProto + "://" + forwardedHost +
+                ", user " + userId + ", groups " + userGroupIds + ")";
+        }
+    }
+
+    /**
+     * A cached GetCapabilities response.
+     */
+    public static final class Entry {
+
+        private final HttpHeaders headers;
+
+        private final byte[] body;
+
+        private final String eTag;
+
+        private final long expires;
+
+        /**
+         * @param response
+         * @param expires
+         */
+        @SuppressFBWarnings("EI_EXPOSE_REP2")
+        private Entry(Response response, long expires) {
+            this.body = response.getBody();
+            this.headers = new HttpHeaders();
+            if (response.getHeaders() != null) {
+                this.headers.putAll(response.getHeaders());
+            }
+            this.eTag = createETag(body);
+            this.expires = expires;
+        }
+
+        /**
+         * @param now
+         * @return
+         */
+        private boolean isExpired(long now) {
+            return now >= expires;
+        }
+
+        /**
+         * @return the eTag
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * Whether the given <code>If-None-Match</code> header matches the
+         * ETag of this entry.
+         *
+         * @param ifNoneMatch The header value (may be null).
+         * @return
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (StringUtils.isBlank(ifNoneMatch)) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = StringUtils.removeStart(candidate.trim(), "W/");
+                if ("*".equals(tag) || eTag.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Creates a new response of this entry. The response has an
+         * <code>ETag</code> header and forces the client to revalidate it.
+         *
+         * @param ifNoneMatch The <code>If-None-Match</code> header of the
+         *                    request (may be null).
+         * @return The full response or an (empty) <code>304 Not
+         * Modified</code> response if the given header matches.
+         */
+        public Response toResponse(String ifNoneMatch) {
+            HttpHeaders responseHeaders = new HttpHeaders();
+            responseHeaders.putAll(headers);
+            responseHeaders.setETag(eTag);
+            responseHeaders.setCacheControl("no-cache");
+
+            if (matches(ifNoneMatch)) {
+                responseHeaders.remove(HttpHeaders.CONTENT_TYPE);
+                return new Response(HttpStatus.NOT_MODIFIED, responseHeaders, null);
+            }
+
+            // the body isn't modified by anyone, no need to copy it
+            return new Response(HttpStatus.OK, responseHeaders, body);
+        }
+    }
+}
@@ -0,0 +1,904 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.util.model.Response;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Rewrites OGC capabilities documents in a single streaming (StAX) pass, i.e.
+ * without building a DOM of the (possibly very large) document.
+ * <p>
+ * The following rewrites are supported:
+ * <ul>
+ * <li>Layer filtering: All <code>Layer</code> elements with a
+ * <code>Name</code> that isn't contained in the list of allowed (qualified)
+ * layer names are removed (including all child layers), the names of the
+ * remaining layers are qualified with their namespace.</li>
+ * <li>URL rewriting: The given attribute (e.g. <code>xlink:href</code>) of
+ * all matching elements (e.g. <code>OnlineResource</code>) is replaced by the
+ * given URL. Optionally the query string of the original URL is kept.</li>
+ * </ul>
+ * <p>
+ * Only the header of a single layer (up to its name) is held
+ * in memory, the remaining document is written as soon as it's read. The
+ * document can either be rewritten into a given stream (see
+ * {@link #rewrite(InputStream, OutputStream)}) or on the fly while it's read
+ * (see {@link #rewrite(InputStream)} and {@link #rewrite(Response)}), e.g.
+ * while a streamed upstream response is copied to the client. An instance is
+ * not thread-safe, but may be reused for multiple documents.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class CapabilitiesRewriter {
+
+    /**
+     * Matches elements in any namespace.
+     */
+    public static final String ANY_NAMESPACE = "*";
+
+    /**
+     * The xlink:href attribute.
+     */
+    public static final QName XLINK_HREF = new QName("http://www.w3.org/1999/xlink", "href", "xlink");
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(CapabilitiesRewriter.class);
+
+    /**
+     * The (minimum) number of bytes that are rewritten at once when the
+     * document is rewritten on the fly.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The number of events that are processed before the writer is flushed
+     * when the document is rewritten on the fly.
+     */
+    private static final int EVENTS_PER_FLUSH = 64;
+
+    /**
+     * The maximum number of bytes (of both the original and the rewritten
+     * document) that are held back when the document is rewritten on the
+     * fly. Documents that can't be rewritten within this prefix (e.g. error
+     * pages or invalid XML) are passed through unchanged.
+     */
+    private static final int MAX_PREFIX_SIZE = 256 * 1024;
+
+    /**
+     * The shared (and thread-safe after its configuration) input factory.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    /**
+     * The shared output factory.
+     */
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    /**
+     *
+     */
+    private static final String LAYER = "Layer";
+
+    /**
+     *
+     */
+    private static final String NAME = "Name";
+
+    /**
+     * The qualified names of the allowed layers by their unqualified name or
+     * null if the layers shouldn't be filtered.
+     */
+    private Map<String, String> allowedLayerNames;
+
+    /**
+     *
+     */
+    private final List<UrlRewrite> urlRewrites = new ArrayList<>();
+
+    /**
+     * The versions (of the root element) of the documents to rewrite or null
+     * if documents of all versions should be rewritten.
+     */
+    private Set<String> supportedVersions;
+
+    /**
+     * Sets the (qualified, e.g. <code>workspace:layer</code>) names of the
+     * layers to keep. All other named layers will be removed from the
+     * document.
+     *
+     * @param layerNames The layer names or null to disable the layer
+     *                   filtering.
+     */
+    public void setLayerNames(Collection<String> layerNames) {
+        if (layerNames == null) {
+            this.allowedLayerNames = null;
+            return;
+        }
+        Map<String, String> names = new HashMap<>();
+        for (String layerName : layerNames) {
+            if (StringUtils.isEmpty(layerName)) {
+                continue;
+            }
+            String unqualifiedName = layerName.contains(":") ?
+                layerName.substring(layerName.indexOf(':') + 1) : layerName;
+            names.putIfAbsent(unqualifiedName, layerName);
+        }
+        this.allowedLayerNames = names;
+    }
+
+    /**
+     * Adds an URL rewrite.
+     *
+     * @param element   The element whose attribute should be rewritten. Use
+     *                  {@link #ANY_NAMESPACE} as namespace URI to match the
+     *                  local name only.
+     * @param attribute The attribute holding the URL, it will be added if it
+     *                  doesn't exist.
+     * @param url       The new URL.
+     * @param keepQuery Whether the query string (starting with <code>?</code>)
+     *                  of the existing URL should be appended to the new one.
+     */
+    public void addUrlRewrite(QName element, QName attribute, String url, boolean keepQuery) {
+        urlRewrites.add(new UrlRewrite(element, attribute, url, keepQuery));
+    }
+
+    /**
+     * Sets the versions of the documents to rewrite, i.e. the accepted values
+     * of the <code>version</code> attribute of the root element. Documents of
+     * other versions are passed through unchanged.
+     *
+     * @param versions The versions or null to rewrite documents of all
+     *                 versions.
+     */
+    public void setSupportedVersions(Collection<String> versions) {
+        this.supportedVersions = versions == null ? null : new HashSet<>(versions);
+    }
+
+    /**
+     * Rewrites the given document. The result is written in UTF-8.
+     *
+     * @param in  The capabilities document, it won't be closed.
+     * @param out The stream to write the rewritten document to, it won't be
+     *            closed.
+     * @throws IOException If the document couldn't be parsed or written.
+     */
+    public void rewrite(InputStream in, OutputStream out) throws IOException {
+        XMLStreamReader reader = null;
+        XMLStreamWriter writer = null;
+
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+
+            new Pass(reader, writer).run();
+
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not rewrite the capabilities document: " +
+                e.getMessage(), e);
+        } finally {
+            closeQuietly(reader, writer);
+        }
+    }
+
+    /**
+     * Returns a stream of the rewritten document, i.e. the given document is
+     * rewritten on the fly while the returned stream is read. The result is
+     * written in UTF-8.
+     * <p>
+     * Nothing is returned before the beginning of the document (up to
+     * {@link #MAX_PREFIX_SIZE} bytes, i.e. the whole document in most cases)
+     * has been rewritten. If the document can't be rewritten within this
+     * prefix (e.g. as it's no XML at all), the error is logged and the
+     * original document is returned unchanged. Errors after the prefix are
+     * thrown when reading the returned stream.
+     *
+     * @param in The capabilities document, it will be closed together with
+     *           the returned stream.
+     * @return The stream of the rewritten document.
+     */
+    public InputStream rewrite(InputStream in) {
+        return new RewritingInputStream(in);
+    }
+
+    /**
+     * Rewrites the body of the given response on the fly, i.e. a streamed
+     * body is rewritten while it's written to the client (and a body held in
+     * memory will be streamed afterwards). Responses without a body or with a
+     * content type other than XML are left untouched.
+     *
+     * @param response The response.
+     * @return Whether the body of the response will be rewritten.
+     */
+    public boolean rewrite(Response response) {
+        if (response == null || (!response.isStreamed() && response.getBody() == null)) {
+            return false;
+        }
+
+        String contentType = response.getHeaders() == null ? null :
+            response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType != null && !StringUtils.containsIgnoreCase(contentType, "xml")) {
+            LOG.debug("Not rewriting the capabilities with content type " + contentType);
+            return false;
+        }
+
+        response.transformBody(this::rewrite);
+        return true;
+    }
+
+    /**
+     * @param reader
+     * @param writer
+     */
+    private static void closeQuietly(XMLStreamReader reader, XMLStreamWriter writer) {
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+        } catch (XMLStreamException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Creates the input factory, external entities and DTDs are disabled.
+     *
+     * @return
+     */
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * A single URL rewrite.
+     */
+    private static final class UrlRewrite {
+
+        private final QName element;
+
+        private final QName attribute;
+
+        private final String url;
+
+        private final boolean keepQuery;
+
+        private UrlRewrite(QName element, QName attribute, String url, boolean keepQuery) {
+            this.element = element;
+            this.attribute = attribute;
+            this.url = url;
+            this.keepQuery = keepQuery;
+        }
+
+        private boolean matches(String namespaceUri, String localName) {
+            return element.getLocalPart().equals(localName) &&
+                (ANY_NAMESPACE.equals(element.getNamespaceURI()) ||
+                    element.getNamespaceURI().equals(StringUtils.defaultString(namespaceUri)));
+        }
+
+        private boolean matchesAttribute(String namespaceUri, String localName) {
+            return attribute.getLocalPart().equals(localName) &&
+                attribute.getNamespaceURI().equals(StringUtils.defaultString(namespaceUri));
+        }
+
+        private String rewrite(String existingUrl) {
+            if (keepQuery && existingUrl != null) {
+                int index = existingUrl.indexOf('?');
+                if (index > -1) {
+                    return url + existingUrl.substring(index);
+                }
+            }
+            return url;
+        }
+    }
+
+    /**
+     * A part of the document that has been read but not written yet.
+     */
+    private interface PendingWrite {
+        void write(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    /**
+     * A snapshot of a start tag (including its namespace declarations and
+     * attributes).
+     */
+    private static final class StartTag implements PendingWrite {
+
+        private final String prefix;
+
+        private final String namespaceUri;
+
+        private final String localName;
+
+        private final String[] namespaces;
+
+        private final String[] attributes;
+
+        private StartTag(XMLStreamReader reader, UrlRewrite urlRewrite) {
+            this.prefix = StringUtils.defaultString(reader.getPrefix());
+            this.namespaceUri = StringUtils.defaultString(reader.getNamespaceURI());
+            this.localName = reader.getLocalName();
+
+            boolean addAttribute = urlRewrite != null;
+            boolean addNamespace = false;
+
+            int attributeCount = reader.getAttributeCount();
+            if (addAttribute) {
+                for (int i = 0; i < attributeCount; i++) {
+                    if (urlRewrite.matchesAttribute(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i))) {
+                        addAttribute = false;
+                        break;
+                    }
+                }
+                String attributeNamespace = urlRewrite.attribute.getNamespaceURI();
+                addNamespace = addAttribute && !XMLConstants.NULL_NS_URI.equals(attributeNamespace) &&
+                    !attributeNamespace.equals(reader.getNamespaceContext()
+                        .getNamespaceURI(urlRewrite.attribute.getPrefix()));
+            }
+
+            int namespaceCount = reader.getNamespaceCount();
+            this.namespaces = new String[(namespaceCount + (addNamespace ? 1 : 0)) * 2];
+            for (int i = 0; i < namespaceCount; i++) {
+                namespaces[i * 2] = StringUtils.defaultString(reader.getNamespacePrefix(i));
+                namespaces[i * 2 + 1] = StringUtils.defaultString(reader.getNamespaceURI(i));
+            }
+            if (addNamespace) {
+                namespaces[namespaceCount * 2] = urlRewrite.attribute.getPrefix();
+                namespaces[namespaceCount * 2 + 1] = urlRewrite.attribute.getNamespaceURI();
+            }
+
+            this.attributes = new String[(attributeCount + (addAttribute ? 1 : 0)) * 4];
+            for (int i = 0; i < attributeCount; i++) {
+                String value = reader.getAttributeValue(i);
+                if (urlRewrite != null && urlRewrite.matchesAttribute(
+                    reader.getAttributeNamespace(i), reader.getAttributeLocalName(i))) {
+                    value = urlRewrite.rewrite(value);
+                }
+                attributes[i * 4] = StringUtils.defaultString(reader.getAttributePrefix(i));
+                attributes[i * 4 + 1] = StringUtils.defaultString(reader.getAttributeNamespace(i));
+                attributes[i * 4 + 2] = reader.getAttributeLocalName(i);
+                attributes[i * 4 + 3] = value;
+            }
+            if (addAttribute) {
+                attributes[attributeCount * 4] = urlRewrite.attribute.getPrefix();
+                attributes[attributeCount * 4 + 1] = urlRewrite.attribute.getNamespaceURI();
+                attributes[attributeCount * 4 + 2] = urlRewrite.attribute.getLocalPart();
+                attributes[attributeCount * 4 + 3] = urlRewrite.rewrite(null);
+            }
+        }
+
+        @Override
+        public void write(XMLStreamWriter writer) throws XMLStreamException {
+            writer.writeStartElement(prefix, localName, namespaceUri);
+            for (int i = 0; i < namespaces.length; i += 2) {
+                if (namespaces[i].isEmpty()) {
+                    writer.writeDefaultNamespace(namespaces[i + 1]);
+                } else {
+                    writer.writeNamespace(namespaces[i], namespaces[i + 1]);
+                }
+            }
+            for (int i = 0; i < attributes.length; i += 4) {
+                if (attributes[i].isEmpty()) {
+                    writer.writeAttribute(attributes[i + 2], attributes[i + 3]);
+                } else {
+                    writer.writeAttribute(attributes[i], attributes[i + 1], attributes[i + 2], attributes[i + 3]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a single rewrite pass.
+     */
+    private final class Pass {
+
+        private final XMLStreamReader reader;
+
+        private final XMLStreamWriter writer;
+
+        /**
+         * The number of currently open elements.
+         */
+        private int depth;
+
+        /**
+         * The parts of a layer that hasn't been decided to keep or remove
+         * yet (or null).
+         */
+        private List<PendingWrite> pending;
+
+        /**
+         * The level of the pending layer.
+         */
+        private int pendingLevel;
+
+        /**
+         * The text of the name of the pending layer (or null if we're not
+         * within the name).
+         */
+        private StringBuilder pendingName;
+
+        /**
+         * The level of the layer that is currently removed (or -1).
+         */
+        private int skipLevel = -1;
+
+        /**
+         * Whether the root element has been read.
+         */
+        private boolean rootRead;
+
+        private Pass(XMLStreamReader reader, XMLStreamWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        /**
+         * Whether the document is passed through unchanged as its version
+         * isn't supported.
+         */
+        private boolean passThrough;
+
+        private void run() throws XMLStreamException {
+            start();
+            while (step()) {
+                // nothing to do
+            }
+        }
+
+        private void start() throws XMLStreamException {
+            String version = reader.getVersion();
+            writer.writeStartDocument(StandardCharsets.UTF_8.name(), version != null ? version : "1.0");
+        }
+
+        /**
+         * Processes the next event of the document.
+         *
+         * @return false if the end of the document has been reached
+         * @throws XMLStreamException
+         */
+        private boolean step() throws XMLStreamException {
+            if (!reader.hasNext()) {
+                return false;
+            }
+
+            int event = reader.next();
+
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    rootRead = true;
+                    handleStartElement();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    handleEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.CDATA:
+                    handleCharacters();
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    writer.writeEndDocument();
+                    break;
+                default:
+                    handleOtherEvent(event);
+                    break;
+            }
+
+            return true;
+        }
+
+        private void handleStartElement() throws XMLStreamException {
+            if (skipLevel > -1) {
+                return;
+            }
+
+            if (depth == 1 && supportedVersions != null) {
+                String version = reader.getAttributeValue(null, "version");
+                if (!supportedVersions.contains(version)) {
+                    LOG.warn("Not rewriting the capabilities document " + reader.getLocalName() +
+                        ": The version " + version + " is not supported");
+                    passThrough = true;
+                }
+            }
+
+            String localName = reader.getLocalName();
+            StartTag startTag = new StartTag(reader, getUrlRewrite(reader.getNamespaceURI(), localName));
+            boolean isLayer = !passThrough && allowedLayerNames != null && LAYER.equals(localName);
+
+            if (pending != null) {
+                if (isLayer) {
+                    // the pending layer doesn't have a name, keep it
+                    flushPending();
+                } else {
+                    if (depth == pendingLevel + 1 && NAME.equals(localName)) {
+                        pendingName = new StringBuilder();
+                    }
+                    pending.add(startTag);
+                    return;
+                }
+            }
+
+            if (isLayer) {
+                pending = new ArrayList<>();
+                pendingLevel = depth;
+                pending.add(startTag);
+                return;
+            }
+
+            startTag.write(writer);
+        }
+
+        private void handleEndElement() throws XMLStreamException {
+            if (skipLevel > -1) {
+                if (depth == skipLevel) {
+                    skipLevel = -1;
+                }
+                return;
+            }
+
+            if (pending == null) {
+                writer.writeEndElement();
+                return;
+            }
+
+            if (pendingName != null && depth == pendingLevel + 1) {
+                String name = pendingName.toString().trim();
+                pendingName = null;
+
+                String qualifiedName = allowedLayerNames.get(name);
+                if (qualifiedName == null) {
+                    // remove the whole layer
+                    pending = null;
+                    skipLevel = pendingLevel;
+                    return;
+                }
+
+                pending.add((w) -> w.writeCharacters(qualifiedName));
+                pending.add(XMLStreamWriter::writeEndElement);
+                flushPending();
+                return;
+            }
+
+            pending.add(XMLStreamWriter::writeEndElement);
+
+            if (depth == pendingLevel) {
+                // the layer doesn't have a name, keep it
+                flushPending();
+            }
+        }
+
+        private void handleCharacters() throws XMLStreamException {
+            if (skipLevel > -1) {
+                return;
+            }
+
+            if (pendingName != null) {
+                pendingName.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                return;
+            }
+
+            if (pending != null) {
+                String text = reader.getText();
+                pending.add((w) -> w.writeCharacters(text));
+                return;
+            }
+
+            writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        }
+
+        private void handleOtherEvent(int event) throws XMLStreamException {
+            if (skipLevel > -1 || pendingName != null) {
+                return;
+            }
+
+            PendingWrite write;
+            switch (event) {
+                case XMLStreamConstants.COMMENT:
+                    String comment = reader.getText();
+                    write = (w) -> w.writeComment(comment);
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    String target = reader.getPITarget();
+                    String data = reader.getPIData();
+                    write = (w) -> w.writeProcessingInstruction(target, data);
+                    break;
+                case XMLStreamConstants.DTD:
+                    String dtd = reader.getText();
+                    write = (w) -> w.writeDTD(dtd);
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    String entity = reader.getLocalName();
+                    write = (w) -> w.writeEntityRef(entity);
+                    break;
+                default:
+                    return;
+            }
+
+            if (pending != null) {
+                pending.add(write);
+            } else {
+                write.write(writer);
+            }
+        }
+
+        private void flushPending() throws XMLStreamException {
+            for (PendingWrite pendingWrite : pending) {
+                pendingWrite.write(writer);
+            }
+            pending = null;
+        }
+
+        private UrlRewrite getUrlRewrite(String namespaceUri, String localName) {
+            if (passThrough) {
+                return null;
+            }
+            for (UrlRewrite urlRewrite : urlRewrites) {
+                if (urlRewrite.matches(namespaceUri, localName)) {
+                    return urlRewrite;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A stream of the rewritten document, which reads (and rewrites) the
+     * original document in chunks whenever the rewritten part has been
+     * consumed. The first chunk is only returned once the prefix of the
+     * document has been rewritten, if that fails, the original document is
+     * returned instead.
+     */
+    private final class RewritingInputStream extends InputStream {
+
+        private final RecordingInputStream in;
+
+        /**
+         * The rewritten (but not yet consumed) part of the document.
+         */
+        private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_SIZE * 2);
+
+        private byte[] buffer = new byte[0];
+
+        private int position;
+
+        private XMLStreamReader reader;
+
+        private XMLStreamWriter writer;
+
+        private Pass pass;
+
+        private boolean finished;
+
+        /**
+         * Whether the original document is passed through as it couldn't be
+         * rewritten.
+         */
+        private boolean passThrough;
+
+        private RewritingInputStream(InputStream in) {
+            this.in = new RecordingInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finished = true;
+            closeQuietly(reader, writer);
+            in.close();
+        }
+
+        /**
+         * Rewrites the next chunk of the document if the current one has
+         * been consumed.
+         *
+         * @return false if the end of the document has been reached
+         * @throws IOException If the document couldn't be read or rewritten
+         *                     after its prefix.
+         */
+        private boolean fill() throws IOException {
+            while (position >= buffer.length) {
+                if (finished) {
+                    return false;
+                }
+                if (passThrough) {
+                    passChunk();
+                } else {
+                    rewriteChunk();
+                }
+            }
+            return true;
+        }
+
+        private void rewriteChunk() throws IOException {
+            chunk.reset();
+            boolean isPrefix = in.isRecording();
+
+            try {
+                if (pass == null) {
+                    reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+                    writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(chunk, StandardCharsets.UTF_8.name());
+                    pass = new Pass(reader, writer);
+                    pass.start();
+                }
+
+                int chunkSize = isPrefix ? MAX_PREFIX_SIZE : CHUNK_SIZE;
+                while (!finished && chunk.size() < chunkSize &&
+                    (!isPrefix || in.getRecordedSize() < MAX_PREFIX_SIZE)) {
+                    for (int i = 0; i < EVENTS_PER_FLUSH; i++) {
+                        if (!pass.step()) {
+                            finished = true;
+                            break;
+                        }
+                    }
+                    writer.flush();
+                }
+
+                if (isPrefix && !pass.rootRead && !finished) {
+                    throw new XMLStreamException("No root element within the first " +
+                        MAX_PREFIX_SIZE + " bytes");
+                }
+            } catch (XMLStreamException e) {
+                if (isPrefix) {
+                    LOG.error("Could not rewrite the capabilities document, it's passed " +
+                        "through unchanged: " + e.getMessage());
+                    closeQuietly(reader, writer);
+                    passThrough = true;
+                    buffer = in.stopRecording();
+                    position = 0;
+                    return;
+                }
+                finished = true;
+                throw new IOException("Could not rewrite the capabilities document: " +
+                    e.getMessage(), e);
+            }
+
+            if (isPrefix) {
+                in.stopRecording();
+            }
+
+            buffer = chunk.toByteArray();
+            position = 0;
+
+            if (finished) {
+                closeQuietly(reader, writer);
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        /**
+         * Reads the next chunk of the original document.
+         *
+         * @throws IOException
+         */
+        private void passChunk() throws IOException {
+            byte[] bytes = new byte[CHUNK_SIZE];
+            int count = IOUtils.read(in, bytes);
+
+            buffer = count == CHUNK_SIZE ? bytes : Arrays.copyOf(bytes, count);
+            position = 0;
+
+            if (count < CHUNK_SIZE) {
+                finished = true;
+                IOUtils.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * An input stream that records the bytes read until the recording is
+     * stopped.
+     */
+    private static final class RecordingInputStream extends FilterInputStream {
+
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream(CHUNK_SIZE * 2);
+
+        private RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b > -1 && recorded != null) {
+                recorded.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0 && recorded != null) {
+                recorded.write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes couldn't be recorded
+            return recorded == null ? super.skip(n) : 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private boolean isRecording() {
+            return recorded != null;
+        }
+
+        private int getRecordedSize() {
+            return recorded == null ? 0 : recorded.size();
+        }
+
+        /**
+         * @return The bytes read so far.
+         */
+        private byte[] stopRecording() {
+            byte[] bytes = recorded == null ? new byte[0] : recorded.toByteArray();
+            recorded = null;
+            return bytes;
+        }
+    }
+}
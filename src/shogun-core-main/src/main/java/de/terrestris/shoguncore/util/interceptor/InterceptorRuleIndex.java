@@ -0,0 +1,251 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.model.interceptor.InterceptorRule;
+import de.terrestris.shoguncore.util.enumeration.HttpEnum;
+import de.terrestris.shoguncore.util.enumeration.OgcEnum;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * An immutable, compiled index of {@link InterceptorRule}s that answers the
+ * "most specific rule" lookup of the GeoServer interceptor without touching
+ * the database.
+ * <p>
+ * The rules are grouped by event and service and keyed by their operation
+ * and (case insensitive) endPoint. A lookup therefore only has to evaluate the
+ * (at most four) rule groups that can match the requested operation and
+ * endPoint:
+ * <p>
+ * <pre>
+ * (operation, endPoint), (*, endPoint), (operation, *), (*, *)
+ * </pre>
+ * <p>
+ * The index holds detached copies of the given rules, changes to the rule
+ * entities require to build a new index.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public final class InterceptorRuleIndex {
+
+    /**
+     * An empty index.
+     */
+    public static final InterceptorRuleIndex EMPTY = new InterceptorRuleIndex(
+        Collections.<InterceptorRule>emptyList());
+
+    /**
+     * The compiled rules grouped by event and service.
+     */
+    private final Map<HttpEnum.EventType, Map<OgcEnum.ServiceType, RuleBucket>> buckets;
+
+    /**
+     * The total number of rules in this index.
+     */
+    private final int size;
+
+    /**
+     * Compiles the given rules. The order of the rules is used to decide
+     * between rules of the same specificity (the first one wins).
+     *
+     * @param rules The rules to index.
+     */
+    public InterceptorRuleIndex(Collection<? extends InterceptorRule> rules) {
+        Map<HttpEnum.EventType, Map<OgcEnum.ServiceType, RuleBucket>> compiled =
+            new EnumMap<>(HttpEnum.EventType.class);
+
+        int ordinal = 0;
+        for (InterceptorRule rule : rules) {
+            if (rule == null || rule.getEvent() == null || rule.getService() == null) {
+                continue;
+            }
+            compiled
+                .computeIfAbsent(rule.getEvent(), (e) -> new EnumMap<>(OgcEnum.ServiceType.class))
+                .computeIfAbsent(rule.getService(), (s) -> new RuleBucket())
+                .add(new CompiledRule(rule, ordinal++));
+        }
+
+        this.buckets = compiled;
+        this.size = ordinal;
+    }
+
+    /**
+     * Returns the most specific rule for the given request properties.
+     *
+     * @param service   The requested OGC service.
+     * @param operation The requested OGC operation (may be null).
+     * @param endPoint  The requested endPoint (may be null).
+     * @param event     The event (REQUEST or RESPONSE).
+     * @return The most specific rule or null if no rule matches at all.
+     * @throws InterceptorException If there is no rule for the given service
+     *                              and event.
+     */
+    public InterceptorRule getMostSpecificRule(OgcEnum.ServiceType service,
+                                               OgcEnum.OperationType operation, String endPoint,
+                                               HttpEnum.EventType event) throws InterceptorException {
+
+        RuleBucket bucket = null;
+        Map<OgcEnum.ServiceType, RuleBucket> eventBuckets = event != null ? buckets.get(event) : null;
+        if (eventBuckets != null && service != null) {
+            bucket = eventBuckets.get(service);
+        }
+
+        if (bucket == null) {
+            throw new InterceptorException("No interceptor rule found.");
+        }
+
+        CompiledRule mostSpecific = null;
+        int biggestScore = 0;
+
+        for (List<CompiledRule> candidates : bucket.getCandidates(operation, endPoint)) {
+            for (CompiledRule candidate : candidates) {
+                int score = candidate.score(service, operation, endPoint);
+                if (score > biggestScore || (score > 0 && score == biggestScore &&
+                    candidate.ordinal < mostSpecific.ordinal)) {
+                    biggestScore = score;
+                    mostSpecific = candidate;
+                }
+            }
+        }
+
+        return mostSpecific != null ? mostSpecific.rule : null;
+    }
+
+    /**
+     * @return The number of indexed rules.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Normalizes the given endPoint to be used as key.
+     *
+     * @param endPoint
+     * @return The lower case endPoint or null if it's empty.
+     */
+    private static String normalizeEndPoint(String endPoint) {
+        return StringUtils.isEmpty(endPoint) ? null : endPoint.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * All rules of a single event and service.
+     */
+    private static final class RuleBucket {
+
+        private final List<CompiledRule> all = new ArrayList<>();
+
+        private final Map<RuleKey, List<CompiledRule>> byKey = new HashMap<>();
+
+        private void add(CompiledRule rule) {
+            all.add(rule);
+            byKey.computeIfAbsent(rule.key, (k) -> new ArrayList<>()).add(rule);
+        }
+
+        /**
+         * Returns the rule groups that may match the given operation and
+         * endPoint. If one of both is not given, all rules of this bucket
+         * are candidates.
+         */
+        private List<List<CompiledRule>> getCandidates(OgcEnum.OperationType operation, String endPoint) {
+            String normalizedEndPoint = normalizeEndPoint(endPoint);
+
+            if (operation == null || normalizedEndPoint == null) {
+                return Collections.singletonList(all);
+            }
+
+            List<List<CompiledRule>> candidates = new ArrayList<>(4);
+            addCandidates(candidates, new RuleKey(operation, normalizedEndPoint));
+            addCandidates(candidates, new RuleKey(null, normalizedEndPoint));
+            addCandidates(candidates, new RuleKey(operation, null));
+            addCandidates(candidates, new RuleKey(null, null));
+            return candidates;
+        }
+
+        private void addCandidates(List<List<CompiledRule>> candidates, RuleKey key) {
+            List<CompiledRule> rules = byKey.get(key);
+            if (rules != null) {
+                candidates.add(rules);
+            }
+        }
+    }
+
+    /**
+     * A detached copy of a rule with its lookup key.
+     */
+    private static final class CompiledRule {
+
+        private final InterceptorRule rule;
+
+        private final RuleKey key;
+
+        private final int ordinal;
+
+        private CompiledRule(InterceptorRule source, int ordinal) {
+            this.rule = new InterceptorRule(source.getEvent(), source.getRule(),
+                source.getService(), source.getOperation(), source.getEndPoint());
+            this.key = new RuleKey(source.getOperation(), normalizeEndPoint(source.getEndPoint()));
+            this.ordinal = ordinal;
+        }
+
+        /**
+         * Scores this rule for the given request properties, the higher the
+         * score the more specific the rule is. A score of -1 means that the
+         * rule doesn't match at all.
+         */
+        private int score(OgcEnum.ServiceType service, OgcEnum.OperationType operation, String endPoint) {
+            int score = 0;
+
+            if (!StringUtils.isEmpty(rule.getEndPoint()) && !StringUtils.isEmpty(endPoint) &&
+                !StringUtils.equalsIgnoreCase(rule.getEndPoint(), endPoint)) {
+                return -1;
+            }
+            if (rule.getService() != null && !Objects.equals(rule.getService(), service) && service != null) {
+                return -1;
+            }
+            if (rule.getOperation() != null && !Objects.equals(rule.getOperation(), operation) && operation != null) {
+                return -1;
+            }
+            if (endPoint != null && Objects.equals(rule.getEndPoint(), endPoint)) {
+                ++score;
+            }
+            if (operation != null && Objects.equals(rule.getOperation(), operation)) {
+                ++score;
+            }
+            if (service != null && Objects.equals(rule.getService(), service)) {
+                ++score;
+            }
+            return score;
+        }
+    }
+
+    /**
+     * The lookup key of a rule within a {@link RuleBucket}.
+     */
+    private static final class RuleKey {
+
+        private final OgcEnum.OperationType operation;
+
+        private final String endPoint;
+
+        private RuleKey(OgcEnum.OperationType operation, String endPoint) {
+            this.operation = operation;
+            this.endPoint = endPoint;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, endPoint);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RuleKey)) {
+                return false;
+            }
+            RuleKey other = (RuleKey) obj;
+            return Objects.equals(operation, other.operation) &&
+                Objects.equals(endPoint, other.endPoint);
+        }
+    }
+}
@@ -5,13 +5,13 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.Logger;
-import org.w3c.dom.Document;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.*;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -55,9 +55,19 @@ public class MutableHttpServletRequest extends HttpServletRequestWrapper {
     private String customRequestURI;
 
     /**
-     *
+     * The cached body of the request.
+     */
+    private byte[] cachedBody;
+
+    /**
+     * The descriptor of the OGC request parsed from the body (if any).
+     */
+    private OgcRequestDescriptor ogcRequestDescriptor;
+
+    /**
+     * Whether the body has been parsed already.
      */
-    private ByteArrayOutputStream cachedInputStream;
+    private boolean ogcRequestDescriptorParsed;
 
     /**
      * @param request
@@ -125,32 +135,18 @@ public class MutableHttpServletRequest extends HttpServletRequestWrapper {
 
         } else {
 
-            String xml = OgcXmlUtil.getRequestBody(httpServletRequest);
+            OgcRequestDescriptor descriptor = getOgcRequestDescriptor(httpServletRequest);
 
-            if (!StringUtils.isEmpty(xml)) {
+            if (descriptor != null) {
 
                 LOG.trace("The request contains a POST body.");
 
-                Document document = OgcXmlUtil.getDocumentFromString(xml);
-
                 if (parameter.equalsIgnoreCase(OgcEnum.Service.SERVICE.toString())) {
-                    value = OgcXmlUtil.getPathInDocument(
-                        document, "/*/@service");
+                    value = descriptor.getService();
                 } else if (parameter.equalsIgnoreCase(OgcEnum.Operation.OPERATION.toString())) {
-                    value = OgcXmlUtil.getPathInDocument(
-                        document, "name(/*)");
-
-                    if (value.contains(":")) {
-                        value = value.split(":")[1];
-                    }
-
+                    value = descriptor.getOperation();
                 } else if (Arrays.asList(OgcEnum.EndPoint.getAllValues()).contains(parameter)) {
-                    value = OgcXmlUtil.getPathInDocument(document,
-                        "//TypeName/text() | //TypeNames/text() | //GetCoverage/Identifier/text()");
-                    if (StringUtils.isEmpty(value)) {
-                        value = OgcXmlUtil.getPathInDocument(document,
-                            "//@typeName | //@typeNames");
-                    }
+                    value = descriptor.getEndPoint();
                 }
 
             } else {
@@ -163,6 +159,70 @@ public class MutableHttpServletRequest extends HttpServletRequestWrapper {
         return value;
     }
 
+    /**
+     * Returns the descriptor of the OGC request contained in the (XML) body
+     * of the given request. If the given request is a
+     * {@link MutableHttpServletRequest}, the body will be parsed only once
+     * and the descriptor is cached until the body is changed.
+     *
+     * @param httpServletRequest
+     * @return The descriptor or null if the request has no body.
+     * @throws IOException If the body couldn't be parsed as XML.
+     */
+    public static OgcRequestDescriptor getOgcRequestDescriptor(HttpServletRequest httpServletRequest)
+        throws IOException {
+
+        if (httpServletRequest instanceof MutableHttpServletRequest) {
+            return ((MutableHttpServletRequest) httpServletRequest).getOgcRequestDescriptor();
+        }
+
+        return parseOgcRequestDescriptor(httpServletRequest);
+    }
+
+    /**
+     * @param httpServletRequest
+     * @return The descriptor or null if the request has no body.
+     * @throws IOException If the body couldn't be parsed as XML.
+     */
+    private static OgcRequestDescriptor parseOgcRequestDescriptor(HttpServletRequest httpServletRequest)
+        throws IOException {
+
+        String encoding = httpServletRequest.getCharacterEncoding();
+        Charset charset = Charset.forName(StringUtils.isEmpty(encoding) ? DEFAULT_CHARSET : encoding);
+
+        try (
+            InputStream in = httpServletRequest.getInputStream();
+            PushbackReader reader = new PushbackReader(new InputStreamReader(in, charset))
+        ) {
+            int firstChar = reader.read();
+            if (firstChar == -1) {
+                return null;
+            }
+            reader.unread(firstChar);
+
+            OgcRequestDescriptor descriptor = OgcRequestDescriptor.parse(reader);
+
+            LOG.trace("Parsed the OGC request descriptor: " + descriptor);
+
+            return descriptor;
+        }
+    }
+
+    /**
+     * Returns the (cached) descriptor of the OGC request contained in the
+     * (XML) body of this request.
+     *
+     * @return The descriptor or null if the request has no body.
+     * @throws IOException If the body couldn't be parsed as XML.
+     */
+    public OgcRequestDescriptor getOgcRequestDescriptor() throws IOException {
+        if (!ogcRequestDescriptorParsed) {
+            ogcRequestDescriptor = parseOgcRequestDescriptor(this);
+            ogcRequestDescriptorParsed = true;
+        }
+        return ogcRequestDescriptor;
+    }
+
     /**
      *
      */
@@ -297,37 +357,43 @@ public class MutableHttpServletRequest extends HttpServletRequestWrapper {
      */
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        if (cachedInputStream == null) {
+        return new CachedServletInputStream(getBody());
+    }
+
+    /**
+     * Returns the (cached) body of this request, e.g. to forward it without
+     * decoding it again. The returned array must not be modified.
+     *
+     * @return The body, which is empty if the request has no body.
+     * @throws IOException If the body couldn't be read.
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public byte[] getBody() throws IOException {
+        if (cachedBody == null) {
             cacheInputStream();
         }
-        return new CachedServletInputStream(cachedInputStream);
+        return cachedBody;
     }
 
     /**
-     * Set the cachedInputStream as a copy of UTF-8 encoded {@link ByteArrayInputStream}
+     * Set the cached body to the UTF-8 encoded bytes of the given string
      *
-     * @param body {@link String} body to create the {@link ByteArrayInputStream} from
+     * @param body {@link String} body to cache
      */
     public void setInputStream(String body) {
-        try (
-            ByteArrayInputStream stream = new ByteArrayInputStream(body.getBytes(DEFAULT_CHARSET))
-        ) {
-            cachedInputStream = new ByteArrayOutputStream();
-            IOUtils.copy(stream, cachedInputStream);
-        } catch (IOException e) {
-            LOG.error("Exception on writing InputStream.", e);
-        }
+        resetOgcRequestDescriptor();
+        cachedBody = body.getBytes(Charset.forName(DEFAULT_CHARSET));
     }
 
     /**
-     * Set the cachedInputStream as a copy of passed {@link InputStream}
+     * Set the cached body as a copy of passed {@link InputStream}
      *
      * @param stream The {@link InputStream} to set (copy)
      */
     public void setInputStream(InputStream stream) {
+        resetOgcRequestDescriptor();
         try {
-            cachedInputStream = new ByteArrayOutputStream();
-            IOUtils.copy(stream, cachedInputStream);
+            cachedBody = IOUtils.toByteArray(stream);
         } catch (IOException e) {
             LOG.error("Exception on writing InputStream.", e);
         }
@@ -342,13 +408,20 @@ public class MutableHttpServletRequest extends HttpServletRequestWrapper {
         return new BufferedReader(new InputStreamReader(getInputStream()));
     }
 
+    /**
+     * Drops the cached descriptor as the body has been changed.
+     */
+    private void resetOgcRequestDescriptor() {
+        ogcRequestDescriptor = null;
+        ogcRequestDescriptorParsed = false;
+    }
+
     /**
      * Cache the inputstream in order to read it multiple times. For
      * convenience, I use apache.commons IOUtils
      */
     private void cacheInputStream() throws IOException {
-        cachedInputStream = new ByteArrayOutputStream();
-        IOUtils.copy(super.getInputStream(), cachedInputStream);
+        cachedBody = IOUtils.toByteArray(super.getInputStream());
     }
 
     /**
@@ -0,0 +1,247 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Holds the routing relevant properties (service, version, operation and
+ * endPoint) of an OGC request that has been sent as XML via POST.
+ * <p>
+ * The descriptor is read by a streaming (StAX) parser in a single pass, the
+ * parser stops as soon as all properties have been found. The extracted values
+ * correspond to the following XPath expressions:
+ * <p>
+ * <pre>
+ * service:   /*&#47;&#64;service
+ * version:   /*&#47;&#64;version
+ * operation: local-name(/*)
+ * endPoint:  //TypeName/text() | //TypeNames/text() | //GetCoverage/Identifier/text()
+ *            or (if not found) //&#64;typeName | //&#64;typeNames
+ * </pre>
+ * <p>
+ * Elements and attributes are matched by their local name, i.e. regardless
+ * of their namespace (prefix).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public final class OgcRequestDescriptor {
+
+    /**
+     * The shared (and thread-safe after its configuration) factory.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    /**
+     *
+     */
+    private final String service;
+
+    /**
+     *
+     */
+    private final String version;
+
+    /**
+     *
+     */
+    private final String operation;
+
+    /**
+     *
+     */
+    private final String endPoint;
+
+    /**
+     * @param service
+     * @param version
+     * @param operation
+     * @param endPoint
+     */
+    public OgcRequestDescriptor(String service, String version, String operation, String endPoint) {
+        this.service = StringUtils.defaultString(service);
+        this.version = StringUtils.defaultString(version);
+        this.operation = StringUtils.defaultString(operation);
+        this.endPoint = StringUtils.defaultString(endPoint);
+    }
+
+    /**
+     * Parses the given XML request body.
+     *
+     * @param reader The reader providing the XML body, it won't be closed.
+     * @return The descriptor of the request.
+     * @throws IOException If the body couldn't be parsed as XML.
+     */
+    public static OgcRequestDescriptor parse(Reader reader) throws IOException {
+
+        String service = null;
+        String version = null;
+        String operation = null;
+        String elementEndPoint = null;
+        String attributeEndPoint = null;
+
+        // the local names of all open elements
+        Deque<String> openElements = new ArrayDeque<>();
+
+        XMLStreamReader xmlReader = null;
+
+        try {
+            xmlReader = XML_INPUT_FACTORY.createXMLStreamReader(reader);
+
+            while (xmlReader.hasNext() && elementEndPoint == null) {
+                int event = xmlReader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String localName = xmlReader.getLocalName();
+
+                    if (openElements.isEmpty()) {
+                        operation = localName;
+                        service = getAttributeValue(xmlReader, "service");
+                        version = getAttributeValue(xmlReader, "version");
+                    }
+
+                    if (attributeEndPoint == null) {
+                        attributeEndPoint = getAttributeValue(xmlReader, "typeName");
+                        if (attributeEndPoint == null) {
+                            attributeEndPoint = getAttributeValue(xmlReader, "typeNames");
+                        }
+                    }
+
+                    openElements.push(localName);
+
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    openElements.pop();
+
+                } else if ((event == XMLStreamConstants.CHARACTERS ||
+                    event == XMLStreamConstants.CDATA ||
+                    event == XMLStreamConstants.SPACE) &&
+                    isEndPointElement(openElements)) {
+                    elementEndPoint = xmlReader.getText();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse input body " +
+                "as XML: " + e.getMessage());
+        } finally {
+            if (xmlReader != null) {
+                try {
+                    xmlReader.close();
+                } catch (XMLStreamException e) {
+                    // nothing to do
+                }
+            }
+        }
+
+        if (operation == null) {
+            throw new IOException("Could not parse input body " +
+                "as XML: No root element found");
+        }
+
+        String endPoint = StringUtils.isNotEmpty(elementEndPoint) ? elementEndPoint : attributeEndPoint;
+
+        return new OgcRequestDescriptor(service, version, operation, endPoint);
+    }
+
+    /**
+     * Checks if the text of the current element (the head of the given
+     * element names) contains the endPoint.
+     *
+     * @param openElements
+     * @return
+     */
+    private static boolean isEndPointElement(Deque<String> openElements) {
+        String current = openElements.peek();
+
+        if ("TypeName".equals(current) || "TypeNames".equals(current)) {
+            return true;
+        }
+
+        if ("Identifier".equals(current) && openElements.size() > 1) {
+            String parent = openElements.stream().skip(1).findFirst().orElse(null);
+            return "GetCoverage".equals(parent);
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the value of the attribute with the given local name (in any
+     * namespace) of the current element.
+     *
+     * @param xmlReader
+     * @param localName
+     * @return The value or null if the element has no such attribute.
+     */
+    private static String getAttributeValue(XMLStreamReader xmlReader, String localName) {
+        for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+            if (localName.equals(xmlReader.getAttributeLocalName(i))) {
+                return xmlReader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the factory, external entities and DTDs are disabled as the
+     * parsed documents are provided by the client.
+     *
+     * @return
+     */
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * @return the service (or an empty string if not set)
+     */
+    public String getService() {
+        return service;
+    }
+
+    /**
+     * @return the version (or an empty string if not set)
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the operation (or an empty string if not set)
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the endPoint (or an empty string if not set)
+     */
+    public String getEndPoint() {
+        return endPoint;
+    }
+
+    /**
+     *
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+            .append("service", getService())
+            .append("version", getVersion())
+            .append("operation", getOperation())
+            .append("endPoint", getEndPoint())
+            .toString();
+    }
+}
@@ -0,0 +1,482 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.util.model.Response;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * An (optional) size bounded on-disk cache of the tiles requested via the
+ * WMTS interceptor and a cache of the URLs of the WMTS data sources.
+ * <p>
+ * A tile is keyed by the id and URL of its data source and the requested tile
+ * path, i.e. changing the URL of a data source implicitly invalidates its
+ * tiles. Each tile is stored in a single file (the forwarded response headers
+ * followed by the body) that is written and read through a
+ * {@link FileChannel}. If the cache exceeds its maximum size, the least
+ * recently used tiles are removed.
+ * <p>
+ * Tiles are considered immutable, only an upstream <code>Cache-Control</code>
+ * header restricts caching: tiles with <code>no-store</code>,
+ * <code>no-cache</code> or <code>private</code> aren't cached at all, tiles
+ * with a <code>max-age</code> expire accordingly.
+ * <p>
+ * The tile cache is disabled if no directory is configured, the URL cache is
+ * always enabled.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Component
+public class WmtsTileCache {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger LOG = getLogger(WmtsTileCache.class);
+
+    /**
+     * The first bytes of each tile file.
+     */
+    private static final int MAGIC = 0x574D5453;
+
+    /**
+     *
+     */
+    private static final String TILE_SUFFIX = ".tile";
+
+    /**
+     *
+     */
+    private static final String TEMP_PREFIX = "tile";
+
+    /**
+     *
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     *
+     */
+    private static final Pattern MAX_AGE_PATTERN = Pattern.compile("(?:^|[,\\s])(?:max-age|s-maxage)\\s*=\\s*\"?(\\d+)");
+
+    /**
+     * The directory of the tile cache, the tile cache is disabled if empty.
+     */
+    @Value("${geoserver.interceptor.tileCache.dir:}")
+    private String directory;
+
+    /**
+     * The maximum size of all cached tiles in bytes.
+     */
+    @Value("${geoserver.interceptor.tileCache.maxSize:1073741824}")
+    private long maxSize = 1073741824L;
+
+    /**
+     * The URLs of the WMTS data sources by their id.
+     */
+    private final Map<Integer, String> dataSourceUrls = new ConcurrentHashMap<>();
+
+    /**
+     * The sizes of all cached tile files in LRU order, guarded by itself.
+     */
+    private final LinkedHashMap<Path, Long> tiles = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * The total size of all cached tiles, guarded by {@link #tiles}.
+     */
+    private long size;
+
+    /**
+     * The root of the tile cache or null if it's disabled.
+     */
+    private Path root;
+
+    /**
+     * Creates the cache directory (if needed) and indexes the tiles that are
+     * already cached there, e.g. by a previous run.
+     *
+     * @throws IOException If the cache directory can't be created.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (StringUtils.isBlank(directory)) {
+            LOG.debug("No directory configured, the WMTS tile cache is disabled");
+            return;
+        }
+
+        Path dir = Paths.get(directory).toAbsolutePath();
+        Files.createDirectories(dir);
+
+        List<Map.Entry<Path, BasicFileAttributes>> existingTiles = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(TEMP_PREFIX) && fileName.endsWith(TEMP_SUFFIX)) {
+                    // the temporary file of an interrupted write
+                    delete(file);
+                    return;
+                }
+                if (!fileName.endsWith(TILE_SUFFIX)) {
+                    return;
+                }
+                try {
+                    existingTiles.add(new AbstractMap.SimpleEntry<>(file,
+                        Files.readAttributes(file, BasicFileAttributes.class)));
+                } catch (IOException e) {
+                    LOG.debug("Could not read the attributes of " + file + ": " + e.getMessage());
+                }
+            });
+        }
+
+        // the last modified time is the best guess of the last access
+        existingTiles.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+
+        synchronized (tiles) {
+            tiles.clear();
+            size = 0;
+            for (Map.Entry<Path, BasicFileAttributes> tile : existingTiles) {
+                tiles.put(tile.getKey(), tile.getValue().size());
+                size += tile.getValue().size();
+            }
+            this.root = dir;
+            evict();
+        }
+
+        LOG.info("Initialized the WMTS tile cache in " + dir + " with " + existingTiles.size() + " tile(s)");
+    }
+
+    /**
+     * @return Whether the tile cache is enabled.
+     */
+    public boolean isEnabled() {
+        return root != null && maxSize > 0;
+    }
+
+    /**
+     * Returns the (cached) URL of the given data source.
+     *
+     * @param dataSourceId The id of the data source.
+     * @param loader       Loads the URL of the data source if it's not
+     *                     cached yet, may return null.
+     * @return The URL or null if the loader returned null.
+     */
+    public String getDataSourceUrl(Integer dataSourceId, Function<Integer, String> loader) {
+        return dataSourceUrls.computeIfAbsent(dataSourceId, loader);
+    }
+
+    /**
+     * Drops the cached URL of the given data source. If called within a
+     * transaction, the URL is (additionally) dropped after completion of the
+     * transaction. The cached tiles of the data source are kept, they're only
+     * used as long as the data source has the same URL.
+     *
+     * @param dataSourceId The id of the data source.
+     */
+    public void invalidateDataSource(Integer dataSourceId) {
+        if (dataSourceId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    dataSourceUrls.remove(dataSourceId);
+                }
+            });
+        }
+        dataSourceUrls.remove(dataSourceId);
+    }
+
+    /**
+     * Returns the cached tile.
+     *
+     * @param dataSourceId The id of the data source.
+     * @param url          The URL of the data source.
+     * @param tilePath     The requested tile path.
+     * @return The tile or null if it isn't cached (anymore).
+     */
+    public Response get(Integer dataSourceId, String url, String tilePath) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Path file = getFile(dataSourceId, url, tilePath);
+
+        synchronized (tiles) {
+            // marks the tile as recently used
+            if (tiles.get(file) == null) {
+                return null;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Tile file too large");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read the whole file
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                buffer.array(), 0, buffer.position()));
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a tile file");
+            }
+
+            long expires = in.readLong();
+            if (expires > 0 && expires <= System.currentTimeMillis()) {
+                LOG.trace("The cached tile " + file + " is expired");
+                remove(file);
+                return null;
+            }
+
+            HttpHeaders headers = new HttpHeaders();
+            int headerCount = in.readInt();
+            for (int i = 0; i < headerCount; i++) {
+                String name = in.readUTF();
+                headers.add(name, in.readUTF());
+            }
+
+            byte[] body = new byte[in.available()];
+            in.readFully(body);
+
+            return new Response(HttpStatus.OK, headers, body);
+        } catch (NoSuchFileException e) {
+            remove(file);
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Could not read the cached tile " + file + ": " + e.getMessage());
+            remove(file);
+            return null;
+        }
+    }
+
+    /**
+     * Caches the given tile (if it's cacheable at all).
+     *
+     * @param dataSourceId The id of the data source.
+     * @param url          The URL of the data source.
+     * @param tilePath     The requested tile path.
+     * @param response     The (buffered) upstream response, only its
+     *                     forwarded headers should be set.
+     * @param cacheControl The upstream <code>Cache-Control</code> header (may
+     *                     be null).
+     * @return Whether the tile has been cached.
+     */
+    public boolean put(Integer dataSourceId, String url, String tilePath, Response response,
+                       String cacheControl) {
+        if (!isEnabled() || response == null || response.isStreamed() ||
+            response.getBody() == null || !HttpStatus.OK.equals(response.getStatusCode())) {
+            return false;
+        }
+
+        long expires = getExpires(cacheControl);
+        if (expires < 0) {
+            return false;
+        }
+
+        byte[] body = response.getBody();
+        Path file = getFile(dataSourceId, url, tilePath);
+        Path tempFile = null;
+
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(MAGIC);
+            out.writeLong(expires);
+
+            HttpHeaders headers = response.getHeaders() != null ? response.getHeaders() : new HttpHeaders();
+            int headerCount = 0;
+            for (List<String> values : headers.values()) {
+                headerCount += values.size();
+            }
+            out.writeInt(headerCount);
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                for (String value : entry.getValue()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(value);
+                }
+            }
+            out.flush();
+
+            Files.createDirectories(file.getParent());
+            tempFile = Files.createTempFile(file.getParent(), TEMP_PREFIX, TEMP_SUFFIX);
+
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = new ByteBuffer[]{
+                    ByteBuffer.wrap(header.toByteArray()),
+                    ByteBuffer.wrap(body)
+                };
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            long fileSize = header.size() + (long) body.length;
+            synchronized (tiles) {
+                Long previousSize = tiles.put(file, fileSize);
+                size += fileSize - (previousSize != null ? previousSize : 0);
+                evict();
+            }
+
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not cache the tile " + file + ": " + e.getMessage());
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ex) {
+                    // nothing to do
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of cached tiles.
+     */
+    public int getTileCount() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * @return The total size of all cached tiles in bytes.
+     */
+    public long getSize() {
+        synchronized (tiles) {
+            return size;
+        }
+    }
+
+    /**
+     * Returns the expiry time of a tile with the given
+     * <code>Cache-Control</code> header.
+     *
+     * @param cacheControl The header value (may be null).
+     * @return The expiry time, 0 if the tile doesn't expire or -1 if it must
+     * not be cached.
+     */
+    static long getExpires(String cacheControl) {
+        if (StringUtils.isBlank(cacheControl)) {
+            return 0;
+        }
+
+        String value = cacheControl.toLowerCase(Locale.ROOT);
+        if (value.contains("no-store") || value.contains("no-cache") || value.contains("private")) {
+            return -1;
+        }
+
+        Matcher matcher = MAX_AGE_PATTERN.matcher(value);
+        if (matcher.find()) {
+            long maxAge;
+            try {
+                maxAge = Long.parseLong(matcher.group(1));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+            return maxAge > 0 ? System.currentTimeMillis() + maxAge * 1000 : -1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @param dataSourceId
+     * @param url
+     * @param tilePath
+     * @return
+     */
+    private Path getFile(Integer dataSourceId, String url, String tilePath) {
+        String hash = DigestUtils.md5DigestAsHex((url + "\n" + tilePath).getBytes(StandardCharsets.UTF_8));
+        return root.resolve(String.valueOf(dataSourceId))
+            .resolve(hash.substring(0, 2))
+            .resolve(hash + TILE_SUFFIX);
+    }
+
+    /**
+     * @param file
+     */
+    private void remove(Path file) {
+        synchronized (tiles) {
+            Long fileSize = tiles.remove(file);
+            if (fileSize != null) {
+                size -= fileSize;
+            }
+        }
+        delete(file);
+    }
+
+    /**
+     * Removes the least recently used tiles until the cache doesn't exceed
+     * its maximum size anymore. Has to be called while holding the lock of
+     * {@link #tiles}.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Path, Long>> it = tiles.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<Path, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            delete(eldest.getKey());
+        }
+    }
+
+    /**
+     * @param file
+     */
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.debug("Could not delete the cached tile " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param directory the directory to set
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param maxSize the maximum size (in bytes) to set
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -1,70 +1,37 @@
 package de.terrestris.shoguncore.util.interceptor.impl;
 
+import de.terrestris.shoguncore.util.interceptor.CapabilitiesRewriter;
 import de.terrestris.shoguncore.util.interceptor.MutableHttpServletRequest;
 import de.terrestris.shoguncore.util.interceptor.WfsResponseInterceptorInterface;
 import de.terrestris.shoguncore.util.model.Response;
-import org.apache.logging.log4j.Logger;
 import org.deegree.commons.xml.CommonNamespaces;
-import org.deegree.commons.xml.NamespaceBindings;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
-import static javax.xml.xpath.XPathConstants.NODESET;
-import static org.apache.logging.log4j.LogManager.getLogger;
+import javax.xml.namespace.QName;
+import java.util.Arrays;
+import java.util.List;
 
 public class WfsResponseInterceptor implements WfsResponseInterceptorInterface {
 
-    private static final Logger LOG = getLogger(WfsResponseInterceptor.class);
+    /**
+     * The namespace of WFS 1.0.0.
+     */
+    private static final String WFS_100_NS = "http://www.opengis.net/wfs";
 
-    private void interceptGetCapabilities100(Document doc, String baseUrl) throws XPathExpressionException {
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        // xpath seems not to work with the default bindings
-        NodeList list = (NodeList) xpath.compile("//*[local-name()=\"Get\"]").evaluate(doc.getDocumentElement(), NODESET);
-        for (int i = 0; i < list.getLength(); ++i) {
-            Element node = (Element) list.item(i);
-            node.setAttribute("onlineResource", baseUrl);
-        }
-        list = (NodeList) xpath.compile("//*[local-name()=\"Post\"]").evaluate(doc.getDocumentElement(), NODESET);
-        for (int i = 0; i < list.getLength(); ++i) {
-            Element node = (Element) list.item(i);
-            node.setAttribute("onlineResource", baseUrl);
-        }
-    }
+    /**
+     * The (WFS 1.0.0) onlineResource attribute.
+     */
+    private static final QName ONLINE_RESOURCE = new QName("onlineResource");
 
-    private void interceptGetCapabilities110And200(Document doc, String baseUrl, String owsNamespace) throws XPathExpressionException {
-        NamespaceBindings nscontext = new NamespaceBindings();
-        nscontext.addNamespace("ows", owsNamespace);
-        nscontext.addNamespace("xlink", "http://www.w3.org/1999/xlink");
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        xpath.setNamespaceContext(nscontext);
-        NodeList list = (NodeList) xpath.compile("//ows:Get").evaluate(doc.getDocumentElement(), NODESET);
-        for (int i = 0; i < list.getLength(); ++i) {
-            Element node = (Element) list.item(i);
-            node.setAttributeNS("http://www.w3.org/1999/xlink", "xlink:href", baseUrl);
-        }
-        list = (NodeList) xpath.compile("//ows:Post").evaluate(doc.getDocumentElement(), NODESET);
-        for (int i = 0; i < list.getLength(); ++i) {
-            Element node = (Element) list.item(i);
-            node.setAttributeNS("http://www.w3.org/1999/xlink", "xlink:href", baseUrl);
-        }
-    }
+    /**
+     * The local names of the elements holding the URLs of the operations.
+     */
+    private static final String[] HTTP_METHOD_ELEMENTS = new String[]{"Get", "Post"};
+
+    /**
+     * The supported WFS versions, the capabilities of other versions are
+     * passed through unchanged.
+     */
+    private static final List<String> SUPPORTED_VERSIONS = Arrays.asList("1.0.0", "1.1.0", "2.0.0");
 
     @Override
     public Response interceptGetCapabilities(MutableHttpServletRequest request, Response response) {
@@ -78,35 +45,22 @@ public class WfsResponseInterceptor implements WfsResponseInterceptorInterface {
             requestHost = request.getHeader("host");
         }
         String baseUrl = proto + "://" + requestHost + request.getContextPath() + "/geoserver.action";
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        try {
-            DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-            builderFactory.setNamespaceAware(true);
-            DocumentBuilder builder = builderFactory.newDocumentBuilder();
-            Document doc = builder.parse(new ByteArrayInputStream(response.getBody()));
-            Element root = doc.getDocumentElement();
-            String version = root.getAttribute("version");
-            switch (version) {
-                case "1.0.0":
-                    interceptGetCapabilities100(doc, baseUrl);
-                    break;
-                case "1.1.0":
-                    interceptGetCapabilities110And200(doc, baseUrl, CommonNamespaces.OWS_NS);
-                    break;
-                case "2.0.0":
-                    interceptGetCapabilities110And200(doc, baseUrl, CommonNamespaces.OWS_11_NS);
-                    break;
-                default:
-                    throw new IOException("WFS version is not supported");
-            }
-            TransformerFactory factory = TransformerFactory.newInstance();
-            Transformer transformer = factory.newTransformer();
-            transformer.transform(new DOMSource(doc), new StreamResult(bout));
-            response.setBody(bout.toByteArray());
-        } catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException | TransformerException e) {
-            LOG.warn("Problem when intercepting WFS GetCapabilities: {}", e.getMessage());
-            LOG.trace("Stack trace:", e);
+
+        // WFS 1.0.0 uses the onlineResource attribute of the wfs:Get and
+        // wfs:Post elements, WFS 1.1.0 and 2.0.0 the xlink:href attribute
+        // of the ows:Get and ows:Post elements. The body is rewritten while
+        // it's written to the client.
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.setSupportedVersions(SUPPORTED_VERSIONS);
+        for (String method : HTTP_METHOD_ELEMENTS) {
+            rewriter.addUrlRewrite(new QName(WFS_100_NS, method), ONLINE_RESOURCE, baseUrl, false);
+            rewriter.addUrlRewrite(new QName(CommonNamespaces.OWS_NS, method),
+                CapabilitiesRewriter.XLINK_HREF, baseUrl, false);
+            rewriter.addUrlRewrite(new QName(CommonNamespaces.OWS_11_NS, method),
+                CapabilitiesRewriter.XLINK_HREF, baseUrl, false);
         }
+        rewriter.rewrite(response);
+
         return response;
     }
 
@@ -2,33 +2,19 @@ package de.terrestris.shoguncore.util.interceptor.standard;
 
 import de.terrestris.shoguncore.dao.LayerDataSourceDao;
 import de.terrestris.shoguncore.model.layer.source.ImageWmsLayerDataSource;
+import de.terrestris.shoguncore.util.interceptor.CapabilitiesRewriter;
 import de.terrestris.shoguncore.util.interceptor.MutableHttpServletRequest;
 import de.terrestris.shoguncore.util.interceptor.WmsResponseInterceptorInterface;
 import de.terrestris.shoguncore.util.model.Response;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.logging.log4j.Logger;
-import org.deegree.commons.xml.CommonNamespaces;
 import org.hibernate.criterion.LogicalExpression;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import javax.transaction.Transactional;
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.*;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.util.ArrayList;
+import javax.xml.namespace.QName;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -44,6 +30,12 @@ public class WmsResponseInterceptor implements WmsResponseInterceptorInterface {
 
     private static final Logger LOG = getLogger(WmsResponseInterceptor.class);
 
+    /**
+     * The OnlineResource elements (of any WMS version) whose URLs will be
+     * rewritten.
+     */
+    private static final QName ONLINE_RESOURCE = new QName(CapabilitiesRewriter.ANY_NAMESPACE, "OnlineResource");
+
     @Autowired
     @Qualifier("layerDataSourceDao")
     private LayerDataSourceDao<ImageWmsLayerDataSource> layerDataSourceDao;
@@ -68,62 +60,6 @@ public class WmsResponseInterceptor implements WmsResponseInterceptorInterface {
         return response;
     }
 
-    @SuppressFBWarnings("UC_USELESS_OBJECT")
-    private void removeLayers(Document doc, String namespace, List<String> layerNames) throws XPathExpressionException {
-        List<String> unqualifiedLayerNames = layerNames.parallelStream().map(layerName -> layerName.split(":")[1]).collect(Collectors.toList());
-        XPathFactory factory = XPathFactory.newInstance();
-        XPath xpath = factory.newXPath();
-        NamespaceContext nscontext = CommonNamespaces.getNamespaceContext();
-        xpath.setNamespaceContext(nscontext);
-        String prefix = namespace.equals("") ? "" : "wms:";
-        XPathExpression expr = xpath.compile("//" + prefix + "Layer/" + prefix + "Name");
-        NodeList nodeList = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-        List<Element> toRemove = new ArrayList<>();
-        for (int i = 0; i < nodeList.getLength(); ++i) {
-            Element name = (Element) nodeList.item(i);
-            String str = name.getTextContent();
-            if (!unqualifiedLayerNames.contains(str)) {
-                toRemove.add((Element) name.getParentNode());
-            } else {
-                String nodeLayerName = name.getTextContent();
-
-                for (int j = 0; j < layerNames.size(); j++) {
-                    String qualifiedLayerName = layerNames.get(j);
-                    String layerNamespace = qualifiedLayerName.split(":")[0];
-                    String unqualifiedLayerName = qualifiedLayerName.split(":")[1];
-
-                    if (nodeLayerName.equals(unqualifiedLayerName)) {
-                        name.setTextContent(layerNamespace + ":" + name.getTextContent());
-                    }
-                }
-            }
-        }
-
-        toRemove.forEach(element -> element.getParentNode().removeChild(element));
-    }
-
-    private void updateUrls(Document doc, String namespace, String baseUrl) throws XPathExpressionException {
-        XPathFactory factory = XPathFactory.newInstance();
-        XPath xpath = factory.newXPath();
-        NamespaceContext nscontext = CommonNamespaces.getNamespaceContext();
-        xpath.setNamespaceContext(nscontext);
-        String prefix = namespace.equals("") ? "" : "wms:";
-        XPathExpression expr = xpath.compile("//" + prefix + "OnlineResource");
-        NodeList nodeList = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-        for (int i = 0; i < nodeList.getLength(); ++i) {
-            Element link = (Element) nodeList.item(i);
-            String url = link.getAttributeNS("http://www.w3.org/1999/xlink", "xlink:href");
-            int index = url.indexOf("?");
-            if (index > -1) {
-                url = url.substring(index);
-                url = baseUrl + url;
-                link.setAttributeNS("http://www.w3.org/1999/xlink", "xlink:href", url);
-            } else {
-                link.setAttributeNS("http://www.w3.org/1999/xlink", "xlink:href", baseUrl);
-            }
-        }
-    }
-
     @Override
     @Transactional(value = Transactional.TxType.REQUIRED)
     public Response interceptGetCapabilities(MutableHttpServletRequest request, Response response) {
@@ -138,34 +74,20 @@ public class WmsResponseInterceptor implements WmsResponseInterceptorInterface {
         List<ImageWmsLayerDataSource> sources = this.layerDataSourceDao.findByCriteria(where);
         List<String> layerNames = sources.parallelStream().map(ImageWmsLayerDataSource::getLayerNames).collect(Collectors.toList());
 
-        byte[] body = response.getBody();
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new ByteArrayInputStream(body));
-            Element root = doc.getDocumentElement();
-            String version = root.getAttribute("version");
-            String proto = request.getHeader("x-forwarded-proto");
-            String host = request.getHeader("x-forwarded-host");
-            String baseUrl = proto + "://" + host + request.getParameter("CONTEXT_PATH") + "/geoserver.action/" + endpoint;
-            if (version.equals("1.3.0")) {
-                removeLayers(doc, "http://www.opengis.net/wms", layerNames);
-                updateUrls(doc, "http://www.opengis.net/wms", baseUrl);
-            } else {
-                removeLayers(doc, "", layerNames);
-                updateUrls(doc, "", baseUrl);
-            }
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            DOMSource source = new DOMSource(doc);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            StreamResult result = new StreamResult(bos);
-            transformer.transform(source, result);
-            response.setBody(bos.toByteArray());
-        } catch (Throwable e) {
-            LOG.warn("Something went wrong when intercepting a get capabilities response: " + e.getMessage());
-            LOG.trace("Stack trace", e);
+        String proto = request.getHeader("x-forwarded-proto");
+        String host = request.getHeader("x-forwarded-host");
+        String baseUrl = proto + "://" + host + request.getParameter("CONTEXT_PATH") + "/geoserver.action/" + endpoint;
+
+        // the OnlineResource and Layer elements are matched in any
+        // namespace, i.e. for both WMS 1.1.1 and 1.3.0. The body is
+        // rewritten while it's written to the client.
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.setLayerNames(layerNames);
+        rewriter.addUrlRewrite(ONLINE_RESOURCE, CapabilitiesRewriter.XLINK_HREF, baseUrl, true);
+        if (!rewriter.rewrite(response)) {
+            LOG.debug("Not rewriting the get capabilities response of endpoint " + endpoint);
         }
+
         return response;
     }
 
@@ -0,0 +1,132 @@
+package de.terrestris.shoguncore.util.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.InjectableValues;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerFactory;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.deser.DeserializerFactory;
+import com.fasterxml.jackson.databind.deser.UnresolvedForwardReference;
+import com.fasterxml.jackson.databind.deser.impl.ReadableObjectId;
+import de.terrestris.shoguncore.converter.PersistentObjectIdResolver;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The deserialization context of the {@link ShogunCoreJsonObjectMapper},
+ * which allows to resolve the IDs of referenced entities in batches (see
+ * {@link PersistentObjectIdResolver}).
+ * <p>
+ * If the deferred ID resolution is enabled, the resolvers only collect the
+ * IDs during the deserialization (i.e. the references are forward references
+ * to jackson) and the entities are loaded at the end, i.e. when the
+ * unresolved IDs are checked. The resolution must only be enabled if the
+ * caller checks the unresolved IDs at all, which is not the case for some
+ * methods of the ObjectMapper and the ObjectReader.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class ShogunCoreDeserializationContext extends DefaultDeserializationContext {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Whether the IDs of referenced entities are resolved at the end of the
+     * deserialization.
+     */
+    private boolean deferredIdResolution = false;
+
+    /**
+     * Constructor
+     */
+    public ShogunCoreDeserializationContext() {
+        super(BeanDeserializerFactory.instance, null);
+    }
+
+    protected ShogunCoreDeserializationContext(ShogunCoreDeserializationContext src, DeserializationConfig config,
+                                               JsonParser p, InjectableValues values) {
+        super(src, config, p, values);
+    }
+
+    protected ShogunCoreDeserializationContext(ShogunCoreDeserializationContext src, DeserializerFactory factory) {
+        super(src, factory);
+    }
+
+    protected ShogunCoreDeserializationContext(ShogunCoreDeserializationContext src) {
+        super(src);
+    }
+
+    @Override
+    public DefaultDeserializationContext copy() {
+        return new ShogunCoreDeserializationContext(this);
+    }
+
+    @Override
+    public DefaultDeserializationContext createInstance(DeserializationConfig config, JsonParser p,
+                                                        InjectableValues values) {
+        return new ShogunCoreDeserializationContext(this, config, p, values);
+    }
+
+    @Override
+    public DefaultDeserializationContext with(DeserializerFactory factory) {
+        return new ShogunCoreDeserializationContext(this, factory);
+    }
+
+    /**
+     * Resolves the IDs collected by the {@link PersistentObjectIdResolver}s
+     * (once per resolver, i.e. per type) before the IDs that are still
+     * unresolved are checked.
+     */
+    @Override
+    public void checkUnresolvedObjectId() throws UnresolvedForwardReference {
+        if (deferredIdResolution && _objectIds != null) {
+            final Set<PersistentObjectIdResolver<?, ?, ?>> resolvers =
+                Collections.newSetFromMap(new IdentityHashMap<PersistentObjectIdResolver<?, ?, ?>, Boolean>());
+
+            for (ReadableObjectId roid : _objectIds.values()) {
+                if (!roid.hasReferringProperties() || !(roid.getResolver() instanceof PersistentObjectIdResolver)) {
+                    continue;
+                }
+
+                final PersistentObjectIdResolver<?, ?, ?> resolver =
+                    (PersistentObjectIdResolver<?, ?, ?>) roid.getResolver();
+                if (resolvers.add(resolver)) {
+                    resolver.resolvePendingIds();
+                }
+
+                // entities that couldn't be resolved stay unresolved
+                final Object entity = resolver.getResolvedEntity(roid.getKey().key);
+                if (entity != null) {
+                    try {
+                        roid.bindItem(entity);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not bind the entity with ID "
+                            + roid.getKey().key + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+        super.checkUnresolvedObjectId();
+    }
+
+    /**
+     * @return whether the IDs of referenced entities are resolved at the end
+     * of the deserialization
+     */
+    public boolean isDeferredIdResolution() {
+        return deferredIdResolution;
+    }
+
+    /**
+     * @param deferredIdResolution whether the IDs of referenced entities are
+     *                             resolved at the end of the deserialization
+     */
+    public void setDeferredIdResolution(boolean deferredIdResolution) {
+        this.deferredIdResolution = deferredIdResolution;
+    }
+
+}
@@ -1,11 +1,20 @@
 package de.terrestris.shoguncore.util.json;
 
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
+import de.terrestris.shoguncore.converter.PersistentObjectIdResolver;
 
+import java.io.IOException;
 import java.util.TimeZone;
 
 /**
@@ -14,6 +23,12 @@ import java.util.TimeZone;
  * This class will load the JodaModule for Jackson to support joda time types
  * and sets the date format to ISO8601, i.e. dates will be serialized in
  * ISO8601.
+ * <p>
+ * JSON objects that are converted with {@link #treeToValue(TreeNode, Class)}
+ * or {@link #updateValue(Object, Object)} resolve the IDs of referenced
+ * entities in batches, i.e. with a single query per type (see
+ * {@link PersistentObjectIdResolver} and
+ * {@link ShogunCoreDeserializationContext}).
  *
  * @author Nils Bühner
  */
@@ -28,7 +43,7 @@ public class ShogunCoreJsonObjectMapper extends ObjectMapper {
      * Constructor
      */
     public ShogunCoreJsonObjectMapper() {
-        super();
+        super(null, null, new ShogunCoreDeserializationContext());
 
         // register the joda module to support the joda time types, which are
         // used in shogun
@@ -43,4 +58,72 @@ public class ShogunCoreJsonObjectMapper extends ObjectMapper {
         setTimeZone(TimeZone.getDefault());
     }
 
+    /**
+     * Converts JSON objects with the batched resolution of the IDs of
+     * referenced entities, anything else as usual.
+     */
+    @Override
+    public <T> T treeToValue(TreeNode n, Class<T> valueType) throws JsonProcessingException {
+        if (!(n instanceof ObjectNode) || getDeserializationConfig().useRootWrapping()) {
+            return super.treeToValue(n, valueType);
+        }
+        try {
+            return valueType.cast(readObjectNode((ObjectNode) n, constructType(valueType), null));
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // like the super implementation
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Updates the value with the properties of JSON objects with the batched
+     * resolution of the IDs of referenced entities, anything else as usual.
+     */
+    @Override
+    public <T> T updateValue(T valueToUpdate, Object overrides) throws JsonMappingException {
+        if (valueToUpdate == null || !(overrides instanceof ObjectNode)
+            || getDeserializationConfig().useRootWrapping()) {
+            return super.updateValue(valueToUpdate, overrides);
+        }
+        try {
+            readObjectNode((ObjectNode) overrides, constructType(valueToUpdate.getClass()), valueToUpdate);
+            return valueToUpdate;
+        } catch (JsonMappingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw JsonMappingException.fromUnexpectedIOE(e);
+        }
+    }
+
+    /**
+     * Deserializes the JSON object (into the value to update) with a context
+     * that resolves the IDs of referenced entities at the end.
+     *
+     * @param node          The JSON object
+     * @param valueType     The type to deserialize
+     * @param valueToUpdate The value to update or null
+     * @return The deserialized (or updated) value
+     * @throws IOException
+     */
+    private Object readObjectNode(ObjectNode node, JavaType valueType, Object valueToUpdate) throws IOException {
+        try (JsonParser p = treeAsTokens(node)) {
+            final ShogunCoreDeserializationContext ctxt =
+                (ShogunCoreDeserializationContext) createDeserializationContext(p, getDeserializationConfig());
+            ctxt.setDeferredIdResolution(true);
+
+            // START_OBJECT
+            p.nextToken();
+
+            final JsonDeserializer<Object> deserializer = ctxt.findRootValueDeserializer(valueType);
+            final Object result = valueToUpdate == null
+                ? deserializer.deserialize(p, ctxt)
+                : deserializer.deserialize(p, ctxt, valueToUpdate);
+
+            ctxt.checkUnresolvedObjectId();
+            return result;
+        }
+    }
+
 }
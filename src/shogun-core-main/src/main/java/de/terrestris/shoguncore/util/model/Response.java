@@ -1,13 +1,35 @@
 package de.terrestris.shoguncore.util.model;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 
-import java.util.Arrays;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.UnaryOperator;
+
+/**
+ * The response of an (outgoing) HTTP request.
+ * <p>
+ * The body is either held in memory (see {@link #getBody()}) or, if the
+ * response has been requested in streaming mode, as the (not yet consumed)
+ * stream of the upstream entity (see {@link #getBodyStream()}). A streamed
+ * body is only read into memory if {@link #getBody()} is called, e.g. by a
+ * response interceptor that needs to modify it. Streamed responses have to
+ * be closed in any case to release the underlying connection.
+ */
+public class Response implements Closeable {
 
-public class Response {
+    /**
+     * The size of the buffer used to copy a streamed body.
+     */
+    private static final int STREAM_BUFFER_SIZE = 8192;
 
     /**
      *
@@ -24,6 +46,11 @@ public class Response {
      */
     private byte[] body;
 
+    /**
+     * The not yet consumed body of a streamed response.
+     */
+    private InputStream bodyStream;
+
     /**
      *
      */
@@ -36,10 +63,11 @@ public class Response {
      * @param headers
      * @param body
      */
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
     public Response(HttpStatus statusCode, HttpHeaders headers, byte[] body) {
         this.statusCode = statusCode;
         this.headers = headers;
-        this.body = body != null ? Arrays.copyOf(body, body.length) : null;
+        this.body = body;
     }
 
     /**
@@ -71,25 +99,128 @@ public class Response {
     }
 
     /**
+     * Returns the body. A streamed body will be read into memory (and the
+     * stream will be closed) on the first call.
+     * <p>
+     * Note: The returned array is not copied (to avoid multiple copies of
+     * possibly large bodies), it must not be modified by the caller. Use
+     * {@link #setBody(byte[])} to replace the body instead.
+     *
      * @return the body
+     * @throws UncheckedIOException If a streamed body couldn't be read.
      */
-    @SuppressFBWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
+    @SuppressFBWarnings({"PZLA_PREFER_ZERO_LENGTH_ARRAYS", "EI_EXPOSE_REP"})
     public byte[] getBody() {
-        if (body == null) {
-            return null;
+        if (bodyStream != null) {
+            try {
+                bufferBody();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the response body: " +
+                    e.getMessage(), e);
+            }
         }
-        return Arrays.copyOf(body, body.length);
+        return body;
     }
 
     /**
      * @param body the body to set
      */
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
     public void setBody(byte[] body) {
-        if (body == null) {
-            this.body = null;
+        IOUtils.closeQuietly(this.bodyStream);
+        this.bodyStream = null;
+        this.body = body;
+    }
+
+    /**
+     * @return the stream of a streamed body or null if the body is held in
+     * memory
+     */
+    public InputStream getBodyStream() {
+        return bodyStream;
+    }
+
+    /**
+     * Sets the (not yet consumed) body stream. The stream will be closed by
+     * {@link #close()}, {@link #writeBody(OutputStream)} or as soon as the
+     * body gets read into memory.
+     *
+     * @param bodyStream the bodyStream to set
+     */
+    public void setBodyStream(InputStream bodyStream) {
+        IOUtils.closeQuietly(this.bodyStream);
+        this.bodyStream = bodyStream;
+        this.body = null;
+    }
+
+    /**
+     * Replaces the body by the stream returned by the given transformation,
+     * which reads (and e.g. rewrites) the current body on the fly. A body
+     * held in memory is passed as stream, too, i.e. the body is streamed
+     * afterwards in any case. The returned stream has to close the passed
+     * one.
+     *
+     * @param transformation The transformation of the body stream.
+     */
+    public void transformBody(UnaryOperator<InputStream> transformation) {
+        InputStream in = bodyStream;
+        if (in == null) {
+            in = new ByteArrayInputStream(body != null ? body : new byte[0]);
+        }
+        this.bodyStream = transformation.apply(in);
+        this.body = null;
+    }
+
+    /**
+     * @return true if the body is (still) a stream that hasn't been read into
+     * memory yet
+     */
+    public boolean isStreamed() {
+        return bodyStream != null;
+    }
+
+    /**
+     * Reads a streamed body into memory and closes the stream. Does nothing
+     * if the body isn't streamed.
+     *
+     * @throws IOException
+     */
+    public void bufferBody() throws IOException {
+        if (bodyStream == null) {
             return;
         }
-        this.body = Arrays.copyOf(body, body.length);
+        try (InputStream in = bodyStream) {
+            bodyStream = null;
+            body = IOUtils.toByteArray(in);
+        }
+    }
+
+    /**
+     * Writes the body to the given stream, a streamed body is copied with a
+     * bounded buffer (and the stream gets closed afterwards).
+     *
+     * @param out The stream to write to, it won't be closed.
+     * @throws IOException
+     */
+    public void writeBody(OutputStream out) throws IOException {
+        if (bodyStream != null) {
+            try (InputStream in = bodyStream) {
+                bodyStream = null;
+                IOUtils.copy(in, out, STREAM_BUFFER_SIZE);
+            }
+        } else if (body != null) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Closes a (not consumed) body stream and releases the underlying
+     * connection. Does nothing if the body is held in memory.
+     */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(bodyStream);
+        bodyStream = null;
     }
 
     /**
@@ -101,7 +232,7 @@ public class Response {
             .appendSuper(super.toString())
             .append("statusCode", getStatusCode())
             .append("headers", getHeaders())
-            .append("body", getBody())
+            .append("body", isStreamed() ? "(streamed)" : body)
             .toString();
     }
 }
@@ -0,0 +1,55 @@
+package de.terrestris.shoguncore.web;
+
+import de.terrestris.shoguncore.service.CacheStatisticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Map;
+
+/**
+ * Web-controller for the statistics of the (second-level, query and
+ * permission) caches.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@Controller
+public class CacheStatisticsController {
+
+    /**
+     * The service layer instance
+     */
+    @Autowired
+    @Qualifier("cacheStatisticsService")
+    private CacheStatisticsService service;
+
+    /**
+     * Provides the statistics of all caches.
+     */
+    @RequestMapping(value = "/cachestatistics", method = RequestMethod.GET, produces = "application/json;charset=UTF-8")
+    public @ResponseBody
+    Map<String, Object> getStatistics() {
+        return this.service.getStatistics();
+    }
+
+    /**
+     * Resets the statistics of all caches and returns the (reset) statistics.
+     */
+    @RequestMapping(value = "/cachestatistics/reset", method = RequestMethod.POST, produces = "application/json;charset=UTF-8")
+    public @ResponseBody
+    Map<String, Object> resetStatistics() {
+        this.service.resetStatistics();
+        return this.service.getStatistics();
+    }
+
+    /**
+     * @param service the service to set
+     */
+    public void setService(CacheStatisticsService service) {
+        this.service = service;
+    }
+
+}
@@ -3,9 +3,13 @@ package de.terrestris.shoguncore.web;
 import de.terrestris.shoguncore.dao.FileDao;
 import de.terrestris.shoguncore.model.File;
 import de.terrestris.shoguncore.service.FileService;
+import de.terrestris.shoguncore.util.blob.BlobResource;
+import de.terrestris.shoguncore.util.blob.BlobStore;
 import de.terrestris.shoguncore.util.data.ResultSet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -27,6 +31,12 @@ import java.util.Map;
 public class FileController<E extends File, D extends FileDao<E>, S extends FileService<E, D>>
     extends AbstractWebController<E, D, S> {
 
+    /**
+     * The (optional) store of the file contents
+     */
+    @Autowired(required = false)
+    private BlobStore blobStore;
+
     /**
      * Default constructor, which calls the type-constructor
      */
@@ -56,7 +66,7 @@ public class FileController<E extends File, D extends FileDao<E>, S extends File
     }
 
     /**
-     * Persists a file as bytearray in the database
+     * Persists a file (in the blob store or as bytearray in the database)
      *
      * @param uploadedFile
      */
@@ -86,7 +96,8 @@ public class FileController<E extends File, D extends FileDao<E>, S extends File
     }
 
     /**
-     * Gets a file from the database by the given id
+     * Gets a file by the given id. The content is streamed from the blob
+     * store (if stored there), range requests are supported.
      */
     @RequestMapping(value = "/get.action", method = RequestMethod.GET)
     public ResponseEntity<?> getFile(@RequestParam Integer id) {
@@ -98,13 +109,13 @@ public class FileController<E extends File, D extends FileDao<E>, S extends File
                 throw new Exception("Could not find the file with id " + id);
             }
 
-            byte[] fileBytes = file.getFile();
+            Resource content = getFileContent(file);
 
             responseHeaders.setContentType(
                 MediaType.parseMediaType(file.getFileType()));
 
             logger.info("Successfully got the file " + file.getFileName());
-            return new ResponseEntity<>(fileBytes, responseHeaders, HttpStatus.OK);
+            return new ResponseEntity<>(content, responseHeaders, HttpStatus.OK);
         } catch (Exception e) {
             logger.error("Could not get the file: " + e.getMessage());
             Map<String, Object> responseMap = ResultSet.error("Could not get the file: " +
@@ -114,4 +125,35 @@ public class FileController<E extends File, D extends FileDao<E>, S extends File
             return new ResponseEntity<>(responseMap, responseHeaders, HttpStatus.OK);
         }
     }
+
+    /**
+     * @param file
+     * @return The content of the file
+     * @throws Exception If the content is stored in a blob store, but no blob
+     *                   store is configured
+     */
+    protected Resource getFileContent(File file) throws Exception {
+        if (file.getBlobKey() == null) {
+            byte[] fileBytes = file.getFile();
+            return new ByteArrayResource(fileBytes == null ? new byte[0] : fileBytes);
+        }
+        if (blobStore == null) {
+            throw new Exception("No blob store configured for the content of file " + file.getId());
+        }
+        return new BlobResource(blobStore, file.getBlobKey(), file.getFileSize());
+    }
+
+    /**
+     * @return the blobStore
+     */
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * @param blobStore the blobStore to set
+     */
+    public void setBlobStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
 }
@@ -7,6 +7,7 @@ import de.terrestris.shoguncore.util.model.Response;
 import org.apache.http.HttpException;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -58,7 +59,7 @@ public class GeoServerInterceptorController<S extends GeoServerInterceptorServic
             httpResponse = this.service.interceptWmtsRequest(request, service);
 
             responseStatus = httpResponse.getStatusCode();
-            byte[] responseBody = httpResponse.getBody();
+            Object responseBody = getResponseBody(httpResponse);
             responseHeaders = httpResponse.getHeaders();
 
             return new ResponseEntity<>(responseBody, responseHeaders, responseStatus);
@@ -82,7 +83,7 @@ public class GeoServerInterceptorController<S extends GeoServerInterceptorServic
     public ResponseEntity<?> interceptGeoServerRequest(HttpServletRequest request, @PathVariable(value = "endpoint", required = false) Optional<String> endpoint) {
         HttpHeaders responseHeaders = new HttpHeaders();
         HttpStatus responseStatus = HttpStatus.OK;
-        byte[] responseBody;
+        Object responseBody;
         Response httpResponse;
 
         try {
@@ -91,7 +92,7 @@ public class GeoServerInterceptorController<S extends GeoServerInterceptorServic
             httpResponse = this.service.interceptGeoServerRequest(request, endpoint);
 
             responseStatus = httpResponse.getStatusCode();
-            responseBody = httpResponse.getBody();
+            responseBody = getResponseBody(httpResponse);
             responseHeaders = httpResponse.getHeaders();
 
             LOG.trace("Successfully intercepted a GeoServer resource.");
@@ -112,6 +113,22 @@ public class GeoServerInterceptorController<S extends GeoServerInterceptorServic
 
     }
 
+    /**
+     * Returns the body to respond with. A streamed body is passed through as
+     * {@link InputStreamResource}, i.e. it's copied to the client with a
+     * bounded buffer (and closed afterwards) instead of being read into
+     * memory.
+     *
+     * @param httpResponse
+     * @return
+     */
+    private static Object getResponseBody(Response httpResponse) {
+        if (httpResponse.isStreamed()) {
+            return new InputStreamResource(httpResponse.getBodyStream());
+        }
+        return httpResponse.getBody();
+    }
+
     /**
      * @param service the service to set
      */
@@ -55,10 +55,12 @@ public class ImageFileController<E extends ImageFile, D extends ImageFileDao<E>,
     }
 
     /**
-     * Gets an image from the database by the given id
+     * Gets the thumbnail of an image from the database by the given id (and
+     * the (optional) size of the thumbnail)
      */
     @RequestMapping(value = "/getThumbnail.action", method = RequestMethod.GET)
-    public ResponseEntity<?> getThumbnail(@RequestParam Integer id) {
+    public ResponseEntity<?> getThumbnail(@RequestParam Integer id,
+                                          @RequestParam(required = false) Integer size) {
 
         final HttpHeaders responseHeaders = new HttpHeaders();
         Map<String, Object> responseMap;
@@ -72,7 +74,15 @@ public class ImageFileController<E extends ImageFile, D extends ImageFileDao<E>,
 
             byte[] imageBytes = null;
 
-            imageBytes = image.getThumbnail();
+            if (size == null) {
+                imageBytes = image.getThumbnail();
+            } else {
+                imageBytes = image.getThumbnails().get(size);
+                if (imageBytes == null) {
+                    throw new Exception("Could not find the thumbnail of size " + size
+                        + " (thumbnail status: " + image.getThumbnailStatus() + ")");
+                }
+            }
 
             responseHeaders.setContentType(
                 MediaType.parseMediaType(image.getFileType()));
@@ -0,0 +1,95 @@
+package de.terrestris.shoguncore.converter;
+
+import com.fasterxml.jackson.annotation.ObjectIdGenerator.IdKey;
+import com.fasterxml.jackson.annotation.ObjectIdGenerators;
+import de.terrestris.shoguncore.dao.PluginDao;
+import de.terrestris.shoguncore.helper.IdHelper;
+import de.terrestris.shoguncore.model.Plugin;
+import de.terrestris.shoguncore.service.PluginService;
+import de.terrestris.shoguncore.util.json.ShogunCoreDeserializationContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PersistentObjectIdResolverTest {
+
+    private PluginService<Plugin, PluginDao<Plugin>> serviceMock;
+
+    private PluginIdResolver<Plugin, PluginDao<Plugin>, PluginService<Plugin, PluginDao<Plugin>>> resolver;
+
+    private static IdKey idKey(Integer id) {
+        return new IdKey(Plugin.class, ObjectIdGenerators.PropertyGenerator.class, id);
+    }
+
+    private static Plugin createPlugin(Integer id) throws NoSuchFieldException, IllegalAccessException {
+        Plugin plugin = new Plugin();
+        IdHelper.setIdOnPersistentObject(plugin, id);
+        return plugin;
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        serviceMock = mock(PluginService.class);
+        resolver = new PluginIdResolver<>();
+        resolver.setService(serviceMock);
+    }
+
+    @Test
+    public void resolves_ids_one_by_one_without_deferred_context() throws Exception {
+        Plugin plugin = createPlugin(1);
+        when(serviceMock.loadById(1)).thenReturn(plugin);
+
+        PersistentObjectIdResolver<?, ?, ?> copy =
+            (PersistentObjectIdResolver<?, ?, ?>) resolver.newForDeserialization(new ShogunCoreDeserializationContext());
+
+        assertNotSame(resolver, copy);
+        assertSame(serviceMock, copy.getService());
+        assertSame(plugin, copy.resolveId(idKey(1)));
+        verify(serviceMock, never()).findReadableByIds(anyCollection());
+    }
+
+    @Test
+    public void resolves_collected_ids_with_a_single_call() throws Exception {
+        Map<Integer, Plugin> readable = new HashMap<>();
+        readable.put(1, createPlugin(1));
+        readable.put(2, createPlugin(2));
+        when(serviceMock.findReadableByIds(anyCollection())).thenReturn(readable);
+
+        ShogunCoreDeserializationContext context = new ShogunCoreDeserializationContext();
+        context.setDeferredIdResolution(true);
+        PersistentObjectIdResolver<Plugin, ?, ?> copy =
+            (PersistentObjectIdResolver<Plugin, ?, ?>) resolver.newForDeserialization(context);
+
+        assertNull(copy.resolveId(idKey(1)));
+        assertNull(copy.resolveId(idKey(2)));
+        assertNull(copy.resolveId(idKey(3)));
+        assertNull(copy.resolveId(idKey(1)));
+
+        copy.resolvePendingIds();
+        copy.resolvePendingIds();
+
+        verify(serviceMock, times(1)).findReadableByIds(new HashSet<>(Arrays.asList(1, 2, 3)));
+        verify(serviceMock, never()).loadById(anyInt());
+        assertEquals(Integer.valueOf(1), copy.getResolvedEntity(1).getId());
+        assertEquals(Integer.valueOf(2), copy.getResolvedEntity(2).getId());
+        assertNull(copy.getResolvedEntity(3));
+    }
+
+}
@@ -0,0 +1,277 @@
+package de.terrestris.shoguncore.dao;
+
+import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.model.UserGroup;
+import de.terrestris.shoguncore.model.module.CompositeModule;
+import de.terrestris.shoguncore.model.module.Module;
+import de.terrestris.shoguncore.model.security.Permission;
+import de.terrestris.shoguncore.model.security.PermissionCollection;
+import de.terrestris.shoguncore.util.entity.FetchPlan;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the number of queries that are needed to load the entities of the
+ * main (REST) read paths with the different fetch plans: with the
+ * {@value FetchPlan#LIST} plan, the number must not depend on the number of
+ * loaded entities (i.e. there are no N+1 selects). The second-level cache is
+ * emptied before each measurement.
+ * <p>
+ * The numbers of entities are chosen to be loaded in a single batch each
+ * (see <code>hibernate.default_batch_fetch_size</code>).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath*:META-INF/spring/test-context-dao.xml"})
+@Transactional
+@Rollback(true)
+public class FetchPlanTest {
+
+    @Autowired
+    @Qualifier("applicationDao")
+    ApplicationDao<Application> applicationDao;
+
+    @Autowired
+    @Qualifier("moduleDao")
+    ModuleDao<Module> moduleDao;
+
+    @Autowired
+    @Qualifier("userDao")
+    UserDao<User> userDao;
+
+    @Autowired
+    @Qualifier("userGroupDao")
+    UserGroupDao<UserGroup> userGroupDao;
+
+    @Autowired
+    @Qualifier("permissionCollectionDao")
+    PermissionCollectionDao<PermissionCollection> permissionCollectionDao;
+
+    @Autowired
+    SessionFactory sessionFactory;
+
+    private Statistics statistics;
+
+    private User user;
+
+    @Before
+    public void setUp() {
+        statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        user = new User("First name", "Last name", "fetchPlanAccountName");
+        userDao.saveOrUpdate(user);
+    }
+
+    @After
+    public void tearDown() {
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void listPlan_loadsApplicationsWithConstantNumberOfQueries() {
+        final List<Integer> few = createApplicationsWithPermissions(2);
+        final List<Integer> many = createApplicationsWithPermissions(5);
+
+        final long fewCount = countStatements(() -> assertApplicationsLoaded(few.size(),
+            applicationDao.findByCriteriaRestricted(null, FetchPlan.LIST, Restrictions.in("id", few))));
+        final long manyCount = countStatements(() -> assertApplicationsLoaded(many.size(),
+            applicationDao.findByCriteriaRestricted(null, FetchPlan.LIST, Restrictions.in("id", many))));
+
+        assertEquals(fewCount, manyCount);
+    }
+
+    @Test
+    public void listPlan_pagesApplicationsWithConstantNumberOfQueries() {
+        final List<Integer> few = createApplicationsWithPermissions(2);
+        final List<Integer> many = createApplicationsWithPermissions(5);
+
+        final long fewCount = countStatements(() -> assertApplicationsLoaded(few.size(),
+            applicationDao.findByCriteriaRestrictedWithSortingAndPaging(0, few.size(), null, null,
+                FetchPlan.LIST, Restrictions.in("id", few)).getResultList()));
+        final long manyCount = countStatements(() -> assertApplicationsLoaded(many.size(),
+            applicationDao.findByCriteriaRestrictedWithSortingAndPaging(0, many.size(), null, null,
+                FetchPlan.LIST, Restrictions.in("id", many)).getResultList()));
+
+        assertEquals(fewCount, manyCount);
+    }
+
+    @Test
+    public void listPlan_loadsCompositeModulesWithConstantNumberOfQueries() {
+        final List<Integer> few = createCompositeModules(1, 2);
+        final List<Integer> many = createCompositeModules(3, 2);
+
+        final long fewCount = countStatements(() -> assertCompositeModulesLoaded(few.size(), 2,
+            moduleDao.findByCriteriaRestricted(null, FetchPlan.LIST, Restrictions.in("id", few))));
+        final long manyCount = countStatements(() -> assertCompositeModulesLoaded(many.size(), 2,
+            moduleDao.findByCriteriaRestricted(null, FetchPlan.LIST, Restrictions.in("id", many))));
+
+        assertEquals(fewCount, manyCount);
+    }
+
+    @Test
+    public void findById_loadsTheSameEntityWithAllPlans() {
+        final Integer id = createApplicationsWithPermissions(1).get(0);
+
+        for (String fetchPlan : new String[]{null, FetchPlan.DEFAULT, FetchPlan.LIST}) {
+            countStatements(() -> {
+                Application app = applicationDao.findById(id, fetchPlan);
+                assertNotNull(app);
+                assertApplicationsLoaded(1, Collections.singletonList(app));
+                return app;
+            });
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getFetchPlan_throwsOnUnknownPlan() {
+        applicationDao.getFetchPlan("unknown");
+    }
+
+    /**
+     * Counts the statements that are prepared to load entities with an empty
+     * session (and second-level cache).
+     *
+     * @param query
+     * @return
+     */
+    private long countStatements(Supplier<?> query) {
+        final Session session = sessionFactory.getCurrentSession();
+        session.flush();
+        session.clear();
+        sessionFactory.getCache().evictAllRegions();
+        statistics.clear();
+
+        query.get();
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * @param count
+     * @return The IDs of the applications, each having user and group
+     * permissions
+     */
+    private List<Integer> createApplicationsWithPermissions(int count) {
+        final List<Integer> ids = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            UserGroup group = new UserGroup();
+            userGroupDao.saveOrUpdate(group);
+
+            Application app = new Application("App " + i, "A description");
+            app.getUserPermissions().put(user, createPermissionCollection(Permission.READ));
+            app.getGroupPermissions().put(group, createPermissionCollection(Permission.UPDATE));
+            applicationDao.saveOrUpdate(app);
+
+            ids.add(app.getId());
+        }
+
+        return ids;
+    }
+
+    /**
+     * @param count
+     * @param subModuleCount
+     * @return The IDs of the composite modules
+     */
+    private List<Integer> createCompositeModules(int count, int subModuleCount) {
+        final List<Integer> ids = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            CompositeModule compositeModule = new CompositeModule();
+            compositeModule.setName("Composite " + i);
+            for (int j = 0; j < subModuleCount; j++) {
+                Module subModule = new Module("Module " + i + "." + j);
+                subModule.getUserPermissions().put(user, createPermissionCollection(Permission.READ));
+                moduleDao.saveOrUpdate(subModule);
+                compositeModule.addModule(subModule);
+            }
+            moduleDao.saveOrUpdate(compositeModule);
+
+            ids.add(compositeModule.getId());
+        }
+
+        return ids;
+    }
+
+    /**
+     * @param permission
+     * @return
+     */
+    private PermissionCollection createPermissionCollection(Permission permission) {
+        PermissionCollection permissionCollection = new PermissionCollection(
+            new HashSet<Permission>(Collections.singletonList(permission)));
+        permissionCollectionDao.saveOrUpdate(permissionCollection);
+        return permissionCollection;
+    }
+
+    /**
+     * @param expectedSize
+     * @param apps
+     * @return
+     */
+    private List<Application> assertApplicationsLoaded(int expectedSize, List<Application> apps) {
+        assertEquals(expectedSize, apps.size());
+        for (Application app : apps) {
+            assertTrue(Hibernate.isInitialized(app.getUserPermissions()));
+            assertTrue(Hibernate.isInitialized(app.getGroupPermissions()));
+            assertEquals(1, app.getUserPermissions().size());
+            assertEquals(1, app.getGroupPermissions().size());
+            for (PermissionCollection permissionCollection : app.getUserPermissions().values()) {
+                assertTrue(permissionCollection.getPermissions().contains(Permission.READ));
+            }
+            for (PermissionCollection permissionCollection : app.getGroupPermissions().values()) {
+                assertTrue(permissionCollection.getPermissions().contains(Permission.UPDATE));
+            }
+        }
+        return apps;
+    }
+
+    /**
+     * @param expectedSize
+     * @param expectedSubModuleCount
+     * @param modules
+     * @return
+     */
+    private List<Module> assertCompositeModulesLoaded(int expectedSize, int expectedSubModuleCount,
+                                                      List<Module> modules) {
+        assertEquals(expectedSize, modules.size());
+        for (Module module : modules) {
+            assertTrue(module instanceof CompositeModule);
+            List<Module> subModules = ((CompositeModule) module).getSubModules();
+            assertTrue(Hibernate.isInitialized(subModules));
+            assertEquals(expectedSubModuleCount, subModules.size());
+            for (Module subModule : subModules) {
+                assertEquals(1, subModule.getUserPermissions().size());
+            }
+        }
+        return modules;
+    }
+
+}
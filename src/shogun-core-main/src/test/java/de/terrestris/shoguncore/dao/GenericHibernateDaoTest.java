@@ -1,9 +1,16 @@
 package de.terrestris.shoguncore.dao;
 
 import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.model.PersistentObject;
 import de.terrestris.shoguncore.model.Plugin;
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.model.UserGroup;
+import de.terrestris.shoguncore.model.security.Permission;
+import de.terrestris.shoguncore.model.security.PermissionCollection;
 import de.terrestris.shoguncore.paging.PagingResult;
+import de.terrestris.shoguncore.security.access.entity.PersistentObjectPermissionEvaluator;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Order;
@@ -13,12 +20,14 @@ import org.joda.time.ReadableDateTime;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.ResultSet;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -70,12 +79,27 @@ public class GenericHibernateDaoTest {
     @Autowired
     AppTestDao appDao;
 
+    @Autowired
+    SessionFactory sessionFactory;
+
     /**
      *
      */
     @Autowired
     PluginTestDao pluginDao;
 
+    @Autowired
+    @Qualifier("userDao")
+    UserDao<User> userDao;
+
+    @Autowired
+    @Qualifier("userGroupDao")
+    UserGroupDao<UserGroup> userGroupDao;
+
+    @Autowired
+    @Qualifier("permissionCollectionDao")
+    PermissionCollectionDao<PermissionCollection> permissionCollectionDao;
+
     private Set<String> usedRandomStrings = new HashSet<String>();
 
     /**
@@ -366,6 +390,33 @@ public class GenericHibernateDaoTest {
         assertTrue(true);
     }
 
+    /**
+     * Tests whether saveAll() saves all entities (in more than one batch).
+     */
+    @Test
+    public void saveAll_shouldSaveAllEntitiesInBatches() {
+        List<Application> apps = new ArrayList<Application>();
+        for (int i = 0; i < 5; i++) {
+            apps.add(getRandomUnsavedMockApp());
+        }
+
+        appDao.setBatchSize(2);
+        try {
+            appDao.saveAll(apps);
+        } finally {
+            appDao.setBatchSize(null);
+        }
+
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Application app : apps) {
+            assertNotNull(app.getId());
+            ids.add(app.getId());
+        }
+
+        assertEquals(5, ids.size());
+        assertEquals(5, appDao.findAll().size());
+    }
+
     /**
      * Tests whether findAll() gives us an empty list when nothing is persisted.
      */
@@ -637,6 +688,40 @@ public class GenericHibernateDaoTest {
         }
     }
 
+    /**
+     * Tests whether findByCriteriaRestrictedWithSortingAndPaging returns
+     * complete pages even if the entities have (joined) permissions.
+     */
+    @Test
+    public void findByCriteriaRestrictedWithSortingAndPaging_pagesEntitiesWithPermissions() {
+        User user = new User("First name", "Last name", "accountName");
+        userDao.saveOrUpdate(user);
+
+        for (String name : Arrays.asList("e", "d", "c", "b", "a")) {
+            Application app = getMockApp(name);
+            app.getUserPermissions().put(user, getSavedPermissionCollection(Permission.READ));
+            app.getGroupPermissions().put(new UserGroup(), getSavedPermissionCollection(Permission.READ));
+            for (UserGroup group : app.getGroupPermissions().keySet()) {
+                userGroupDao.saveOrUpdate(group);
+            }
+            appDao.saveOrUpdate(app);
+        }
+
+        List<Order> sorters = Collections.singletonList(Order.asc("name"));
+
+        PagingResult<Application> page = appDao.findByCriteriaRestrictedWithSortingAndPaging(1, 2, sorters, null);
+        assertEquals(5, page.getTotalCount().intValue());
+        assertEquals(2, page.getResultList().size());
+        assertEquals("b", page.getResultList().get(0).getName());
+        assertEquals("c", page.getResultList().get(1).getName());
+
+        PagingResult<Application> restrictedPage = appDao.findByCriteriaRestrictedWithSortingAndPaging(
+            4, 2, sorters, Collections.singletonList("name"));
+        assertEquals(5, restrictedPage.getTotalCount().intValue());
+        assertEquals(1, restrictedPage.getResultList().size());
+        assertEquals("e", restrictedPage.getResultList().get(0).getName());
+    }
+
     /**
      * Tests whether findAllWithCollectionContaining works as expected
      * in common usage.
@@ -816,4 +901,146 @@ public class GenericHibernateDaoTest {
 
         assertTrue("findAllWhereFieldEquals() does throw with invalid field", catchedException);
     }
+
+    /**
+     * Tests whether the permission criterion returns the same entities as
+     * the (default) permission evaluator grants the permission for.
+     */
+    @Test
+    public void createPermissionCriterion_shouldMatchPermissionEvaluator() {
+        User user = new User("First name", "Last name", "accountName");
+        User otherUser = new User("Other first name", "Other last name", "otherAccountName");
+        userDao.saveOrUpdate(user);
+        userDao.saveOrUpdate(otherUser);
+
+        UserGroup group = new UserGroup();
+        group.getMembers().add(user);
+        userGroupDao.saveOrUpdate(group);
+
+        getSavedMockApp("noPermissions");
+
+        Application userRead = getMockApp("userRead");
+        userRead.getUserPermissions().put(user, getSavedPermissionCollection(Permission.READ));
+        appDao.saveOrUpdate(userRead);
+
+        Application userAdmin = getMockApp("userAdmin");
+        userAdmin.getUserPermissions().put(user, getSavedPermissionCollection(Permission.ADMIN));
+        appDao.saveOrUpdate(userAdmin);
+
+        Application userUpdate = getMockApp("userUpdate");
+        userUpdate.getUserPermissions().put(user, getSavedPermissionCollection(Permission.UPDATE));
+        appDao.saveOrUpdate(userUpdate);
+
+        Application otherUserRead = getMockApp("otherUserRead");
+        otherUserRead.getUserPermissions().put(otherUser, getSavedPermissionCollection(Permission.READ));
+        appDao.saveOrUpdate(otherUserRead);
+
+        Application groupRead = getMockApp("groupRead");
+        groupRead.getGroupPermissions().put(group, getSavedPermissionCollection(Permission.READ));
+        appDao.saveOrUpdate(groupRead);
+
+        PersistentObjectPermissionEvaluator<Application> evaluator =
+            new PersistentObjectPermissionEvaluator<>(Application.class);
+
+        for (Permission permission : Arrays.asList(Permission.READ, Permission.UPDATE)) {
+            List<Application> permitted = appDao.findByCriteria(appDao.createPermissionCriterion(user, permission));
+
+            Set<Integer> permittedIds = evaluator.getPermittedIds(user, appDao.findAll(), permission, appDao);
+
+            for (Application app : appDao.findAll()) {
+                assertEquals(app.getName() + " " + permission, evaluator.hasPermission(user, app, permission),
+                    permitted.contains(app));
+                assertEquals(app.getName() + " " + permission, permitted.contains(app),
+                    permittedIds.contains(app.getId()));
+            }
+        }
+
+        assertEquals(3, appDao.findByCriteria(appDao.createPermissionCriterion(user, Permission.READ)).size());
+        assertEquals(0, appDao.findByCriteria(appDao.createPermissionCriterion(null, Permission.READ)).size());
+    }
+
+    /**
+     * Tests whether the permissions of users and groups are found for all
+     * entity types (and only for the passed owner).
+     */
+    @Test
+    public void findAllPermissionsOfOwner_shouldFindPermissionsOfAllEntityTypes() {
+        User user = new User("First name", "Last name", "accountName");
+        User otherUser = new User("Other first name", "Other last name", "otherAccountName");
+        userDao.saveOrUpdate(user);
+        userDao.saveOrUpdate(otherUser);
+
+        UserGroup group = new UserGroup();
+        UserGroup otherGroup = new UserGroup();
+        userGroupDao.saveOrUpdate(group);
+        userGroupDao.saveOrUpdate(otherGroup);
+
+        getSavedMockApp("noPermissions");
+
+        PermissionCollection userReadCollection = getSavedPermissionCollection(Permission.READ);
+        Application userRead = getMockApp("userRead");
+        userRead.getUserPermissions().put(user, userReadCollection);
+        userRead.getUserPermissions().put(otherUser, getSavedPermissionCollection(Permission.UPDATE));
+        appDao.saveOrUpdate(userRead);
+
+        PermissionCollection groupReadCollection = getSavedPermissionCollection(Permission.READ);
+        Application groupRead = getMockApp("groupRead");
+        groupRead.getGroupPermissions().put(group, groupReadCollection);
+        groupRead.getGroupPermissions().put(otherGroup, getSavedPermissionCollection(Permission.DELETE));
+        appDao.saveOrUpdate(groupRead);
+
+        PermissionCollection userAdminCollection = getSavedPermissionCollection(Permission.ADMIN);
+        Plugin userAdmin = new Plugin();
+        userAdmin.setName("userAdmin");
+        userAdmin.setClassName("userAdmin");
+        userAdmin.getUserPermissions().put(user, userAdminCollection);
+        pluginDao.saveOrUpdate(userAdmin);
+
+        Map<PersistentObject, PermissionCollection> userPermissions = appDao.findAllUserPermissionsOfUser(user);
+
+        assertEquals(2, userPermissions.size());
+        assertEquals(userReadCollection, userPermissions.get(userRead));
+        assertEquals(userAdminCollection, userPermissions.get(userAdmin));
+
+        Map<PersistentObject, PermissionCollection> groupPermissions =
+            appDao.findAllUserGroupPermissionsOfUserGroup(group);
+
+        assertEquals(1, groupPermissions.size());
+        assertEquals(groupReadCollection, groupPermissions.get(groupRead));
+
+        // the query doesn't depend on the type of the dao
+        assertEquals(userPermissions, pluginDao.findAllUserPermissionsOfUser(user));
+        assertTrue(appDao.findAllUserPermissionsOfUser(new User()).isEmpty());
+        assertTrue(appDao.findAllUserGroupPermissionsOfUserGroup(null).isEmpty());
+    }
+
+    @Test
+    public void permissionJoinTables_shouldIndexTheOwnerColumn() {
+        final Set<String> indexedColumns = new HashSet<String>();
+
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            for (String table : Arrays.asList("USERPERMISSIONS", "GROUPPERMISSIONS")) {
+                try (ResultSet indexInfo = connection.getMetaData().getIndexInfo(
+                    null, null, table, false, false)) {
+                    while (indexInfo.next()) {
+                        indexedColumns.add(table + "." + indexInfo.getString("COLUMN_NAME").toUpperCase());
+                    }
+                }
+            }
+        });
+
+        assertTrue(indexedColumns.contains("USERPERMISSIONS.USERPERMISSIONS_KEY"));
+        assertTrue(indexedColumns.contains("GROUPPERMISSIONS.GROUPPERMISSIONS_KEY"));
+    }
+
+    /**
+     * @param permission
+     * @return
+     */
+    private PermissionCollection getSavedPermissionCollection(Permission permission) {
+        PermissionCollection permissionCollection = new PermissionCollection(
+            new HashSet<Permission>(Collections.singletonList(permission)));
+        permissionCollectionDao.saveOrUpdate(permissionCollection);
+        return permissionCollection;
+    }
 }
@@ -0,0 +1,139 @@
+package de.terrestris.shoguncore.dao;
+
+import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.model.security.Permission;
+import de.terrestris.shoguncore.model.security.PermissionCollection;
+import de.terrestris.shoguncore.security.access.entity.PersistentObjectPermissionEvaluator;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests whether the hot read paths (loading entities, evaluating their
+ * permissions and listing entities) are answered by the second-level and
+ * query caches. Each step runs in its own transaction (and session), as the
+ * caches are only filled on commit.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath*:META-INF/spring/test-context-cache.xml"})
+public class SecondLevelCacheTest {
+
+    @Autowired
+    @Qualifier("applicationDao")
+    ApplicationDao<Application> applicationDao;
+
+    @Autowired
+    @Qualifier("userDao")
+    UserDao<User> userDao;
+
+    @Autowired
+    @Qualifier("permissionCollectionDao")
+    PermissionCollectionDao<PermissionCollection> permissionCollectionDao;
+
+    @Autowired
+    SessionFactory sessionFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        statistics = sessionFactory.getStatistics();
+    }
+
+    @Test
+    public void findById_shouldBeAnsweredByTheSecondLevelCache() {
+        final Integer appId = transactionTemplate.execute(status -> {
+            Application app = new Application("Cached app", "Cached app");
+            applicationDao.saveOrUpdate(app);
+            return app.getId();
+        });
+
+        statistics.clear();
+
+        transactionTemplate.execute(status -> applicationDao.findById(appId));
+        transactionTemplate.execute(status -> applicationDao.findById(appId));
+
+        CacheRegionStatistics appRegion = statistics.getDomainDataRegionStatistics(Application.class.getName());
+
+        assertNotNull(appRegion);
+        assertTrue(appRegion.getHitCount() >= 1);
+    }
+
+    @Test
+    public void hasPermission_shouldReadThePermissionsFromTheSecondLevelCache() {
+        final Integer[] ids = transactionTemplate.execute(status -> {
+            User user = new User("First name", "Last name", "cachedAccountName");
+            userDao.saveOrUpdate(user);
+
+            PermissionCollection permissionCollection = new PermissionCollection(
+                new HashSet<Permission>(Collections.singletonList(Permission.READ)));
+            permissionCollectionDao.saveOrUpdate(permissionCollection);
+
+            Application app = new Application("Secured app", "Secured app");
+            app.getUserPermissions().put(user, permissionCollection);
+            applicationDao.saveOrUpdate(app);
+
+            return new Integer[]{user.getId(), app.getId()};
+        });
+
+        final PersistentObjectPermissionEvaluator<Application> evaluator =
+            new PersistentObjectPermissionEvaluator<>(Application.class);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(transactionTemplate.execute(status -> evaluator.hasPermission(userDao.findById(ids[0]),
+                applicationDao.findById(ids[1]), Permission.READ)));
+        }
+
+        CacheRegionStatistics userPermissionsRegion = statistics.getDomainDataRegionStatistics(
+            Application.class.getName() + ".userPermissions");
+        CacheRegionStatistics permissionsRegion = statistics.getDomainDataRegionStatistics(
+            PermissionCollection.class.getName() + ".permissions");
+
+        assertNotNull(userPermissionsRegion);
+        assertTrue(userPermissionsRegion.getHitCount() >= 1);
+        assertNotNull(permissionsRegion);
+        assertTrue(permissionsRegion.getHitCount() >= 1);
+    }
+
+    @Test
+    public void findAll_shouldBeAnsweredByTheQueryCache() {
+        transactionTemplate.execute(status -> {
+            applicationDao.saveOrUpdate(new Application("Listed app", "Listed app"));
+            return null;
+        });
+
+        statistics.clear();
+
+        transactionTemplate.execute(status -> applicationDao.findAll());
+        transactionTemplate.execute(status -> applicationDao.findAll());
+
+        assertEquals(1, statistics.getQueryCacheMissCount());
+        assertEquals(1, statistics.getQueryCacheHitCount());
+    }
+
+}
@@ -0,0 +1,286 @@
+package de.terrestris.shoguncore.dao;
+
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.model.security.Permission;
+import de.terrestris.shoguncore.model.security.PermissionCollection;
+import de.terrestris.shoguncore.model.tree.TreeFolder;
+import de.terrestris.shoguncore.model.tree.TreeNode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the loading of subtrees, both with the recursive query and level by
+ * level (as on databases without recursive queries), and the copying of
+ * subtrees.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath*:META-INF/spring/test-context-dao.xml"})
+@Transactional
+@Rollback(true)
+public class TreeNodeDaoTest {
+
+    @Autowired
+    @Qualifier("treeNodeDao")
+    TreeNodeDao<TreeNode> treeNodeDao;
+
+    @Autowired
+    SessionFactory sessionFactory;
+
+    @After
+    public void tearDown() {
+        treeNodeDao.setRecursiveQuerySupported(null);
+    }
+
+    @Test
+    public void isRecursiveQuerySupported_shouldBeDeterminedByTheDialect() {
+        // the tests run on H2
+        assertTrue(treeNodeDao.isRecursiveQuerySupported());
+
+        treeNodeDao.setRecursiveQuerySupported(false);
+        assertFalse(treeNodeDao.isRecursiveQuerySupported());
+    }
+
+    @Test
+    public void findSubtree_shouldLoadTheWholeSubtree() {
+        assertWholeSubtreeLoaded();
+    }
+
+    @Test
+    public void findSubtree_shouldLoadTheWholeSubtreeLevelByLevel() {
+        treeNodeDao.setRecursiveQuerySupported(false);
+        assertWholeSubtreeLoaded();
+    }
+
+    @Test
+    public void findSubtree_shouldRespectTheDepthLimit() {
+        assertDepthLimitRespected();
+    }
+
+    @Test
+    public void findSubtree_shouldRespectTheDepthLimitLevelByLevel() {
+        treeNodeDao.setRecursiveQuerySupported(false);
+        assertDepthLimitRespected();
+    }
+
+    @Test
+    public void findSubtree_shouldStopAtCyclicParentReferences() {
+        assertCycleResolved();
+    }
+
+    @Test
+    public void findSubtree_shouldStopAtCyclicParentReferencesLevelByLevel() {
+        treeNodeDao.setRecursiveQuerySupported(false);
+        assertCycleResolved();
+    }
+
+    @Test
+    public void findSubtree_shouldReturnNullForMissingNode() {
+        assertNull(treeNodeDao.findSubtree(Integer.MAX_VALUE, null));
+        assertNull(treeNodeDao.findSubtree(null, null));
+
+        treeNodeDao.setRecursiveQuerySupported(false);
+        assertNull(treeNodeDao.findSubtree(Integer.MAX_VALUE, null));
+    }
+
+    @Test
+    public void copySubtree_shouldCopyIntoNewInstances() {
+        List<TreeNode> nodes = createTree();
+        Session session = sessionFactory.getCurrentSession();
+        TreeNode root = treeNodeDao.findById(nodes.get(0).getId());
+
+        List<TreeNode> copies = treeNodeDao.copySubtree(root.getId());
+
+        // the loaded node isn't touched
+        assertEquals(nodes.get(0).getId(), root.getId());
+        assertTrue(session.contains(root));
+
+        assertEquals(nodes.size(), copies.size());
+        Set<Integer> originalIds = new HashSet<>();
+        for (TreeNode node : nodes) {
+            originalIds.add(node.getId());
+        }
+        for (TreeNode copy : copies) {
+            assertNotNull(copy.getId());
+            assertFalse(originalIds.contains(copy.getId()));
+        }
+
+        session.flush();
+        session.clear();
+
+        TreeFolder rootCopy = (TreeFolder) treeNodeDao.findSubtree(copies.get(0).getId(), null);
+        assertEquals("root", rootCopy.getText());
+        assertNull(rootCopy.getParentFolder());
+        assertEquals(2, rootCopy.getChildren().size());
+        assertEquals("folder", rootCopy.getChildren().get(0).getText());
+        assertEquals("node", rootCopy.getChildren().get(1).getText());
+        TreeFolder subFolderCopy = (TreeFolder) ((TreeFolder) rootCopy.getChildren().get(0)).getChildren().get(0);
+        assertEquals("leaf", subFolderCopy.getChildren().get(0).getText());
+
+        // the original tree is unchanged
+        TreeFolder original = (TreeFolder) treeNodeDao.findSubtree(nodes.get(0).getId(), null);
+        assertEquals(2, original.getChildren().size());
+        assertEquals(nodes.get(1).getId(), original.getChildren().get(0).getId());
+    }
+
+    @Test
+    public void copySubtree_shouldCopyThePermissionCollections() {
+        Session session = sessionFactory.getCurrentSession();
+        User user = new User("First name", "Last name", "treeCopyAccountName");
+        session.save(user);
+        PermissionCollection permissions = new PermissionCollection(
+            new HashSet<>(Arrays.asList(Permission.READ, Permission.UPDATE)));
+        session.save(permissions);
+
+        TreeFolder root = new TreeFolder();
+        root.setText("root");
+        root.getUserPermissions().put(user, permissions);
+        treeNodeDao.saveOrUpdate(root);
+        session.flush();
+        session.clear();
+
+        List<TreeNode> copies = treeNodeDao.copySubtree(root.getId());
+        session.flush();
+        session.clear();
+
+        TreeNode copy = treeNodeDao.findById(copies.get(0).getId());
+        PermissionCollection copiedPermissions = copy.getUserPermissions().get(session.get(User.class, user.getId()));
+
+        assertNotNull(copiedPermissions);
+        assertNotEquals(permissions.getId(), copiedPermissions.getId());
+        assertEquals(permissions.getPermissions(), copiedPermissions.getPermissions());
+
+        TreeNode original = treeNodeDao.findById(root.getId());
+        assertEquals(permissions.getId(),
+            original.getUserPermissions().get(session.get(User.class, user.getId())).getId());
+    }
+
+    @Test
+    public void copySubtree_shouldReturnNoCopiesForMissingNode() {
+        assertTrue(treeNodeDao.copySubtree(Integer.MAX_VALUE).isEmpty());
+    }
+
+    private void assertWholeSubtreeLoaded() {
+        List<TreeNode> nodes = createTree();
+        TreeFolder root = (TreeFolder) treeNodeDao.findSubtree(nodes.get(0).getId(), null);
+
+        assertEquals(nodes.get(0).getId(), root.getId());
+        assertEquals(2, root.getChildren().size());
+
+        // the children are ordered by their index
+        TreeFolder folder = (TreeFolder) root.getChildren().get(0);
+        assertEquals(nodes.get(1).getId(), folder.getId());
+        assertEquals(nodes.get(2).getId(), root.getChildren().get(1).getId());
+        assertEquals(root.getId(), folder.getParentFolder().getId());
+
+        TreeFolder subFolder = (TreeFolder) folder.getChildren().get(0);
+        assertEquals(nodes.get(3).getId(), subFolder.getId());
+        assertEquals(1, subFolder.getChildren().size());
+        assertEquals(nodes.get(4).getId(), subFolder.getChildren().get(0).getId());
+    }
+
+    private void assertDepthLimitRespected() {
+        List<TreeNode> nodes = createTree();
+        TreeFolder root = (TreeFolder) treeNodeDao.findSubtree(nodes.get(0).getId(), 1);
+
+        assertEquals(2, root.getChildren().size());
+        // the children of the folders at the maximum depth aren't loaded
+        assertNull(((TreeFolder) root.getChildren().get(0)).getChildren());
+
+        TreeFolder rootOnly = (TreeFolder) treeNodeDao.findSubtree(nodes.get(0).getId(), 0);
+        assertNull(rootOnly.getChildren());
+    }
+
+    private void assertCycleResolved() {
+        Session session = sessionFactory.getCurrentSession();
+        TreeFolder first = createFolder("first", null, 0);
+        TreeFolder second = createFolder("second", first, 0);
+        first.setParentFolder(second);
+        session.flush();
+        session.clear();
+
+        TreeFolder root = (TreeFolder) treeNodeDao.findSubtree(first.getId(), null);
+
+        assertEquals(1, root.getChildren().size());
+        TreeFolder child = (TreeFolder) root.getChildren().get(0);
+        assertEquals(second.getId(), child.getId());
+        // the root isn't linked as a child of its descendant again
+        assertTrue(child.getChildren().isEmpty());
+    }
+
+    /**
+     * Creates the tree
+     * <pre>
+     * root
+     * +-- folder (index 0)
+     * |   +-- subFolder
+     * |       +-- leaf
+     * +-- node (index 1)
+     * </pre>
+     *
+     * @return The root, folder, node, subFolder and leaf
+     */
+    private List<TreeNode> createTree() {
+        List<TreeNode> nodes = new ArrayList<>();
+
+        TreeFolder root = createFolder("root", null, 0);
+        // save the second child first to check the order
+        TreeNode node = createNode("node", root, 1);
+        TreeFolder folder = createFolder("folder", root, 0);
+        TreeFolder subFolder = createFolder("subFolder", folder, 0);
+        TreeNode leaf = createNode("leaf", subFolder, 0);
+
+        nodes.add(root);
+        nodes.add(folder);
+        nodes.add(node);
+        nodes.add(subFolder);
+        nodes.add(leaf);
+
+        Session session = sessionFactory.getCurrentSession();
+        session.flush();
+        session.clear();
+
+        return nodes;
+    }
+
+    private TreeFolder createFolder(String text, TreeFolder parent, int index) {
+        TreeFolder folder = new TreeFolder();
+        folder.setText(text);
+        folder.setParentFolder(parent);
+        folder.setIndex(index);
+        treeNodeDao.saveOrUpdate(folder);
+        return folder;
+    }
+
+    private TreeNode createNode(String text, TreeFolder parent, int index) {
+        TreeNode node = new TreeNode(text);
+        node.setParentFolder(parent);
+        node.setIndex(index);
+        treeNodeDao.saveOrUpdate(node);
+        return node;
+    }
+
+}
@@ -0,0 +1,226 @@
+package de.terrestris.shoguncore.hibernate;
+
+import de.terrestris.shoguncore.util.json.ShogunCoreJsonObjectMapper;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A simple benchmark comparing the {@link JsonbUserType} with its former
+ * implementation, which created a new object mapper for every call and
+ * copied (and disassembled) the values by a serialize/parse round trip.
+ * <p>
+ * The benchmark calls the user type like hibernate does for an entity with a
+ * large jsonb property (and a second-level cache):
+ * <ul>
+ * <li><code>load</code>: read the column, copy the loaded state (for the
+ * dirty check) and disassemble the value (to put it into the cache).</li>
+ * <li><code>flush</code>: compare the modified value with the loaded state,
+ * write the column, copy the new state and disassemble the value (to update
+ * the cache).</li>
+ * </ul>
+ * Additionally the single calls of <code>deepCopy</code> (<code>copy</code>)
+ * and <code>disassemble</code> (<code>cache</code>) are measured.
+ * <p>
+ * This is not a unit test (and not run by the build), run it manually via
+ * its main method, e.g. from your IDE or with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=de.terrestris.shoguncore.hibernate.JsonbUserTypeBenchmark \
+ *   -Dexec.args="5000 200"
+ * </pre>
+ * The arguments are the number of features of the generated JSON object
+ * (default 5000, i.e. ~1 MB) and the number of measured iterations (default
+ * 200).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class JsonbUserTypeBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int featureCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        String column = new ShogunCoreJsonObjectMapper().writeValueAsString(createValue(featureCount));
+
+        System.out.println(String.format(Locale.ROOT, "Value: %d features, %.1f MB, %d iterations",
+            featureCount, column.length() / 1024d / 1024d, iterations));
+
+        JsonbUserType type = new JsonbUserType();
+        ResultSet resultSet = createResultSet(column);
+        PreparedStatement statement = createPreparedStatement();
+
+        run("load (old)", iterations, () -> loadLegacy(column));
+        run("load (new)", iterations, () -> load(type, resultSet));
+
+        Object legacyLoaded = loadLegacy(column);
+        Object loaded = load(type, resultSet);
+
+        run("flush (old)", iterations, () -> flushLegacy(legacyLoaded));
+        run("flush (new)", iterations, () -> flush(type, statement, loaded));
+
+        run("copy (old)", iterations, () -> deepCopyLegacy(legacyLoaded));
+        run("copy (new)", iterations, () -> type.deepCopy(loaded));
+        run("cache (old)", iterations, () -> disassembleLegacy(legacyLoaded));
+        run("cache (new)", iterations, () -> type.disassemble(loaded));
+    }
+
+    private static void run(String name, int iterations, Task task) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            task.run();
+        }
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = getAllocatedBytes(threadBean);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+
+        long duration = System.nanoTime() - start;
+        long allocated = getAllocatedBytes(threadBean) - allocatedBefore;
+
+        System.out.println(String.format(Locale.ROOT, "%-12s %8.2f ms/op %10.1f MB allocated/op",
+            name, duration / 1e6 / iterations,
+            allocated < 0 ? Double.NaN : allocated / 1024d / 1024d / iterations));
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threadBean) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static Object load(JsonbUserType type, ResultSet resultSet) throws Exception {
+        Object value = type.nullSafeGet(resultSet, new String[]{"value"}, null, null);
+        type.deepCopy(value);
+        type.disassemble(value);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object flush(JsonbUserType type, PreparedStatement statement, Object loaded) throws Exception {
+        Object value = type.deepCopy(loaded);
+        ((Map<String, Object>) value).put("modified", System.nanoTime());
+        if (!type.equals(value, loaded)) {
+            type.nullSafeSet(statement, value, 1, null);
+            type.deepCopy(value);
+            type.disassemble(value);
+        }
+        return value;
+    }
+
+    /**
+     * The former implementation of the JsonbUserType#nullSafeGet,
+     * JsonbUserType#deepCopy and JsonbUserType#disassemble.
+     */
+    private static Object loadLegacy(String column) throws IOException {
+        ShogunCoreJsonObjectMapper mapper = new ShogunCoreJsonObjectMapper();
+        Object value = mapper.readValue(column, HashMap.class);
+        deepCopyLegacy(value);
+        disassembleLegacy(value);
+        return value;
+    }
+
+    /**
+     * The former implementation of the JsonbUserType#nullSafeSet,
+     * JsonbUserType#deepCopy and JsonbUserType#disassemble.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object flushLegacy(Object loaded) throws IOException {
+        Object value = deepCopyLegacy(loaded);
+        ((Map<String, Object>) value).put("modified", System.nanoTime());
+        if (!value.equals(loaded)) {
+            new ShogunCoreJsonObjectMapper().writeValueAsString(value);
+            deepCopyLegacy(value);
+            disassembleLegacy(value);
+        }
+        return value;
+    }
+
+    private static Object deepCopyLegacy(Object value) throws IOException {
+        ShogunCoreJsonObjectMapper mapper = new ShogunCoreJsonObjectMapper();
+        return mapper.readValue(mapper.writeValueAsString(value), HashMap.class);
+    }
+
+    private static Serializable disassembleLegacy(Object value) throws IOException {
+        return (Serializable) deepCopyLegacy(value);
+    }
+
+    /**
+     * @return A result set returning the passed column value
+     */
+    private static ResultSet createResultSet(String column) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+            (proxy, method, arguments) -> {
+                switch (method.getName()) {
+                    case "getString":
+                        return column;
+                    case "wasNull":
+                        return false;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    /**
+     * @return A prepared statement ignoring all parameters
+     */
+    private static PreparedStatement createPreparedStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+            new Class<?>[]{PreparedStatement.class}, (proxy, method, arguments) -> null);
+    }
+
+    /**
+     * Creates a GeoJSON like object with the given number of features.
+     */
+    private static Map<String, Object> createValue(int featureCount) {
+        List<Object> features = new ArrayList<>(featureCount);
+        for (int i = 0; i < featureCount; i++) {
+            Map<String, Object> properties = new LinkedHashMap<>();
+            properties.put("name", "Feature " + i);
+            properties.put("visible", i % 2 == 0);
+            properties.put("opacity", 0.5 + i % 50 / 100d);
+            properties.put("tags", Arrays.asList("bvb", "tag" + i % 10));
+
+            Map<String, Object> geometry = new LinkedHashMap<>();
+            geometry.put("type", "Point");
+            geometry.put("coordinates", Arrays.asList(7.46 + i / 1e4, 51.49 + i / 1e4));
+
+            Map<String, Object> feature = new LinkedHashMap<>();
+            feature.put("type", "Feature");
+            feature.put("id", i);
+            feature.put("geometry", geometry);
+            feature.put("properties", properties);
+            features.add(feature);
+        }
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("type", "FeatureCollection");
+        value.put("features", features);
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        Object run() throws Exception;
+    }
+}
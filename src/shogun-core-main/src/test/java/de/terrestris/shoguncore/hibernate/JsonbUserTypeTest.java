@@ -0,0 +1,74 @@
+package de.terrestris.shoguncore.hibernate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author terrestris GmbH & Co. KG
+ */
+public class JsonbUserTypeTest {
+
+    private JsonbUserType userType;
+
+    private Map<String, Object> value;
+
+    @Before
+    public void setUp() {
+        userType = new JsonbUserType();
+
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("name", "peter");
+        nested.put("values", new ArrayList<Object>(Arrays.asList(1, 2.5, true, null)));
+
+        value = new HashMap<>();
+        value.put("nested", nested);
+        value.put("count", 42);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void deepCopy_shouldCopyMapsAndLists() {
+        Map<String, Object> copy = (Map<String, Object>) userType.deepCopy(value);
+
+        assertEquals(value, copy);
+        assertTrue(userType.equals(value, copy));
+        assertNotSame(value, copy);
+        assertNotSame(value.get("nested"), copy.get("nested"));
+
+        // changes of the copy must not change the original value
+        ((List<Object>) ((Map<String, Object>) copy.get("nested")).get("values")).add(3);
+        assertEquals(4, ((List<Object>) ((Map<String, Object>) value.get("nested")).get("values")).size());
+    }
+
+    @Test
+    public void deepCopy_shouldParseStrings() {
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("name", "peter");
+
+        assertEquals(expected, userType.deepCopy("{\"name\": \"peter\"}"));
+        assertNull(userType.deepCopy(null));
+    }
+
+    @Test
+    public void disassemble_shouldBeAssembledToEqualValue() {
+        Serializable cached = userType.disassemble(value);
+
+        assertTrue(cached instanceof byte[]);
+        assertEquals(value, userType.assemble(cached, null));
+        assertNull(userType.disassemble(null));
+    }
+
+}
@@ -59,39 +59,23 @@ public class ContentInitializerTest {
     }
 
     @Test
-    public void initializeDatabaseContent_callsSaveUserIfPersistentObjectIsAnUser() {
+    public void initializeDatabaseContent_savesAllPersistentObjectsInBulk() {
         contentInitializer.setShogunInitEnabled(true);
         final List<PersistentObject> objToCreate = new LinkedList<>();
         objToCreate.add(new User("peter", "peter", "peter"));
-        contentInitializer.setObjectsToCreate(objToCreate);
-        contentInitializer.setInitService(this.initializationService);
-        contentInitializer.initializeDatabaseContent();
-
-        // should not be called since mapModuleId and layerIds are empty
-        Mockito.verify(initializationService, Mockito.times(1)).
-            saveUser(ArgumentMatchers.any(User.class)
-            );
-        Mockito.verify(initializationService,  Mockito.never()).
-            savePersistentObject(ArgumentMatchers.any(PersistentObject.class)
-            );
-        Mockito.verifyNoMoreInteractions(initializationService);
-    }
-
-    @Test
-    public void initializeDatabaseContent_callsSavePersistentObjectIfPersistentObjectIsNotAnUser() {
-        contentInitializer.setShogunInitEnabled(true);
-        final List<PersistentObject> objToCreate = new LinkedList<>();
         objToCreate.add(new InterceptorRule());
         contentInitializer.setObjectsToCreate(objToCreate);
         contentInitializer.setInitService(this.initializationService);
         contentInitializer.initializeDatabaseContent();
 
-        // should not be called since mapModuleId and layerIds are empty
+        // users and other objects are passed (in the given order) at once
+        Mockito.verify(initializationService, Mockito.times(1)).
+            savePersistentObjects(objToCreate);
         Mockito.verify(initializationService, Mockito.never()).
             saveUser(ArgumentMatchers.any(User.class)
             );
-        Mockito.verify(initializationService, Mockito.times(1)).
-            savePersistentObject(ArgumentMatchers.any(InterceptorRule.class)
+        Mockito.verify(initializationService, Mockito.never()).
+            savePersistentObject(ArgumentMatchers.any(PersistentObject.class)
             );
         Mockito.verifyNoMoreInteractions(initializationService);
     }
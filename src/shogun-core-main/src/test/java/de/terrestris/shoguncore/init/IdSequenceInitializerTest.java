@@ -0,0 +1,114 @@
+package de.terrestris.shoguncore.init;
+
+import de.terrestris.shoguncore.hibernate.ShogunCoreSequenceGenerator;
+import de.terrestris.shoguncore.model.Application;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author terrestris GmbH & Co. KG
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath*:META-INF/spring/test-context-dao.xml"})
+public class IdSequenceInitializerTest {
+
+    private static final long LEGACY_NEXT_VALUE = 100000;
+
+    @Autowired
+    SessionFactory sessionFactory;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private IdSequenceInitializer idSequenceInitializer;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        idSequenceInitializer = new IdSequenceInitializer();
+        idSequenceInitializer.setSessionFactory(sessionFactory);
+
+        // the table of the former table based id generator
+        jdbcTemplate.execute("create table hibernate_sequences (sequence_name varchar(255), next_val bigint)");
+        jdbcTemplate.update("insert into hibernate_sequences values ('default', ?)", LEGACY_NEXT_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.execute("drop table hibernate_sequences");
+    }
+
+    @Test
+    public void initializeIdSequence_shouldSeedTheSequenceFromTheLegacyTable() {
+        idSequenceInitializer.initializeIdSequence();
+
+        final Integer firstId = saveApplication();
+        assertTrue(firstId >= LEGACY_NEXT_VALUE);
+
+        // further initializations must not change the sequence
+        idSequenceInitializer.initializeIdSequence();
+
+        final Integer secondId = saveApplication();
+        assertTrue(secondId > firstId);
+    }
+
+    @Test
+    public void initializeIdSequence_shouldCreateAMissingSequence() {
+        jdbcTemplate.execute("drop sequence " + ShogunCoreSequenceGenerator.SEQUENCE_NAME);
+
+        idSequenceInitializer.initializeIdSequence();
+
+        assertTrue(saveApplication() >= LEGACY_NEXT_VALUE);
+    }
+
+    @Test
+    public void initializeIdSequence_shouldFailIfTheStartValueIsTooLarge() {
+        final Integer id = saveApplication();
+        jdbcTemplate.update("update hibernate_sequences set next_val = ?", Integer.MAX_VALUE + 1L);
+
+        try {
+            idSequenceInitializer.initializeIdSequence();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(ShogunCoreSequenceGenerator.SEQUENCE_NAME));
+        }
+
+        // the existing sequence is kept
+        assertTrue(saveApplication() > id);
+    }
+
+    /**
+     * @return The id of the saved application
+     */
+    private Integer saveApplication() {
+        return transactionTemplate.execute(status -> {
+            Application application = new Application("Sequence app", "Sequence app");
+            sessionFactory.getCurrentSession().save(application);
+            return application.getId();
+        });
+    }
+
+}
@@ -6,7 +6,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.helper.IdHelper;
 import de.terrestris.shoguncore.model.PersistentObject;
+import de.terrestris.shoguncore.paging.PagingResult;
 import de.terrestris.shoguncore.service.AbstractCrudService;
+import de.terrestris.shoguncore.util.data.BulkItemResult;
 import de.terrestris.shoguncore.util.json.ShogunCoreJsonObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
@@ -24,6 +26,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
@@ -154,6 +158,49 @@ public class AbstractRestControllerTest {
         verifyNoMoreInteractions(serviceMock);
     }
 
+    /**
+     * Tests whether the REST findAll interface will return the requested page
+     * and the total count header if paging parameters are given.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void findAllEntitiesPaged_shouldReturn_PageAndTotalCount()
+        throws Exception {
+        TestModel first = buildTestInstanceWithValue("value 1");
+
+        MultiValueMap<String, String> pagingParams = new LinkedMultiValueMap<>();
+        pagingParams.add("page:offset", "0");
+        pagingParams.add("page:limit", "1");
+        when(serviceMock.findAllRestrictedPaged(pagingParams))
+            .thenReturn(new PagingResult<TestModel>(Arrays.asList(first), 42));
+
+        // Test GET method
+        mockMvc.perform(get("/tests").param("page:offset", "0").param("page:limit", "1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(AbstractRestController.TOTAL_COUNT_HEADER, "42"))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].testValue", is("value 1")));
+
+        verify(serviceMock, times(1)).findAllRestrictedPaged(pagingParams);
+        verifyNoMoreInteractions(serviceMock);
+    }
+
+    /**
+     * Tests whether the REST findAll interface will return a HTTP Status Code
+     * 400 (BAD REQUEST) for invalid paging parameters.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void findAllEntitiesPaged_shouldReturn_BadRequestForInvalidParams()
+        throws Exception {
+        when(serviceMock.findAllRestrictedPaged(any())).thenThrow(new IllegalArgumentException("invalid"));
+
+        mockMvc.perform(get("/tests").param("page:limit", "foo"))
+            .andExpect(status().isBadRequest());
+    }
+
     /**
      * Tests whether the REST findById interface will return an expected entity
      * and a HTTP Status Code 200 (OK).
@@ -446,6 +493,134 @@ public class AbstractRestControllerTest {
         verifyNoMoreInteractions(serviceMock);
     }
 
+    /**
+     * Tests whether the REST bulk save/create interface passes the valid
+     * entities to the service and returns the result of each item.
+     *
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void saveAll_shouldReturn_ResultsPerItem() throws Exception {
+        final int id = 42;
+
+        TestModel withoutId = buildTestInstanceWithValue("bulk value");
+        TestModel withId = buildTestInstanceWithIdAndValue(id, "bulk value");
+
+        when(serviceMock.saveOrUpdateAll(anyList())).thenAnswer(new Answer<List<BulkItemResult>>() {
+            @Override
+            public List<BulkItemResult> answer(InvocationOnMock invocation) throws Throwable {
+                List<TestModel> entities = (List<TestModel>) invocation.getArguments()[0];
+                return Collections.singletonList(new BulkItemResult(0, id + entities.size(),
+                    BulkItemResult.Status.CREATED));
+            }
+        });
+
+        mockMvc.perform(
+            post("/tests/bulk").contentType(MediaType.APPLICATION_JSON).content(
+                asJson(Arrays.asList(withoutId, withId))))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].index", is(0)))
+            .andExpect(jsonPath("$[0].id", is(id + 1)))
+            .andExpect(jsonPath("$[0].status", is("CREATED")))
+            .andExpect(jsonPath("$[0].httpStatus", is(201)))
+            .andExpect(jsonPath("$[1].index", is(1)))
+            .andExpect(jsonPath("$[1].status", is("INVALID")));
+
+        verify(serviceMock, times(1)).saveOrUpdateAll(anyList());
+        verifyNoMoreInteractions(serviceMock);
+    }
+
+    /**
+     * Tests whether the REST bulk save/create interface accepts newline
+     * delimited JSON and reports invalid lines per item.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void saveAll_shouldAccept_NewlineDelimitedJson() throws Exception {
+        when(serviceMock.saveOrUpdateAll(anyList())).thenReturn(
+            Collections.singletonList(new BulkItemResult(0, 42, BulkItemResult.Status.CREATED)));
+
+        mockMvc.perform(
+            post("/tests/bulk").contentType(AbstractRestController.NDJSON_CONTENT_TYPE).content(
+                "{invalid\n\n" + asJson(buildTestInstanceWithValue("bulk value")) + "\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].status", is("INVALID")))
+            .andExpect(jsonPath("$[1].index", is(1)))
+            .andExpect(jsonPath("$[1].status", is("CREATED")));
+
+        verify(serviceMock, times(1)).saveOrUpdateAll(anyList());
+        verifyNoMoreInteractions(serviceMock);
+    }
+
+    /**
+     * Tests whether the REST bulk update interface passes the JSON objects to
+     * the service and returns the result of each item.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateAll_shouldReturn_ResultsPerItem() throws Exception {
+        when(serviceMock.updatePartialWithJsonNodes(anyList(), same(objectMapper))).thenReturn(Arrays.asList(
+            new BulkItemResult(0, 1, BulkItemResult.Status.UPDATED),
+            new BulkItemResult(1, 2, BulkItemResult.Status.FORBIDDEN)));
+
+        mockMvc.perform(
+            put("/tests/bulk").contentType(MediaType.APPLICATION_JSON).content(
+                asJson(Arrays.asList(buildTestInstanceWithIdAndValue(1, "first"),
+                    buildTestInstanceWithIdAndValue(2, "second")))))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].status", is("UPDATED")))
+            .andExpect(jsonPath("$[1].id", is(2)))
+            .andExpect(jsonPath("$[1].httpStatus", is(403)));
+
+        verify(serviceMock, times(1)).updatePartialWithJsonNodes(anyList(), same(objectMapper));
+        verifyNoMoreInteractions(serviceMock);
+    }
+
+    /**
+     * Tests whether the REST bulk delete interface passes the valid IDs to the
+     * service and returns the result of each item.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deleteAll_shouldReturn_ResultsPerItem() throws Exception {
+        when(serviceMock.deleteAll(Collections.singletonList(42))).thenReturn(
+            Collections.singletonList(new BulkItemResult(0, 42, BulkItemResult.Status.DELETED)));
+
+        mockMvc.perform(
+            delete("/tests/bulk").contentType(MediaType.APPLICATION_JSON).content("[\"no id\", 42]"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].status", is("INVALID")))
+            .andExpect(jsonPath("$[1].index", is(1)))
+            .andExpect(jsonPath("$[1].status", is("DELETED")));
+
+        verify(serviceMock, times(1)).deleteAll(Collections.singletonList(42));
+        verifyNoMoreInteractions(serviceMock);
+    }
+
+    /**
+     * Tests whether the REST bulk interfaces return a HTTP Status Code 400
+     * (BAD REQUEST) if the body is no JSON array.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void saveAll_shouldReturn_BadRequestIfNoArray() throws Exception {
+        mockMvc.perform(
+            post("/tests/bulk").contentType(MediaType.APPLICATION_JSON).content(
+                asJson(buildTestInstanceWithValue("bulk value"))))
+            .andExpect(status().isBadRequest());
+
+        verifyNoMoreInteractions(serviceMock);
+    }
+
     /**
      * Helper method to build a test instance without ID, but a value.
      *
@@ -482,7 +657,7 @@ public class AbstractRestControllerTest {
      * @return JSON representation of the passed object
      * @throws JsonProcessingException
      */
-    private String asJson(TestModel object) throws JsonProcessingException {
+    private String asJson(Object object) throws JsonProcessingException {
         return objectMapper.writeValueAsString(object);
     }
 
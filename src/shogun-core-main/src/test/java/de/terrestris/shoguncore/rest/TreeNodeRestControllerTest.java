@@ -0,0 +1,92 @@
+package de.terrestris.shoguncore.rest;
+
+import de.terrestris.shoguncore.dao.TreeNodeDao;
+import de.terrestris.shoguncore.helper.IdHelper;
+import de.terrestris.shoguncore.model.tree.TreeFolder;
+import de.terrestris.shoguncore.model.tree.TreeNode;
+import de.terrestris.shoguncore.service.TreeNodeService;
+import de.terrestris.shoguncore.util.json.ShogunCoreJsonObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class TreeNodeRestControllerTest {
+
+    /**
+     * Spring MVC test support
+     */
+    private MockMvc mockMvc;
+
+    /**
+     * The service, whose behavior will be mocked up.
+     */
+    private TreeNodeService<TreeNode, TreeNodeDao<TreeNode>> serviceMock;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        serviceMock = mock(TreeNodeService.class);
+
+        TreeNodeRestController<TreeNode, TreeNodeDao<TreeNode>, TreeNodeService<TreeNode, TreeNodeDao<TreeNode>>> restController =
+            new TreeNodeRestController<>();
+        restController.objectMapper = new ShogunCoreJsonObjectMapper();
+        restController.setService(serviceMock);
+
+        this.mockMvc = MockMvcBuilders.standaloneSetup(restController).build();
+    }
+
+    @Test
+    public void findSubtree_shouldReturn_SubtreeAndOK() throws Exception {
+        TreeFolder root = new TreeFolder();
+        IdHelper.setIdOnPersistentObject(root, 1);
+        TreeNode child = new TreeNode("child");
+        IdHelper.setIdOnPersistentObject(child, 2);
+        child.setParentFolder(root);
+        root.getChildren().add(child);
+
+        when(serviceMock.findSubtree(1, 1)).thenReturn(root);
+
+        mockMvc.perform(get("/treenodes/1/subtree").param("depth", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id", is(1)))
+            .andExpect(jsonPath("$.children", hasSize(1)))
+            .andExpect(jsonPath("$.children[0].id", is(2)))
+            .andExpect(jsonPath("$.children[0].text", is("child")))
+            .andExpect(jsonPath("$.children[0].parentId", is(1)));
+
+        verify(serviceMock, times(1)).findSubtree(1, 1);
+        verifyNoMoreInteractions(serviceMock);
+    }
+
+    @Test
+    public void findSubtree_shouldReturn_NotFoundForMissingNode() throws Exception {
+        when(serviceMock.findSubtree(42, null)).thenReturn(null);
+
+        mockMvc.perform(get("/treenodes/42/subtree"))
+            .andExpect(status().isNotFound());
+
+        verify(serviceMock, times(1)).findSubtree(42, null);
+        verifyNoMoreInteractions(serviceMock);
+    }
+
+    @Test
+    public void findSubtree_shouldReturn_NotFoundIfAccessIsDenied() throws Exception {
+        when(serviceMock.findSubtree(1, null)).thenThrow(new RuntimeException("Access is denied"));
+
+        mockMvc.perform(get("/treenodes/1/subtree"))
+            .andExpect(status().isNotFound());
+    }
+
+}
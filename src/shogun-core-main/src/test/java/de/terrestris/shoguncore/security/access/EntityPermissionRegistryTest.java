@@ -0,0 +1,72 @@
+package de.terrestris.shoguncore.security.access;
+
+import de.terrestris.shoguncore.dao.GenericHibernateDao;
+import de.terrestris.shoguncore.dao.PersonDao;
+import de.terrestris.shoguncore.dao.UserDao;
+import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.model.Person;
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.security.access.factory.EntityPermissionEvaluatorFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author terrestris GmbH & Co. KG
+ */
+public class EntityPermissionRegistryTest {
+
+    private PersonDao<Person> personDao;
+
+    private UserDao<User> userDao;
+
+    private EntityPermissionRegistry registry;
+
+    @SuppressWarnings("rawtypes")
+    @Before
+    public void setUp() {
+        personDao = new PersonDao<>();
+        userDao = new UserDao<>();
+
+        registry = new EntityPermissionRegistry(Arrays.<GenericHibernateDao>asList(personDao, userDao),
+            new EntityPermissionEvaluatorFactory<>());
+    }
+
+    @Test
+    public void getDao_shouldPreferExactlyMatchingDao() {
+        assertSame(userDao, registry.getDao(User.class));
+        assertSame(personDao, registry.getDao(Person.class));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void getDao_shouldFallBackOnDaoOfSuperclass() {
+        registry = new EntityPermissionRegistry(Arrays.<GenericHibernateDao>asList(personDao),
+            new EntityPermissionEvaluatorFactory<>());
+
+        assertSame(personDao, registry.getDao(User.class));
+    }
+
+    @Test
+    public void getDao_shouldReturnNullWithoutMatchingDao() {
+        assertNull(registry.getDao(Application.class));
+    }
+
+    @Test
+    public void getEntityClass_shouldResolveClassNames() {
+        assertEquals(User.class, registry.getEntityClass(User.class.getName()));
+        assertEquals(Application.class, registry.getEntityClass(Application.class.getName()));
+        assertNull(registry.getEntityClass("de.terrestris.shoguncore.model.DoesNotExist"));
+    }
+
+    @Test
+    public void getPermissionEvaluator_shouldReturnCachedEvaluators() {
+        assertSame(registry.getPermissionEvaluator(User.class), registry.getPermissionEvaluator(User.class));
+    }
+
+}
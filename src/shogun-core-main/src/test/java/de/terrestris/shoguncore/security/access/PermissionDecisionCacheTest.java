@@ -0,0 +1,142 @@
+package de.terrestris.shoguncore.security.access;
+
+import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.model.security.Permission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author terrestris GmbH & Co. KG
+ */
+public class PermissionDecisionCacheTest {
+
+    private static final PermissionDecisionCache.Key KEY =
+        new PermissionDecisionCache.Key(42, Application.class, 4711, Permission.READ);
+
+    private PermissionDecisionCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new PermissionDecisionCache();
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void get_returnsNullIfNothingHasBeenCached() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        assertNull(cache.get(KEY));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void put_cachesForTheCurrentRequestOnly() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        cache.put(KEY, true, cache.getGeneration(), true);
+
+        assertTrue(cache.get(KEY));
+        assertNull(cache.get(new PermissionDecisionCache.Key(42, Application.class, 4711, Permission.UPDATE)));
+        assertEquals(1, cache.getRequestHits());
+
+        // a new request must not see the decisions of the previous one (the
+        // shared tier is disabled by default)
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        assertNull(cache.get(KEY));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void put_cachesSharedDecisionsForAllRequests() {
+        cache.setMaxEntries(1);
+
+        cache.put(KEY, false, cache.getGeneration(), true);
+
+        assertFalse(cache.get(KEY));
+        assertEquals(1, cache.getSharedHits());
+
+        // the shared tier is bounded
+        PermissionDecisionCache.Key otherKey = new PermissionDecisionCache.Key(43, Application.class, 4711,
+            Permission.READ);
+        cache.put(otherKey, true, cache.getGeneration(), true);
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(KEY));
+        assertTrue(cache.get(otherKey));
+    }
+
+    @Test
+    public void put_ignoresNotShareableDecisionsInSharedTier() {
+        cache.setMaxEntries(10);
+
+        cache.put(KEY, true, cache.getGeneration(), false);
+
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void put_ignoresDecisionsOfPreviousGenerations() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        cache.setMaxEntries(10);
+
+        long generation = cache.getGeneration();
+        cache.invalidate();
+        cache.put(KEY, true, generation, true);
+
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void invalidate_dropsAllTiers() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        cache.setMaxEntries(10);
+
+        cache.put(KEY, true, cache.getGeneration(), true);
+        cache.invalidate();
+
+        assertNull(cache.get(KEY));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void put_expiresSharedDecisions() {
+        cache.setMaxEntries(10);
+        cache.setTimeToLive(0);
+
+        cache.put(KEY, true, cache.getGeneration(), true);
+
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void getStatistics_reportsHitsAndMisses() {
+        cache.setMaxEntries(10);
+
+        cache.get(KEY);
+        cache.put(KEY, true, cache.getGeneration(), true);
+        cache.get(KEY);
+
+        assertEquals(1L, cache.getStatistics().get("sharedHits"));
+        assertEquals(1L, cache.getStatistics().get("misses"));
+        assertEquals(0.5d, cache.getStatistics().get("hitRatio"));
+
+        cache.resetStatistics();
+
+        assertEquals(0L, cache.getStatistics().get("misses"));
+    }
+
+}
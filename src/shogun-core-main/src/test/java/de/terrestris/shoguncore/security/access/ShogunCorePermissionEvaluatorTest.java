@@ -2,12 +2,21 @@ package de.terrestris.shoguncore.security.access;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -315,4 +324,81 @@ public class ShogunCorePermissionEvaluatorTest {
         verifyNoMoreInteractions(authenticationMock);
     }
 
+    /**
+     * @throws NoSuchFieldException
+     * @throws IllegalAccessException
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Test
+    public void hasPermission_ShouldUseCachedDecisions() throws NoSuchFieldException, IllegalAccessException {
+        PermissionDecisionCache permissionDecisionCache = new PermissionDecisionCache();
+        permissionDecisionCache.setMaxEntries(10);
+        permissionEvaluator.setPermissionDecisionCache(permissionDecisionCache);
+
+        Authentication authenticationMock = mock(Authentication.class);
+        final User user = new User("First name", "Last Name", "accountName");
+        IdHelper.setIdOnPersistentObject(user, 42);
+        when(authenticationMock.getPrincipal()).thenReturn(user);
+
+        PersistentObject targetDomainObject = new Application("Test", "Test");
+        IdHelper.setIdOnPersistentObject(targetDomainObject, 4711);
+
+        PersistentObjectPermissionEvaluator persistentObjectEvaluatorMock = mock(PersistentObjectPermissionEvaluator.class);
+        when(persistentObjectEvaluatorMock.hasPermission(user, targetDomainObject, Permission.READ)).thenReturn(true);
+        when(permissionEvaluatorFactoryMock.getEntityPermissionEvaluator(targetDomainObject.getClass())).thenReturn(persistentObjectEvaluatorMock);
+        when(userDao.findById(user.getId())).thenReturn(user);
+
+        assertTrue(permissionEvaluator.hasPermission(authenticationMock, targetDomainObject, "READ"));
+        assertTrue(permissionEvaluator.hasPermission(authenticationMock, targetDomainObject, "READ"));
+
+        // the second call must neither load the user nor evaluate again
+        verify(userDao, times(1)).findById(user.getId());
+        verify(persistentObjectEvaluatorMock, times(1)).hasPermission(user, targetDomainObject, Permission.READ);
+        assertEquals(1, permissionDecisionCache.getSharedHits());
+        assertEquals(1, permissionDecisionCache.getMisses());
+
+        // changes of the permissions invalidate the cached decisions
+        permissionDecisionCache.invalidate();
+        assertTrue(permissionEvaluator.hasPermission(authenticationMock, targetDomainObject, "READ"));
+        verify(persistentObjectEvaluatorMock, times(2)).hasPermission(user, targetDomainObject, Permission.READ);
+    }
+
+    /**
+     * @throws NoSuchFieldException
+     * @throws IllegalAccessException
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Test
+    public void evaluateInBatch_ShouldEvaluatePermissionsInBulk() throws NoSuchFieldException, IllegalAccessException {
+        Authentication authenticationMock = mock(Authentication.class);
+        final User user = new User("First name", "Last Name", "accountName");
+        IdHelper.setIdOnPersistentObject(user, 42);
+        when(authenticationMock.getPrincipal()).thenReturn(user);
+
+        PersistentObject readableApp = new Application("Readable", "Readable");
+        IdHelper.setIdOnPersistentObject(readableApp, 1);
+        PersistentObject secretApp = new Application("Secret", "Secret");
+        IdHelper.setIdOnPersistentObject(secretApp, 2);
+        final List<PersistentObject> apps = Arrays.asList(readableApp, secretApp);
+
+        PersistentObjectPermissionEvaluator persistentObjectEvaluatorMock = mock(PersistentObjectPermissionEvaluator.class);
+        when(persistentObjectEvaluatorMock.getPermittedIds(eq(user), any(Collection.class), eq(Permission.READ), isNull()))
+            .thenReturn(Collections.singleton(1));
+        when(permissionEvaluatorFactoryMock.getEntityPermissionEvaluator(Application.class)).thenReturn(persistentObjectEvaluatorMock);
+        when(userDao.findById(user.getId())).thenReturn(user);
+
+        final List<Boolean> results = permissionEvaluator.evaluateInBatch(authenticationMock, apps, () -> Arrays.asList(
+            permissionEvaluator.hasPermission(authenticationMock, readableApp, "READ"),
+            permissionEvaluator.hasPermission(authenticationMock, secretApp, "READ")
+        ));
+
+        assertEquals(Arrays.asList(true, false), results);
+
+        // both entities must have been evaluated by a single bulk evaluation
+        verify(userDao, times(1)).findById(user.getId());
+        verify(persistentObjectEvaluatorMock, times(1)).getPermittedIds(eq(user), any(Collection.class),
+            eq(Permission.READ), isNull());
+        verifyNoMoreInteractions(persistentObjectEvaluatorMock);
+    }
+
 }
@@ -4,6 +4,13 @@
 package de.terrestris.shoguncore.security.access.entity;
 
 import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.model.User;
+import de.terrestris.shoguncore.model.security.Permission;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Nils Bühner
@@ -15,4 +22,27 @@ public class ApplicationPermissionEvaluatorTest extends
         super(Application.class, new PersistentObjectPermissionEvaluator<>(Application.class), new Application());
     }
 
+    @Test
+    public void supportsPermissionCriterion_shouldRequireSubclassesToOptIn() {
+        PersistentObjectPermissionEvaluator<Application> customEvaluator =
+            new PersistentObjectPermissionEvaluator<Application>(Application.class) {
+                @Override
+                public boolean hasPermission(User user, Application entity, Permission permission) {
+                    return true;
+                }
+            };
+
+        assertTrue(persistentObjectPermissionEvaluator.supportsPermissionCriterion());
+        assertFalse(customEvaluator.supportsPermissionCriterion());
+        assertNull(customEvaluator.getPermissionCriterion(null, Permission.READ, null));
+
+        // the subclasses of the shipped evaluators have to opt in as well
+        assertTrue(new UserPermissionEvaluator<>().supportsPermissionCriterion());
+        assertFalse(new UserPermissionEvaluator<User>(User.class) {
+        }.supportsPermissionCriterion());
+        assertTrue(new AlwaysAllowReadPermissionEvaluator<>().supportsPermissionCriterion());
+        assertFalse(new AlwaysAllowReadPermissionEvaluator<Application>(Application.class) {
+        }.supportsPermissionCriterion());
+    }
+
 }
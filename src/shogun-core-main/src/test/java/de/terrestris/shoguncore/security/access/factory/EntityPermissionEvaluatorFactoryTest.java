@@ -1,6 +1,7 @@
 package de.terrestris.shoguncore.security.access.factory;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import org.junit.Before;
@@ -46,5 +47,15 @@ public class EntityPermissionEvaluatorFactoryTest {
         assertThat(entityPermissionEvaluator, instanceOf(PersistentObjectPermissionEvaluator.class));
     }
 
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void getCachedEntityPermissionEvaluator_shouldReturnSameEvaluatorForSameClass() {
+        PersistentObjectPermissionEvaluator entityPermissionEvaluator = entityPermissionEvaluatorFactory
+            .getCachedEntityPermissionEvaluator(User.class);
+
+        assertThat(entityPermissionEvaluator, instanceOf(UserPermissionEvaluator.class));
+        assertSame(entityPermissionEvaluator, entityPermissionEvaluatorFactory
+            .getCachedEntityPermissionEvaluator(User.class));
+    }
 
 }
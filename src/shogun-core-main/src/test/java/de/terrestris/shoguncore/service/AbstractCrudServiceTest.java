@@ -7,6 +7,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
@@ -16,9 +19,13 @@ import static org.mockito.Mockito.verify;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.apache.commons.beanutils.BeanUtils;
 import org.hamcrest.Matcher;
@@ -36,6 +43,8 @@ import org.mockito.stubbing.Answer;
 import de.terrestris.shoguncore.dao.GenericHibernateDao;
 import de.terrestris.shoguncore.helper.IdHelper;
 import de.terrestris.shoguncore.model.PersistentObject;
+import de.terrestris.shoguncore.security.access.ShogunCorePermissionEvaluator;
+import de.terrestris.shoguncore.util.data.BulkItemResult;
 
 /**
  * Abstract (parent) test for the {@link AbstractCrudService}.
@@ -293,6 +302,45 @@ public abstract class AbstractCrudServiceTest<E extends PersistentObject, D exte
         // maybe this test can be enhanced...
     }
 
+    /**
+     * Tests whether the permissions of
+     * {@link AbstractCrudService#saveOrUpdateAll(List)} are evaluated per item
+     * and only the permitted entities are saved.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void saveOrUpdateAll_shouldOnlySavePermittedEntities() {
+        ShogunCorePermissionEvaluator permissionEvaluator = mock(ShogunCorePermissionEvaluator.class);
+        doReturn(true).when(permissionEvaluator).hasPermission(any(), same(implToTest), eq("CREATE"));
+        crudService.setPermissionEvaluator(permissionEvaluator);
+
+        List<BulkItemResult> results = crudService.saveOrUpdateAll(Arrays.asList(implToTest, null));
+
+        assertEquals(2, results.size());
+        assertEquals(BulkItemResult.Status.CREATED, results.get(0).getStatus());
+        assertEquals(BulkItemResult.Status.INVALID, results.get(1).getStatus());
+
+        verify(dao, times(1)).executeInBatches(eq(Collections.singletonList(implToTest)), any(Consumer.class));
+    }
+
+    /**
+     * Tests whether {@link AbstractCrudService#deleteAll(List)} does not
+     * delete anything without permission evaluator.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void deleteAll_shouldNotDeleteWithoutPermission() throws NoSuchFieldException, IllegalAccessException {
+        IdHelper.setIdOnPersistentObject(implToTest, 1);
+        doReturn(Collections.singletonList(implToTest)).when(dao).findByIds(any(Collection.class));
+
+        List<BulkItemResult> results = crudService.deleteAll(Arrays.asList(1, 2));
+
+        assertEquals(BulkItemResult.Status.FORBIDDEN, results.get(0).getStatus());
+        assertEquals(BulkItemResult.Status.NOT_FOUND, results.get(1).getStatus());
+
+        verify(dao, times(1)).executeInBatches(eq(Collections.emptyList()), any(Consumer.class));
+    }
+
     /**
      *
      */
@@ -1,12 +1,16 @@
 package de.terrestris.shoguncore.service;
 
 import de.terrestris.shoguncore.dao.InterceptorRuleDao;
+import de.terrestris.shoguncore.helper.IdHelper;
+import de.terrestris.shoguncore.model.User;
 import de.terrestris.shoguncore.model.interceptor.InterceptorRule;
 import de.terrestris.shoguncore.util.enumeration.HttpEnum;
 import de.terrestris.shoguncore.util.enumeration.InterceptorEnum;
 import de.terrestris.shoguncore.util.enumeration.OgcEnum;
 import de.terrestris.shoguncore.util.http.HttpUtil;
+import de.terrestris.shoguncore.util.interceptor.CapabilitiesCache;
 import de.terrestris.shoguncore.util.interceptor.InterceptorException;
+import de.terrestris.shoguncore.util.interceptor.InterceptorRuleIndex;
 import de.terrestris.shoguncore.util.interceptor.MutableHttpServletRequest;
 import de.terrestris.shoguncore.util.interceptor.OgcMessage;
 import de.terrestris.shoguncore.util.interceptor.OgcMessageDistributor;
@@ -27,7 +31,12 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.powermock.reflect.Whitebox;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
@@ -35,12 +44,14 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.powermock.api.mockito.PowerMockito.when;
 
@@ -91,7 +102,7 @@ public class GeoServerInterceptorServiceTest {
         httpRequest.setMethod("GET");
 
         PowerMockito.mockStatic(HttpUtil.class);
-        when(HttpUtil.get(any(URI.class), any(Header[].class))).thenReturn(resp);
+        when(HttpUtil.get(any(URI.class), any(Header[].class), anyBoolean())).thenReturn(resp);
 
         MutableHttpServletRequest mutableRequest = new MutableHttpServletRequest(httpRequest);
 
@@ -101,9 +112,8 @@ public class GeoServerInterceptorServiceTest {
         when(ogcMessageDistributor.distributeToResponseInterceptor(
             any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class))).thenReturn(resp);
 
-        when(ruleService.findAllRulesForServiceAndEvent(
-            any(String.class), any(String.class))).thenReturn(
-            getTestInterceptorRulesForServiceAndEvent("WMS", "REQUEST"));
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WMS"));
         Response got = gsInterceptorService.interceptGeoServerRequest(httpRequest);
         assertEquals(resp, got);
     }
@@ -120,7 +130,7 @@ public class GeoServerInterceptorServiceTest {
 
         PowerMockito.mockStatic(HttpUtil.class);
         Response resp = new Response();
-        when(HttpUtil.get(any(URI.class), any(Header[].class))).thenReturn(resp);
+        when(HttpUtil.get(any(URI.class), any(Header[].class), anyBoolean())).thenReturn(resp);
 
         MutableHttpServletRequest mutableRequest = new MutableHttpServletRequest(httpRequest);
 
@@ -130,9 +140,8 @@ public class GeoServerInterceptorServiceTest {
         when(ogcMessageDistributor.distributeToResponseInterceptor(
             any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class))).thenReturn(resp);
 
-        when(ruleService.findAllRulesForServiceAndEvent(
-            any(String.class), any(String.class))).thenReturn(
-            getTestInterceptorRulesForServiceAndEvent("WMS", "REQUEST"));
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WMS"));
 
         Response got = gsInterceptorService.interceptGeoServerRequest(httpRequest);
 
@@ -154,7 +163,7 @@ public class GeoServerInterceptorServiceTest {
         httpRequest.setMethod("POST");
 
         PowerMockito.mockStatic(HttpUtil.class);
-        when(HttpUtil.post(any(URI.class), any(List.class), any(Header[].class))).thenReturn(resp);
+        when(HttpUtil.post(any(URI.class), any(List.class), any(Header[].class), anyBoolean())).thenReturn(resp);
 
         MutableHttpServletRequest mutableRequest = new MutableHttpServletRequest(httpRequest);
 
@@ -164,9 +173,8 @@ public class GeoServerInterceptorServiceTest {
         when(ogcMessageDistributor.distributeToResponseInterceptor(
             any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class))).thenReturn(resp);
 
-        when(ruleService.findAllRulesForServiceAndEvent(
-            any(String.class), any(String.class))).thenReturn(
-            getTestInterceptorRulesForServiceAndEvent("WMS", "REQUEST"));
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WMS"));
 
         Response got = gsInterceptorService.interceptGeoServerRequest(httpRequest);
 
@@ -194,7 +202,7 @@ public class GeoServerInterceptorServiceTest {
         PowerMockito.mockStatic(HttpUtil.class);
         when(
             // …but only return the created resp when the expected URL is requested
-            HttpUtil.post(eq(expectedPostUrl), any(List.class), any(Header[].class))
+            HttpUtil.post(eq(expectedPostUrl), any(List.class), any(Header[].class), anyBoolean())
         ).thenReturn(resp);
 
         MutableHttpServletRequest mutableRequest = new MutableHttpServletRequest(httpRequest);
@@ -206,9 +214,8 @@ public class GeoServerInterceptorServiceTest {
         when(ogcMessageDistributor.distributeToResponseInterceptor(
             any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class))).thenReturn(resp);
 
-        when(ruleService.findAllRulesForServiceAndEvent(
-            any(String.class), any(String.class))).thenReturn(
-            getTestInterceptorRulesForServiceAndEvent("WMS", "REQUEST"));
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WMS"));
 
         Response got = gsInterceptorService.interceptGeoServerRequest(httpRequest);
 
@@ -239,7 +246,7 @@ public class GeoServerInterceptorServiceTest {
         httpRequest.setMethod("POST");
 
         PowerMockito.mockStatic(HttpUtil.class);
-        when(HttpUtil.post(any(URI.class), any(List.class), any(Header[].class))).thenReturn(resp);
+        when(HttpUtil.post(any(URI.class), any(List.class), any(Header[].class), anyBoolean())).thenReturn(resp);
 
         MutableHttpServletRequest mutableRequest = new MutableHttpServletRequest(httpRequest);
 
@@ -250,9 +257,8 @@ public class GeoServerInterceptorServiceTest {
         when(ogcMessageDistributor.distributeToResponseInterceptor(
             any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class))).thenReturn(resp);
 
-        when(ruleService.findAllRulesForServiceAndEvent(
-            any(String.class), any(String.class))).thenReturn(
-            getTestInterceptorRulesForServiceAndEvent("WFS", "REQUEST"));
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WFS"));
 
         Response got = gsInterceptorService.interceptGeoServerRequest(httpRequest);
 
@@ -290,7 +296,7 @@ public class GeoServerInterceptorServiceTest {
         PowerMockito.mockStatic(HttpUtil.class);
         when(
             // …but only return the created resp when the expected URL is requested
-            HttpUtil.post(eq(expectedPostUrl), any(List.class), any(Header[].class))
+            HttpUtil.post(eq(expectedPostUrl), any(List.class), any(Header[].class), anyBoolean())
         ).thenReturn(resp);
 
         MutableHttpServletRequest mutableRequest = new MutableHttpServletRequest(httpRequest);
@@ -301,9 +307,8 @@ public class GeoServerInterceptorServiceTest {
         when(ogcMessageDistributor.distributeToResponseInterceptor(
             any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class))).thenReturn(resp);
 
-        when(ruleService.findAllRulesForServiceAndEvent(
-            any(String.class), any(String.class))).thenReturn(
-            getTestInterceptorRulesForServiceAndEvent("WFS", "REQUEST"));
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WFS"));
 
         Response got = gsInterceptorService.interceptGeoServerRequest(httpRequest);
 
@@ -522,9 +527,8 @@ public class GeoServerInterceptorServiceTest {
     private InterceptorRule getMostSpecificRule(String service, String operation,
                                                 String endPoint, String event) throws Exception {
 
-        when(ruleService.findAllRulesForServiceAndEvent(
-            any(String.class), any(String.class))).thenReturn(
-            getTestInterceptorRulesForServiceAndEvent(service, event));
+        when(ruleService.getRuleIndex()).thenReturn(new InterceptorRuleIndex(
+            getTestInterceptorRulesForServiceAndEvent(service, event)));
 
         // use powermock whitebox reflection to test private class
         InterceptorRule mostSpecificRule = Whitebox.invokeMethod(
@@ -534,12 +538,121 @@ public class GeoServerInterceptorServiceTest {
         return mostSpecificRule;
     }
 
+    /**
+     * A helper method returning an index of the test interceptor rules for
+     * both events of the given service.
+     *
+     * @return
+     */
+    @Test
+    public void caches_get_capabilities() throws URISyntaxException, HttpException,
+        InterceptorException, IOException {
+
+        byte[] body = "<WMS_Capabilities/>".getBytes(StandardCharsets.UTF_8);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_XML);
+        Response resp = new Response(HttpStatus.OK, headers, body);
+
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setRequestURI("http://example.com/geoserver.action");
+        httpRequest.setParameter("SERVICE", "WMS");
+        httpRequest.setParameter("REQUEST", "GetCapabilities");
+        httpRequest.setParameter("VERSION", "1.3.0");
+        httpRequest.setParameter("NAMESPACE", "bvb");
+        httpRequest.setMethod("GET");
+
+        PowerMockito.mockStatic(HttpUtil.class);
+        when(HttpUtil.get(any(URI.class), any(Header[].class), anyBoolean())).thenReturn(resp);
+
+        when(ogcMessageDistributor.distributeToRequestInterceptor(
+            any(MutableHttpServletRequest.class), any(OgcMessage.class))).then(i -> i.getArgument(0));
+
+        when(ogcMessageDistributor.distributeToResponseInterceptor(
+            any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class))).thenReturn(resp);
+
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WMS"));
+
+        gsInterceptorService.setCapabilitiesCache(new CapabilitiesCache());
+
+        Response first = gsInterceptorService.interceptGeoServerRequest(httpRequest);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertArrayEquals(body, first.getBody());
+        assertEquals(CapabilitiesCache.createETag(body), first.getHeaders().getETag());
+
+        // any further request is answered from the cache
+        when(HttpUtil.get(any(URI.class), any(Header[].class), anyBoolean())).thenThrow(HttpException.class);
+
+        Response cached = gsInterceptorService.interceptGeoServerRequest(httpRequest);
+        assertArrayEquals(body, cached.getBody());
+
+        httpRequest.addHeader(HttpHeaders.IF_NONE_MATCH, first.getHeaders().getETag());
+        Response notModified = gsInterceptorService.interceptGeoServerRequest(httpRequest);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertNull(notModified.getBody());
+    }
+
+    @Test
+    public void caches_get_capabilities_per_user() throws Exception {
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setRequestURI("http://example.com/geoserver.action");
+        httpRequest.setParameter("SERVICE", "WMS");
+        httpRequest.setParameter("REQUEST", "GetCapabilities");
+        httpRequest.setParameter("NAMESPACE", "bvb");
+        httpRequest.setMethod("GET");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_XML);
+        byte[] firstBody = "<WMS_Capabilities>first</WMS_Capabilities>".getBytes(StandardCharsets.UTF_8);
+        byte[] secondBody = "<WMS_Capabilities>second</WMS_Capabilities>".getBytes(StandardCharsets.UTF_8);
+
+        PowerMockito.mockStatic(HttpUtil.class);
+        when(HttpUtil.get(any(URI.class), any(Header[].class), anyBoolean()))
+            .thenReturn(new Response(HttpStatus.OK, headers, firstBody))
+            .thenReturn(new Response(HttpStatus.OK, headers, secondBody));
+
+        when(ogcMessageDistributor.distributeToRequestInterceptor(
+            any(MutableHttpServletRequest.class), any(OgcMessage.class))).then(i -> i.getArgument(0));
+        when(ogcMessageDistributor.distributeToResponseInterceptor(
+            any(MutableHttpServletRequest.class), any(Response.class), any(OgcMessage.class)))
+            .then(i -> i.getArgument(1));
+
+        when(ruleService.getRuleIndex()).thenReturn(
+            getTestInterceptorRuleIndex("WMS"));
+
+        gsInterceptorService.setCapabilitiesCache(new CapabilitiesCache());
+
+        try {
+            User first = new User();
+            IdHelper.setIdOnPersistentObject(first, 1);
+            SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(first, null));
+            assertArrayEquals(firstBody, gsInterceptorService.interceptGeoServerRequest(httpRequest).getBody());
+
+            User second = new User();
+            IdHelper.setIdOnPersistentObject(second, 2);
+            SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(second, null));
+            assertArrayEquals(secondBody, gsInterceptorService.interceptGeoServerRequest(httpRequest).getBody());
+
+            SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(first, null));
+            assertArrayEquals(firstBody, gsInterceptorService.interceptGeoServerRequest(httpRequest).getBody());
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private static InterceptorRuleIndex getTestInterceptorRuleIndex(String service) {
+        List<InterceptorRule> rules = new ArrayList<InterceptorRule>();
+        rules.addAll(getTestInterceptorRulesForServiceAndEvent(service, "REQUEST"));
+        rules.addAll(getTestInterceptorRulesForServiceAndEvent(service, "RESPONSE"));
+        return new InterceptorRuleIndex(rules);
+    }
+
     /**
      * A helper method returning some interceptor rules (out of a predefined
      * String array).
-     * <p>
-     * Note: In order to mock the behaviour of findAllRulesForServiceAndEvent()
-     * this must return the rules ordered by endPoint and operation.
      *
      * @return
      */
@@ -129,7 +129,7 @@ public class HttpProxyServiceTest {
         Mockito.when(mockedRespone.getBody()).thenReturn(internetContent.getBytes());
         Mockito.when(mockedRespone.getStatusCode()).thenReturn(status);
         Mockito.when(HttpUtil.isHttpGetRequest(mockedRequest)).thenReturn(true);
-        Mockito.when(HttpUtil.forwardGet(baseUri, mockedRequest, false)).thenReturn(mockedRespone);
+        Mockito.when(HttpUtil.forwardGet(baseUri, mockedRequest, false, true)).thenReturn(mockedRespone);
 
         final ResponseEntity responseEntity = proxyService.doProxy(mockedRequest, baseUrl, null);
         Assert.assertEquals("Returned Status code matched mocked one.", HttpStatus.OK, responseEntity.getStatusCode());
@@ -156,7 +156,7 @@ public class HttpProxyServiceTest {
         Mockito.when(mockedRespone.getBody()).thenReturn(internetContent.getBytes());
         Mockito.when(mockedRespone.getStatusCode()).thenReturn(status);
         Mockito.when(HttpUtil.isHttpGetRequest(mockedRequest)).thenReturn(true);
-        Mockito.when(HttpUtil.forwardGet(baseUri, mockedRequest, false)).thenThrow(new HttpException(msg));
+        Mockito.when(HttpUtil.forwardGet(baseUri, mockedRequest, false, true)).thenThrow(new HttpException(msg));
 
         final ResponseEntity responseEntity = proxyService.doProxy(mockedRequest, baseUrl, null);
         Assert.assertEquals("Returned Status code matched mocked one.", HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
@@ -181,7 +181,7 @@ public class HttpProxyServiceTest {
         Mockito.when(mockedRespone.getStatusCode()).thenReturn(status);
         Mockito.when(HttpUtil.isHttpGetRequest(mockedRequest)).thenReturn(false);
         Mockito.when(HttpUtil.isHttpPostRequest(mockedRequest)).thenReturn(true);
-        Mockito.when(HttpUtil.forwardPost(baseUri, mockedRequest, false)).thenReturn(mockedRespone);
+        Mockito.when(HttpUtil.forwardPost(baseUri, mockedRequest, false, true)).thenReturn(mockedRespone);
 
         final ResponseEntity responseEntity = proxyService.doProxy(mockedRequest, baseUrl, null);
         Assert.assertEquals("Returned Status code matched mocked one.", HttpStatus.OK, responseEntity.getStatusCode());
@@ -209,7 +209,7 @@ public class HttpProxyServiceTest {
         Mockito.when(mockedRespone.getStatusCode()).thenReturn(status);
         Mockito.when(HttpUtil.isHttpGetRequest(mockedRequest)).thenReturn(false);
         Mockito.when(HttpUtil.isHttpPostRequest(mockedRequest)).thenReturn(true);
-        Mockito.when(HttpUtil.forwardPost(baseUri, mockedRequest, false)).thenThrow(new HttpException(msg));
+        Mockito.when(HttpUtil.forwardPost(baseUri, mockedRequest, false, true)).thenThrow(new HttpException(msg));
 
         final ResponseEntity responseEntity = proxyService.doProxy(mockedRequest, baseUrl, null);
         Assert.assertEquals("Returned Status code matched mocked one.", HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
@@ -1,26 +1,33 @@
 package de.terrestris.shoguncore.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 
 import org.junit.Test;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import de.terrestris.shoguncore.dao.ImageFileDao;
 import de.terrestris.shoguncore.model.ImageFile;
+import de.terrestris.shoguncore.model.ImageFile.ThumbnailStatus;
 
 public class ImageFileServiceTest extends PermissionAwareCrudServiceTest<ImageFile, ImageFileDao<ImageFile>, ImageFileService<ImageFile, ImageFileDao<ImageFile>>> {
 
@@ -165,4 +172,52 @@ public class ImageFileServiceTest extends PermissionAwareCrudServiceTest<ImageFi
         assertEquals(retrievedImage.getFileType(), "image/jpeg");
     }
 
+    @Test
+    public void saveImage_createsThumbnailsOfAllSizesInBackground() throws Exception {
+
+        BufferedImage bimg = new BufferedImage(
+            800, 400, BufferedImage.TYPE_3BYTE_BGR);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(bimg, "png", baos);
+        byte[] imageByteArray = baos.toByteArray();
+
+        MockMultipartFile mockMultipartFile = new MockMultipartFile(
+            "fileData",
+            "fileName.png",
+            "image/png",
+            imageByteArray);
+
+        // a task executor that collects the tasks to run them later
+        final List<Runnable> tasks = new ArrayList<>();
+        crudService.setThumbnailTaskExecutor(tasks::add);
+        crudService.setTransactionManager(mock(PlatformTransactionManager.class));
+        crudService.setThumbnailSizes("50,200");
+
+        doNothing().when(dao).saveOrUpdate(any(ImageFile.class));
+
+        ImageFile persistedImage = crudService.saveImage(
+            mockMultipartFile, true, 100);
+
+        // the dimensions are known, the thumbnails are pending
+        assertEquals(Integer.valueOf(800), persistedImage.getWidth());
+        assertEquals(Integer.valueOf(400), persistedImage.getHeight());
+        assertEquals(ThumbnailStatus.PENDING, persistedImage.getThumbnailStatus());
+        assertNull(persistedImage.getThumbnail());
+        assertEquals(1, tasks.size());
+
+        when(dao.findById(persistedImage.getId())).thenReturn(persistedImage);
+
+        tasks.get(0).run();
+
+        assertEquals(ThumbnailStatus.DONE, persistedImage.getThumbnailStatus());
+        assertEquals(3, persistedImage.getThumbnails().size());
+        assertTrue(Arrays.equals(persistedImage.getThumbnails().get(100), persistedImage.getThumbnail()));
+        for (Integer size : persistedImage.getThumbnails().keySet()) {
+            BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(
+                persistedImage.getThumbnails().get(size)));
+            assertEquals(size.intValue(), thumbnail.getWidth());
+        }
+        verify(dao, times(2)).saveOrUpdate(persistedImage);
+    }
+
 }
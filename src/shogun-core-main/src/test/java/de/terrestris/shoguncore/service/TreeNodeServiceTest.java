@@ -0,0 +1,139 @@
+package de.terrestris.shoguncore.service;
+
+import de.terrestris.shoguncore.dao.TreeNodeDao;
+import de.terrestris.shoguncore.helper.IdHelper;
+import de.terrestris.shoguncore.model.tree.TreeFolder;
+import de.terrestris.shoguncore.model.tree.TreeNode;
+import de.terrestris.shoguncore.security.access.ShogunCorePermissionEvaluator;
+import de.terrestris.shoguncore.util.data.TreeCopyResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TreeNodeServiceTest extends
+    PermissionAwareCrudServiceTest<TreeNode, TreeNodeDao<TreeNode>, TreeNodeService<TreeNode, TreeNodeDao<TreeNode>>> {
+
+    /**
+     * @throws Exception
+     */
+    @Override
+    public void setUpImplToTest() throws Exception {
+        implToTest = new TreeNode();
+    }
+
+    @Override
+    protected TreeNodeService<TreeNode, TreeNodeDao<TreeNode>> getCrudService() {
+        return new TreeNodeService<TreeNode, TreeNodeDao<TreeNode>>();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Class<TreeNodeDao<TreeNode>> getDaoClass() {
+        return (Class<TreeNodeDao<TreeNode>>) new TreeNodeDao<TreeNode>().getClass();
+    }
+
+    @Test
+    public void findSubtree_removesUnreadableDescendants() throws Exception {
+        TreeFolder root = createFolder(1);
+        TreeFolder readableFolder = createFolder(2);
+        TreeFolder unreadableFolder = createFolder(3);
+        TreeNode readableLeaf = createLeaf(4);
+        TreeNode unreadableLeaf = createLeaf(5);
+        TreeNode leafOfUnreadableFolder = createLeaf(6);
+
+        root.getChildren().addAll(Arrays.asList(readableFolder, unreadableFolder));
+        readableFolder.getChildren().addAll(Arrays.asList(readableLeaf, unreadableLeaf));
+        unreadableFolder.getChildren().add(leafOfUnreadableFolder);
+        doReturn(root).when(dao).findSubtree(1, null);
+
+        ShogunCorePermissionEvaluator permissionEvaluator = mock(ShogunCorePermissionEvaluator.class);
+        doReturn(new HashSet<>(Arrays.asList(2, 4, 6)))
+            .when(permissionEvaluator).getPermittedIds(any(), anyCollection(), eq("READ"));
+        crudService.setPermissionEvaluator(permissionEvaluator);
+
+        TreeNode subtree = crudService.findSubtree(1, null);
+
+        assertSame(root, subtree);
+        assertEquals(Arrays.asList(readableFolder), root.getChildren());
+        assertEquals(Arrays.asList(readableLeaf), readableFolder.getChildren());
+        verify(permissionEvaluator, times(1)).getPermittedIds(any(), anyCollection(), eq("READ"));
+    }
+
+    @Test
+    public void findSubtree_keepsAllDescendantsOfSuperAdmins() throws Exception {
+        TreeFolder root = createFolder(1);
+        TreeFolder folder = createFolder(2);
+        TreeNode leaf = createLeaf(3);
+
+        root.getChildren().add(folder);
+        folder.getChildren().add(leaf);
+        doReturn(root).when(dao).findSubtree(1, 5);
+
+        ShogunCorePermissionEvaluator permissionEvaluator = mock(ShogunCorePermissionEvaluator.class);
+        doReturn(true).when(permissionEvaluator).isSuperAdmin(any());
+        crudService.setPermissionEvaluator(permissionEvaluator);
+
+        crudService.findSubtree(1, 5);
+
+        assertEquals(Arrays.asList(folder), root.getChildren());
+        assertEquals(Arrays.asList(leaf), folder.getChildren());
+        verify(permissionEvaluator, never()).getPermittedIds(any(), anyCollection(), any(String.class));
+    }
+
+    @Test
+    public void findSubtree_returnsNullIfNodeDoesNotExist() {
+        doReturn(null).when(dao).findSubtree(42, null);
+
+        assertNull(crudService.findSubtree(42, null));
+    }
+
+    @Test
+    public void copyTree_reportsRootAndNumberOfCopiedNodes() throws Exception {
+        TreeFolder rootCopy = new TreeFolder();
+        IdHelper.setIdOnPersistentObject(rootCopy, 4711);
+
+        List<TreeNode> copies = Arrays.asList(rootCopy, new TreeNode(), new TreeNode());
+        doReturn(copies).when(dao).copySubtree(42);
+
+        TreeCopyResult<TreeNode> result = crudService.copyTree(42);
+
+        assertSame(rootCopy, result.getRoot());
+        assertEquals(3, result.getCopiedNodes());
+    }
+
+    @Test(expected = Exception.class)
+    public void copyTree_throwsIfNodeDoesNotExist() throws Exception {
+        doReturn(new ArrayList<TreeNode>()).when(dao).copySubtree(42);
+
+        crudService.copyTree(42);
+    }
+
+    private static TreeFolder createFolder(Integer id) throws Exception {
+        TreeFolder folder = new TreeFolder();
+        IdHelper.setIdOnPersistentObject(folder, id);
+        folder.setChildren(new ArrayList<>());
+        return folder;
+    }
+
+    private static TreeNode createLeaf(Integer id) throws Exception {
+        TreeNode leaf = new TreeNode();
+        IdHelper.setIdOnPersistentObject(leaf, id);
+        return leaf;
+    }
+
+}
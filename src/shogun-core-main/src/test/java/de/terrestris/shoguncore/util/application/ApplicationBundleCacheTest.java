@@ -0,0 +1,94 @@
+package de.terrestris.shoguncore.util.application;
+
+import de.terrestris.shoguncore.util.entity.EntityIdentifier;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class ApplicationBundleCacheTest {
+
+    private static final String APPLICATION = "de.terrestris.shoguncore.model.Application";
+
+    private static final String MODULE = "de.terrestris.shoguncore.model.module.Module";
+
+    private static final String USER = "de.terrestris.shoguncore.model.User";
+
+    private ApplicationBundleCache cache;
+
+    private static ApplicationBundle createBundle(Integer applicationId, EntityIdentifier... dependencies)
+        throws IOException {
+        byte[] content = ("{\"id\":" + applicationId + "}").getBytes(StandardCharsets.UTF_8);
+        return new ApplicationBundle(applicationId, content, new HashSet<>(Arrays.asList(dependencies)));
+    }
+
+    @Before
+    public void setUp() {
+        cache = new ApplicationBundleCache();
+        cache.setMaxEntries(2);
+    }
+
+    @Test
+    public void bundle_is_compressed_and_has_etag() throws IOException {
+        ApplicationBundle bundle = createBundle(1, new EntityIdentifier(APPLICATION, 1));
+
+        assertEquals("{\"id\":1}", new String(bundle.getContent(), StandardCharsets.UTF_8));
+        assertEquals(8, bundle.getContentLength());
+        assertEquals(0x1f, bundle.getCompressedContent()[0] & 0xff);
+        assertEquals(0x8b, bundle.getCompressedContent()[1] & 0xff);
+        assertEquals(bundle.getETag(), createBundle(1).getETag());
+        assertNotEquals(bundle.getETag(), createBundle(2).getETag());
+    }
+
+    @Test
+    public void drops_least_recently_used_bundles() throws IOException {
+        cache.put(createBundle(1, new EntityIdentifier(APPLICATION, 1)), cache.getGeneration());
+        cache.put(createBundle(2, new EntityIdentifier(APPLICATION, 2)), cache.getGeneration());
+
+        assertNotNull(cache.get(1));
+
+        cache.put(createBundle(3, new EntityIdentifier(APPLICATION, 3)), cache.getGeneration());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    @Test
+    public void invalidate_drops_dependent_bundles_only() throws IOException {
+        EntityIdentifier sharedModule = new EntityIdentifier(MODULE, 42);
+
+        cache.put(createBundle(1, new EntityIdentifier(APPLICATION, 1), sharedModule), cache.getGeneration());
+        cache.put(createBundle(2, new EntityIdentifier(APPLICATION, 2)), cache.getGeneration());
+
+        cache.invalidate(Collections.singleton(new EntityIdentifier(USER, 42)));
+
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(2));
+
+        cache.invalidate(Collections.singleton(new EntityIdentifier(MODULE, 42)));
+
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+    }
+
+    @Test
+    public void does_not_cache_bundles_built_concurrently_to_a_change() throws IOException {
+        cache.put(createBundle(1, new EntityIdentifier(MODULE, 42)), cache.getGeneration());
+
+        long generation = cache.getGeneration();
+        cache.invalidate(Collections.singleton(new EntityIdentifier(MODULE, 43)));
+        cache.put(createBundle(2, new EntityIdentifier(MODULE, 43)), generation);
+
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+    }
+
+}
@@ -0,0 +1,87 @@
+package de.terrestris.shoguncore.util.blob;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FileSystemBlobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBlobStore blobStore;
+
+    private static InputStream toStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String key, long offset) throws IOException {
+        try (InputStream is = blobStore.open(key, offset)) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        blobStore = new FileSystemBlobStore();
+        blobStore.setDirectory(folder.getRoot().getAbsolutePath());
+        blobStore.init();
+    }
+
+    @Test
+    public void stores_contents_by_their_hash() throws IOException {
+        String key = blobStore.store(toStream("shinji kagawa"));
+
+        // the sha-256 hash of the content
+        assertEquals("3048a58cac274b9dc71152f9357c4cbf7b92e03ac173a61437393852b1811cb8", key);
+        assertEquals(13, blobStore.getSize(key));
+        assertEquals("shinji kagawa", read(key, 0));
+        assertEquals("kagawa", read(key, 7));
+
+        // equal contents are stored once
+        assertEquals(key, blobStore.store(toStream("shinji kagawa")));
+        assertNotEquals(key, blobStore.store(toStream("marco reus")));
+    }
+
+    @Test
+    public void deletes_contents() throws IOException {
+        String key = blobStore.store(toStream("shinji kagawa"));
+
+        blobStore.delete(key);
+
+        try {
+            blobStore.open(key, 0);
+            fail("The content should have been deleted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_invalid_keys() throws IOException {
+        blobStore.open("../../etc/passwd", 0);
+    }
+
+    @Test
+    public void resource_skips_to_the_offset_without_reading() throws IOException {
+        String key = blobStore.store(toStream("shinji kagawa"));
+        BlobResource resource = new BlobResource(blobStore, key, null);
+
+        assertEquals(13, resource.contentLength());
+
+        try (InputStream is = resource.getInputStream()) {
+            assertEquals(7, is.skip(7));
+            assertEquals("kagawa", IOUtils.toString(is, StandardCharsets.UTF_8));
+        }
+    }
+
+}
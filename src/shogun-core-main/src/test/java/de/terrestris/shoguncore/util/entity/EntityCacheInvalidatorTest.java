@@ -0,0 +1,147 @@
+package de.terrestris.shoguncore.util.entity;
+
+import de.terrestris.shoguncore.dao.InterceptorRuleDao;
+import de.terrestris.shoguncore.model.UserGroup;
+import de.terrestris.shoguncore.model.interceptor.InterceptorRule;
+import de.terrestris.shoguncore.model.layer.Layer;
+import de.terrestris.shoguncore.model.layer.source.ImageWmsLayerDataSource;
+import de.terrestris.shoguncore.model.layer.source.LayerDataSource;
+import de.terrestris.shoguncore.security.access.PermissionDecisionCache;
+import de.terrestris.shoguncore.service.InterceptorRuleService;
+import de.terrestris.shoguncore.util.enumeration.HttpEnum;
+import de.terrestris.shoguncore.util.enumeration.InterceptorEnum;
+import de.terrestris.shoguncore.util.enumeration.OgcEnum;
+import de.terrestris.shoguncore.util.interceptor.CapabilitiesCache;
+import de.terrestris.shoguncore.util.interceptor.WmtsTileCache;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath*:META-INF/spring/test-context-dao.xml"})
+@Transactional
+@Rollback(true)
+public class EntityCacheInvalidatorTest {
+
+    /**
+     * The listener is registered only once for the (shared) session factory,
+     * the caches are replaced by new mocks for each test.
+     */
+    private static EntityCacheInvalidator invalidator;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    private InterceptorRuleService<InterceptorRule, InterceptorRuleDao<InterceptorRule>> ruleServiceMock;
+
+    private CapabilitiesCache capabilitiesCacheMock;
+
+    private WmtsTileCache wmtsTileCacheMock;
+
+    private PermissionDecisionCache permissionDecisionCacheMock;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        if (invalidator == null) {
+            invalidator = new EntityCacheInvalidator();
+            ReflectionTestUtils.setField(invalidator, "sessionFactory", sessionFactory);
+            invalidator.register();
+        }
+
+        ruleServiceMock = mock(InterceptorRuleService.class);
+        capabilitiesCacheMock = mock(CapabilitiesCache.class);
+        wmtsTileCacheMock = mock(WmtsTileCache.class);
+        permissionDecisionCacheMock = mock(PermissionDecisionCache.class);
+
+        invalidator.setInterceptorRuleService(ruleServiceMock);
+        invalidator.setCapabilitiesCache(capabilitiesCacheMock);
+        invalidator.setWmtsTileCache(wmtsTileCacheMock);
+        invalidator.setPermissionDecisionCache(permissionDecisionCacheMock);
+    }
+
+    @Test
+    public void invalidates_capabilities_and_tiles_once_per_transaction() {
+        Session session = sessionFactory.getCurrentSession();
+        LayerDataSource source = new ImageWmsLayerDataSource();
+        source.setName("source");
+        session.save(source);
+        session.save(new Layer("first", source, null));
+        session.save(new Layer("second", source, null));
+        session.flush();
+
+        verify(capabilitiesCacheMock, times(1)).invalidate();
+        verify(wmtsTileCacheMock, times(1)).invalidateDataSource(source.getId());
+        verify(permissionDecisionCacheMock, never()).invalidate();
+        verify(ruleServiceMock, never()).invalidateRuleIndex();
+    }
+
+    @Test
+    public void invalidates_tiles_of_the_previous_source_of_a_deleted_layer() {
+        Session session = sessionFactory.getCurrentSession();
+        LayerDataSource source = new ImageWmsLayerDataSource();
+        source.setName("source");
+        session.save(source);
+        Layer layer = new Layer("layer", source, null);
+        session.save(layer);
+        session.flush();
+
+        // forget the invalidations of the inserts as if this were a new transaction
+        TransactionSynchronizationManager.unbindResource(invalidator);
+        clearInvocations(capabilitiesCacheMock, wmtsTileCacheMock);
+
+        session.delete(layer);
+        session.flush();
+
+        verify(capabilitiesCacheMock, times(1)).invalidate();
+        verify(wmtsTileCacheMock, times(1)).invalidateDataSource(source.getId());
+    }
+
+    @Test
+    public void invalidates_the_rule_index_on_rule_changes() {
+        Session session = sessionFactory.getCurrentSession();
+        InterceptorRule rule = new InterceptorRule(HttpEnum.EventType.REQUEST, InterceptorEnum.RuleType.DENY,
+            OgcEnum.ServiceType.WMS, OgcEnum.OperationType.GET_MAP, "shogun:layer");
+        session.save(rule);
+        session.flush();
+
+        rule.setEndPoint("shogun:other");
+        session.flush();
+
+        verify(ruleServiceMock, times(1)).invalidateRuleIndex();
+        verify(permissionDecisionCacheMock, never()).invalidate();
+    }
+
+    @Test
+    public void invalidates_permission_decisions_on_group_changes() {
+        Session session = sessionFactory.getCurrentSession();
+        UserGroup group = new UserGroup();
+        group.setName("group");
+        session.save(group);
+        session.flush();
+
+        group.setName("renamed");
+        session.flush();
+
+        verify(permissionDecisionCacheMock, times(1)).invalidate();
+        verify(capabilitiesCacheMock, times(1)).invalidate();
+        verify(wmtsTileCacheMock, never()).invalidateDataSource(anyInt());
+    }
+
+}
@@ -1,12 +1,17 @@
 package de.terrestris.shoguncore.util.entity;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 import java.util.Set;
 
+import org.hibernate.criterion.Order;
 import org.junit.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 
 import de.terrestris.shoguncore.model.PersistentObject;
 
@@ -505,4 +510,50 @@ public class EntityUtilTest {
         isField = EntityUtil.isField(SimpleEntity.class, "non_existing_field", null, true);
         assertFalse(isField);
     }
+
+    // +--------------------------------------------+
+    // | Tests for the paging and sorting parameters |
+    // +--------------------------------------------+
+
+    @Test
+    public void test_isPagingRequest() {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("privateField", "value");
+        assertFalse(EntityUtil.isPagingRequest(params));
+        assertFalse(EntityUtil.isPagingRequest(null));
+
+        params.add("Page:Limit", "10");
+        assertTrue(EntityUtil.isPagingRequest(params));
+    }
+
+    @Test
+    public void test_determineNonNegativeIntegerParam() {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        assertNull(EntityUtil.determineNonNegativeIntegerParam(params, EntityUtil.PAGING_OFFSET_PARAM));
+
+        params.add(EntityUtil.PAGING_OFFSET_PARAM, " 25 ");
+        assertEquals(Integer.valueOf(25),
+            EntityUtil.determineNonNegativeIntegerParam(params, EntityUtil.PAGING_OFFSET_PARAM));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_determineNonNegativeIntegerParam_throwsOnNegativeValue() {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add(EntityUtil.PAGING_LIMIT_PARAM, "-1");
+        EntityUtil.determineNonNegativeIntegerParam(params, EntityUtil.PAGING_LIMIT_PARAM);
+    }
+
+    @Test
+    public void test_determineSortOrders() {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        assertTrue(EntityUtil.determineSortOrders(params, SimpleEntity.class).isEmpty());
+
+        params.add(EntityUtil.SORT_PARAM, "-PRIVATEFIELD, publicField,non_existing_field,id");
+        List<Order> orders = EntityUtil.determineSortOrders(params, SimpleEntity.class);
+
+        // public fields and non existing fields are ignored
+        assertEquals(2, orders.size());
+        assertEquals("privateField desc", orders.get(0).toString());
+        assertEquals("id asc", orders.get(1).toString());
+    }
 }
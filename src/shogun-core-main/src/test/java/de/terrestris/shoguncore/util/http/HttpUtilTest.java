@@ -13,6 +13,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpException;
+import org.apache.http.HttpInetConnection;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -25,7 +26,9 @@ import org.apache.http.impl.bootstrap.HttpServer;
 import org.apache.http.impl.bootstrap.ServerBootstrap;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -127,6 +130,12 @@ public class HttpUtilTest {
      */
     private static HttpServer server;
 
+    /**
+     * The client ports of the connections the test server has handled
+     * requests on (in order).
+     */
+    private static final List<Integer> CLIENT_PORTS = Collections.synchronizedList(new ArrayList<Integer>());
+
     /**
      * @throws IOException
      * @throws URISyntaxException
@@ -139,6 +148,9 @@ public class HttpUtilTest {
             @Override
             public void handle(HttpRequest request, HttpResponse response,
                                HttpContext context) throws HttpException, IOException {
+                HttpInetConnection connection = HttpCoreContext.adapt(context)
+                    .getConnection(HttpInetConnection.class);
+                CLIENT_PORTS.add(connection.getRemotePort());
                 response.setEntity(new StringEntity("SHOGun-Core rocks!", "UTF-8"));
             }
         }
@@ -179,6 +191,68 @@ public class HttpUtilTest {
 
     }
 
+    @Test
+    public void get_reuses_pooled_connection() throws URISyntaxException, HttpException {
+        // start with an empty pool
+        HttpClientPool.shutdown();
+        CLIENT_PORTS.clear();
+
+        HttpUtil.get(URL);
+
+        PoolStats stats = HttpClientPool.getTotalStats();
+        assertNotNull(stats);
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getAvailable());
+
+        HttpUtil.get(URL);
+
+        stats = HttpClientPool.getTotalStats();
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getAvailable());
+
+        // both requests have been sent over the same connection
+        assertEquals(2, CLIENT_PORTS.size());
+        assertEquals(CLIENT_PORTS.get(0), CLIENT_PORTS.get(1));
+    }
+
+    @Test
+    public void pooled_client_is_shared() {
+        assertSame(HttpClientPool.getHttpClient(), HttpClientPool.getHttpClient());
+    }
+
+    @Test
+    public void get_streamed_body() throws URISyntaxException, HttpException, IOException {
+        Response response = HttpUtil.get(URI, REQ_HEADERS, true);
+        assertTrue(response.isStreamed());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeBody(out);
+
+        assertFalse(response.isStreamed());
+        assertEquals("SHOGun-Core rocks!", out.toString("UTF-8"));
+        assertEquals(0, HttpClientPool.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void get_streamed_body_buffered_on_demand() throws URISyntaxException, HttpException {
+        Response response = HttpUtil.get(URI, REQ_HEADERS, true);
+
+        assertEquals("SHOGun-Core rocks!", new String(response.getBody()));
+        assertFalse(response.isStreamed());
+        assertEquals(0, HttpClientPool.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void closing_streamed_response_releases_connection() throws URISyntaxException, HttpException {
+        Response response = HttpUtil.get(URI, REQ_HEADERS, true);
+        assertEquals(1, HttpClientPool.getTotalStats().getLeased());
+
+        response.close();
+
+        assertNull(response.getBody());
+        assertEquals(0, HttpClientPool.getTotalStats().getLeased());
+    }
+
     @Test
     public void get_url() throws URISyntaxException, HttpException {
         Response response = HttpUtil.get(URL);
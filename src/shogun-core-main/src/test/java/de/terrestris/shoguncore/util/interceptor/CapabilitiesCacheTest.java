@@ -0,0 +1,145 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.util.model.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CapabilitiesCacheTest {
+
+    private static final byte[] BODY = "<WMS_Capabilities/>".getBytes(StandardCharsets.UTF_8);
+
+    private CapabilitiesCache cache;
+
+    private static CapabilitiesCache.Key createKey(String version) {
+        return createKey(parameters("SERVICE", "WMS", "REQUEST", "GetCapabilities", "VERSION", version), 1,
+            Arrays.asList(2, 3));
+    }
+
+    private static CapabilitiesCache.Key createKey(Map<String, String[]> parameters, Integer userId,
+                                                   List<Integer> userGroupIds) {
+        return new CapabilitiesCache.Key("http://geoserver/bvb/ows", parameters, "example.com", "https", null,
+            userId, userGroupIds);
+    }
+
+    private static Map<String, String[]> parameters(String... namesAndValues) {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            parameters.put(namesAndValues[i], new String[]{namesAndValues[i + 1]});
+        }
+        return parameters;
+    }
+
+    private static Response createResponse(MediaType contentType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType);
+        return new Response(HttpStatus.OK, headers, BODY);
+    }
+
+    @Before
+    public void setUp() {
+        cache = new CapabilitiesCache();
+    }
+
+    @Test
+    public void caches_by_key() {
+        CapabilitiesCache.Entry entry = cache.put(createKey("1.3.0"),
+            createResponse(MediaType.TEXT_XML), cache.getGeneration());
+
+        assertNotNull(entry);
+        assertSame(entry, cache.get(createKey("1.3.0")));
+        assertNull(cache.get(createKey("1.1.1")));
+
+        Response response = entry.toResponse(null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(BODY, response.getBody());
+        assertEquals(MediaType.TEXT_XML, response.getHeaders().getContentType());
+        assertEquals(CapabilitiesCache.createETag(BODY), response.getHeaders().getETag());
+    }
+
+    @Test
+    public void keys_by_all_parameters_and_the_user() {
+        CapabilitiesCache.Key key = createKey(parameters("SERVICE", "WMS", "REQUEST", "GetCapabilities",
+            "NAMESPACE", "bvb"), 1, Arrays.asList(2, 3));
+
+        // the parameter names are case insensitive, the order doesn't matter
+        assertEquals(key, createKey(parameters("namespace", "bvb", "request", "GetCapabilities",
+            "service", "WMS"), 1, Arrays.asList(3, 2)));
+
+        assertNotEquals(key, createKey(parameters("SERVICE", "WMS", "REQUEST", "GetCapabilities",
+            "NAMESPACE", "other"), 1, Arrays.asList(2, 3)));
+        assertNotEquals(key, createKey(parameters("SERVICE", "WMS", "REQUEST", "GetCapabilities"),
+            1, Arrays.asList(2, 3)));
+        assertNotEquals(key, createKey(parameters("SERVICE", "WMS", "REQUEST", "GetCapabilities",
+            "NAMESPACE", "bvb"), 4, Arrays.asList(2, 3)));
+        assertNotEquals(key, createKey(parameters("SERVICE", "WMS", "REQUEST", "GetCapabilities",
+            "NAMESPACE", "bvb"), 1, Collections.singletonList(2)));
+        assertNotEquals(key, createKey(parameters("SERVICE", "WMS", "REQUEST", "GetCapabilities",
+            "NAMESPACE", "bvb"), null, null));
+    }
+
+    @Test
+    public void responds_not_modified_on_matching_etag() {
+        CapabilitiesCache.Entry entry = cache.put(createKey("1.3.0"),
+            createResponse(MediaType.TEXT_XML), cache.getGeneration());
+
+        Response response = entry.toResponse("\"foo\", W/" + entry.getETag());
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(entry.getETag(), response.getHeaders().getETag());
+
+        assertEquals(HttpStatus.OK, entry.toResponse("\"foo\"").getStatusCode());
+    }
+
+    @Test
+    public void invalidate_drops_entries() {
+        long generation = cache.getGeneration();
+        cache.put(createKey("1.3.0"), createResponse(MediaType.TEXT_XML), generation);
+
+        cache.invalidate();
+
+        assertNull(cache.get(createKey("1.3.0")));
+
+        // a response built before the invalidation isn't cached anymore
+        assertNotNull(cache.put(createKey("1.3.0"), createResponse(MediaType.TEXT_XML), generation));
+        assertNull(cache.get(createKey("1.3.0")));
+    }
+
+    @Test
+    public void does_not_cache_service_exceptions() {
+        assertNull(cache.put(createKey("1.1.1"),
+            createResponse(MediaType.parseMediaType("application/vnd.ogc.se_xml")), cache.getGeneration()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evicts_entries_if_full() {
+        cache.setMaxEntries(1);
+
+        cache.put(createKey("1.1.1"), createResponse(MediaType.TEXT_XML), cache.getGeneration());
+        cache.put(createKey("1.3.0"), createResponse(MediaType.TEXT_XML), cache.getGeneration());
+
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(createKey("1.3.0")));
+    }
+
+    @Test
+    public void can_be_disabled() {
+        cache.setTimeToLive(0);
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.put(createKey("1.3.0"), createResponse(MediaType.TEXT_XML), cache.getGeneration()));
+    }
+}
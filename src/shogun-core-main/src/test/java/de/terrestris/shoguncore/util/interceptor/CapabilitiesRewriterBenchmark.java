@@ -0,0 +1,204 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A simple benchmark comparing the {@link CapabilitiesRewriter} with the
+ * former DOM/XPath based rewriting of WMS GetCapabilities documents. The
+ * rewriter is measured both writing into a stream (<code>StAX</code>) and
+ * rewriting on the fly while the result is read (<code>Flow</code>), as done
+ * for the responses of the interceptors.
+ * <p>
+ * This is not a unit test (and not run by the build), run it manually via
+ * its main method, e.g. from your IDE or with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=de.terrestris.shoguncore.util.interceptor.CapabilitiesRewriterBenchmark \
+ *   -Dexec.args="20000 10"
+ * </pre>
+ * The arguments are the number of layers of the generated document (default
+ * 20000, i.e. ~15 MB) and the number of measured iterations (default 10).
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class CapabilitiesRewriterBenchmark {
+
+    private static final String BASE_URL = "https://example.com/shogun/geoserver.action/bvb";
+
+    private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int layerCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        byte[] document = createCapabilities(layerCount);
+        List<String> layerNames = new ArrayList<>();
+        for (int i = 0; i < layerCount; i += 2) {
+            layerNames.add("bvb:layer" + i);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "Document: %d layers, %.1f MB, %d iterations",
+            layerCount, document.length / 1024d / 1024d, iterations));
+
+        run("DOM", iterations, () -> rewriteWithDom(document, layerNames));
+        run("StAX", iterations, () -> rewriteWithStax(document, layerNames));
+        run("Flow", iterations, () -> rewriteOnTheFly(document, layerNames));
+    }
+
+    private static void run(String name, int iterations, Task task) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            task.run();
+        }
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = getAllocatedBytes(threadBean);
+        long start = System.nanoTime();
+
+        int size = 0;
+        for (int i = 0; i < iterations; i++) {
+            size = task.run();
+        }
+
+        long duration = System.nanoTime() - start;
+        long allocated = getAllocatedBytes(threadBean) - allocatedBefore;
+
+        System.out.println(String.format(Locale.ROOT, "%-5s %8.1f ms/op %10.1f MB allocated/op (result: %d bytes)",
+            name, duration / 1e6 / iterations,
+            allocated < 0 ? Double.NaN : allocated / 1024d / 1024d / iterations, size));
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threadBean) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static int rewriteWithStax(byte[] document, List<String> layerNames) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(document.length);
+        createRewriter(layerNames).rewrite(new ByteArrayInputStream(document), out);
+        return out.size();
+    }
+
+    private static int rewriteOnTheFly(byte[] document, List<String> layerNames) throws Exception {
+        byte[] buffer = new byte[8192];
+        int size = 0;
+        try (InputStream in = createRewriter(layerNames).rewrite(new ByteArrayInputStream(document))) {
+            int count;
+            while ((count = in.read(buffer)) > -1) {
+                size += count;
+            }
+        }
+        return size;
+    }
+
+    private static CapabilitiesRewriter createRewriter(List<String> layerNames) {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.setLayerNames(layerNames);
+        rewriter.addUrlRewrite(new QName(CapabilitiesRewriter.ANY_NAMESPACE, "OnlineResource"),
+            CapabilitiesRewriter.XLINK_HREF, BASE_URL, true);
+        return rewriter;
+    }
+
+    /**
+     * The former implementation of the WmsResponseInterceptor.
+     */
+    private static int rewriteWithDom(byte[] document, List<String> layerNames) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document doc = builder.parse(new ByteArrayInputStream(document));
+
+        List<String> unqualifiedLayerNames = new ArrayList<>();
+        for (String layerName : layerNames) {
+            unqualifiedLayerNames.add(layerName.split(":")[1]);
+        }
+
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        NodeList names = (NodeList) xpath.compile("//*[local-name()='Layer']/*[local-name()='Name']")
+            .evaluate(doc, XPathConstants.NODESET);
+        List<Element> toRemove = new ArrayList<>();
+        for (int i = 0; i < names.getLength(); ++i) {
+            Element name = (Element) names.item(i);
+            String text = name.getTextContent();
+            if (!unqualifiedLayerNames.contains(text)) {
+                toRemove.add((Element) name.getParentNode());
+            } else {
+                name.setTextContent("bvb:" + text);
+            }
+        }
+        toRemove.forEach(element -> element.getParentNode().removeChild(element));
+
+        xpath = XPathFactory.newInstance().newXPath();
+        NodeList links = (NodeList) xpath.compile("//*[local-name()='OnlineResource']")
+            .evaluate(doc, XPathConstants.NODESET);
+        for (int i = 0; i < links.getLength(); ++i) {
+            Element link = (Element) links.item(i);
+            String url = link.getAttributeNS(XLINK_NS, "href");
+            int index = url.indexOf('?');
+            link.setAttributeNS(XLINK_NS, "xlink:href", index > -1 ? BASE_URL + url.substring(index) : BASE_URL);
+        }
+
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(document.length);
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
+        return out.size();
+    }
+
+    private static byte[] createCapabilities(int layerCount) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<WMS_Capabilities version=\"1.3.0\" xmlns=\"http://www.opengis.net/wms\" ")
+            .append("xmlns:xlink=\"").append(XLINK_NS).append("\">\n")
+            .append("  <Service><Name>WMS</Name>")
+            .append("<OnlineResource xlink:type=\"simple\" xlink:href=\"http://geoserver/wms\"/></Service>\n")
+            .append("  <Capability>\n    <Layer>\n      <Title>GeoServer Web Map Service</Title>\n");
+        for (int i = 0; i < layerCount; i++) {
+            sb.append("      <Layer queryable=\"1\" opaque=\"0\">\n")
+                .append("        <Name>layer").append(i).append("</Name>\n")
+                .append("        <Title>Layer ").append(i).append("</Title>\n")
+                .append("        <Abstract>The layer number ").append(i).append(" of the benchmark.</Abstract>\n")
+                .append("        <CRS>EPSG:4326</CRS>\n        <CRS>EPSG:3857</CRS>\n")
+                .append("        <EX_GeographicBoundingBox><westBoundLongitude>5.8</westBoundLongitude>")
+                .append("<eastBoundLongitude>15.1</eastBoundLongitude><southBoundLatitude>47.2</southBoundLatitude>")
+                .append("<northBoundLatitude>55.1</northBoundLatitude></EX_GeographicBoundingBox>\n")
+                .append("        <Style><Name>default</Name><Title>Default</Title><LegendURL width=\"20\" height=\"20\">")
+                .append("<Format>image/png</Format><OnlineResource xlink:type=\"simple\" ")
+                .append("xlink:href=\"http://geoserver/wms?request=GetLegendGraphic&amp;format=image%2Fpng&amp;layer=layer")
+                .append(i).append("\"/></LegendURL></Style>\n")
+                .append("      </Layer>\n");
+        }
+        sb.append("    </Layer>\n  </Capability>\n</WMS_Capabilities>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        int run() throws Exception;
+    }
+}
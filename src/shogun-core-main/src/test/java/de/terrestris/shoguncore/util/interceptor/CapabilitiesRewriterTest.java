@@ -0,0 +1,260 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.util.model.Response;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CapabilitiesRewriterTest {
+
+    private static final String BASE_URL = "https://example.com/shogun/geoserver.action/bvb";
+
+    private static final QName ONLINE_RESOURCE = new QName(CapabilitiesRewriter.ANY_NAMESPACE, "OnlineResource");
+
+    private static final String WMS_CAPABILITIES =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<WMS_Capabilities version=\"1.3.0\" xmlns=\"http://www.opengis.net/wms\" " +
+            "xmlns:xlink=\"http://www.w3.org/1999/xlink\">" +
+            "<Service><OnlineResource xlink:type=\"simple\" xlink:href=\"http://geoserver/wms\"/></Service>" +
+            "<Capability><Layer><Title>Root</Title>" +
+            "<Layer queryable=\"1\"><Name>shinji</Name><Title>Shinji &amp; Kagawa</Title>" +
+            "<Style><LegendURL><OnlineResource xlink:type=\"simple\" " +
+            "xlink:href=\"http://geoserver/wms?request=GetLegendGraphic&amp;layer=shinji\"/>" +
+            "</LegendURL></Style></Layer>" +
+            "<Layer><Name>reus</Name><Title>Reus</Title><Layer><Name>shinji</Name></Layer></Layer>" +
+            "<Layer><Title>Hummels</Title><Name>hummels</Name></Layer>" +
+            "</Layer></Capability></WMS_Capabilities>";
+
+    private static final String WFS_CAPABILITIES =
+        "<wfs:WFS_Capabilities version=\"1.1.0\" xmlns:wfs=\"http://www.opengis.net/wfs\" " +
+            "xmlns:ows=\"http://www.opengis.net/ows\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">" +
+            "<ows:OperationsMetadata><ows:Operation name=\"GetFeature\"><ows:DCP><ows:HTTP>" +
+            "<ows:Get xlink:href=\"http://geoserver/wfs\"/><ows:Post xlink:href=\"http://geoserver/wfs\"/>" +
+            "</ows:HTTP></ows:DCP></ows:Operation></ows:OperationsMetadata></wfs:WFS_Capabilities>";
+
+    private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+
+    private static String rewrite(CapabilitiesRewriter rewriter, String document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rewriter.rewrite(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void filters_and_qualifies_layers() throws IOException {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.setLayerNames(Arrays.asList("bvb:shinji", "bvb:hummels"));
+
+        String result = rewrite(rewriter, WMS_CAPABILITIES);
+
+        assertTrue(result.contains("<Name>bvb:shinji</Name><Title>Shinji &amp; Kagawa</Title>"));
+        assertTrue(result.contains("<Title>Hummels</Title><Name>bvb:hummels</Name>"));
+        assertTrue(result.contains("<Title>Root</Title>"));
+        // the nested (allowed) layer is removed together with its parent
+        assertFalse(result.contains("reus"));
+        assertEquals(result.indexOf("bvb:shinji"), result.lastIndexOf("bvb:shinji"));
+    }
+
+    @Test
+    public void rewrites_online_resources() throws IOException {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.addUrlRewrite(ONLINE_RESOURCE, CapabilitiesRewriter.XLINK_HREF, BASE_URL, true);
+
+        String result = rewrite(rewriter, WMS_CAPABILITIES);
+
+        assertTrue(result.contains("xlink:href=\"" + BASE_URL + "\""));
+        assertTrue(result.contains("xlink:href=\"" + BASE_URL + "?request=GetLegendGraphic&amp;layer=shinji\""));
+        assertFalse(result.contains("http://geoserver/wms"));
+        // no layer filtering configured
+        assertTrue(result.contains("<Name>reus</Name>"));
+    }
+
+    @Test
+    public void rewrites_namespaced_elements_only() throws IOException {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.addUrlRewrite(new QName("http://www.opengis.net/ows", "Get"),
+            CapabilitiesRewriter.XLINK_HREF, BASE_URL, false);
+        rewriter.addUrlRewrite(new QName("http://www.opengis.net/ows/1.1", "Post"),
+            CapabilitiesRewriter.XLINK_HREF, BASE_URL, false);
+
+        String result = rewrite(rewriter, WFS_CAPABILITIES);
+
+        assertTrue(result.contains("<ows:Get xlink:href=\"" + BASE_URL + "\""));
+        assertTrue(result.contains("<ows:Post xlink:href=\"http://geoserver/wfs\""));
+    }
+
+    @Test
+    public void adds_missing_attribute() throws IOException {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.addUrlRewrite(ONLINE_RESOURCE, CapabilitiesRewriter.XLINK_HREF, BASE_URL, true);
+
+        String result = rewrite(rewriter, "<WMS_Capabilities xmlns=\"http://www.opengis.net/wms\">" +
+            "<Service><OnlineResource/></Service></WMS_Capabilities>");
+
+        assertTrue(result.contains("xmlns:xlink=\"http://www.w3.org/1999/xlink\""));
+        assertTrue(result.contains("xlink:href=\"" + BASE_URL + "\""));
+    }
+
+    @Test(expected = IOException.class)
+    public void throws_on_invalid_xml() throws IOException {
+        rewrite(new CapabilitiesRewriter(), "<WMS_Capabilities>");
+    }
+
+    @Test
+    public void passes_unsupported_versions_through() throws IOException {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.setSupportedVersions(Collections.singletonList("2.0.0"));
+        rewriter.addUrlRewrite(new QName("http://www.opengis.net/ows", "Get"),
+            CapabilitiesRewriter.XLINK_HREF, BASE_URL, false);
+
+        String result = rewrite(rewriter, WFS_CAPABILITIES);
+
+        assertTrue(result.contains("<ows:Get xlink:href=\"http://geoserver/wfs\""));
+        assertFalse(result.contains(BASE_URL));
+
+        rewriter.setSupportedVersions(Arrays.asList("1.1.0", "2.0.0"));
+
+        assertTrue(rewrite(rewriter, WFS_CAPABILITIES).contains("<ows:Get xlink:href=\"" + BASE_URL + "\""));
+    }
+
+    @Test
+    public void rewrites_large_documents_on_the_fly() throws IOException {
+        byte[] document = createCapabilities(5000);
+        List<String> layerNames = new ArrayList<>();
+        for (int i = 0; i < 5000; i += 2) {
+            layerNames.add("bvb:layer" + i);
+        }
+
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.setLayerNames(layerNames);
+        rewriter.addUrlRewrite(ONLINE_RESOURCE, CapabilitiesRewriter.XLINK_HREF, BASE_URL, true);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        rewriter.rewrite(new ByteArrayInputStream(document), expected);
+
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(document));
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream rewritten = rewriter.rewrite(source)) {
+            byte[] buffer = new byte[4096];
+            int count = rewritten.read(buffer);
+            // only the beginning of the document has been read yet
+            assertTrue(source.getByteCount() < document.length / 4);
+            actual.write(buffer, 0, count);
+            IOUtils.copy(rewritten, actual);
+        }
+
+        assertEquals(document.length, source.getByteCount());
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+        String result = new String(actual.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(result.contains("<Name>bvb:layer4998</Name>"));
+        assertFalse(result.contains("<Name>layer4999</Name>"));
+        assertFalse(result.contains("http://geoserver/wms"));
+    }
+
+    @Test
+    public void rewrites_the_body_of_streamed_xml_responses() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_XML);
+        Response response = new Response(HttpStatus.OK, headers, null);
+        InputStream upstream = new ByteArrayInputStream(WMS_CAPABILITIES.getBytes(StandardCharsets.UTF_8));
+        response.setBodyStream(upstream);
+
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.addUrlRewrite(ONLINE_RESOURCE, CapabilitiesRewriter.XLINK_HREF, BASE_URL, true);
+
+        assertTrue(rewriter.rewrite(response));
+        assertTrue(response.isStreamed());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeBody(out);
+        String result = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        assertTrue(result.contains("xlink:href=\"" + BASE_URL + "\""));
+        assertFalse(result.contains("http://geoserver/wms"));
+    }
+
+    @Test
+    public void passes_documents_that_cant_be_rewritten_through() throws IOException {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.addUrlRewrite(ONLINE_RESOURCE, CapabilitiesRewriter.XLINK_HREF, BASE_URL, true);
+
+        for (String document : Arrays.asList("<html><body>Error<br></body></html>",
+            "Service unavailable", "<WMS_Capabilities>", "")) {
+            byte[] original = document.getBytes(StandardCharsets.UTF_8);
+            try (InputStream rewritten = rewriter.rewrite(new ByteArrayInputStream(original))) {
+                assertArrayEquals(original, IOUtils.toByteArray(rewritten));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void throws_on_invalid_xml_after_the_prefix() throws IOException {
+        byte[] document = createCapabilities(5000);
+        byte[] truncated = Arrays.copyOf(document, document.length - 100);
+
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        try (InputStream rewritten = rewriter.rewrite(new ByteArrayInputStream(truncated))) {
+            IOUtils.toByteArray(rewritten);
+        }
+    }
+
+    @Test
+    public void leaves_other_responses_untouched() {
+        CapabilitiesRewriter rewriter = new CapabilitiesRewriter();
+        rewriter.addUrlRewrite(ONLINE_RESOURCE, CapabilitiesRewriter.XLINK_HREF, BASE_URL, true);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.IMAGE_PNG);
+        byte[] body = new byte[]{1, 2, 3};
+        Response image = new Response(HttpStatus.OK, headers, body);
+
+        assertFalse(rewriter.rewrite(image));
+        assertSame(body, image.getBody());
+
+        Response empty = new Response(HttpStatus.OK, new HttpHeaders(), null);
+
+        assertFalse(rewriter.rewrite(empty));
+        assertNull(empty.getBody());
+    }
+
+    private static byte[] createCapabilities(int layerCount) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<WMS_Capabilities version=\"1.3.0\" xmlns=\"http://www.opengis.net/wms\" ")
+            .append("xmlns:xlink=\"").append(XLINK_NS).append("\">\n")
+            .append("<Service><Name>WMS</Name>")
+            .append("<OnlineResource xlink:type=\"simple\" xlink:href=\"http://geoserver/wms\"/></Service>\n")
+            .append("<Capability><Layer><Title>GeoServer Web Map Service</Title>\n");
+        for (int i = 0; i < layerCount; i++) {
+            sb.append("<Layer queryable=\"1\"><Name>layer").append(i).append("</Name>")
+                .append("<Title>Layer ").append(i).append("</Title><CRS>EPSG:4326</CRS>")
+                .append("<Style><Name>default</Name><LegendURL><OnlineResource xlink:type=\"simple\" ")
+                .append("xlink:href=\"http://geoserver/wms?request=GetLegendGraphic&amp;layer=layer")
+                .append(i).append("\"/></LegendURL></Style></Layer>\n");
+        }
+        sb.append("</Layer></Capability></WMS_Capabilities>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
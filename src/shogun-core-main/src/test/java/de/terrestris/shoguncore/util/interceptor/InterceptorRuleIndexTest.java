@@ -0,0 +1,75 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.model.interceptor.InterceptorRule;
+import de.terrestris.shoguncore.util.enumeration.HttpEnum;
+import de.terrestris.shoguncore.util.enumeration.InterceptorEnum;
+import de.terrestris.shoguncore.util.enumeration.OgcEnum;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class InterceptorRuleIndexTest {
+
+    private InterceptorRuleIndex index;
+
+    @Before
+    public void setUp() {
+        List<InterceptorRule> rules = new ArrayList<>();
+        rules.add(new InterceptorRule(HttpEnum.EventType.REQUEST, InterceptorEnum.RuleType.DENY,
+            OgcEnum.ServiceType.WMS, null, null));
+        rules.add(new InterceptorRule(HttpEnum.EventType.REQUEST, InterceptorEnum.RuleType.ALLOW,
+            OgcEnum.ServiceType.WMS, OgcEnum.OperationType.GET_MAP, null));
+        rules.add(new InterceptorRule(HttpEnum.EventType.REQUEST, InterceptorEnum.RuleType.MODIFY,
+            OgcEnum.ServiceType.WMS, OgcEnum.OperationType.GET_MAP, "bvb:shinji"));
+        rules.add(new InterceptorRule(HttpEnum.EventType.RESPONSE, InterceptorEnum.RuleType.MODIFY,
+            OgcEnum.ServiceType.WMS, OgcEnum.OperationType.GET_CAPABILITIES, null));
+        index = new InterceptorRuleIndex(rules);
+    }
+
+    @Test
+    public void most_specific_rule_wins() throws InterceptorException {
+        InterceptorRule rule = index.getMostSpecificRule(OgcEnum.ServiceType.WMS,
+            OgcEnum.OperationType.GET_MAP, "bvb:shinji", HttpEnum.EventType.REQUEST);
+        assertEquals(InterceptorEnum.RuleType.MODIFY, rule.getRule());
+    }
+
+    @Test
+    public void operation_rule_for_other_endpoint() throws InterceptorException {
+        InterceptorRule rule = index.getMostSpecificRule(OgcEnum.ServiceType.WMS,
+            OgcEnum.OperationType.GET_MAP, "bvb:hummels", HttpEnum.EventType.REQUEST);
+        assertEquals(InterceptorEnum.RuleType.ALLOW, rule.getRule());
+    }
+
+    @Test
+    public void service_rule_for_other_operation() throws InterceptorException {
+        InterceptorRule rule = index.getMostSpecificRule(OgcEnum.ServiceType.WMS,
+            OgcEnum.OperationType.GET_FEATURE_INFO, "bvb:shinji", HttpEnum.EventType.REQUEST);
+        assertEquals(InterceptorEnum.RuleType.DENY, rule.getRule());
+    }
+
+    @Test
+    public void endpoint_is_matched_case_insensitive() throws InterceptorException {
+        // the endPoint doesn't increase the specificity, but doesn't exclude
+        // the rule either
+        InterceptorRule rule = index.getMostSpecificRule(OgcEnum.ServiceType.WMS,
+            OgcEnum.OperationType.GET_MAP, "BVB:SHINJI", HttpEnum.EventType.REQUEST);
+        assertEquals(InterceptorEnum.RuleType.ALLOW, rule.getRule());
+        assertEquals(4, index.size());
+    }
+
+    @Test(expected = InterceptorException.class)
+    public void throws_without_rules_for_service() throws InterceptorException {
+        index.getMostSpecificRule(OgcEnum.ServiceType.WFS,
+            OgcEnum.OperationType.GET_FEATURE, "bvb:shinji", HttpEnum.EventType.REQUEST);
+    }
+
+    @Test(expected = InterceptorException.class)
+    public void empty_index_throws() throws InterceptorException {
+        InterceptorRuleIndex.EMPTY.getMostSpecificRule(OgcEnum.ServiceType.WMS,
+            OgcEnum.OperationType.GET_MAP, "bvb:shinji", HttpEnum.EventType.REQUEST);
+    }
+}
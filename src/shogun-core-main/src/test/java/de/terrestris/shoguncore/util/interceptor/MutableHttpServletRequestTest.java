@@ -13,10 +13,13 @@ import java.io.InputStream;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 public class MutableHttpServletRequestTest {
 
@@ -144,4 +147,19 @@ public class MutableHttpServletRequestTest {
 
         assertEquals("String body should be equal.", sw.toString(), testString);
     }
+
+    @Test
+    public void getBodyReturnsTheCachedBytesUnchanged() throws IOException {
+        final byte[] latin1Body = "<GetMap>Gr\u00fc\u00dfe</GetMap>".getBytes(StandardCharsets.ISO_8859_1);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", DEFAULT_REQUEST_URI);
+        request.setCharacterEncoding("ISO-8859-1");
+        request.setContent(latin1Body);
+        MutableHttpServletRequest latin1Request = new MutableHttpServletRequest(request);
+
+        byte[] body = latin1Request.getBody();
+
+        assertArrayEquals(latin1Body, body);
+        assertSame("The body should be read only once.", body, latin1Request.getBody());
+        assertArrayEquals(latin1Body, IOUtils.toByteArray(latin1Request.getInputStream()));
+    }
 }
@@ -0,0 +1,86 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.util.enumeration.OgcEnum;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class OgcRequestDescriptorTest {
+
+    private static final String WFS_GET_FEATURE =
+        "<wfs:GetFeature service=\"WFS\" version=\"1.1.0\" " +
+            "xmlns:wfs=\"http://www.opengis.net/wfs\">" +
+            "<wfs:Query typeName=\"bvb:shinji\"/>" +
+            "<wfs:Query typeName=\"bvb:reus\"/>" +
+            "</wfs:GetFeature>";
+
+    private static final String WFS_DESCRIBE_FEATURE_TYPE =
+        "<DescribeFeatureType service=\"WFS\" version=\"1.1.0\" typeName=\"bvb:ignored\">" +
+            "<TypeName>bvb:shinji</TypeName>" +
+            "</DescribeFeatureType>";
+
+    private static final String WCS_GET_COVERAGE =
+        "<wcs:GetCoverage service=\"WCS\" version=\"1.1.1\" " +
+            "xmlns:wcs=\"http://www.opengis.net/wcs/1.1.1\" " +
+            "xmlns:ows=\"http://www.opengis.net/ows/1.1\">" +
+            "<ows:Identifier>bvb:dem</ows:Identifier>" +
+            "<wcs:DomainSubset/>" +
+            "</wcs:GetCoverage>";
+
+    @Test
+    public void parse_wfs_get_feature() throws IOException {
+        OgcRequestDescriptor descriptor = OgcRequestDescriptor.parse(new StringReader(WFS_GET_FEATURE));
+        assertEquals("WFS", descriptor.getService());
+        assertEquals("1.1.0", descriptor.getVersion());
+        assertEquals("GetFeature", descriptor.getOperation());
+        assertEquals("bvb:shinji", descriptor.getEndPoint());
+    }
+
+    @Test
+    public void parse_element_endpoint_before_attribute() throws IOException {
+        OgcRequestDescriptor descriptor = OgcRequestDescriptor.parse(new StringReader(WFS_DESCRIBE_FEATURE_TYPE));
+        assertEquals("DescribeFeatureType", descriptor.getOperation());
+        assertEquals("bvb:shinji", descriptor.getEndPoint());
+    }
+
+    @Test
+    public void parse_wcs_get_coverage() throws IOException {
+        OgcRequestDescriptor descriptor = OgcRequestDescriptor.parse(new StringReader(WCS_GET_COVERAGE));
+        assertEquals("WCS", descriptor.getService());
+        assertEquals("GetCoverage", descriptor.getOperation());
+        assertEquals("bvb:dem", descriptor.getEndPoint());
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_invalid_xml() throws IOException {
+        OgcRequestDescriptor.parse(new StringReader("Shinji Kagawa"));
+    }
+
+    @Test
+    public void request_parameters_from_cached_descriptor() throws IOException, InterceptorException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/geoserver.action");
+        request.setContent(WFS_GET_FEATURE.getBytes(StandardCharsets.UTF_8));
+        MutableHttpServletRequest mutableRequest = new MutableHttpServletRequest(request);
+
+        assertEquals("WFS", MutableHttpServletRequest.getRequestParameterValue(
+            mutableRequest, OgcEnum.Service.SERVICE.toString()));
+        assertEquals("GetFeature", MutableHttpServletRequest.getRequestParameterValue(
+            mutableRequest, OgcEnum.Operation.OPERATION.toString()));
+        assertEquals("bvb:shinji", MutableHttpServletRequest.getRequestParameterValue(
+            mutableRequest, OgcEnum.EndPoint.getAllValues()));
+
+        OgcRequestDescriptor descriptor = mutableRequest.getOgcRequestDescriptor();
+        assertSame(descriptor, mutableRequest.getOgcRequestDescriptor());
+
+        mutableRequest.setInputStream(WCS_GET_COVERAGE);
+        assertNotSame(descriptor, mutableRequest.getOgcRequestDescriptor());
+        assertEquals("bvb:dem", mutableRequest.getOgcRequestDescriptor().getEndPoint());
+    }
+}
@@ -0,0 +1,127 @@
+package de.terrestris.shoguncore.util.interceptor;
+
+import de.terrestris.shoguncore.util.model.Response;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WmtsTileCacheTest {
+
+    private static final String URL = "http://example.com/geoserver/gwc/service/wmts/rest";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WmtsTileCache cache;
+
+    private static Response createTile(String content) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.IMAGE_PNG);
+        return new Response(HttpStatus.OK, headers, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new WmtsTileCache();
+        cache.setDirectory(folder.getRoot().getAbsolutePath());
+        cache.init();
+    }
+
+    @Test
+    public void caches_tiles() {
+        assertNull(cache.get(1, URL, "bvb:shinji/EPSG:3857/0/0/0"));
+
+        assertTrue(cache.put(1, URL, "bvb:shinji/EPSG:3857/0/0/0", createTile("shinji"), null));
+
+        Response tile = cache.get(1, URL, "bvb:shinji/EPSG:3857/0/0/0");
+        assertNotNull(tile);
+        assertEquals(HttpStatus.OK, tile.getStatusCode());
+        assertEquals("shinji", new String(tile.getBody(), StandardCharsets.UTF_8));
+        assertEquals(MediaType.IMAGE_PNG, tile.getHeaders().getContentType());
+
+        // other data source or (changed) URL
+        assertNull(cache.get(2, URL, "bvb:shinji/EPSG:3857/0/0/0"));
+        assertNull(cache.get(1, URL + "/v2", "bvb:shinji/EPSG:3857/0/0/0"));
+    }
+
+    @Test
+    public void honors_cache_control() {
+        assertFalse(cache.put(1, URL, "a", createTile("a"), "no-store"));
+        assertFalse(cache.put(1, URL, "b", createTile("b"), "private, max-age=3600"));
+        assertFalse(cache.put(1, URL, "c", createTile("c"), "max-age=0"));
+        assertTrue(cache.put(1, URL, "d", createTile("d"), "public, max-age=3600"));
+
+        assertEquals(1, cache.getTileCount());
+        assertEquals(-1, WmtsTileCache.getExpires("no-cache"));
+        assertEquals(0, WmtsTileCache.getExpires(null));
+        assertTrue(WmtsTileCache.getExpires("s-maxage=60") > System.currentTimeMillis());
+    }
+
+    @Test
+    public void evicts_least_recently_used_tiles() {
+        cache.put(1, URL, "a", createTile("a"), null);
+        long tileSize = cache.getSize();
+        cache.setMaxSize(tileSize * 2);
+
+        cache.put(1, URL, "b", createTile("b"), null);
+        // a is now more recently used than b
+        assertNotNull(cache.get(1, URL, "a"));
+        cache.put(1, URL, "c", createTile("c"), null);
+
+        assertEquals(2, cache.getTileCount());
+        assertEquals(tileSize * 2, cache.getSize());
+        assertNotNull(cache.get(1, URL, "a"));
+        assertNull(cache.get(1, URL, "b"));
+        assertNotNull(cache.get(1, URL, "c"));
+    }
+
+    @Test
+    public void indexes_existing_tiles() throws IOException {
+        cache.put(1, URL, "a", createTile("a"), null);
+
+        WmtsTileCache other = new WmtsTileCache();
+        other.setDirectory(folder.getRoot().getAbsolutePath());
+        other.init();
+
+        assertEquals(1, other.getTileCount());
+        assertEquals("a", new String(other.get(1, URL, "a").getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void is_disabled_without_directory() throws IOException {
+        WmtsTileCache disabled = new WmtsTileCache();
+        disabled.init();
+
+        assertFalse(disabled.isEnabled());
+        assertFalse(disabled.put(1, URL, "a", createTile("a"), null));
+    }
+
+    @Test
+    public void caches_data_source_urls() {
+        AtomicInteger lookups = new AtomicInteger();
+
+        assertEquals(URL, cache.getDataSourceUrl(1, id -> {
+            lookups.incrementAndGet();
+            return URL;
+        }));
+        assertEquals(URL, cache.getDataSourceUrl(1, id -> {
+            lookups.incrementAndGet();
+            return URL;
+        }));
+        assertEquals(1, lookups.get());
+
+        cache.invalidateDataSource(1);
+
+        assertNull(cache.getDataSourceUrl(1, id -> null));
+    }
+}
@@ -0,0 +1,256 @@
+package de.terrestris.shoguncore.util.json;
+
+import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.annotation.ObjectIdGenerators;
+import com.fasterxml.jackson.annotation.ObjectIdResolver;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.cfg.HandlerInstantiator;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.deser.UnresolvedForwardReference;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import de.terrestris.shoguncore.converter.LayerIdResolver;
+import de.terrestris.shoguncore.converter.PluginIdResolver;
+import de.terrestris.shoguncore.dao.LayerDao;
+import de.terrestris.shoguncore.dao.PluginDao;
+import de.terrestris.shoguncore.helper.IdHelper;
+import de.terrestris.shoguncore.model.Application;
+import de.terrestris.shoguncore.model.Plugin;
+import de.terrestris.shoguncore.model.layer.Layer;
+import de.terrestris.shoguncore.model.module.WfsSearch;
+import de.terrestris.shoguncore.service.LayerService;
+import de.terrestris.shoguncore.service.PluginService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the batched resolution of the IDs of referenced entities when JSON
+ * objects are converted by the {@link ShogunCoreJsonObjectMapper}.
+ *
+ * @author terrestris GmbH & Co. KG
+ */
+public class ShogunCoreDeserializationContextTest {
+
+    /**
+     * A model that references entities of two types by their IDs.
+     */
+    public static class TestModel {
+
+        @JsonIdentityInfo(
+            generator = ObjectIdGenerators.PropertyGenerator.class,
+            property = "id",
+            resolver = PluginIdResolver.class
+        )
+        @JsonIdentityReference(alwaysAsId = true)
+        private List<Plugin> plugins = new ArrayList<>();
+
+        @JsonIdentityInfo(
+            generator = ObjectIdGenerators.PropertyGenerator.class,
+            property = "id",
+            resolver = LayerIdResolver.class
+        )
+        @JsonIdentityReference(alwaysAsId = true)
+        private List<Layer> layers = new ArrayList<>();
+
+        public List<Plugin> getPlugins() {
+            return plugins;
+        }
+
+        public void setPlugins(List<Plugin> plugins) {
+            this.plugins = plugins;
+        }
+
+        public List<Layer> getLayers() {
+            return layers;
+        }
+
+        public void setLayers(List<Layer> layers) {
+            this.layers = layers;
+        }
+    }
+
+    /**
+     * Creates the ID resolvers with the mocked services (instead of
+     * autowiring them).
+     */
+    private static class ResolverInstantiator extends HandlerInstantiator {
+
+        private final Map<Class<?>, ObjectIdResolver> resolvers = new HashMap<>();
+
+        @Override
+        public ObjectIdResolver resolverIdGeneratorInstance(MapperConfig<?> config, Annotated annotated,
+                                                            Class<?> implClass) {
+            return resolvers.get(implClass);
+        }
+
+        @Override
+        public JsonDeserializer<?> deserializerInstance(DeserializationConfig config, Annotated annotated,
+                                                        Class<?> deserClass) {
+            return null;
+        }
+
+        @Override
+        public KeyDeserializer keyDeserializerInstance(DeserializationConfig config, Annotated annotated,
+                                                       Class<?> keyDeserClass) {
+            return null;
+        }
+
+        @Override
+        public JsonSerializer<?> serializerInstance(SerializationConfig config, Annotated annotated,
+                                                    Class<?> serClass) {
+            return null;
+        }
+
+        @Override
+        public TypeResolverBuilder<?> typeResolverBuilderInstance(MapperConfig<?> config, Annotated annotated,
+                                                                  Class<?> builderClass) {
+            return null;
+        }
+
+        @Override
+        public TypeIdResolver typeIdResolverInstance(MapperConfig<?> config, Annotated annotated,
+                                                     Class<?> resolverClass) {
+            return null;
+        }
+    }
+
+    private final ShogunCoreJsonObjectMapper objectMapper = new ShogunCoreJsonObjectMapper();
+
+    private PluginService<Plugin, PluginDao<Plugin>> pluginServiceMock;
+
+    private LayerService<Layer, LayerDao<Layer>> layerServiceMock;
+
+    private final Map<Integer, Plugin> plugins = new HashMap<>();
+
+    private final Map<Integer, Layer> layers = new HashMap<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        pluginServiceMock = mock(PluginService.class);
+        layerServiceMock = mock(LayerService.class);
+
+        PluginIdResolver<Plugin, PluginDao<Plugin>, PluginService<Plugin, PluginDao<Plugin>>> pluginIdResolver =
+            new PluginIdResolver<>();
+        pluginIdResolver.setService(pluginServiceMock);
+        LayerIdResolver<Layer, LayerDao<Layer>, LayerService<Layer, LayerDao<Layer>>> layerIdResolver =
+            new LayerIdResolver<>();
+        layerIdResolver.setService(layerServiceMock);
+
+        ResolverInstantiator instantiator = new ResolverInstantiator();
+        instantiator.resolvers.put(PluginIdResolver.class, pluginIdResolver);
+        instantiator.resolvers.put(LayerIdResolver.class, layerIdResolver);
+        objectMapper.setHandlerInstantiator(instantiator);
+
+        for (int id = 1; id <= 3; id++) {
+            Plugin plugin = new Plugin();
+            IdHelper.setIdOnPersistentObject(plugin, id);
+            plugins.put(id, plugin);
+
+            Layer layer = new Layer("layer " + id);
+            IdHelper.setIdOnPersistentObject(layer, 10 + id);
+            layers.put(10 + id, layer);
+        }
+
+        when(pluginServiceMock.findReadableByIds(anyCollection())).thenReturn(plugins);
+        when(layerServiceMock.findReadableByIds(anyCollection())).thenReturn(layers);
+    }
+
+    @Test
+    public void binds_the_plugins_of_an_application_with_a_single_query() throws Exception {
+        JsonNode json = objectMapper.readTree("{\"name\": \"app\", \"plugins\": [3, 1, 2]}");
+
+        Application application = objectMapper.treeToValue(json, Application.class);
+
+        assertEquals("app", application.getName());
+        assertEquals(3, application.getPlugins().size());
+        assertSame(plugins.get(3), application.getPlugins().get(0));
+        assertSame(plugins.get(1), application.getPlugins().get(1));
+        assertSame(plugins.get(2), application.getPlugins().get(2));
+
+        verify(pluginServiceMock, times(1)).findReadableByIds(new HashSet<>(Arrays.asList(1, 2, 3)));
+        verify(pluginServiceMock, never()).loadById(anyInt());
+    }
+
+    @Test
+    public void binds_the_layers_of_a_wfs_search_with_a_single_query() throws Exception {
+        JsonNode json = objectMapper.readTree("{\"layers\": [12, 11]}");
+
+        WfsSearch wfsSearch = objectMapper.treeToValue(json, WfsSearch.class);
+
+        assertEquals(2, wfsSearch.getLayers().size());
+        assertSame(layers.get(12), wfsSearch.getLayers().get(0));
+        assertSame(layers.get(11), wfsSearch.getLayers().get(1));
+
+        verify(layerServiceMock, times(1)).findReadableByIds(new HashSet<>(Arrays.asList(11, 12)));
+        verify(layerServiceMock, never()).loadById(anyInt());
+    }
+
+    @Test
+    public void resolves_the_ids_with_a_single_query_per_type() throws Exception {
+        JsonNode json = objectMapper.readTree("{\"plugins\": [1, 2, 1], \"layers\": [11, 12, 13]}");
+
+        TestModel model = objectMapper.treeToValue(json, TestModel.class);
+
+        assertEquals(3, model.getPlugins().size());
+        assertSame(plugins.get(1), model.getPlugins().get(0));
+        assertSame(plugins.get(2), model.getPlugins().get(1));
+        assertSame(plugins.get(1), model.getPlugins().get(2));
+        assertEquals(3, model.getLayers().size());
+        assertSame(layers.get(11), model.getLayers().get(0));
+        assertSame(layers.get(13), model.getLayers().get(2));
+
+        verify(pluginServiceMock, times(1)).findReadableByIds(anyCollection());
+        verify(pluginServiceMock, times(1)).findReadableByIds(new HashSet<>(Arrays.asList(1, 2)));
+        verify(layerServiceMock, times(1)).findReadableByIds(anyCollection());
+        verify(layerServiceMock, times(1)).findReadableByIds(new HashSet<>(Arrays.asList(11, 12, 13)));
+    }
+
+    @Test
+    public void binds_the_plugins_when_updating_an_application() throws Exception {
+        Application application = new Application("app", "description");
+        JsonNode json = objectMapper.readTree("{\"plugins\": [2, 3]}");
+
+        objectMapper.updateValue(application, json);
+
+        assertEquals("app", application.getName());
+        assertEquals(2, application.getPlugins().size());
+        assertSame(plugins.get(2), application.getPlugins().get(0));
+        assertSame(plugins.get(3), application.getPlugins().get(1));
+
+        verify(pluginServiceMock, times(1)).findReadableByIds(new HashSet<>(Arrays.asList(2, 3)));
+    }
+
+    @Test(expected = UnresolvedForwardReference.class)
+    public void fails_on_an_unreadable_id() throws Exception {
+        // the plugin with ID 4 doesn't exist or may not be read
+        JsonNode json = objectMapper.readTree("{\"name\": \"app\", \"plugins\": [1, 4]}");
+
+        objectMapper.treeToValue(json, Application.class);
+    }
+
+}
@@ -0,0 +1,75 @@
+package de.terrestris.shoguncore.web;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import de.terrestris.shoguncore.service.CacheStatisticsService;
+
+/**
+ * @author terrestris GmbH & Co. KG
+ */
+public class CacheStatisticsControllerTest {
+
+    private MockMvc mockMvc;
+
+    /**
+     * The controller to test
+     */
+    private CacheStatisticsController cacheStatisticsController;
+
+    @Mock
+    private CacheStatisticsService cacheStatisticsServiceMock;
+
+    @Before
+    public void setUp() {
+
+        // Process mock annotations
+        MockitoAnnotations.initMocks(this);
+
+        cacheStatisticsController = new CacheStatisticsController();
+        cacheStatisticsController.setService(cacheStatisticsServiceMock);
+
+        // Setup Spring test in standalone mode
+        this.mockMvc = MockMvcBuilders.standaloneSetup(cacheStatisticsController).build();
+    }
+
+    @Test
+    public void getStatistics_shouldReturnStatistics() throws Exception {
+        when(cacheStatisticsServiceMock.getStatistics())
+            .thenReturn(Collections.<String, Object>singletonMap("statisticsEnabled", true));
+
+        mockMvc.perform(get("/cachestatistics"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/json;charset=UTF-8"))
+            .andExpect(jsonPath("$.statisticsEnabled").value(true));
+
+        verify(cacheStatisticsServiceMock, times(1)).getStatistics();
+    }
+
+    @Test
+    public void resetStatistics_shouldResetStatistics() throws Exception {
+        when(cacheStatisticsServiceMock.getStatistics())
+            .thenReturn(Collections.<String, Object>singletonMap("statisticsEnabled", true));
+
+        mockMvc.perform(post("/cachestatistics/reset"))
+            .andExpect(status().isOk());
+
+        verify(cacheStatisticsServiceMock, times(1)).resetStatistics();
+        verify(cacheStatisticsServiceMock, times(1)).getStatistics();
+    }
+}
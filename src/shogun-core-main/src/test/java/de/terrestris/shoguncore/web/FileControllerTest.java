@@ -4,6 +4,7 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -11,10 +12,14 @@ import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
@@ -24,6 +29,7 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import de.terrestris.shoguncore.dao.FileDao;
 import de.terrestris.shoguncore.model.File;
 import de.terrestris.shoguncore.service.FileService;
+import de.terrestris.shoguncore.util.blob.BlobStore;
 
 /**
  * @author Nils Bühner
@@ -206,4 +212,43 @@ public class FileControllerTest {
         verify(fileServiceMock, times(1)).findById(fileId);
         verifyNoMoreInteractions(fileServiceMock);
     }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getFile_shouldStreamRequestedRangeFromBlobStore()
+        throws Exception {
+
+        // mock data
+        final String blobKey = "someBlobKey";
+        final String fileType = "text/plain";
+
+        Integer fileId = 42;
+        File expectedFile = new File();
+        expectedFile.setBlobKey(blobKey);
+        expectedFile.setFileSize(13L);
+        expectedFile.setFileName("fileName.txt");
+        expectedFile.setFileType(fileType);
+
+        BlobStore blobStore = mock(BlobStore.class);
+        fileController.setBlobStore(blobStore);
+
+        // mock service and blob store behaviour, only the requested range
+        // is read from the blob store
+        when(fileServiceMock.findById(fileId)).thenReturn(expectedFile);
+        when(blobStore.open(blobKey, 7)).thenReturn(
+            new ByteArrayInputStream("kagawa".getBytes(StandardCharsets.UTF_8)));
+
+        // Perform and test the GET-Request
+        mockMvc.perform(get("/file/get.action").param("id", fileId.toString())
+            .header(HttpHeaders.RANGE, "bytes=7-"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-12/13"))
+            .andExpect(content().string("kagawa"));
+
+        verify(fileServiceMock, times(1)).findById(fileId);
+        verifyNoMoreInteractions(fileServiceMock);
+        verify(blobStore, times(1)).open(blobKey, 7);
+    }
 }
@@ -19,6 +19,7 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
 import java.util.Optional;
 
 import static de.terrestris.shoguncore.web.GeoServerInterceptorController.ERROR_MESSAGE;
@@ -85,6 +86,26 @@ public class GeoServerInterceptorControllerTest {
         assertEquals(result.getResponse().getContentAsString(), testString);
     }
 
+    @Test
+    public void passesThroughStreamedBody() throws Exception {
+        final String testString = "test";
+        HttpHeaders responseHeaders = new HttpHeaders();
+        Response responseObject = new Response();
+        responseObject.setStatusCode(HttpStatus.OK);
+        responseObject.setHeaders(responseHeaders);
+        responseObject.setBodyStream(new ByteArrayInputStream(testString.getBytes()));
+
+        Mockito.when(geoServerInterceptorService.interceptGeoServerRequest(
+            Matchers.any(HttpServletRequest.class),
+            Matchers.any(Optional.class)
+        )).thenReturn(responseObject);
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(INTERCEPTOR_ENDPOINT))
+            .andExpect(status().isOk()).andReturn();
+
+        assertEquals(result.getResponse().getContentAsString(), testString);
+    }
+
     @Test
     public void doesntWorkForHttpPut() throws Exception {
         final String testString = "test";